@@ -0,0 +1,163 @@
+/* Copyright (c) 2018, Eric McCorkle.  All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions
+ * are met:
+ *
+ * * Redistributions of source code must retain the above copyright
+ *   notice, this list of conditions and the following disclaimer.
+ *
+ * * Redistributions in binary form must reproduce the above copyright
+ *   notice, this list of conditions and the following disclaimer in
+ *   the documentation and/or other materials provided with the
+ *   distribution.
+ *
+ * * Neither the name of the copyright holder nor the names of its
+ *   contributors may be used to endorse or promote products derived
+ *   from this software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS
+ * "AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT
+ * LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS
+ * FOR A PARTICULAR PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE
+ * COPYRIGHT HOLDER OR CONTRIBUTORS BE LIABLE FOR ANY DIRECT,
+ * INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES
+ * (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR
+ * SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION)
+ * HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT,
+ * STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED
+ * OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+package net.metricspace.crypto.ciphers.stream;
+
+import java.io.IOException;
+import java.io.InputStream;
+
+import java.security.AlgorithmParameters;
+import java.security.InvalidAlgorithmParameterException;
+import java.security.InvalidKeyException;
+import java.security.Key;
+
+import javax.crypto.Cipher;
+
+/**
+ * An {@link InputStream} that decrypts data read from an underlying
+ * stream with a keystream cipher.  This drives the cipher engine
+ * directly, rather than going through a {@link javax.crypto.Cipher}
+ * as {@link javax.crypto.CipherInputStream} does.  Data is read
+ * straight into the caller's array and decrypted there, so there is
+ * no intermediate buffer and no copy.
+ * <h2>Usage</h2>
+ *
+ * <pre>
+ * try(final KeystreamCipherInputStream in =
+ *         new KeystreamCipherInputStream(Files.newInputStream(path),
+ *                                        new ChaCha20CipherSpi(),
+ *                                        key, params)) {
+ *     in.read(data);
+ * }
+ * </pre>
+ * The engine is owned by the stream from then on, and must not be
+ * used for anything else.  Instances are not safe for use by
+ * multiple threads at once.
+ * <h2>Misuses</h2>
+ *
+ * The stream provides no authentication, so data must not be trusted
+ * until it has been checked by a message authentication code.
+ */
+public final class KeystreamCipherInputStream extends InputStream {
+    /**
+     * The underlying stream.
+     */
+    private final InputStream in;
+
+    /**
+     * The cipher engine.
+     */
+    private final KeystreamCipherSpi<?, ?> engine;
+
+    /**
+     * Buffer for single-byte reads.
+     */
+    private final byte[] single = new byte[1];
+
+    /**
+     * Create a {@code KeystreamCipherInputStream}.
+     *
+     * @param in The underlying stream.
+     * @param engine The cipher engine.
+     * @param key The key.
+     * @param params The parameters.
+     * @throws InvalidKeyException If {@code key} is not valid for
+     *                             {@code engine}.
+     * @throws InvalidAlgorithmParameterException If {@code params}
+     *                                            is not valid for
+     *                                            {@code engine}.
+     */
+    public KeystreamCipherInputStream(final InputStream in,
+                                      final KeystreamCipherSpi<?, ?>
+                                      engine,
+                                      final Key key,
+                                      final AlgorithmParameters params)
+        throws InvalidKeyException, InvalidAlgorithmParameterException {
+        engine.engineInit(Cipher.DECRYPT_MODE, key, params, null);
+
+        this.in = in;
+        this.engine = engine;
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public int read() throws IOException {
+        int n;
+
+        do {
+            n = read(single, 0, 1);
+        } while (n == 0);
+
+        if (n < 0) {
+            return -1;
+        } else {
+            return single[0] & 0xff;
+        }
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public int read(final byte[] b,
+                    final int off,
+                    final int len) throws IOException {
+        final int n = in.read(b, off, len);
+
+        if (n > 0) {
+            engine.engineUpdate(b, off, n, b, off);
+        }
+
+        return n;
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public int available() throws IOException {
+        return in.available();
+    }
+
+    /**
+     * Discard any precomputed keystream, and close the underlying
+     * stream.
+     *
+     * @throws IOException If an IO error occurs.
+     */
+    @Override
+    public void close() throws IOException {
+        engine.discardKeystream();
+        in.close();
+    }
+}
@@ -0,0 +1,290 @@
+/* Copyright (c) 2018, Eric McCorkle.  All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions
+ * are met:
+ *
+ * * Redistributions of source code must retain the above copyright
+ *   notice, this list of conditions and the following disclaimer.
+ *
+ * * Redistributions in binary form must reproduce the above copyright
+ *   notice, this list of conditions and the following disclaimer in
+ *   the documentation and/or other materials provided with the
+ *   distribution.
+ *
+ * * Neither the name of the copyright holder nor the names of its
+ *   contributors may be used to endorse or promote products derived
+ *   from this software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS
+ * "AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT
+ * LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS
+ * FOR A PARTICULAR PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE
+ * COPYRIGHT HOLDER OR CONTRIBUTORS BE LIABLE FOR ANY DIRECT,
+ * INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES
+ * (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR
+ * SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION)
+ * HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT,
+ * STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED
+ * OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+package net.metricspace.crypto.ciphers.stream;
+
+import java.io.IOException;
+import java.io.OutputStream;
+
+import java.security.AlgorithmParameters;
+import java.security.InvalidAlgorithmParameterException;
+import java.security.InvalidKeyException;
+import java.security.Key;
+
+import javax.crypto.Cipher;
+
+/**
+ * An {@link OutputStream} that encrypts data with a keystream cipher
+ * before writing it to an underlying stream.  This drives the cipher
+ * engine directly, rather than going through a {@link
+ * javax.crypto.Cipher} as {@link javax.crypto.CipherOutputStream}
+ * does.  That avoids the small fixed-size buffer, the allocation on
+ * every update, and the locking inside {@link javax.crypto.Cipher}.
+ * None of these dominate the cost of encryption, though: both this
+ * and {@link javax.crypto.CipherOutputStream} run at about the
+ * keystream rate of the engine, so this is not faster for large
+ * writes.  What it saves is the garbage from every update, and
+ * with {@link #writeInPlace}, a copy.
+ * <p>
+ * Ciphertext is collected in a buffer of configurable size and
+ * written to the underlying stream when the buffer is full, on
+ * {@link #flush}, and on {@link #close}.  Callers that no longer need
+ * their plaintext can use {@link #writeInPlace}, which encrypts the
+ * caller's array and writes it without any copy.
+ * <h2>Usage</h2>
+ *
+ * <pre>
+ * try(final KeystreamCipherOutputStream out =
+ *         new KeystreamCipherOutputStream(Files.newOutputStream(path),
+ *                                         new ChaCha20CipherSpi(),
+ *                                         key, params)) {
+ *     out.write(data);
+ * }
+ * </pre>
+ * The engine is owned by the stream from then on, and must not be
+ * used for anything else.  Instances are not safe for use by
+ * multiple threads at once.
+ * <h2>Misuses</h2>
+ *
+ * The stream provides no authentication.  As with any stream cipher,
+ * an attacker can flip bits in the plaintext by flipping them in the
+ * ciphertext, unless the output is also protected by a message
+ * authentication code.
+ */
+public final class KeystreamCipherOutputStream extends OutputStream {
+    /**
+     * Default size of the buffer used to hold ciphertext.
+     */
+    public static final int DEFAULT_BUFFER_SIZE = 64 * 1024;
+
+    /**
+     * The underlying stream.
+     */
+    private final OutputStream out;
+
+    /**
+     * The cipher engine.
+     */
+    private final KeystreamCipherSpi<?, ?> engine;
+
+    /**
+     * Buffer holding ciphertext not yet written to {@link #out}.
+     */
+    private final byte[] buf;
+
+    /**
+     * Number of bytes of ciphertext in {@link #buf}.
+     */
+    private int count;
+
+    /**
+     * Whether this stream has been closed.
+     */
+    private boolean closed;
+
+    /**
+     * Create a {@code KeystreamCipherOutputStream} with the default
+     * buffer size.
+     *
+     * @param out The underlying stream.
+     * @param engine The cipher engine.
+     * @param key The key.
+     * @param params The parameters.
+     * @throws InvalidKeyException If {@code key} is not valid for
+     *                             {@code engine}.
+     * @throws InvalidAlgorithmParameterException If {@code params}
+     *                                            is not valid for
+     *                                            {@code engine}.
+     */
+    public KeystreamCipherOutputStream(final OutputStream out,
+                                       final KeystreamCipherSpi<?, ?>
+                                       engine,
+                                       final Key key,
+                                       final AlgorithmParameters params)
+        throws InvalidKeyException, InvalidAlgorithmParameterException {
+        this(out, engine, key, params, DEFAULT_BUFFER_SIZE);
+    }
+
+    /**
+     * Create a {@code KeystreamCipherOutputStream}.
+     *
+     * @param out The underlying stream.
+     * @param engine The cipher engine.
+     * @param key The key.
+     * @param params The parameters.
+     * @param bufferSize Size of the buffer used to hold ciphertext.
+     * @throws InvalidKeyException If {@code key} is not valid for
+     *                             {@code engine}.
+     * @throws InvalidAlgorithmParameterException If {@code params}
+     *                                            is not valid for
+     *                                            {@code engine}.
+     * @throws IllegalArgumentException If {@code bufferSize} is not
+     *                                  positive.
+     */
+    public KeystreamCipherOutputStream(final OutputStream out,
+                                       final KeystreamCipherSpi<?, ?>
+                                       engine,
+                                       final Key key,
+                                       final AlgorithmParameters params,
+                                       final int bufferSize)
+        throws InvalidKeyException, InvalidAlgorithmParameterException {
+        if (bufferSize < 1) {
+            throw new IllegalArgumentException("Buffer size must be " +
+                                               "positive");
+        }
+
+        engine.engineInit(Cipher.ENCRYPT_MODE, key, params, null);
+
+        this.out = out;
+        this.engine = engine;
+        this.buf = new byte[bufferSize];
+    }
+
+    /**
+     * Throw an exception if this stream is closed.
+     *
+     * @throws IOException If this stream is closed.
+     */
+    private void ensureOpen() throws IOException {
+        if (closed) {
+            throw new IOException("Stream closed");
+        }
+    }
+
+    /**
+     * Write any buffered ciphertext to the underlying stream.
+     *
+     * @throws IOException If an IO error occurs.
+     */
+    private void flushBuffer() throws IOException {
+        if (count > 0) {
+            out.write(buf, 0, count);
+            count = 0;
+        }
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public void write(final int b) throws IOException {
+        ensureOpen();
+
+        if (count == buf.length) {
+            flushBuffer();
+        }
+
+        buf[count] = (byte)b;
+        engine.engineUpdate(buf, count, 1, buf, count);
+        count++;
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public void write(final byte[] b,
+                      final int off,
+                      final int len) throws IOException {
+        ensureOpen();
+
+        if (off < 0 || len < 0 || len > b.length - off) {
+            throw new IndexOutOfBoundsException();
+        }
+
+        for(int i = 0; i < len;) {
+            final int n = Math.min(len - i, buf.length - count);
+
+            engine.engineUpdate(b, off + i, n, buf, count);
+            count += n;
+            i += n;
+
+            if (count == buf.length) {
+                flushBuffer();
+            }
+        }
+    }
+
+    /**
+     * Encrypt a range of an array in place, and write it to the
+     * underlying stream without copying it.  After this returns, the
+     * range holds the ciphertext.  The output is the same as from
+     * {@link #write(byte[], int, int)}.
+     *
+     * @param b The data.
+     * @param off The offset at which data begins.
+     * @param len The length of the data.
+     * @throws IOException If an IO error occurs.
+     */
+    public void writeInPlace(final byte[] b,
+                             final int off,
+                             final int len) throws IOException {
+        ensureOpen();
+
+        if (off < 0 || len < 0 || len > b.length - off) {
+            throw new IndexOutOfBoundsException();
+        }
+
+        flushBuffer();
+        engine.engineUpdate(b, off, len, b, off);
+        out.write(b, off, len);
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public void flush() throws IOException {
+        ensureOpen();
+        flushBuffer();
+        out.flush();
+    }
+
+    /**
+     * Write any buffered ciphertext, discard any precomputed
+     * keystream, and close the underlying stream.
+     *
+     * @throws IOException If an IO error occurs.
+     */
+    @Override
+    public void close() throws IOException {
+        if (!closed) {
+            closed = true;
+
+            try {
+                flushBuffer();
+            } finally {
+                engine.discardKeystream();
+                out.close();
+            }
+        }
+    }
+}
@@ -0,0 +1,150 @@
+/* Copyright (c) 2018, Eric McCorkle.  All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions
+ * are met:
+ *
+ * * Redistributions of source code must retain the above copyright
+ *   notice, this list of conditions and the following disclaimer.
+ *
+ * * Redistributions in binary form must reproduce the above copyright
+ *   notice, this list of conditions and the following disclaimer in
+ *   the documentation and/or other materials provided with the
+ *   distribution.
+ *
+ * * Neither the name of the copyright holder nor the names of its
+ *   contributors may be used to endorse or promote products derived
+ *   from this software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS
+ * "AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT
+ * LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS
+ * FOR A PARTICULAR PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE
+ * COPYRIGHT HOLDER OR CONTRIBUTORS BE LIABLE FOR ANY DIRECT,
+ * INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES
+ * (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR
+ * SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION)
+ * HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT,
+ * STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED
+ * OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+package net.metricspace.crypto.ciphers.stream;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.ReadableByteChannel;
+
+import java.security.AlgorithmParameters;
+import java.security.InvalidAlgorithmParameterException;
+import java.security.InvalidKeyException;
+import java.security.Key;
+
+import javax.crypto.Cipher;
+import javax.crypto.ShortBufferException;
+
+/**
+ * A {@link ReadableByteChannel} that decrypts data read from an
+ * underlying channel with a keystream cipher.  Data is read straight
+ * into the caller's buffer and decrypted there, so there is no
+ * intermediate buffer and no copy; direct buffers are decrypted
+ * eight bytes at a time.  Unlike {@link SeekableCipherChannel}, this
+ * works with any channel and any keystream cipher, but only reads
+ * the stream in order.
+ * <h2>Usage</h2>
+ *
+ * <pre>
+ * final KeystreamCipherReadableChannel channel =
+ *     new KeystreamCipherReadableChannel(FileChannel.open(path),
+ *                                        new ChaCha20CipherSpi(),
+ *                                        key, params);
+ *
+ * channel.read(buf);
+ * </pre>
+ * The engine is owned by the channel from then on, and must not be
+ * used for anything else.
+ * <h2>Misuses</h2>
+ *
+ * The channel provides no authentication, so data must not be
+ * trusted until it has been checked by a message authentication
+ * code.
+ */
+public final class KeystreamCipherReadableChannel
+    implements ReadableByteChannel {
+    /**
+     * The underlying channel.
+     */
+    private final ReadableByteChannel channel;
+
+    /**
+     * The cipher engine.
+     */
+    private final KeystreamCipherSpi<?, ?> engine;
+
+    /**
+     * Create a {@code KeystreamCipherReadableChannel}.
+     *
+     * @param channel The underlying channel.
+     * @param engine The cipher engine.
+     * @param key The key.
+     * @param params The parameters.
+     * @throws InvalidKeyException If {@code key} is not valid for
+     *                             {@code engine}.
+     * @throws InvalidAlgorithmParameterException If {@code params}
+     *                                            is not valid for
+     *                                            {@code engine}.
+     */
+    public KeystreamCipherReadableChannel(final ReadableByteChannel channel,
+                                          final KeystreamCipherSpi<?, ?>
+                                          engine,
+                                          final Key key,
+                                          final AlgorithmParameters params)
+        throws InvalidKeyException, InvalidAlgorithmParameterException {
+        engine.engineInit(Cipher.DECRYPT_MODE, key, params, null);
+
+        this.channel = channel;
+        this.engine = engine;
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public synchronized int read(final ByteBuffer dst) throws IOException {
+        final int first = dst.position();
+        final int nbytes = channel.read(dst);
+
+        if (nbytes > 0) {
+            // Decrypt what was just read, in place.
+            final ByteBuffer data = dst.duplicate();
+
+            data.limit(first + nbytes).position(first);
+
+            try {
+                engine.engineUpdate(data, data.duplicate());
+            } catch(final ShortBufferException e) {
+                // Can't happen: input and output are the same range.
+                throw new IllegalStateException(e);
+            }
+        }
+
+        return nbytes;
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public boolean isOpen() {
+        return channel.isOpen();
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public synchronized void close() throws IOException {
+        engine.discardKeystream();
+        channel.close();
+    }
+}
@@ -31,6 +31,9 @@
  */
 package net.metricspace.crypto.ciphers.stream;
 
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+
 import java.security.AlgorithmParameters;
 import java.security.InvalidAlgorithmParameterException;
 import java.security.InvalidKeyException;
@@ -44,8 +47,11 @@ import java.util.Arrays;
 import javax.crypto.CipherSpi;
 import javax.crypto.NoSuchPaddingException;
 import javax.crypto.SecretKey;
+import javax.crypto.ShortBufferException;
 import javax.crypto.spec.IvParameterSpec;
 
+import net.metricspace.crypto.common.ByteBuffers;
+
 /**
  * Common superclass of ciphers that generate a stream of blocks that
  * get XORed with plaintext/ciphertext.  This class of ciphers
@@ -55,16 +61,53 @@ import javax.crypto.spec.IvParameterSpec;
 public abstract class KeystreamCipherSpi<K extends SecretKey & Key,
                                          S extends IvParameterSpec>
     extends CipherSpi {
+    /**
+     * Default number of stream blocks to compute ahead of the current
+     * position.
+     */
+    public static final int DEFAULT_LOOKAHEAD_BLOCKS = 16;
+
     /**
      * Cached keystream block size in bytes.
      */
     protected final int blockBytes;
 
     /**
-     * The current cipher stream block.
+     * Maximum number of stream blocks computed in one batch.
+     */
+    protected final int lookaheadBlocks;
+
+    /**
+     * Working space for computing a single stream block.
      */
     protected final int[] block;
 
+    /**
+     * Serialized keystream covering up to {@link #lookaheadBlocks}
+     * consecutive stream blocks, starting at the block {@link
+     * #keystreamIdx}.  {@link #engineUpdate} XORs whole spans against
+     * this without any per-byte index arithmetic, and only returns
+     * to the block computation when it runs dry.
+     */
+    private final byte[] keystream;
+
+    /**
+     * A {@link ByteBuffer} view of {@link #keystream}, used to read
+     * it a word at a time when XORing against {@link ByteBuffer}s.
+     */
+    private final ByteBuffer keystreamBuf;
+
+    /**
+     * The index of the first stream block in {@link #keystream}.
+     */
+    private long keystreamIdx;
+
+    /**
+     * The number of valid bytes in {@link #keystream}.  This is
+     * always a multiple of {@link #blockBytes}.
+     */
+    private int keystreamLen;
+
     /**
      * The {@link Class} of parameter specs.  Used to get specs out of
      * an {@link AlgolithmParameters}.
@@ -72,7 +115,9 @@ public abstract class KeystreamCipherSpi<K extends SecretKey & Key,
     protected final Class<S> paramSpecClass;
 
     /**
-     * The current block index.
+     * The current block index.  Together with {@link #blockOffset},
+     * this is always the exact stream position, regardless of how
+     * much keystream has been computed ahead of it.
      */
     protected long blockIdx;
 
@@ -102,10 +147,38 @@ public abstract class KeystreamCipherSpi<K extends SecretKey & Key,
     protected KeystreamCipherSpi(final Class<S> paramSpecClass,
                                  final int[] block,
                                  final byte[] iv) {
+        this(paramSpecClass, block, iv, DEFAULT_LOOKAHEAD_BLOCKS);
+    }
+
+    /**
+     * Initialize the engine with a block buffer, an IV buffer, and
+     * the size of the keystream lookahead buffer.  This takes
+     * possession of the arrays.
+     *
+     * @param paramSpecClass The {@link Class} of parameter specs.
+     * @param block The array that will become the block buffer.
+     * @param iv The array that will become the IV buffer.
+     * @param lookaheadBlocks The maximum number of stream blocks to
+     *                        compute in one batch.
+     * @throws IllegalArgumentException If {@code lookaheadBlocks} is
+     *                                  less than {@code 1}.
+     */
+    protected KeystreamCipherSpi(final Class<S> paramSpecClass,
+                                 final int[] block,
+                                 final byte[] iv,
+                                 final int lookaheadBlocks) {
+        if (lookaheadBlocks < 1) {
+            throw new IllegalArgumentException("Lookahead must be " +
+                                               "at least one block");
+        }
+
         this.paramSpecClass = paramSpecClass;
         this.block = block;
         this.iv = iv;
         this.blockBytes = block.length * 4;
+        this.lookaheadBlocks = lookaheadBlocks;
+        this.keystream = new byte[blockBytes * lookaheadBlocks];
+        this.keystreamBuf = ByteBuffer.wrap(keystream);
     }
 
     /**
@@ -167,6 +240,16 @@ public abstract class KeystreamCipherSpi<K extends SecretKey & Key,
         return engineUpdate(input, inputOffset, inputLen, output, outputOffset);
     }
 
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    protected final int engineDoFinal(final ByteBuffer input,
+                                      final ByteBuffer output)
+        throws ShortBufferException {
+        return engineUpdate(input, output);
+    }
+
     /**
      * Throws {@link java.security.NoSuchAlgorithmException}.  Ciphers
      * of this kind are stream ciphers, and do not support modes.
@@ -228,7 +311,7 @@ public abstract class KeystreamCipherSpi<K extends SecretKey & Key,
 
     /**
      * Initialize the engine with a key and a random initialization
-     * vector.  This also recomputes the stream block.
+     * vector.  This also discards any precomputed keystream.
      *
      * @param key The key.
      * @param random The {@link SecureRandom} to use to generate the
@@ -240,12 +323,13 @@ public abstract class KeystreamCipherSpi<K extends SecretKey & Key,
         random.nextBytes(iv);
         this.key = key;
 
-        // Compute the stream block
-        streamBlock();
+        initState();
+        discardKeystream();
     }
 
     /**
-     * Set the key and IV.  This also recomputes the stream block.
+     * Set the key and IV.  This also discards any precomputed
+     * keystream.
      *
      * @param key The key
      * @param iv The IV.
@@ -258,14 +342,13 @@ public abstract class KeystreamCipherSpi<K extends SecretKey & Key,
 
         this.key = key;
 
-        // Compute the stream block
         initState();
-        streamBlock();
+        discardKeystream();
     }
 
     /**
      * Set the key and IV from a well-typed key and spec.  This also
-     * recomputes the stream block.
+     * discards any precomputed keystream.
      *
      * @param key The key
      * @param spec A parameter spec containing the IV.
@@ -300,69 +383,260 @@ public abstract class KeystreamCipherSpi<K extends SecretKey & Key,
                                      final int outputOffset) {
         for(int i = 0; i < inputLen;) {
             final int inputRemaining = inputLen - i;
-            final int blockRemaining = blockBytes - blockOffset;
-            final int groupLen;
+            final int offset = keystreamOffset(inputRemaining);
+            final int groupLen = Math.min(inputRemaining,
+                                          keystreamLen - offset);
+
+            xor(input, inputOffset + i, keystream, offset,
+                output, outputOffset + i, groupLen);
+            i += groupLen;
+            setKeystreamOffset(offset + groupLen);
+        }
 
-            if (inputRemaining < blockRemaining) {
-                groupLen = inputRemaining;
-                innerUpdate(input, inputOffset + i, groupLen,
-                            output, outputOffset + i);
-                i += groupLen;
-            } else {
-                groupLen = blockRemaining;
-                innerUpdate(input, inputOffset + i, groupLen,
-                            output, outputOffset + i);
+        return inputLen;
+    }
+
+    /**
+     * XOR the keystream directly between {@link ByteBuffer}s, without
+     * any intermediate copies.  Heap buffers are handled by the
+     * array-based {@link #engineUpdate}; direct buffers are XORed
+     * eight bytes at a time.  {@code input} and {@code output} may
+     * be views of the same memory at the same position, in which
+     * case the transformation is done in place.  They may also
+     * overlap in any other way, as the JCA requires: if the output
+     * starts part way into the input, the input is copied first,
+     * since a forward pass would overwrite it before reading it.
+     *
+     * @param input The input buffer.
+     * @param output The output buffer.
+     * @return The number of bytes processed.
+     * @throws ShortBufferException If {@code output} has less space
+     *                              remaining than {@code input}.
+     */
+    @Override
+    protected final int engineUpdate(final ByteBuffer input,
+                                     final ByteBuffer output)
+        throws ShortBufferException {
+        final int inputLen = input.remaining();
+        final int inputPos = input.position();
+        final int outputPos = output.position();
+
+        if (output.remaining() < inputLen) {
+            throw new ShortBufferException("Need " + inputLen +
+                                           " bytes of output space");
+        }
+
+        if (ByteBuffers.overlapsAhead(input, output)) {
+            // A forward XOR would clobber input that is yet to be
+            // read, as the output overlaps it further along.
+            final byte[] copy = new byte[inputLen];
+
+            input.get(copy);
+
+            try {
+                return engineUpdate(ByteBuffer.wrap(copy), output);
+            } finally {
+                Arrays.fill(copy, (byte)0);
+            }
+        } else if (input.hasArray() && output.hasArray()) {
+            engineUpdate(input.array(), input.arrayOffset() + inputPos,
+                         inputLen, output.array(),
+                         output.arrayOffset() + outputPos);
+        } else {
+            for(int i = 0; i < inputLen;) {
+                final int inputRemaining = inputLen - i;
+                final int offset = keystreamOffset(inputRemaining);
+                final int groupLen = Math.min(inputRemaining,
+                                              keystreamLen - offset);
+
+                xor(input, inputPos + i, offset,
+                    output, outputPos + i, groupLen);
                 i += groupLen;
-                nextBlock();
+                setKeystreamOffset(offset + groupLen);
             }
         }
 
+        input.position(inputPos + inputLen);
+        output.position(outputPos + inputLen);
+
         return inputLen;
     }
 
     /**
-     * Apply the cipher without crossing a cipher block boundary.
+     * XOR a span of a {@link ByteBuffer} against a span of
+     * serialized keystream, using absolute indexing so that neither
+     * buffer's position moves.  If both buffers have the same byte
+     * order, whole 8-byte words are processed at a time.
+     *
+     * @param input The input buffer.
+     * @param inputOffset The index at which input begins.
+     * @param keystreamOffset The offset at which keystream begins.
+     * @param output The output buffer.
+     * @param outputOffset The index at which output begins.
+     * @param len The number of bytes to process.
+     */
+    private void xor(final ByteBuffer input,
+                     final int inputOffset,
+                     final int keystreamOffset,
+                     final ByteBuffer output,
+                     final int outputOffset,
+                     final int len) {
+        final ByteOrder order = input.order();
+        int i = 0;
+
+        if (order == output.order()) {
+            keystreamBuf.order(order);
+
+            for(; i + 8 <= len; i += 8) {
+                final long word =
+                    input.getLong(inputOffset + i) ^
+                    keystreamBuf.getLong(keystreamOffset + i);
+
+                output.putLong(outputOffset + i, word);
+            }
+        }
+
+        for(; i < len; i++) {
+            final byte b = (byte)(input.get(inputOffset + i) ^
+                                  keystream[keystreamOffset + i]);
+
+            output.put(outputOffset + i, b);
+        }
+    }
+
+    /**
+     * Get the offset into {@link #keystream} corresponding to the
+     * current position, computing more keystream if the current
+     * position is not covered by it.
+     *
+     * @param needed The number of keystream bytes the caller
+     *               intends to use, which bounds the amount of
+     *               keystream computed ahead.
+     * @return The offset into {@link #keystream} of the current
+     *         position.
+     */
+    private int keystreamOffset(final int needed) {
+        final long rel = blockIdx - keystreamIdx;
+
+        if (rel < 0 || rel >= keystreamLen / blockBytes) {
+            final long wanted =
+                (((long)blockOffset) + needed + blockBytes - 1) / blockBytes;
+            final int nblocks = (int)Math.min(lookaheadBlocks, wanted);
+
+            streamBlocks(keystream, 0, nblocks);
+            keystreamIdx = blockIdx;
+            keystreamLen = nblocks * blockBytes;
+
+            return blockOffset;
+        } else {
+            return ((int)rel * blockBytes) + blockOffset;
+        }
+    }
+
+    /**
+     * Set the current position from an offset into {@link
+     * #keystream}.
+     *
+     * @param offset The offset into {@link #keystream}.
+     */
+    private void setKeystreamOffset(final int offset) {
+        blockIdx = keystreamIdx + (offset / blockBytes);
+        blockOffset = offset % blockBytes;
+    }
+
+    /**
+     * Discard and zero out all precomputed keystream.  This must be
+     * called whenever the key, IV, or cipher state are changed.
+     */
+    protected final void discardKeystream() {
+        Arrays.fill(keystream, 0, keystreamLen, (byte)0);
+        keystreamLen = 0;
+    }
+
+    /**
+     * XOR a span of input against a span of serialized keystream.
+     * The loop body is a plain indexed XOR over the three arrays, with
+     * no dependence on the keystream block layout, which allows the
+     * JIT to unroll and vectorize it over whole machine words.
      *
      * @param input The input.
      * @param inputOffset The offset at which input begins.
-     * @param inputLen The length of input.
+     * @param keystream The serialized keystream.
+     * @param keystreamOffset The offset at which keystream begins.
      * @param output The output array.
      * @param outputOffset The offset at which output begins.
-     * @see #engineUpdate
-     */
-    private void innerUpdate(final byte[] input,
-                             final int inputOffset,
-                             final int inputLen,
-                             final byte[] output,
-                             final int outputOffset) {
-        for(int i = 0; i < inputLen; i++) {
-            final int shift = (blockOffset % 4) * 8;
-            final int blockWord = blockOffset / 4;
-            final byte blockByte = (byte)((block[blockWord] >> shift) & 0xff);
-            final byte out = (byte)(blockByte ^ input[inputOffset + i]);
-
-            output[outputOffset + i] = out;
-            blockOffset++;
+     * @param len The number of bytes to process.
+     */
+    static void xor(final byte[] input,
+                    final int inputOffset,
+                    final byte[] keystream,
+                    final int keystreamOffset,
+                    final byte[] output,
+                    final int outputOffset,
+                    final int len) {
+        for(int i = 0; i < len; i++) {
+            output[outputOffset + i] =
+                (byte)(input[inputOffset + i] ^
+                       keystream[keystreamOffset + i]);
         }
     }
 
     /**
-     * Compute the current stream block.
+     * Serialize a stream block into little-endian bytes.
+     *
+     * @param block The stream block.
+     * @param out The array into which to write the bytes.
+     * @param outOffset The offset at which to start writing.
      */
-    protected abstract void streamBlock();
+    protected static void serialize(final int[] block,
+                                  final byte[] out,
+                                  final int outOffset) {
+        for(int i = 0; i < block.length; i++) {
+            final int word = block[i];
+            final int idx = outOffset + (4 * i);
+
+            out[idx] = (byte)word;
+            out[idx + 1] = (byte)(word >>> 8);
+            out[idx + 2] = (byte)(word >>> 16);
+            out[idx + 3] = (byte)(word >>> 24);
+        }
+    }
 
     /**
-     * Initialize the state.
+     * Compute the current stream block into {@link #block}.
      */
-    protected abstract void initState();
+    protected abstract void streamBlock();
 
     /**
-     * Advance to the next stream block and compute it.
+     * Compute {@code nblocks} consecutive stream blocks, starting
+     * with the block at {@link #blockIdx}, and serialize them into
+     * {@code out}.  This must leave {@link #blockIdx} unchanged.
+     * <p>
+     * The default implementation calls {@link #streamBlock} once for
+     * each block.  Subclasses can override this to compute the whole
+     * batch in one tight loop.
+     *
+     * @param out The array into which to write the keystream.
+     * @param outOffset The offset at which to start writing.
+     * @param nblocks The number of stream blocks to compute.
      */
-    private void nextBlock() {
-        blockIdx++;
-        blockOffset = 0;
-        streamBlock();
+    protected void streamBlocks(final byte[] out,
+                                final int outOffset,
+                                final int nblocks) {
+        final long startIdx = blockIdx;
+
+        for(int i = 0; i < nblocks; i++) {
+            blockIdx = startIdx + i;
+            streamBlock();
+            serialize(block, out, outOffset + (i * blockBytes));
+        }
+
+        blockIdx = startIdx;
     }
 
+    /**
+     * Initialize the state.
+     */
+    protected abstract void initState();
+
 }
@@ -0,0 +1,279 @@
+/* Copyright (c) 2018, Eric McCorkle.  All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions
+ * are met:
+ *
+ * * Redistributions of source code must retain the above copyright
+ *   notice, this list of conditions and the following disclaimer.
+ *
+ * * Redistributions in binary form must reproduce the above copyright
+ *   notice, this list of conditions and the following disclaimer in
+ *   the documentation and/or other materials provided with the
+ *   distribution.
+ *
+ * * Neither the name of the copyright holder nor the names of its
+ *   contributors may be used to endorse or promote products derived
+ *   from this software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS
+ * "AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT
+ * LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS
+ * FOR A PARTICULAR PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE
+ * COPYRIGHT HOLDER OR CONTRIBUTORS BE LIABLE FOR ANY DIRECT,
+ * INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES
+ * (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR
+ * SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION)
+ * HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT,
+ * STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED
+ * OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+package net.metricspace.crypto.ciphers.stream;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.IllegalBlockingModeException;
+import java.nio.channels.SelectableChannel;
+import java.nio.channels.WritableByteChannel;
+
+import java.security.AlgorithmParameters;
+import java.security.InvalidAlgorithmParameterException;
+import java.security.InvalidKeyException;
+import java.security.Key;
+
+import javax.crypto.Cipher;
+import javax.crypto.ShortBufferException;
+
+/**
+ * A {@link WritableByteChannel} that encrypts data with a keystream
+ * cipher before writing it to an underlying channel.  Each write is
+ * encrypted through a reusable buffer, which may be supplied by the
+ * caller, so its size and whether it is direct can be chosen to
+ * suit the underlying channel.  Callers that no longer need their
+ * plaintext can use {@link #writeInPlace}, which encrypts the
+ * caller's buffer and writes it without any copy.  Unlike {@link
+ * SeekableCipherChannel}, this works with any channel and any
+ * keystream cipher, but only writes the stream in order.
+ * <h2>Usage</h2>
+ *
+ * <pre>
+ * final KeystreamCipherWritableChannel channel =
+ *     new KeystreamCipherWritableChannel(FileChannel.open(path, WRITE),
+ *                                        new ChaCha20CipherSpi(),
+ *                                        key, params);
+ *
+ * channel.write(buf);
+ * </pre>
+ * The engine and the buffer are owned by the channel from then on,
+ * and must not be used for anything else.
+ * <p>
+ * Writes always write everything they are given, because the
+ * keystream for it has already been used.  The underlying channel
+ * must therefore be in blocking mode; writing to a selectable
+ * channel in non-blocking mode throws {@link
+ * IllegalBlockingModeException}, as with the streams returned by
+ * {@link java.nio.channels.Channels#newOutputStream}.
+ * <h2>Misuses</h2>
+ *
+ * The channel provides no authentication.  As with any stream
+ * cipher, an attacker can flip bits in the plaintext by flipping
+ * them in the ciphertext, unless the output is also protected by a
+ * message authentication code.
+ */
+public final class KeystreamCipherWritableChannel
+    implements WritableByteChannel {
+    /**
+     * Default size of the buffer used to encrypt writes.
+     */
+    public static final int DEFAULT_BUFFER_SIZE = 64 * 1024;
+
+    /**
+     * The underlying channel.
+     */
+    private final WritableByteChannel channel;
+
+    /**
+     * The cipher engine.
+     */
+    private final KeystreamCipherSpi<?, ?> engine;
+
+    /**
+     * Buffer used to hold ciphertext for writes.
+     */
+    private final ByteBuffer writeBuf;
+
+    /**
+     * Create a {@code KeystreamCipherWritableChannel} with a direct
+     * buffer of the default size.
+     *
+     * @param channel The underlying channel.
+     * @param engine The cipher engine.
+     * @param key The key.
+     * @param params The parameters.
+     * @throws InvalidKeyException If {@code key} is not valid for
+     *                             {@code engine}.
+     * @throws InvalidAlgorithmParameterException If {@code params}
+     *                                            is not valid for
+     *                                            {@code engine}.
+     */
+    public KeystreamCipherWritableChannel(final WritableByteChannel channel,
+                                          final KeystreamCipherSpi<?, ?>
+                                          engine,
+                                          final Key key,
+                                          final AlgorithmParameters params)
+        throws InvalidKeyException, InvalidAlgorithmParameterException {
+        this(channel, engine, key, params,
+             ByteBuffer.allocateDirect(DEFAULT_BUFFER_SIZE));
+    }
+
+    /**
+     * Create a {@code KeystreamCipherWritableChannel} with a given
+     * buffer.  Writes are encrypted in pieces of up to the capacity
+     * of {@code buffer}.
+     *
+     * @param channel The underlying channel.
+     * @param engine The cipher engine.
+     * @param key The key.
+     * @param params The parameters.
+     * @param buffer The buffer used to encrypt writes.
+     * @throws InvalidKeyException If {@code key} is not valid for
+     *                             {@code engine}.
+     * @throws InvalidAlgorithmParameterException If {@code params}
+     *                                            is not valid for
+     *                                            {@code engine}.
+     * @throws IllegalArgumentException If {@code buffer} has no
+     *                                  capacity, or is read-only.
+     */
+    public KeystreamCipherWritableChannel(final WritableByteChannel channel,
+                                          final KeystreamCipherSpi<?, ?>
+                                          engine,
+                                          final Key key,
+                                          final AlgorithmParameters params,
+                                          final ByteBuffer buffer)
+        throws InvalidKeyException, InvalidAlgorithmParameterException {
+        if (buffer.capacity() < 1 || buffer.isReadOnly()) {
+            throw new IllegalArgumentException("Buffer must be writable " +
+                                               "and non-empty");
+        }
+
+        engine.engineInit(Cipher.ENCRYPT_MODE, key, params, null);
+
+        this.channel = channel;
+        this.engine = engine;
+        this.writeBuf = buffer;
+    }
+
+    /**
+     * Check that the underlying channel is in blocking mode, so that
+     * {@link #writeFully} cannot spin.
+     *
+     * @throws IllegalBlockingModeException If the underlying channel
+     *                                      is in non-blocking mode.
+     */
+    private void ensureBlocking() {
+        if (channel instanceof SelectableChannel &&
+            !((SelectableChannel)channel).isBlocking()) {
+            throw new IllegalBlockingModeException();
+        }
+    }
+
+    /**
+     * Write the remaining contents of a buffer to the underlying
+     * channel.
+     *
+     * @param buf The buffer.
+     * @throws IOException If an IO error occurs.
+     */
+    private void writeFully(final ByteBuffer buf) throws IOException {
+        while (buf.hasRemaining()) {
+            channel.write(buf);
+        }
+    }
+
+    /**
+     * {@inheritDoc}
+     *
+     * @throws IllegalBlockingModeException If the underlying channel
+     *                                      is in non-blocking mode.
+     */
+    @Override
+    public synchronized int write(final ByteBuffer src) throws IOException {
+        final int total = src.remaining();
+        final ByteBuffer in = src.duplicate();
+
+        ensureBlocking();
+
+        while (in.hasRemaining()) {
+            final int len = Math.min(in.remaining(), writeBuf.capacity());
+
+            in.limit(in.position() + len);
+            writeBuf.clear();
+
+            try {
+                engine.engineUpdate(in, writeBuf);
+            } catch(final ShortBufferException e) {
+                // Can't happen: len fits in the buffer.
+                throw new IllegalStateException(e);
+            }
+
+            in.limit(src.limit());
+            writeBuf.flip();
+            writeFully(writeBuf);
+        }
+
+        src.position(src.limit());
+
+        return total;
+    }
+
+    /**
+     * Encrypt the remaining contents of a buffer in place, and write
+     * it to the underlying channel without copying it.  After this
+     * returns, the range that was written holds the ciphertext.  The
+     * output is the same as from {@link #write}.
+     *
+     * @param src The buffer.
+     * @return The number of bytes written.
+     * @throws IOException If an IO error occurs.
+     * @throws java.nio.ReadOnlyBufferException If {@code src} is
+     *                                          read-only.
+     * @throws IllegalBlockingModeException If the underlying channel
+     *                                      is in non-blocking mode.
+     */
+    public synchronized int writeInPlace(final ByteBuffer src)
+        throws IOException {
+        final int total = src.remaining();
+        final ByteBuffer data = src.duplicate();
+
+        ensureBlocking();
+
+        try {
+            engine.engineUpdate(data, data.duplicate());
+        } catch(final ShortBufferException e) {
+            // Can't happen: input and output are the same range.
+            throw new IllegalStateException(e);
+        }
+
+        writeFully(src);
+
+        return total;
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public boolean isOpen() {
+        return channel.isOpen();
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public synchronized void close() throws IOException {
+        engine.discardKeystream();
+        channel.close();
+    }
+}
@@ -0,0 +1,504 @@
+/* Copyright (c) 2018, Eric McCorkle.  All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions
+ * are met:
+ *
+ * * Redistributions of source code must retain the above copyright
+ *   notice, this list of conditions and the following disclaimer.
+ *
+ * * Redistributions in binary form must reproduce the above copyright
+ *   notice, this list of conditions and the following disclaimer in
+ *   the documentation and/or other materials provided with the
+ *   distribution.
+ *
+ * * Neither the name of the copyright holder nor the names of its
+ *   contributors may be used to endorse or promote products derived
+ *   from this software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS
+ * "AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT
+ * LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS
+ * FOR A PARTICULAR PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE
+ * COPYRIGHT HOLDER OR CONTRIBUTORS BE LIABLE FOR ANY DIRECT,
+ * INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES
+ * (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR
+ * SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION)
+ * HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT,
+ * STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED
+ * OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+package net.metricspace.crypto.ciphers.stream;
+
+import java.nio.ByteBuffer;
+
+import java.security.AlgorithmParameters;
+import java.security.InvalidAlgorithmParameterException;
+import java.security.InvalidKeyException;
+import java.security.Key;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+import java.util.function.Supplier;
+
+import javax.crypto.Cipher;
+import javax.crypto.ShortBufferException;
+
+/**
+ * Parallel encryption and decryption for seekable keystream ciphers.
+ * Since the keystream of a {@link SeekableKeystreamCipherSpi} can be
+ * started at any position, a large input can be split into ranges
+ * that are processed independently, each by its own engine
+ * positioned at the start of its range.  Ranges are split on
+ * keystream block boundaries and run on a {@link ForkJoinPool}.  The
+ * output is identical to what a single {@link javax.crypto.Cipher}
+ * would produce from the same key and parameters.
+ * <h2>Usage</h2>
+ *
+ * Instances are created from a factory for the engine, along with a
+ * key and parameters, as would be used to initialize a {@link
+ * javax.crypto.Cipher}:
+ * <pre>
+ * final ParallelKeystreamCipher cipher =
+ *     new ParallelKeystreamCipher(ChaCha20CipherSpi::new, key, params);
+ *
+ * cipher.update(input, 0, input.length, output, 0);
+ * </pre>
+ * Successive calls to {@code update} continue the stream, just as
+ * with {@link javax.crypto.Cipher#update}.  Instances are not safe
+ * for use by multiple threads at once.
+ * <p>
+ * Input and output may be the same range of the same array or
+ * buffer, but must not otherwise overlap.  The keystream of each
+ * engine is zeroed as soon as its range is done.
+ * <p>
+ * Only engines that are random access are accepted.  Engines such as
+ * HC-256 and HC-128 reach a position by stepping through the stream
+ * before it, so every range would repeat the work of all the ranges
+ * before it, and the total cost would grow with the square of the
+ * input size.  Use a {@link javax.crypto.Cipher} for those instead.
+ */
+public final class ParallelKeystreamCipher {
+    /**
+     * Default size in bytes below which ranges are not split further.
+     */
+    public static final int DEFAULT_SPLIT_THRESHOLD = 128 * 1024;
+
+    /**
+     * Factory for the engines used for each range.
+     */
+    private final Supplier<? extends SeekableKeystreamCipherSpi<?, ?>>
+        engines;
+
+    /**
+     * The key.
+     */
+    private final Key key;
+
+    /**
+     * The parameters, which give the IV and starting position.
+     */
+    private final AlgorithmParameters params;
+
+    /**
+     * The pool on which to run tasks.
+     */
+    private final ForkJoinPool pool;
+
+    /**
+     * Size in bytes below which ranges are not split further.
+     */
+    private final int splitThreshold;
+
+    /**
+     * Keystream block size of the engines, in bytes.
+     */
+    private final int blockBytes;
+
+    /**
+     * The current stream position.
+     */
+    private long pos;
+
+    /**
+     * Create a {@code ParallelKeystreamCipher} with the default split
+     * threshold, using the common {@link ForkJoinPool}.
+     *
+     * @param engines Factory for the cipher engines.
+     * @param key The key.
+     * @param params The parameters, giving the IV and starting
+     *               position.
+     * @throws InvalidKeyException If {@code key} is not valid for
+     *                             the engines.
+     * @throws InvalidAlgorithmParameterException If {@code params}
+     *                                            is not valid for the
+     *                                            engines.
+     */
+    public ParallelKeystreamCipher(final Supplier<? extends
+                                   SeekableKeystreamCipherSpi<?, ?>>
+                                   engines,
+                                   final Key key,
+                                   final AlgorithmParameters params)
+        throws InvalidKeyException, InvalidAlgorithmParameterException {
+        this(engines, key, params, DEFAULT_SPLIT_THRESHOLD,
+             ForkJoinPool.commonPool());
+    }
+
+    /**
+     * Create a {@code ParallelKeystreamCipher}.
+     *
+     * @param engines Factory for the cipher engines.
+     * @param key The key.
+     * @param params The parameters, giving the IV and starting
+     *               position.
+     * @param splitThreshold Size in bytes below which ranges are not
+     *                       split further.
+     * @param pool The pool on which to run tasks.
+     * @throws InvalidKeyException If {@code key} is not valid for
+     *                             the engines.
+     * @throws InvalidAlgorithmParameterException If {@code params}
+     *                                            is not valid for the
+     *                                            engines.
+     * @throws IllegalArgumentException If {@code splitThreshold} is
+     *                                  not positive, or if the engines
+     *                                  are not random access.
+     */
+    public ParallelKeystreamCipher(final Supplier<? extends
+                                   SeekableKeystreamCipherSpi<?, ?>>
+                                   engines,
+                                   final Key key,
+                                   final AlgorithmParameters params,
+                                   final int splitThreshold,
+                                   final ForkJoinPool pool)
+        throws InvalidKeyException, InvalidAlgorithmParameterException {
+        if (splitThreshold < 1) {
+            throw new IllegalArgumentException("Split threshold must " +
+                                               "be positive");
+        }
+
+        final SeekableKeystreamCipherSpi<?, ?> engine = engines.get();
+
+        try {
+            engine.engineInit(Cipher.ENCRYPT_MODE, key, params, null);
+
+            if (!engine.isRandomAccess()) {
+                throw new IllegalArgumentException("Engines must be " +
+                                                   "random access");
+            }
+
+            this.blockBytes = engine.blockBytes;
+            this.pos = engine.position();
+        } finally {
+            engine.discardKeystream();
+        }
+
+        this.engines = engines;
+        this.key = key;
+        this.params = params;
+        this.splitThreshold = splitThreshold;
+        this.pool = pool;
+    }
+
+    /**
+     * Get the current stream position.
+     *
+     * @return The current stream position.
+     */
+    public long getPosition() {
+        return pos;
+    }
+
+    /**
+     * Encrypt or decrypt a range of an array, continuing the stream
+     * from the current position.
+     *
+     * @param input The input.
+     * @param inputOffset The offset at which input begins.
+     * @param inputLen The length of input.
+     * @param output The output array.
+     * @param outputOffset The offset at which output begins.
+     * @return The number of bytes written to {@code output}.
+     * @throws ShortBufferException If {@code output} is too small.
+     */
+    public int update(final byte[] input,
+                      final int inputOffset,
+                      final int inputLen,
+                      final byte[] output,
+                      final int outputOffset)
+        throws ShortBufferException {
+        if (output.length - outputOffset < inputLen) {
+            throw new ShortBufferException("Need " + inputLen +
+                                           " bytes of output space");
+        }
+
+        pool.invoke(new ArrayTask(input, inputOffset, output, outputOffset,
+                                  pos, 0, inputLen));
+        pos += inputLen;
+
+        return inputLen;
+    }
+
+    /**
+     * Encrypt or decrypt the remaining contents of a {@link
+     * ByteBuffer}, continuing the stream from the current position.
+     * The positions of both buffers are advanced.
+     *
+     * @param input The input buffer.
+     * @param output The output buffer.
+     * @return The number of bytes written to {@code output}.
+     * @throws ShortBufferException If {@code output} has less space
+     *                              remaining than {@code input}.
+     */
+    public int update(final ByteBuffer input,
+                      final ByteBuffer output)
+        throws ShortBufferException {
+        final int inputLen = input.remaining();
+
+        if (output.remaining() < inputLen) {
+            throw new ShortBufferException("Need " + inputLen +
+                                           " bytes of output space");
+        }
+
+        pool.invoke(new BufferTask(input, output, pos, 0, inputLen));
+        input.position(input.position() + inputLen);
+        output.position(output.position() + inputLen);
+        pos += inputLen;
+
+        return inputLen;
+    }
+
+    /**
+     * Common splitting logic for parallel tasks.  Each task covers a
+     * range of the input, identified by its offset relative to the
+     * start of the update and the stream position of that start.
+     */
+    private abstract class UpdateTask extends RecursiveAction {
+        private static final long serialVersionUID = 1L;
+
+        /**
+         * Stream position of the start of the update.
+         */
+        protected final long base;
+
+        /**
+         * Offset of this range from the start of the update.
+         */
+        protected final int off;
+
+        /**
+         * Length of this range.
+         */
+        protected final int len;
+
+        /**
+         * Initialize an {@code UpdateTask}.
+         *
+         * @param base Stream position of the start of the update.
+         * @param off Offset of this range from the start of the update.
+         * @param len Length of this range.
+         */
+        protected UpdateTask(final long base,
+                             final int off,
+                             final int len) {
+            this.base = base;
+            this.off = off;
+            this.len = len;
+        }
+
+        /**
+         * Create a task for a sub-range.
+         *
+         * @param subOff Offset of the sub-range from the start of the
+         *               update.
+         * @param subLen Length of the sub-range.
+         * @return The task.
+         */
+        protected abstract UpdateTask subtask(final int subOff,
+                                              final int subLen);
+
+        /**
+         * Process this range sequentially on one engine.  The caller
+         * discards the engine's keystream afterwards.
+         *
+         * @param engine The engine, positioned at the start of the
+         *               range.
+         */
+        protected abstract void process(final SeekableKeystreamCipherSpi<?, ?>
+                                        engine);
+
+        /**
+         * {@inheritDoc}
+         */
+        @Override
+        protected final void compute() {
+            final long start = base + off;
+
+            if (len > splitThreshold) {
+                // Split at the block boundary nearest the middle, so
+                // no two engines compute the same block.
+                final long mid = start + (len / 2);
+                final int split = (int)(mid - (mid % blockBytes) - start);
+
+                if (split > 0 && split < len) {
+                    invokeAll(subtask(off, split),
+                              subtask(off + split, len - split));
+
+                    return;
+                }
+            }
+
+            final SeekableKeystreamCipherSpi<?, ?> engine =
+                SeekableKeystreamCipherSpi.engineAt(engines, key, params,
+                                                    start);
+
+            try {
+                process(engine);
+            } finally {
+                engine.discardKeystream();
+            }
+        }
+    }
+
+    /**
+     * Task for updates on arrays.
+     */
+    private final class ArrayTask extends UpdateTask {
+        private static final long serialVersionUID = 1L;
+
+        /**
+         * The input.
+         */
+        private final byte[] input;
+
+        /**
+         * Offset of the start of the update in {@link #input}.
+         */
+        private final int inputOffset;
+
+        /**
+         * The output.
+         */
+        private final byte[] output;
+
+        /**
+         * Offset of the start of the update in {@link #output}.
+         */
+        private final int outputOffset;
+
+        /**
+         * Initialize an {@code ArrayTask}.
+         *
+         * @param input The input.
+         * @param inputOffset Offset of the start of the update in
+         *                    {@code input}.
+         * @param output The output.
+         * @param outputOffset Offset of the start of the update in
+         *                     {@code output}.
+         * @param base Stream position of the start of the update.
+         * @param off Offset of this range from the start of the update.
+         * @param len Length of this range.
+         */
+        ArrayTask(final byte[] input,
+                  final int inputOffset,
+                  final byte[] output,
+                  final int outputOffset,
+                  final long base,
+                  final int off,
+                  final int len) {
+            super(base, off, len);
+            this.input = input;
+            this.inputOffset = inputOffset;
+            this.output = output;
+            this.outputOffset = outputOffset;
+        }
+
+        /**
+         * {@inheritDoc}
+         */
+        @Override
+        protected UpdateTask subtask(final int subOff,
+                                     final int subLen) {
+            return new ArrayTask(input, inputOffset, output, outputOffset,
+                                 base, subOff, subLen);
+        }
+
+        /**
+         * {@inheritDoc}
+         */
+        @Override
+        protected void process(final SeekableKeystreamCipherSpi<?, ?>
+                               engine) {
+            engine.engineUpdate(input, inputOffset + off, len,
+                                output, outputOffset + off);
+        }
+    }
+
+    /**
+     * Task for updates on {@link ByteBuffer}s.
+     */
+    private final class BufferTask extends UpdateTask {
+        private static final long serialVersionUID = 1L;
+
+        /**
+         * The input, positioned at the start of the update.
+         */
+        private final ByteBuffer input;
+
+        /**
+         * The output, positioned at the start of the update.
+         */
+        private final ByteBuffer output;
+
+        /**
+         * Initialize a {@code BufferTask}.
+         *
+         * @param input The input, positioned at the start of the
+         *              update.
+         * @param output The output, positioned at the start of the
+         *               update.
+         * @param base Stream position of the start of the update.
+         * @param off Offset of this range from the start of the update.
+         * @param len Length of this range.
+         */
+        BufferTask(final ByteBuffer input,
+                   final ByteBuffer output,
+                   final long base,
+                   final int off,
+                   final int len) {
+            super(base, off, len);
+            this.input = input;
+            this.output = output;
+        }
+
+        /**
+         * {@inheritDoc}
+         */
+        @Override
+        protected UpdateTask subtask(final int subOff,
+                                     final int subLen) {
+            return new BufferTask(input, output, base, subOff, subLen);
+        }
+
+        /**
+         * {@inheritDoc}
+         */
+        @Override
+        protected void process(final SeekableKeystreamCipherSpi<?, ?>
+                               engine) {
+            final ByteBuffer in = input.duplicate();
+            final ByteBuffer out = output.duplicate();
+            final int inStart = input.position() + off;
+            final int outStart = output.position() + off;
+
+            in.limit(inStart + len).position(inStart);
+            out.limit(outStart + len).position(outStart);
+
+            try {
+                engine.engineUpdate(in, out);
+            } catch(final ShortBufferException e) {
+                // Output space was already checked by update().
+                throw new IllegalStateException(e);
+            }
+        }
+    }
+}
@@ -0,0 +1,793 @@
+/* Copyright (c) 2018, Eric McCorkle.  All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions
+ * are met:
+ *
+ * * Redistributions of source code must retain the above copyright
+ *   notice, this list of conditions and the following disclaimer.
+ *
+ * * Redistributions in binary form must reproduce the above copyright
+ *   notice, this list of conditions and the following disclaimer in
+ *   the documentation and/or other materials provided with the
+ *   distribution.
+ *
+ * * Neither the name of the copyright holder nor the names of its
+ *   contributors may be used to endorse or promote products derived
+ *   from this software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS
+ * "AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT
+ * LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS
+ * FOR A PARTICULAR PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE
+ * COPYRIGHT HOLDER OR CONTRIBUTORS BE LIABLE FOR ANY DIRECT,
+ * INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES
+ * (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR
+ * SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION)
+ * HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT,
+ * STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED
+ * OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+package net.metricspace.crypto.ciphers.stream;
+
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.AsynchronousFileChannel;
+import java.nio.channels.CompletionHandler;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+
+import java.security.AlgorithmParameters;
+import java.security.InvalidAlgorithmParameterException;
+import java.security.InvalidKeyException;
+import java.security.Key;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.function.Supplier;
+
+import javax.crypto.Cipher;
+import javax.crypto.ShortBufferException;
+
+/**
+ * Encryption and decryption of whole files, with reading, encryption
+ * and writing all overlapped.  A file is split into chunks, each of
+ * which is read into a buffer from a bounded pool with an {@link
+ * AsynchronousFileChannel}, transformed in place, and written to the
+ * same offset of the target.  Since the keystream of a {@link
+ * SeekableKeystreamCipherSpi} can be started at any position, each
+ * chunk is transformed independently by an engine positioned at its
+ * offset, and chunks can be transformed by several threads at once.
+ * The output is identical to what a single {@link
+ * javax.crypto.Cipher} would produce from the same key and
+ * parameters.
+ * <p>
+ * Engines that are not random access, such as HC-256 and HC-128,
+ * can only seek by stepping through the stream.  For those, one
+ * engine transforms the chunks in order, on one thread, so that it
+ * never steps over a chunk more than once.  Reading and writing are
+ * still overlapped.
+ * <p>
+ * The number of chunks in flight is bounded by the number of
+ * buffers.  When every buffer is in use, reading waits for one to be
+ * written out.  Each call reports statistics on the throughput and on
+ * how full the buffer pool was, to help tune the chunk size and the
+ * number of buffers and threads for the storage at hand.
+ * <p>
+ * Each buffer is zeroed as soon as its chunk is finished, whether or
+ * not it succeeded.  A call does not return, even on failure or
+ * interruption, until every chunk in flight is finished and every
+ * engine's keystream is discarded.
+ * <h2>Usage</h2>
+ *
+ * <pre>
+ * final PipelinedFileCipher cipher =
+ *     new PipelinedFileCipher(ChaCha20CipherSpi::new, key, params);
+ * final PipelinedFileCipher.Stats stats = cipher.crypt(source, target);
+ * </pre>
+ * Instances may be used for any number of files, one at a time.
+ * <h2>Misuses</h2>
+ *
+ * Every file is encrypted from the position given by the parameters,
+ * so encrypting two different files with the same instance encrypts
+ * them with the same cipher stream.  Use different parameters for
+ * each file.
+ */
+public final class PipelinedFileCipher {
+    /**
+     * Default chunk size in bytes.
+     */
+    public static final int DEFAULT_CHUNK_SIZE = 1024 * 1024;
+
+    /**
+     * Default number of buffers in the pool.
+     */
+    public static final int DEFAULT_BUFFERS = 8;
+
+    /**
+     * Factory for the engines.
+     */
+    private final Supplier<? extends SeekableKeystreamCipherSpi<?, ?>>
+        engines;
+
+    /**
+     * The key.
+     */
+    private final Key key;
+
+    /**
+     * The parameters, which give the IV and starting position.
+     */
+    private final AlgorithmParameters params;
+
+    /**
+     * Keystream position corresponding to the start of a file.
+     */
+    private final long start;
+
+    /**
+     * The buffers, each of which holds one chunk.
+     */
+    private final ByteBuffer[] buffers;
+
+    /**
+     * The number of threads used for encryption.
+     */
+    private final int threads;
+
+    /**
+     * Whether chunks must be transformed in order, because the
+     * engines are not random access.
+     */
+    private final boolean sequential;
+
+    /**
+     * Statistics on one call to {@link PipelinedFileCipher#crypt}.
+     */
+    public static final class Stats {
+        /**
+         * The number of bytes processed.
+         */
+        private final long bytes;
+
+        /**
+         * The time taken, in nanoseconds.
+         */
+        private final long nanos;
+
+        /**
+         * The number of buffers in the pool.
+         */
+        private final int buffers;
+
+        /**
+         * The largest number of buffers that were in use at once.
+         */
+        private final int maxInUse;
+
+        /**
+         * The mean number of buffers in use when a chunk was started.
+         */
+        private final double meanInUse;
+
+        /**
+         * The number of chunks that had to wait for a buffer.
+         */
+        private final long stalls;
+
+        /**
+         * Initialize a {@code Stats}.
+         *
+         * @param bytes The number of bytes processed.
+         * @param nanos The time taken, in nanoseconds.
+         * @param buffers The number of buffers in the pool.
+         * @param maxInUse The largest number of buffers in use at
+         *                 once.
+         * @param meanInUse The mean number of buffers in use when a
+         *                  chunk was started.
+         * @param stalls The number of chunks that had to wait for a
+         *               buffer.
+         */
+        private Stats(final long bytes,
+                      final long nanos,
+                      final int buffers,
+                      final int maxInUse,
+                      final double meanInUse,
+                      final long stalls) {
+            this.bytes = bytes;
+            this.nanos = nanos;
+            this.buffers = buffers;
+            this.maxInUse = maxInUse;
+            this.meanInUse = meanInUse;
+            this.stalls = stalls;
+        }
+
+        /**
+         * Get the number of bytes processed.
+         *
+         * @return The number of bytes processed.
+         */
+        public long getBytes() {
+            return bytes;
+        }
+
+        /**
+         * Get the time taken, in nanoseconds.
+         *
+         * @return The time taken, in nanoseconds.
+         */
+        public long getNanos() {
+            return nanos;
+        }
+
+        /**
+         * Get the sustained throughput, in megabytes (10<sup>6</sup>
+         * bytes) per second.
+         *
+         * @return The sustained throughput.
+         */
+        public double getMegabytesPerSecond() {
+            if (nanos == 0) {
+                return 0;
+            } else {
+                return (bytes * 1000.0) / nanos;
+            }
+        }
+
+        /**
+         * Get the number of buffers in the pool.
+         *
+         * @return The number of buffers in the pool.
+         */
+        public int getBuffers() {
+            return buffers;
+        }
+
+        /**
+         * Get the largest number of buffers that were in use at once.
+         *
+         * @return The largest number of buffers in use at once.
+         */
+        public int getMaxBuffersInUse() {
+            return maxInUse;
+        }
+
+        /**
+         * Get the mean number of buffers in use, sampled each time a
+         * chunk was started.  A value close to {@link #getBuffers}
+         * means that reading is usually waiting for encryption or
+         * writing, and a value close to one means that they are
+         * usually waiting for reading.
+         *
+         * @return The mean number of buffers in use.
+         */
+        public double getMeanBuffersInUse() {
+            return meanInUse;
+        }
+
+        /**
+         * Get the number of chunks that had to wait for a buffer to
+         * become free before being read.
+         *
+         * @return The number of chunks that waited for a buffer.
+         */
+        public long getStalls() {
+            return stalls;
+        }
+
+        /**
+         * {@inheritDoc}
+         */
+        @Override
+        public String toString() {
+            return String.format("%d bytes in %.3f s (%.1f MB/s), " +
+                                 "buffers in use: mean %.2f, max %d of " +
+                                 "%d, %d stalls",
+                                 bytes, nanos / 1e9, getMegabytesPerSecond(),
+                                 meanInUse, maxInUse, buffers, stalls);
+        }
+    }
+
+    /**
+     * Create a {@code PipelinedFileCipher} with the default chunk
+     * size and number of buffers, using one thread for encryption.
+     *
+     * @param engines Factory for the cipher engines.
+     * @param key The key.
+     * @param params The parameters, giving the IV and the keystream
+     *               position corresponding to the start of a file.
+     * @throws InvalidKeyException If {@code key} is not valid for
+     *                             the engines.
+     * @throws InvalidAlgorithmParameterException If {@code params}
+     *                                            is not valid for the
+     *                                            engines.
+     */
+    public PipelinedFileCipher(final Supplier<? extends
+                               SeekableKeystreamCipherSpi<?, ?>> engines,
+                               final Key key,
+                               final AlgorithmParameters params)
+        throws InvalidKeyException, InvalidAlgorithmParameterException {
+        this(engines, key, params, DEFAULT_CHUNK_SIZE, DEFAULT_BUFFERS, 1);
+    }
+
+    /**
+     * Create a {@code PipelinedFileCipher}.
+     *
+     * @param engines Factory for the cipher engines.
+     * @param key The key.
+     * @param params The parameters, giving the IV and the keystream
+     *               position corresponding to the start of a file.
+     * @param chunkSize The chunk size in bytes.
+     * @param buffers The number of buffers in the pool, which bounds
+     *                the number of chunks in flight.
+     * @param threads The number of threads used for encryption.
+     * @throws InvalidKeyException If {@code key} is not valid for
+     *                             the engines.
+     * @throws InvalidAlgorithmParameterException If {@code params}
+     *                                            is not valid for the
+     *                                            engines.
+     * @throws IllegalArgumentException If {@code chunkSize}, {@code
+     *                                  buffers}, or {@code threads}
+     *                                  is not positive, or if {@code
+     *                                  threads} is more than one for
+     *                                  engines that are not random
+     *                                  access.
+     */
+    public PipelinedFileCipher(final Supplier<? extends
+                               SeekableKeystreamCipherSpi<?, ?>> engines,
+                               final Key key,
+                               final AlgorithmParameters params,
+                               final int chunkSize,
+                               final int buffers,
+                               final int threads)
+        throws InvalidKeyException, InvalidAlgorithmParameterException {
+        if (chunkSize < 1 || buffers < 1 || threads < 1) {
+            throw new IllegalArgumentException("Chunk size, buffers, and " +
+                                               "threads must be positive");
+        }
+
+        final SeekableKeystreamCipherSpi<?, ?> engine = engines.get();
+
+        engine.engineInit(Cipher.ENCRYPT_MODE, key, params, null);
+
+        if (threads > 1 && !engine.isRandomAccess()) {
+            throw new IllegalArgumentException("Engines that are not " +
+                                               "random access must use " +
+                                               "one thread");
+        }
+
+        this.engines = engines;
+        this.key = key;
+        this.params = params;
+        this.start = engine.position();
+        this.buffers = new ByteBuffer[buffers];
+        this.threads = threads;
+        this.sequential = !engine.isRandomAccess();
+
+        for(int i = 0; i < buffers; i++) {
+            this.buffers[i] = ByteBuffer.allocateDirect(chunkSize);
+        }
+    }
+
+    /**
+     * Encrypt or decrypt a file into another file.  The target is
+     * created if it does not exist, and truncated if it does.
+     *
+     * @param source The file to read.
+     * @param target The file to write.
+     * @return Statistics on the transformation.
+     * @throws IOException If an IO error occurs.
+     */
+    public Stats crypt(final Path source,
+                       final Path target)
+        throws IOException {
+        try(final AsynchronousFileChannel in =
+                AsynchronousFileChannel.open(source,
+                                             StandardOpenOption.READ);
+            final AsynchronousFileChannel out =
+                AsynchronousFileChannel.open(target,
+                                             StandardOpenOption.WRITE,
+                                             StandardOpenOption.CREATE,
+                                             StandardOpenOption
+                                             .TRUNCATE_EXISTING)) {
+            return crypt(in, out);
+        }
+    }
+
+    /**
+     * Encrypt or decrypt the whole of one channel into another.  Byte
+     * {@code n} of {@code source} is transformed into byte {@code n}
+     * of {@code target}.
+     *
+     * @param source The channel to read.
+     * @param target The channel to write.
+     * @return Statistics on the transformation.
+     * @throws IOException If an IO error occurs.
+     */
+    public synchronized Stats crypt(final AsynchronousFileChannel source,
+                                    final AsynchronousFileChannel target)
+        throws IOException {
+        final long startTime = System.nanoTime();
+        final long size = source.size();
+        final ExecutorService executor =
+            Executors.newFixedThreadPool(threads);
+        final Job job = new Job(source, target, executor);
+        final int chunkSize = buffers[0].capacity();
+        long chunks = 0;
+        long inUseTotal = 0;
+        int maxInUse = 0;
+        long stalls = 0;
+        boolean interrupted = false;
+
+        try {
+            for(long off = 0; off < size && job.failure.get() == null;
+                off += chunkSize) {
+                ByteBuffer buf = job.pool.poll();
+
+                if (buf == null) {
+                    stalls++;
+                    buf = job.pool.take();
+                }
+
+                final int inUse = buffers.length - job.pool.size();
+
+                chunks++;
+                inUseTotal += inUse;
+                maxInUse = Math.max(maxInUse, inUse);
+                buf.clear();
+                buf.limit((int)Math.min(chunkSize, size - off));
+
+                final Job.Chunk chunk = job.new Chunk(buf, off);
+
+                try {
+                    chunk.read();
+                } catch(final RuntimeException e) {
+                    chunk.failed(e, null);
+                }
+            }
+        } catch(final InterruptedException e) {
+            interrupted = true;
+            job.failure.compareAndSet(null, new InterruptedIOException());
+        } finally {
+            job.drain();
+            executor.shutdown();
+            job.discard();
+        }
+
+        if (interrupted) {
+            Thread.currentThread().interrupt();
+        }
+
+        final Throwable t = job.failure.get();
+
+        if (t instanceof IOException) {
+            throw (IOException)t;
+        } else if (t != null) {
+            throw new IOException(t);
+        }
+
+        return new Stats(size, System.nanoTime() - startTime,
+                         buffers.length, maxInUse,
+                         chunks == 0 ? 0 : ((double)inUseTotal) / chunks,
+                         stalls);
+    }
+
+    /**
+     * The state of one call to {@link #crypt}.
+     */
+    private final class Job {
+        /**
+         * The channel to read.
+         */
+        private final AsynchronousFileChannel source;
+
+        /**
+         * The channel to write.
+         */
+        private final AsynchronousFileChannel target;
+
+        /**
+         * The executor on which to run encryption.
+         */
+        private final ExecutorService executor;
+
+        /**
+         * The buffers that are not in use.
+         */
+        final BlockingQueue<ByteBuffer> pool =
+            new ArrayBlockingQueue<>(buffers.length);
+
+        /**
+         * The engines that are not in use.
+         */
+        private final BlockingQueue<SeekableKeystreamCipherSpi<?, ?>>
+            engineQueue = new ArrayBlockingQueue<>(threads);
+
+        /**
+         * The first failure of any chunk.
+         */
+        final AtomicReference<Throwable> failure = new AtomicReference<>();
+
+        /**
+         * Chunks that have been read and are waiting for their turn
+         * to be transformed, by offset, if {@link #sequential}.
+         */
+        private final Map<Long, Chunk> ready = new HashMap<>();
+
+        /**
+         * Offset of the next chunk to transform, if {@link
+         * #sequential}.  Guarded by {@link #ready}.
+         */
+        private long nextOffset = 0;
+
+        /**
+         * Initialize a {@code Job}, with all buffers in the pool and
+         * one engine for each thread.
+         *
+         * @param source The channel to read.
+         * @param target The channel to write.
+         * @param executor The executor on which to run encryption.
+         */
+        Job(final AsynchronousFileChannel source,
+            final AsynchronousFileChannel target,
+            final ExecutorService executor) {
+            this.source = source;
+            this.target = target;
+            this.executor = executor;
+
+            for(final ByteBuffer buf : buffers) {
+                pool.add(buf);
+            }
+
+            for(int i = 0; i < threads; i++) {
+                engineQueue.add(SeekableKeystreamCipherSpi.engineAt(
+                    engines, key, params, start));
+            }
+        }
+
+        /**
+         * Schedule a chunk that has been read to be transformed.  If
+         * {@link #sequential}, chunks are transformed in order of
+         * offset, so the engine only ever moves forward to the
+         * position it is already at.
+         *
+         * @param chunk The chunk.
+         */
+        void schedule(final Chunk chunk) {
+            if (sequential) {
+                synchronized(ready) {
+                    if (failure.get() != null) {
+                        // Nothing after the failure will be transformed.
+                        release(chunk.buf);
+
+                        return;
+                    }
+
+                    ready.put(chunk.offset, chunk);
+                }
+
+                executor.execute(this::transformReady);
+            } else {
+                executor.execute(chunk::transform);
+            }
+        }
+
+        /**
+         * Transform the waiting chunks that are next in order of
+         * offset.
+         */
+        private void transformReady() {
+            for(;;) {
+                final Chunk chunk;
+
+                synchronized(ready) {
+                    chunk = ready.remove(nextOffset);
+
+                    if (chunk == null) {
+                        return;
+                    }
+
+                    nextOffset += chunk.buf.limit();
+                }
+
+                chunk.transform();
+            }
+        }
+
+        /**
+         * Return the buffers of all chunks waiting to be transformed
+         * to the pool, after a failure.
+         */
+        private void releaseReady() {
+            synchronized(ready) {
+                for(final Chunk chunk : ready.values()) {
+                    release(chunk.buf);
+                }
+
+                ready.clear();
+            }
+        }
+
+        /**
+         * Zero out a buffer and return it to the pool.  Only the
+         * range up to the limit can hold data, as every buffer in the
+         * pool is zero.
+         *
+         * @param buf The buffer.
+         */
+        private void release(final ByteBuffer buf) {
+            buf.position(0);
+
+            while (buf.remaining() >= 8) {
+                buf.putLong(0);
+            }
+
+            while (buf.hasRemaining()) {
+                buf.put((byte)0);
+            }
+
+            pool.add(buf);
+        }
+
+        /**
+         * Wait for every chunk in flight to finish, successfully or
+         * not, so that all the buffers are back in the pool and no
+         * engine is in use.  If the job has failed, chunks in flight
+         * finish without being transformed.  This waits even if
+         * interrupted, and restores the interrupt status afterwards.
+         */
+        void drain() {
+            boolean interrupted = false;
+
+            for(int i = 0; i < buffers.length;) {
+                try {
+                    pool.take();
+                    i++;
+                } catch(final InterruptedException e) {
+                    interrupted = true;
+                }
+            }
+
+            if (interrupted) {
+                Thread.currentThread().interrupt();
+            }
+        }
+
+        /**
+         * Discard the keystream of all the engines.  This must only
+         * be called after {@link #drain}.
+         */
+        void discard() {
+            for(final SeekableKeystreamCipherSpi<?, ?> engine :
+                    engineQueue) {
+                engine.discardKeystream();
+            }
+        }
+
+        /**
+         * One chunk of a file, which is read, transformed in place,
+         * and written, each step started by the completion of the
+         * previous one.  The buffer is zeroed and returned to the pool
+         * when the chunk is finished, whether or not it succeeded.
+         */
+        final class Chunk implements CompletionHandler<Integer, Void> {
+            /**
+             * The buffer holding this chunk.
+             */
+            private final ByteBuffer buf;
+
+            /**
+             * Offset of this chunk in the file.
+             */
+            private final long offset;
+
+            /**
+             * Whether the chunk has been read, and is now being
+             * written.
+             */
+            private boolean writing;
+
+            /**
+             * Initialize a {@code Chunk}.
+             *
+             * @param buf The buffer, with its limit set to the chunk
+             *            length.
+             * @param offset Offset of the chunk in the file.
+             */
+            Chunk(final ByteBuffer buf,
+                  final long offset) {
+                this.buf = buf;
+                this.offset = offset;
+            }
+
+            /**
+             * Start or continue reading this chunk.
+             */
+            void read() {
+                source.read(buf, offset + buf.position(), null, this);
+            }
+
+            /**
+             * Start or continue writing this chunk.
+             */
+            void write() {
+                target.write(buf, offset + buf.position(), null, this);
+            }
+
+            /**
+             * Transform this chunk in place, and start writing it.
+             */
+            void transform() {
+                if (failure.get() != null) {
+                    release(buf);
+
+                    return;
+                }
+
+                try {
+                    final SeekableKeystreamCipherSpi<?, ?> engine =
+                        engineQueue.take();
+
+                    try {
+                        engine.setPosition(start + offset);
+                        engine.engineUpdate(buf, buf.duplicate());
+                    } finally {
+                        engineQueue.add(engine);
+                    }
+
+                    buf.rewind();
+                    writing = true;
+                    write();
+                } catch(final InterruptedException | ShortBufferException |
+                              RuntimeException e) {
+                    failed(e, null);
+                }
+            }
+
+            /**
+             * {@inheritDoc}
+             */
+            @Override
+            public void completed(final Integer nbytes,
+                                  final Void attachment) {
+                try {
+                    if (nbytes < 0) {
+                        failed(new EOFException("File shrank while " +
+                                                "reading"), null);
+                    } else if (buf.hasRemaining()) {
+                        if (writing) {
+                            write();
+                        } else {
+                            read();
+                        }
+                    } else if (writing) {
+                        release(buf);
+                    } else {
+                        buf.flip();
+                        schedule(this);
+                    }
+                } catch(final RuntimeException e) {
+                    failed(e, null);
+                }
+            }
+
+            /**
+             * {@inheritDoc}
+             */
+            @Override
+            public void failed(final Throwable exc,
+                               final Void attachment) {
+                failure.compareAndSet(null, exc);
+                release(buf);
+                releaseReady();
+            }
+        }
+    }
+}
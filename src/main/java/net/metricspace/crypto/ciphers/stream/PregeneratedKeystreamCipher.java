@@ -0,0 +1,552 @@
+/* Copyright (c) 2018, Eric McCorkle.  All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions
+ * are met:
+ *
+ * * Redistributions of source code must retain the above copyright
+ *   notice, this list of conditions and the following disclaimer.
+ *
+ * * Redistributions in binary form must reproduce the above copyright
+ *   notice, this list of conditions and the following disclaimer in
+ *   the documentation and/or other materials provided with the
+ *   distribution.
+ *
+ * * Neither the name of the copyright holder nor the names of its
+ *   contributors may be used to endorse or promote products derived
+ *   from this software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS
+ * "AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT
+ * LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS
+ * FOR A PARTICULAR PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE
+ * COPYRIGHT HOLDER OR CONTRIBUTORS BE LIABLE FOR ANY DIRECT,
+ * INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES
+ * (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR
+ * SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION)
+ * HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT,
+ * STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED
+ * OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+package net.metricspace.crypto.ciphers.stream;
+
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+
+import java.security.AlgorithmParameters;
+import java.security.InvalidAlgorithmParameterException;
+import java.security.InvalidKeyException;
+import java.security.Key;
+import java.util.Arrays;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Supplier;
+
+import javax.crypto.Cipher;
+import javax.crypto.ShortBufferException;
+
+/**
+ * Encryption and decryption with keystream computed ahead of time in
+ * the background.  Computing keystream is the expensive part of a
+ * keystream cipher; XORing it with the data is cheap.  This keeps a
+ * bounded ring buffer of keystream, which a background task fills
+ * ahead of consumption, so that calls to {@code update} normally do
+ * nothing but XOR.
+ * <h2>Usage</h2>
+ *
+ * Instances are created from a factory for the engine, along with a
+ * key and parameters, as would be used to initialize a {@link
+ * javax.crypto.Cipher}:
+ * <pre>
+ * final PregeneratedKeystreamCipher cipher =
+ *     new PregeneratedKeystreamCipher(HC256CipherSpi::new, key, params);
+ *
+ * cipher.update(input, 0, input.length, output, 0);
+ * </pre>
+ * Successive calls to {@code update} continue the stream, just as
+ * with {@link javax.crypto.Cipher#update}.  Instances are not safe
+ * for use by multiple threads at once, apart from the background
+ * task and the metrics methods.
+ * <p>
+ * Input and output may be the same range of the same array or
+ * buffer, but must not otherwise overlap.
+ * <h2>Watermarks</h2>
+ *
+ * A refill is scheduled whenever an update leaves no more than the
+ * low watermark of keystream in the buffer.  The refill computes
+ * keystream until the buffer holds the high watermark.  If an update
+ * finds the buffer empty, this is an underrun: the keystream it
+ * needs is computed on the calling thread, and counted by
+ * {@link #getUnderruns} and {@link #getUnderrunBytes}.  Frequent
+ * underruns mean the watermarks or the capacity are too low for the
+ * rate of consumption.  If the executor rejects a refill, the
+ * keystream is likewise computed on the calling thread.
+ * <h2>Zeroing</h2>
+ *
+ * Keystream is zeroed in the buffer as soon as it has been used.
+ * Any unused keystream is zeroed when the cipher is re-initialized
+ * with {@link #init} or closed with {@link #close}, and closing also
+ * discards the keystream held by the engine.
+ */
+public final class PregeneratedKeystreamCipher implements AutoCloseable {
+    /**
+     * Default capacity of the keystream buffer in bytes.
+     */
+    public static final int DEFAULT_CAPACITY = 64 * 1024;
+
+    /**
+     * Largest amount of keystream computed while holding the engine
+     * lock, so that re-initialization need not wait for a whole
+     * refill.
+     */
+    private static final int FILL_CHUNK = 8 * 1024;
+
+    /**
+     * The engine, which is only used while holding {@link #lock}.
+     */
+    private final KeystreamCipherSpi<?, ?> engine;
+
+    /**
+     * Lock guarding {@link #engine} and the writing of keystream
+     * into {@link #ring}.
+     */
+    private final Object lock = new Object();
+
+    /**
+     * The keystream buffer.  Bytes that do not hold unused keystream
+     * are always zero, so keystream is computed by encrypting them
+     * in place.
+     */
+    private final byte[] ring;
+
+    /**
+     * A {@link ByteBuffer} view of {@link #ring}, used to read it a
+     * word at a time when XORing against {@link ByteBuffer}s.
+     */
+    private final ByteBuffer ringBuf;
+
+    /**
+     * Level of unused keystream at or below which a refill is
+     * scheduled.
+     */
+    private final int lowWatermark;
+
+    /**
+     * Level of unused keystream up to which a refill computes.
+     */
+    private final int highWatermark;
+
+    /**
+     * The executor on which refills run.
+     */
+    private final Executor executor;
+
+    /**
+     * The task which refills the buffer.
+     */
+    private final Runnable refill = this::refill;
+
+    /**
+     * Whether a refill has been scheduled and has not finished.
+     */
+    private final AtomicBoolean refilling = new AtomicBoolean();
+
+    /**
+     * Number of updates that found too little keystream.
+     */
+    private final AtomicLong underruns = new AtomicLong();
+
+    /**
+     * Number of keystream bytes computed on the calling thread
+     * because of underruns.
+     */
+    private final AtomicLong underrunBytes = new AtomicLong();
+
+    /**
+     * Total keystream consumed since initialization.  Only written
+     * by the consuming thread.
+     */
+    private volatile long head;
+
+    /**
+     * Total keystream computed since initialization.  Only written
+     * while holding {@link #lock}.
+     */
+    private volatile long tail;
+
+    /**
+     * Whether this has been closed.
+     */
+    private volatile boolean closed;
+
+    /**
+     * Create a {@code PregeneratedKeystreamCipher} with the default
+     * capacity, refilling when the buffer is half empty, on the
+     * common {@link ForkJoinPool}.
+     *
+     * @param engines Factory for the cipher engine.
+     * @param key The key.
+     * @param params The parameters.
+     * @throws InvalidKeyException If {@code key} is not valid for
+     *                             the engine.
+     * @throws InvalidAlgorithmParameterException If {@code params}
+     *                                            is not valid for the
+     *                                            engine.
+     */
+    public PregeneratedKeystreamCipher(final Supplier<? extends
+                                       KeystreamCipherSpi<?, ?>>
+                                       engines,
+                                       final Key key,
+                                       final AlgorithmParameters params)
+        throws InvalidKeyException, InvalidAlgorithmParameterException {
+        this(engines, key, params, DEFAULT_CAPACITY,
+             DEFAULT_CAPACITY / 2, DEFAULT_CAPACITY,
+             ForkJoinPool.commonPool());
+    }
+
+    /**
+     * Create a {@code PregeneratedKeystreamCipher}.
+     *
+     * @param engines Factory for the cipher engine.
+     * @param key The key.
+     * @param params The parameters.
+     * @param capacity The capacity of the keystream buffer in bytes.
+     * @param lowWatermark Level of unused keystream at or below which
+     *                     a refill is scheduled.
+     * @param highWatermark Level of unused keystream up to which a
+     *                      refill computes.
+     * @param executor The executor on which refills run.
+     * @throws InvalidKeyException If {@code key} is not valid for
+     *                             the engine.
+     * @throws InvalidAlgorithmParameterException If {@code params}
+     *                                            is not valid for the
+     *                                            engine.
+     * @throws IllegalArgumentException Unless {@code 0 <=
+     *                                  lowWatermark < highWatermark
+     *                                  <= capacity}.
+     */
+    public PregeneratedKeystreamCipher(final Supplier<? extends
+                                       KeystreamCipherSpi<?, ?>>
+                                       engines,
+                                       final Key key,
+                                       final AlgorithmParameters params,
+                                       final int capacity,
+                                       final int lowWatermark,
+                                       final int highWatermark,
+                                       final Executor executor)
+        throws InvalidKeyException, InvalidAlgorithmParameterException {
+        if (lowWatermark < 0 || lowWatermark >= highWatermark ||
+            highWatermark > capacity) {
+            throw new IllegalArgumentException("Watermarks must satisfy " +
+                                               "0 <= low < high <= " +
+                                               "capacity");
+        }
+
+        this.engine = engines.get();
+        this.ring = new byte[capacity];
+        this.ringBuf = ByteBuffer.wrap(ring);
+        this.lowWatermark = lowWatermark;
+        this.highWatermark = highWatermark;
+        this.executor = executor;
+        init(key, params);
+    }
+
+    /**
+     * Re-initialize with a new key and parameters.  Any unused
+     * keystream is zeroed, and the buffer is refilled from the start
+     * of the new stream.
+     *
+     * @param key The key.
+     * @param params The parameters.
+     * @throws InvalidKeyException If {@code key} is not valid for
+     *                             the engine.
+     * @throws InvalidAlgorithmParameterException If {@code params}
+     *                                            is not valid for the
+     *                                            engine.
+     * @throws IllegalStateException If this has been closed.
+     */
+    public void init(final Key key,
+                     final AlgorithmParameters params)
+        throws InvalidKeyException, InvalidAlgorithmParameterException {
+        synchronized(lock) {
+            if (closed) {
+                throw new IllegalStateException("Cipher is closed");
+            }
+
+            Arrays.fill(ring, (byte)0);
+            head = 0;
+            tail = 0;
+            engine.engineInit(Cipher.ENCRYPT_MODE, key, params, null);
+        }
+
+        scheduleRefill();
+    }
+
+    /**
+     * Get the number of bytes of unused keystream in the buffer.
+     *
+     * @return The number of bytes of unused keystream.
+     */
+    public int getAvailable() {
+        return (int)Math.min(tail - head, ring.length);
+    }
+
+    /**
+     * Get the number of times an update found the buffer empty, and
+     * had to compute keystream on the calling thread.
+     *
+     * @return The number of underruns.
+     */
+    public long getUnderruns() {
+        return underruns.get();
+    }
+
+    /**
+     * Get the number of keystream bytes that were computed on the
+     * calling thread because of underruns.
+     *
+     * @return The number of bytes computed during underruns.
+     */
+    public long getUnderrunBytes() {
+        return underrunBytes.get();
+    }
+
+    /**
+     * Encrypt or decrypt a range of an array, continuing the stream
+     * from the current position.
+     *
+     * @param input The input.
+     * @param inputOffset The offset at which input begins.
+     * @param inputLen The length of input.
+     * @param output The output array.
+     * @param outputOffset The offset at which output begins.
+     * @return The number of bytes written to {@code output}.
+     * @throws ShortBufferException If {@code output} is too small.
+     * @throws IllegalStateException If this has been closed.
+     */
+    public int update(final byte[] input,
+                      final int inputOffset,
+                      final int inputLen,
+                      final byte[] output,
+                      final int outputOffset)
+        throws ShortBufferException {
+        if (output.length - outputOffset < inputLen) {
+            throw new ShortBufferException("Need " + inputLen +
+                                           " bytes of output space");
+        }
+
+        ensureOpen();
+
+        for(int i = 0; i < inputLen;) {
+            final int len = span(inputLen - i);
+            final int offset = (int)(head % ring.length);
+
+            KeystreamCipherSpi.xor(input, inputOffset + i, ring, offset,
+                                   output, outputOffset + i, len);
+            consume(offset, len);
+            i += len;
+        }
+
+        scheduleRefill();
+
+        return inputLen;
+    }
+
+    /**
+     * Encrypt or decrypt the remaining contents of a {@link
+     * ByteBuffer}, continuing the stream from the current position.
+     * The positions of both buffers are advanced.
+     *
+     * @param input The input buffer.
+     * @param output The output buffer.
+     * @return The number of bytes written to {@code output}.
+     * @throws ShortBufferException If {@code output} has less space
+     *                              remaining than {@code input}.
+     * @throws IllegalStateException If this has been closed.
+     */
+    public int update(final ByteBuffer input,
+                      final ByteBuffer output)
+        throws ShortBufferException {
+        final int inputLen = input.remaining();
+        final int inputPos = input.position();
+        final int outputPos = output.position();
+
+        if (output.remaining() < inputLen) {
+            throw new ShortBufferException("Need " + inputLen +
+                                           " bytes of output space");
+        }
+
+        if (input.hasArray() && output.hasArray()) {
+            update(input.array(), input.arrayOffset() + inputPos, inputLen,
+                   output.array(), output.arrayOffset() + outputPos);
+        } else {
+            final ByteOrder order = input.order();
+            final boolean words = order == output.order();
+
+            ensureOpen();
+            ringBuf.order(order);
+
+            for(int i = 0; i < inputLen;) {
+                final int len = span(inputLen - i);
+                final int offset = (int)(head % ring.length);
+                final int in = inputPos + i;
+                final int out = outputPos + i;
+                int j = 0;
+
+                if (words) {
+                    for(; j + 8 <= len; j += 8) {
+                        output.putLong(out + j, input.getLong(in + j) ^
+                                       ringBuf.getLong(offset + j));
+                    }
+                }
+
+                for(; j < len; j++) {
+                    output.put(out + j,
+                               (byte)(input.get(in + j) ^ ring[offset + j]));
+                }
+
+                consume(offset, len);
+                i += len;
+            }
+
+            scheduleRefill();
+        }
+
+        input.position(inputPos + inputLen);
+        output.position(outputPos + inputLen);
+
+        return inputLen;
+    }
+
+    /**
+     * Zero all keystream and stop refilling.  This cannot be used
+     * afterwards.
+     */
+    @Override
+    public void close() {
+        synchronized(lock) {
+            closed = true;
+            Arrays.fill(ring, (byte)0);
+            head = 0;
+            tail = 0;
+            engine.discardKeystream();
+        }
+    }
+
+    /**
+     * Check that this has not been closed.
+     *
+     * @throws IllegalStateException If this has been closed.
+     */
+    private void ensureOpen() {
+        if (closed) {
+            throw new IllegalStateException("Cipher is closed");
+        }
+    }
+
+    /**
+     * Get the length of the next contiguous span of unused keystream
+     * to consume, computing keystream on the calling thread if the
+     * buffer is empty.
+     *
+     * @param wanted The number of bytes still to process.
+     * @return The length of the span, which starts at {@code head}.
+     */
+    private int span(final int wanted) {
+        if (tail == head) {
+            synchronized(lock) {
+                if (tail == head) {
+                    underruns.incrementAndGet();
+                    underrunBytes.addAndGet(fill(Math.min(wanted,
+                                                          ring.length)));
+                }
+            }
+        }
+
+        final int offset = (int)(head % ring.length);
+
+        return (int)Math.min(Math.min(wanted, tail - head),
+                             ring.length - offset);
+    }
+
+    /**
+     * Zero a span of used keystream and advance past it.
+     *
+     * @param offset The offset of the span in {@link #ring}.
+     * @param len The length of the span.
+     */
+    private void consume(final int offset,
+                         final int len) {
+        Arrays.fill(ring, offset, offset + len, (byte)0);
+        head += len;
+    }
+
+    /**
+     * Schedule a refill if the buffer is at or below the low
+     * watermark and no refill is already pending.  If the executor
+     * rejects the refill, updates compute keystream on the calling
+     * thread until a later refill is accepted.
+     */
+    private void scheduleRefill() {
+        if (tail - head <= lowWatermark && !closed &&
+            refilling.compareAndSet(false, true)) {
+            try {
+                executor.execute(refill);
+            } catch(final RejectedExecutionException e) {
+                refilling.set(false);
+            }
+        }
+    }
+
+    /**
+     * Compute keystream up to the high watermark, a chunk at a time.
+     */
+    private void refill() {
+        try {
+            boolean more = true;
+
+            while (more) {
+                synchronized(lock) {
+                    final long level = tail - head;
+
+                    more = !closed && level < highWatermark;
+
+                    if (more) {
+                        fill((int)Math.min(highWatermark - level,
+                                           FILL_CHUNK));
+                    }
+                }
+            }
+        } finally {
+            refilling.set(false);
+        }
+
+        // An update may have crossed the low watermark after the last
+        // check, while this refill still counted as pending.
+        scheduleRefill();
+    }
+
+    /**
+     * Compute up to {@code len} bytes of keystream at the tail of the
+     * buffer, stopping at the end of the array.  This must be called
+     * while holding {@link #lock}, with at least {@code len} bytes
+     * free.
+     *
+     * @param len The number of bytes to compute.
+     * @return The number of bytes computed.
+     */
+    private int fill(final int len) {
+        final int offset = (int)(tail % ring.length);
+        final int n = Math.min(len, ring.length - offset);
+
+        // The free space is zero, so encrypting it gives keystream.
+        engine.engineUpdate(ring, offset, n, ring, offset);
+        tail += n;
+
+        return n;
+    }
+}
@@ -0,0 +1,301 @@
+/* Copyright (c) 2018, Eric McCorkle.  All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions
+ * are met:
+ *
+ * * Redistributions of source code must retain the above copyright
+ *   notice, this list of conditions and the following disclaimer.
+ *
+ * * Redistributions in binary form must reproduce the above copyright
+ *   notice, this list of conditions and the following disclaimer in
+ *   the documentation and/or other materials provided with the
+ *   distribution.
+ *
+ * * Neither the name of the copyright holder nor the names of its
+ *   contributors may be used to endorse or promote products derived
+ *   from this software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS
+ * "AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT
+ * LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS
+ * FOR A PARTICULAR PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE
+ * COPYRIGHT HOLDER OR CONTRIBUTORS BE LIABLE FOR ANY DIRECT,
+ * INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES
+ * (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR
+ * SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION)
+ * HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT,
+ * STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED
+ * OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+package net.metricspace.crypto.ciphers.stream;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.SeekableByteChannel;
+
+import java.security.AlgorithmParameters;
+import java.security.InvalidAlgorithmParameterException;
+import java.security.InvalidKeyException;
+import java.security.Key;
+
+import javax.crypto.Cipher;
+import javax.crypto.ShortBufferException;
+
+/**
+ * A {@link SeekableByteChannel} that encrypts data written to an
+ * underlying channel and decrypts data read from it, using a
+ * seekable keystream cipher.  Byte {@code n} of the underlying
+ * channel is enciphered with byte {@code n} of the keystream
+ * (counted from the position given by the parameters), so any part
+ * of the channel can be read or written independently.
+ * <p>
+ * Seeking is done by moving the engine's position directly, rather
+ * than by reinitializing a {@link javax.crypto.Cipher}; thus reading
+ * a small range from anywhere in a large file only costs the
+ * keystream blocks that cover that range.
+ * <h2>Usage</h2>
+ *
+ * <pre>
+ * final ChaCha20CipherSpi engine = new ChaCha20CipherSpi();
+ * final SeekableCipherChannel channel =
+ *     new SeekableCipherChannel(FileChannel.open(path, READ, WRITE),
+ *                               engine, key, params);
+ *
+ * channel.position(offset);
+ * channel.read(buf);
+ * </pre>
+ * The engine is owned by the channel from then on, and must not be
+ * used for anything else.
+ * <h2>Misuses</h2>
+ *
+ * As with any stream cipher, writing different data to the same
+ * position under the same key and IV leaks the XOR of the two
+ * plaintexts.  Overwriting data in place is therefore only safe if
+ * the old ciphertext was never visible to an adversary.  Channels
+ * opened in append mode are not supported, as the write position is
+ * not known in advance.
+ * <p>
+ * All operations other than {@link #isOpen()} hold the channel's
+ * lock, so a position or size seen by one thread is never in the
+ * middle of another thread's read or write.
+ */
+public final class SeekableCipherChannel implements SeekableByteChannel {
+    /**
+     * Default size of the buffer used to encrypt writes.
+     */
+    public static final int DEFAULT_BUFFER_SIZE = 64 * 1024;
+
+    /**
+     * The underlying channel.
+     */
+    private final SeekableByteChannel channel;
+
+    /**
+     * The cipher engine.
+     */
+    private final SeekableKeystreamCipherSpi<?, ?> engine;
+
+    /**
+     * Buffer used to hold ciphertext for writes.
+     */
+    private final ByteBuffer writeBuf;
+
+    /**
+     * Keystream position corresponding to position 0 in the channel.
+     */
+    private final long start;
+
+    /**
+     * Create a {@code SeekableCipherChannel} with the default buffer
+     * size.
+     *
+     * @param channel The underlying channel.
+     * @param engine The cipher engine.
+     * @param key The key.
+     * @param params The parameters, giving the IV and the keystream
+     *               position corresponding to the start of the
+     *               channel.
+     * @throws InvalidKeyException If {@code key} is not valid for
+     *                             {@code engine}.
+     * @throws InvalidAlgorithmParameterException If {@code params}
+     *                                            is not valid for
+     *                                            {@code engine}.
+     */
+    public SeekableCipherChannel(final SeekableByteChannel channel,
+                                 final SeekableKeystreamCipherSpi<?, ?>
+                                 engine,
+                                 final Key key,
+                                 final AlgorithmParameters params)
+        throws InvalidKeyException, InvalidAlgorithmParameterException {
+        this(channel, engine, key, params, DEFAULT_BUFFER_SIZE);
+    }
+
+    /**
+     * Create a {@code SeekableCipherChannel}.
+     *
+     * @param channel The underlying channel.
+     * @param engine The cipher engine.
+     * @param key The key.
+     * @param params The parameters, giving the IV and the keystream
+     *               position corresponding to the start of the
+     *               channel.
+     * @param bufferSize Size of the buffer used to encrypt writes.
+     * @throws InvalidKeyException If {@code key} is not valid for
+     *                             {@code engine}.
+     * @throws InvalidAlgorithmParameterException If {@code params}
+     *                                            is not valid for
+     *                                            {@code engine}.
+     * @throws IllegalArgumentException If {@code bufferSize} is not
+     *                                  positive.
+     */
+    public SeekableCipherChannel(final SeekableByteChannel channel,
+                                 final SeekableKeystreamCipherSpi<?, ?>
+                                 engine,
+                                 final Key key,
+                                 final AlgorithmParameters params,
+                                 final int bufferSize)
+        throws InvalidKeyException, InvalidAlgorithmParameterException {
+        if (bufferSize < 1) {
+            throw new IllegalArgumentException("Buffer size must be " +
+                                               "positive");
+        }
+
+        engine.engineInit(Cipher.ENCRYPT_MODE, key, params, null);
+
+        this.channel = channel;
+        this.engine = engine;
+        this.writeBuf = ByteBuffer.allocateDirect(bufferSize);
+        this.start = engine.position();
+    }
+
+    /**
+     * Move the engine to the keystream position corresponding to the
+     * current position of the underlying channel.
+     *
+     * @throws IOException If an IO error occurs.
+     */
+    private void seekEngine() throws IOException {
+        engine.setPosition(start + channel.position());
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public synchronized int read(final ByteBuffer dst) throws IOException {
+        seekEngine();
+
+        final int first = dst.position();
+        final int nbytes = channel.read(dst);
+
+        if (nbytes > 0) {
+            // Decrypt what was just read, in place.
+            final ByteBuffer data = dst.duplicate();
+
+            data.limit(first + nbytes).position(first);
+
+            try {
+                engine.engineUpdate(data, data.duplicate());
+            } catch(final ShortBufferException e) {
+                // Can't happen: input and output are the same range.
+                throw new IllegalStateException(e);
+            }
+        }
+
+        return nbytes;
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public synchronized int write(final ByteBuffer src) throws IOException {
+        final int total = src.remaining();
+        final ByteBuffer in = src.duplicate();
+
+        seekEngine();
+
+        while (in.hasRemaining()) {
+            final int len = Math.min(in.remaining(), writeBuf.capacity());
+
+            in.limit(in.position() + len);
+            writeBuf.clear();
+
+            try {
+                engine.engineUpdate(in, writeBuf);
+            } catch(final ShortBufferException e) {
+                // Can't happen: len fits in the buffer.
+                throw new IllegalStateException(e);
+            }
+
+            in.limit(src.limit());
+            writeBuf.flip();
+
+            while (writeBuf.hasRemaining()) {
+                channel.write(writeBuf);
+            }
+        }
+
+        src.position(src.limit());
+
+        return total;
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public synchronized long position() throws IOException {
+        return channel.position();
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public synchronized SeekableCipherChannel position(final long
+                                                       newPosition)
+        throws IOException {
+        channel.position(newPosition);
+
+        return this;
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public synchronized long size() throws IOException {
+        return channel.size();
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public synchronized SeekableCipherChannel truncate(final long size)
+        throws IOException {
+        channel.truncate(size);
+
+        return this;
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public boolean isOpen() {
+        return channel.isOpen();
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public synchronized void close() throws IOException {
+        engine.discardKeystream();
+        channel.close();
+    }
+}
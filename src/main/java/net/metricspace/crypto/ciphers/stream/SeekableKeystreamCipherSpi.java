@@ -32,10 +32,14 @@
 package net.metricspace.crypto.ciphers.stream;
 
 import java.security.AlgorithmParameters;
+import java.security.InvalidAlgorithmParameterException;
+import java.security.InvalidKeyException;
 import java.security.Key;
 import java.security.NoSuchAlgorithmException;
 import java.security.SecureRandom;
+import java.util.function.Supplier;
 
+import javax.crypto.Cipher;
 import javax.crypto.CipherSpi;
 import javax.crypto.NoSuchPaddingException;
 import javax.crypto.SecretKey;
@@ -66,9 +70,28 @@ public abstract class
         super(paramSpecClass, block, iv);
     }
 
+    /**
+     * Initialize the engine with a block buffer and the size of the
+     * keystream lookahead buffer.  This takes possession of the
+     * {@code block} array.
+     *
+     * @param paramSpecClass The {@link Class} of parameter specs.
+     * @param block The array that will become the block buffer.
+     * @param iv The array that will become the IV buffer.
+     * @param lookaheadBlocks The maximum number of stream blocks to
+     *                        compute in one batch.
+     */
+    protected SeekableKeystreamCipherSpi(final Class<S> paramSpecClass,
+                                         final int[] block,
+                                         final byte[] iv,
+                                         final int lookaheadBlocks) {
+        super(paramSpecClass, block, iv, lookaheadBlocks);
+    }
+
     /**
      * Initialize the engine with a key, a position, and a random
-     * initialization vector.  This also recomputes the stream block.
+     * initialization vector.  This also discards any precomputed
+     * keystream.
      *
      * @param key The key.
      * @param pos The position.
@@ -84,8 +107,8 @@ public abstract class
     }
 
     /**
-     * Set the key, position, and IV.  This also recomputes the stream
-     * block.
+     * Set the key, position, and IV.  This also discards any
+     * precomputed keystream.
      *
      * @param key The key.
      * @param pos The position.
@@ -99,8 +122,8 @@ public abstract class
     }
 
     /**
-     * Set the key, position, and IV.  This also recomputes the stream
-     * block.
+     * Set the key, position, and IV.  This also discards any
+     * precomputed keystream.
      *
      * @param key The key
      * @param pos The position.
@@ -114,8 +137,8 @@ public abstract class
 
     /**
      * Initialize the engine with a key, a position of {@code 0}, and
-     * a random initialization vector.  This also recomputes the
-     * stream block.
+     * a random initialization vector.  This also discards any
+     * precomputed keystream.
      *
      * @param key The key.
      * @param random The {@link SecureRandom} to use to generate the
@@ -130,7 +153,7 @@ public abstract class
 
     /**
      * Set the key and IV, and the position to {@code 0}.  This also
-     * recomputes the stream block.
+     * discards any precomputed keystream.
      *
      * @param key The key
      * @param iv The IV.
@@ -142,20 +165,21 @@ public abstract class
     }
 
     /**
-     * Set the key and IV, and the position to {@code 0}.  This also
-     * recomputes the stream block.
+     * Set the key, IV, and position from a well-typed spec.  This
+     * also discards any precomputed keystream.
      *
      * @param key The key
-     * @param spec An {@link IvParameterSpec} containing the IV.
+     * @param spec A parameter spec containing the IV and position.
      */
+    @Override
     protected void engineInit(final K key,
                               final S spec) {
-        setPosition(spec.getPosition());
-        super.engineInit(key, spec);
+        engineInit(key, spec.getPosition(), spec);
     }
 
     /**
-     * Set the position.
+     * Set the position.  Keystream that has already been computed
+     * is kept, and is reused if the new position falls within it.
      *
      * @param pos The position.
      */
@@ -164,4 +188,60 @@ public abstract class
         this.blockIdx = pos / blockBytes;
         this.blockOffset = (int)(pos % blockBytes);
     }
+
+    /**
+     * Get the current position.
+     *
+     * @return The current position.
+     */
+    protected final long position() {
+        return (blockIdx * blockBytes) + blockOffset;
+    }
+
+    /**
+     * Whether seeking costs about the same wherever the new position
+     * is.  This is true of ciphers that compute each stream block
+     * from a counter.  Ciphers that must step through the stream to
+     * reach a position override this to return {@code false}; for
+     * them, seeking costs time in proportion to the distance.
+     *
+     * @return Whether seeking costs about the same for any position.
+     */
+    protected boolean isRandomAccess() {
+        return true;
+    }
+
+    /**
+     * Create an engine from a factory, initialized for encryption and
+     * positioned at a given point in the stream.  The key and
+     * parameters must already have been accepted by an engine from
+     * the same factory.
+     *
+     * @param engines Factory for the engine.
+     * @param key The key.
+     * @param params The parameters.
+     * @param pos The stream position.
+     * @return The engine.
+     * @throws IllegalStateException If the engine rejects {@code key}
+     *                               or {@code params}.
+     */
+    static SeekableKeystreamCipherSpi<?, ?>
+        engineAt(final Supplier<? extends
+                                SeekableKeystreamCipherSpi<?, ?>> engines,
+                 final Key key,
+                 final AlgorithmParameters params,
+                 final long pos) {
+        final SeekableKeystreamCipherSpi<?, ?> engine = engines.get();
+
+        try {
+            engine.engineInit(Cipher.ENCRYPT_MODE, key, params, null);
+        } catch(final InvalidKeyException |
+                      InvalidAlgorithmParameterException e) {
+            throw new IllegalStateException(e);
+        }
+
+        engine.setPosition(pos);
+
+        return engine;
+    }
 }
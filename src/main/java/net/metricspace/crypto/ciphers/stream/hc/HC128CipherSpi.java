@@ -0,0 +1,536 @@
+/* Copyright (c) 2018, Eric McCorkle.  All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions
+ * are met:
+ *
+ * * Redistributions of source code must retain the above copyright
+ *   notice, this list of conditions and the following disclaimer.
+ *
+ * * Redistributions in binary form must reproduce the above copyright
+ *   notice, this list of conditions and the following disclaimer in
+ *   the documentation and/or other materials provided with the
+ *   distribution.
+ *
+ * * Neither the name of the copyright holder nor the names of its
+ *   contributors may be used to endorse or promote products derived
+ *   from this software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS
+ * "AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT
+ * LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS
+ * FOR A PARTICULAR PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE
+ * COPYRIGHT HOLDER OR CONTRIBUTORS BE LIABLE FOR ANY DIRECT,
+ * INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES
+ * (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR
+ * SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION)
+ * HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT,
+ * STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED
+ * OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+package net.metricspace.crypto.ciphers.stream.hc;
+
+import java.security.AlgorithmParameters;
+import java.security.InvalidKeyException;
+import java.security.InvalidAlgorithmParameterException;
+import java.security.Key;
+import java.security.NoSuchAlgorithmException;
+import java.security.NoSuchProviderException;
+import java.security.SecureRandom;
+import java.security.spec.AlgorithmParameterSpec;
+import java.security.spec.InvalidParameterSpecException;
+import java.util.Arrays;
+
+import net.metricspace.crypto.common.Common128BitKey;
+import net.metricspace.crypto.providers.KryptonProvider;
+
+/**
+ * A {@link javax.crypto.CipherSpi} implementation for the HC-128
+ * cipher. HC-128 was introduced in 2004 by Hongjun Wu as the
+ * 128-bit-key companion of HC-256, and is in the eSTREAM software
+ * portfolio.  Its tables are a quarter the size of those of HC-256,
+ * taking 4 KiB in all, so they stay in the L1 cache alongside the
+ * data being encrypted, and the key setup is about half the work.
+ * <h2>Usage</h2>
+ *
+ * This class should not be used directly.  It provides the underlying
+ * implementation for the Java Cryptography Architecture (JCA).  See
+ * the {@link javax.crypto.Cipher} class documentation for information
+ * on how to use this cipher.
+ * <h2>Seeking</h2>
+ *
+ * As with HC-256, seeking forward generates and discards keystream up
+ * to the new position, and seeking backward starts again from the
+ * initial state, unless the engine is created with a checkpoint
+ * interval (see {@link #HC128CipherSpi(int)}).  Each checkpoint takes
+ * {@value #CHECKPOINT_BYTES} bytes.
+ * <h2>Misuses</h2>
+ *
+ * The following are possible misuses of the HC-128 cipher.
+ * <ul>
+ * <li> <b>Encrypting multiple plaintexts with the same cipher
+ * stream</b>: As with other stream ciphers, the HC-128 cipher stream
+ * is generated solely from the key and IV, and is XORed with the
+ * plaintext to produce the cipher stream.  Thus, if multiple
+ * plaintexts are encrypted with the same cipher stream, attackers can
+ * recover information about the plaintexts as well as the cipher
+ * stream.
+ * <li> <b>Re-using initialization vectors</b>: Reuse of
+ * initialization vectors leads to encryption of multiple plaintexts
+ * with the same IV.
+ * <li> <b>Ciphertext Manipulation</b>: Since encryption/decryption
+ * consists of XORing the plaintext/ciphertext by the cipher stream,
+ * an attacker can flip bits in the plaintext by flipping them in the
+ * ciphertext, unless the message is also protected by a message
+ * authentication code (MAC).
+ * </ul>
+ *
+ * @see net.metricspace.crypto.providers.KryptonProvider
+ * @see javax.crypto.Cipher
+ */
+public final class HC128CipherSpi
+    extends HCFamilyCipherSpi<HC128CipherSpi.HC128Key> {
+    /**
+     * The name of this cipher.
+     */
+    public static final String NAME = "HC-128";
+
+    /**
+     * Length of the initialization vector in bits.
+     */
+    public static final int IV_BITS = 128;
+
+    /**
+     * Length of the initialization vector in bytes.
+     */
+    public static final int IV_LEN = IV_BITS / 8;
+
+    /**
+     * Length of the initialization vector in 4-byte words.
+     */
+    public static final int IV_WORDS = IV_BITS / 32;
+
+    /**
+     * Length of the key in bits.
+     */
+    public static final int KEY_BITS = 128;
+
+    /**
+     * Length of the key in bytes.
+     */
+    public static final int KEY_LEN = KEY_BITS / 8;
+
+    /**
+     * Length of the key in 4-byte words.
+     */
+    public static final int KEY_WORDS = KEY_BITS / 32;
+
+    private static final int TABLE_SIZE = 512;
+
+    private static final int TABLE_MASK = TABLE_SIZE - 1;
+
+    /**
+     * Number of previous words each word of the key expansion
+     * depends on.
+     */
+    private static final int WINDOW = 16;
+
+    /**
+     * Index in the key expansion of the first word of {@link
+     * #ptable}.
+     */
+    private static final int PTABLE_START = 256;
+
+    /**
+     * Index in the key expansion of the first word of {@link
+     * #qtable}.
+     */
+    private static final int QTABLE_START = 768;
+
+    /**
+     * Size of a checkpoint in bytes.
+     */
+    public static final int CHECKPOINT_BYTES = TABLE_SIZE * 2 * 4;
+
+    /**
+     * Keys for the HC-128 cipher.
+     */
+    static final class HC128Key extends Common128BitKey {
+        /**
+         * Initialize this key with the given array.  The key takes
+         * possession of the {@code data} array.
+         *
+         * @param data The key material.
+         */
+        HC128Key(final int[] data) {
+            super(data);
+        }
+
+        /**
+         * Initialize this key with the given byte array.  The byte
+         * array needs to be zeroed out afterwards.
+         *
+         * @param data The key material.
+         */
+        HC128Key(final byte[] data) {
+            super(data);
+        }
+
+        /**
+         * Returns the string "HC-128".
+         *
+         * @return The string "HC-128".
+         */
+        @Override
+        public final String getAlgorithm() {
+            return NAME;
+        }
+    }
+
+    /**
+     * Scratch space for the key expansion, which holds the words
+     * before {@link #ptable} and the window before {@link #qtable}.
+     */
+    private final int[] expansion = new int[PTABLE_START + WINDOW];
+
+    /**
+     * Initialize the cipher engine without checkpoints.
+     */
+    public HC128CipherSpi() {
+        this(0);
+    }
+
+    /**
+     * Initialize the cipher engine with a checkpoint interval.  The
+     * interval is rounded up to a whole number of stream blocks.
+     *
+     * @param checkpointInterval The checkpoint interval in bytes, or
+     *                           {@code 0} to disable checkpoints.
+     * @throws IllegalArgumentException If {@code checkpointInterval}
+     *                                  is negative.
+     */
+    public HC128CipherSpi(final int checkpointInterval) {
+        super(IV_LEN, TABLE_SIZE, checkpointInterval);
+    }
+
+    /**
+     * The function {@code f1} from the HC-128 paper.
+     *
+     * @param x The input word.
+     * @return The output word.
+     */
+    private static int f1(final int x) {
+        return ((x >>> 7) | (x << 25)) ^
+               ((x >>> 18) | (x << 14)) ^
+               (x >>> 3);
+    }
+
+    /**
+     * The function {@code f2} from the HC-128 paper.
+     *
+     * @param x The input word.
+     * @return The output word.
+     */
+    private static int f2(final int x) {
+        return ((x >>> 17) | (x << 15)) ^
+               ((x >>> 19) | (x << 13)) ^
+               (x >>> 10);
+    }
+
+    private static int g1(final int x,
+                          final int y,
+                          final int z) {
+        return (((x >>> 10) | (x << 22)) ^
+                ((z >>> 23) | (z << 9))) +
+               ((y >>> 8) | (y << 24));
+    }
+
+    private static int g2(final int x,
+                          final int y,
+                          final int z) {
+        return (((x << 10) | (x >>> 22)) ^
+                ((z << 23) | (z >>> 9))) +
+               ((y << 8) | (y >>> 24));
+    }
+
+    private int h1(final int x) {
+        return qtable[x & 0xff] +
+               qtable[256 + ((x >>> 16) & 0xff)];
+    }
+
+    private int h2(final int x) {
+        return ptable[x & 0xff] +
+               ptable[256 + ((x >>> 16) & 0xff)];
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    protected final void initTables() {
+        final int[] keydata = key.getData();
+
+        for(int i = 0; i < KEY_WORDS; i++) {
+            expansion[i] = keydata[i];
+            expansion[i + KEY_WORDS] = keydata[i];
+        }
+
+        for(int i = 0; i < IV_WORDS; i++) {
+            final int word =
+                (iv[(4 * i)] & 0xff) |
+                (iv[(4 * i) + 1] & 0xff) << 8 |
+                (iv[(4 * i) + 2] & 0xff) << 16 |
+                (iv[(4 * i) + 3] & 0xff) << 24;
+
+            expansion[i + (2 * KEY_WORDS)] = word;
+            expansion[i + (2 * KEY_WORDS) + IV_WORDS] = word;
+        }
+
+        // Expand directly into the tables.  Only the first WINDOW
+        // words of each table depend on words outside it, so those
+        // are computed in the scratch space and copied over.
+        expand(expansion, WINDOW, PTABLE_START + WINDOW, 0);
+        System.arraycopy(expansion, PTABLE_START, ptable, 0, WINDOW);
+        expand(ptable, WINDOW, TABLE_SIZE, PTABLE_START);
+        System.arraycopy(ptable, TABLE_SIZE - WINDOW, expansion, 0, WINDOW);
+        expand(expansion, WINDOW, WINDOW * 2, QTABLE_START - WINDOW);
+        System.arraycopy(expansion, WINDOW, qtable, 0, WINDOW);
+        expand(qtable, WINDOW, TABLE_SIZE, QTABLE_START);
+        Arrays.fill(expansion, 0);
+
+        // Run the cipher 1024 steps, feeding the output back into
+        // the tables.
+        for(int j = 0; j < TABLE_SIZE; j++) {
+            ptable[j] = stepP(j);
+        }
+
+        for(int j = 0; j < TABLE_SIZE; j++) {
+            qtable[j] = stepQ(j);
+        }
+    }
+
+    /**
+     * Compute words of the key expansion in place.  Word {@code i}
+     * of the expansion is at {@code i - base} in {@code w}.
+     *
+     * @param w The array holding the expansion.
+     * @param from The first index in {@code w} to compute.
+     * @param to The index in {@code w} at which to stop.
+     * @param base The expansion index of {@code w[0]}.
+     */
+    private static void expand(final int[] w,
+                               final int from,
+                               final int to,
+                               final int base) {
+        for(int i = from; i < to; i++) {
+            w[i] = f2(w[i - 2]) + w[i - 7] + f1(w[i - 15]) + w[i - 16] +
+                   base + i;
+        }
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    protected final void updateP(final int start,
+                                 final int end) {
+        final int head = Math.min(end, 10);
+        final int body = Math.min(end, TABLE_MASK);
+        int j = start;
+
+        for(; j < head; j++) {
+            ptable[j] += g1(ptable[(j - 3) & TABLE_MASK],
+                            ptable[(j - 10) & TABLE_MASK], ptable[j + 1]);
+        }
+
+        for(; j < body; j++) {
+            ptable[j] += g1(ptable[j - 3], ptable[j - 10], ptable[j + 1]);
+        }
+
+        for(; j < end; j++) {
+            ptable[j] += g1(ptable[j - 3], ptable[j - 10], ptable[0]);
+        }
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    protected final void updateQ(final int start,
+                                 final int end) {
+        final int head = Math.min(end, 10);
+        final int body = Math.min(end, TABLE_MASK);
+        int j = start;
+
+        for(; j < head; j++) {
+            qtable[j] += g2(qtable[(j - 3) & TABLE_MASK],
+                            qtable[(j - 10) & TABLE_MASK], qtable[j + 1]);
+        }
+
+        for(; j < body; j++) {
+            qtable[j] += g2(qtable[j - 3], qtable[j - 10], qtable[j + 1]);
+        }
+
+        for(; j < end; j++) {
+            qtable[j] += g2(qtable[j - 3], qtable[j - 10], qtable[0]);
+        }
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    protected final void generateP(final int start,
+                                   final int end,
+                                   final byte[] out,
+                                   final int outOffset) {
+        final int head = Math.min(end, 12);
+        final int body = Math.min(end, TABLE_MASK);
+        int j = start;
+        int o = outOffset;
+
+        for(; j < head; j++, o += 4) {
+            store(out, o, stepP(j));
+        }
+
+        for(; j < body; j++, o += 4) {
+            final int p = ptable[j] +
+                          g1(ptable[j - 3], ptable[j - 10], ptable[j + 1]);
+
+            ptable[j] = p;
+            store(out, o, h1(ptable[j - 12]) ^ p);
+        }
+
+        for(; j < end; j++, o += 4) {
+            store(out, o, stepP(j));
+        }
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    protected final void generateQ(final int start,
+                                   final int end,
+                                   final byte[] out,
+                                   final int outOffset) {
+        final int head = Math.min(end, 12);
+        final int body = Math.min(end, TABLE_MASK);
+        int j = start;
+        int o = outOffset;
+
+        for(; j < head; j++, o += 4) {
+            store(out, o, stepQ(j));
+        }
+
+        for(; j < body; j++, o += 4) {
+            final int q = qtable[j] +
+                          g2(qtable[j - 3], qtable[j - 10], qtable[j + 1]);
+
+            qtable[j] = q;
+            store(out, o, h2(qtable[j - 12]) ^ q);
+        }
+
+        for(; j < end; j++, o += 4) {
+            store(out, o, stepQ(j));
+        }
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    protected final int stepP(final int j) {
+        ptable[j] = ptable[j] + g1(ptable[(j - 3) & TABLE_MASK],
+                                   ptable[(j - 10) & TABLE_MASK],
+                                   ptable[(j + 1) & TABLE_MASK]);
+        return h1(ptable[(j - 12) & TABLE_MASK]) ^ ptable[j];
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    protected final int stepQ(final int j) {
+        qtable[j] = qtable[j] + g2(qtable[(j - 3) & TABLE_MASK],
+                                   qtable[(j - 10) & TABLE_MASK],
+                                   qtable[(j + 1) & TABLE_MASK]);
+        return h2(qtable[(j - 12) & TABLE_MASK]) ^ qtable[j];
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    protected final void engineInit(final Key key,
+                                    final HCFamilyParameterSpec spec)
+        throws InvalidKeyException {
+        try {
+            engineInit((HC128Key)key, spec);
+        } catch(final ClassCastException e) {
+            throw new InvalidKeyException("Cannot accept key for " +
+                                          key.getAlgorithm());
+        }
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    protected final void engineInit(final int opmode,
+                                    final Key key,
+                                    final AlgorithmParameterSpec spec,
+                                    final SecureRandom random)
+        throws InvalidKeyException, InvalidAlgorithmParameterException {
+        try {
+            engineInit(opmode, (HC128Key)key, spec, random);
+        } catch(final ClassCastException e) {
+            throw new InvalidKeyException("Cannot accept key for " +
+                                          key.getAlgorithm());
+        }
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    protected final void engineInit(final int opmode,
+                                    final Key key,
+                                    final SecureRandom random)
+        throws InvalidKeyException {
+        try {
+            engineInit(opmode, (HC128Key)key, random);
+        } catch(final ClassCastException e) {
+            throw new InvalidKeyException("Cannot accept key for " +
+                                          key.getAlgorithm());
+        }
+    }
+
+    /**
+     * Returns an {@link HCFamilyParameterSpec} containing the IV and
+     * current position.  Note that the position of the return value
+     * will vary if the stream is advanced.
+     *
+     * @return An {@link HCFamilyParameterSpec} containing the IV and
+     *         current position.
+     */
+    @Override
+    protected final AlgorithmParameters engineGetParameters() {
+        final AlgorithmParameters out;
+
+        try {
+            out = AlgorithmParameters.getInstance(HC128CipherSpi.NAME,
+                                                  KryptonProvider.NAME);
+            out.init(parameterSpec());
+        } catch(final NoSuchAlgorithmException e) {
+            throw new IllegalStateException(e);
+        } catch(final NoSuchProviderException e) {
+            throw new IllegalStateException(e);
+        } catch(final InvalidParameterSpecException e) {
+            throw new IllegalStateException(e);
+        }
+
+        return out;
+    }
+}
@@ -32,7 +32,6 @@
 package net.metricspace.crypto.ciphers.stream.hc;
 
 import java.security.AlgorithmParameters;
-import java.security.AlgorithmParametersSpi;
 import java.security.InvalidKeyException;
 import java.security.InvalidAlgorithmParameterException;
 import java.security.Key;
@@ -43,13 +42,7 @@ import java.security.spec.AlgorithmParameterSpec;
 import java.security.spec.InvalidParameterSpecException;
 import java.util.Arrays;
 
-import javax.crypto.NoSuchPaddingException;
-import javax.crypto.SecretKey;
-import javax.crypto.spec.IvParameterSpec;
-
 import net.metricspace.crypto.common.Common256BitKey;
-import net.metricspace.crypto.ciphers.stream.PositionParameterSpec;
-import net.metricspace.crypto.ciphers.stream.KeystreamCipherSpi;
 import net.metricspace.crypto.providers.KryptonProvider;
 
 /**
@@ -62,6 +55,25 @@ import net.metricspace.crypto.providers.KryptonProvider;
  * implementation for the Java Cryptography Architecture (JCA).  See
  * the {@link javax.crypto.Cipher} class documentation for information
  * on how to use this cipher.
+ * <h2>Seeking</h2>
+ *
+ * HC-256 generates its keystream sequentially, by updating its
+ * tables one word at a time, so there is no direct way to compute
+ * the keystream at an arbitrary position.  Seeking forward generates
+ * and discards keystream up to the new position, and seeking backward
+ * starts again from the initial state.
+ * <p>
+ * To make random access cheaper, an engine can be created with a
+ * checkpoint interval (see {@link #HC256CipherSpi(int)}).  The
+ * tables are then saved in memory each time the stream passes a
+ * multiple of the interval, and a seek restores the nearest
+ * checkpoint before the new position and generates forward from
+ * there.  Each checkpoint takes {@value #CHECKPOINT_BYTES} bytes, so
+ * a stream of length {@code n} uses up to {@code n / interval *
+ * }{@value #CHECKPOINT_BYTES} bytes of checkpoints, while a seek
+ * generates at most {@code interval} bytes of keystream.
+ * Checkpoints hold the full cipher state, and are zeroed when the
+ * engine is re-initialized.
  * <h2>Misuses</h2>
  *
  * The following are possible misuses of the HC-256 cipher.
@@ -87,7 +99,7 @@ import net.metricspace.crypto.providers.KryptonProvider;
  * @see javax.crypto.Cipher
  */
 public final class HC256CipherSpi
-    extends KeystreamCipherSpi<HC256CipherSpi.HC256Key, IvParameterSpec> {
+    extends HCFamilyCipherSpi<HC256CipherSpi.HC256Key> {
     /**
      * The name of this cipher.
      */
@@ -127,9 +139,28 @@ public final class HC256CipherSpi
 
     private static final int TABLE_MASK = TABLE_SIZE - 1;
 
-    private static final int INIT_SIZE = 2660;
+    /**
+     * Number of previous words each word of the key expansion
+     * depends on.
+     */
+    private static final int WINDOW = 16;
+
+    /**
+     * Index in the key expansion of the first word of {@link
+     * #ptable}.
+     */
+    private static final int PTABLE_START = 512;
+
+    /**
+     * Index in the key expansion of the first word of {@link
+     * #qtable}.
+     */
+    private static final int QTABLE_START = 1536;
 
-    private static final int BLOCK_SIZE = 16;
+    /**
+     * Size of a checkpoint in bytes.
+     */
+    public static final int CHECKPOINT_BYTES = TABLE_SIZE * 2 * 4;
 
     static final class HC256Key extends Common256BitKey {
         /**
@@ -163,18 +194,30 @@ public final class HC256CipherSpi
         }
     }
 
-    private final int[] ptable = new int[TABLE_SIZE];
-
-    private final int[] qtable = new int[TABLE_SIZE];
-
-    private int idx = 0;
+    /**
+     * Scratch space for the key expansion, which holds the words
+     * before {@link #ptable} and the window before {@link #qtable}.
+     */
+    private final int[] expansion = new int[PTABLE_START + WINDOW];
 
     /**
-     * Initialize the cipher engine.
+     * Initialize the cipher engine without checkpoints.
      */
     public HC256CipherSpi() {
-        super(IvParameterSpec.class,
-              new int[BLOCK_SIZE], new byte[IV_LEN]);
+        this(0);
+    }
+
+    /**
+     * Initialize the cipher engine with a checkpoint interval.  The
+     * interval is rounded up to a whole number of stream blocks.
+     *
+     * @param checkpointInterval The checkpoint interval in bytes, or
+     *                           {@code 0} to disable checkpoints.
+     * @throws IllegalArgumentException If {@code checkpointInterval}
+     *                                  is negative.
+     */
+    public HC256CipherSpi(final int checkpointInterval) {
+        super(IV_LEN, TABLE_SIZE, checkpointInterval);
     }
 
     /**
@@ -229,42 +272,168 @@ public final class HC256CipherSpi
                ptable[768 + ((x >>> 24) & 0xff)];
     }
 
+    /**
+     * {@inheritDoc}
+     */
     @Override
-    protected void initState() {
+    protected final void initTables() {
         final int[] keydata = key.getData();
-        final int[] data = new int[INIT_SIZE];
 
         for(int i = 0; i < KEY_WORDS; i++) {
-            data[i] = keydata[i];
+            expansion[i] = keydata[i];
         }
 
         for(int i = 0; i < IV_WORDS; i++) {
-            data[i + KEY_WORDS] =
-                (iv[(4 * i)]) |
-                (iv[(4 * i) + 1]) << 8 |
-                (iv[(4 * i) + 2]) << 16 |
-                (iv[(4 * i) + 3]) << 24;
+            expansion[i + KEY_WORDS] =
+                (iv[(4 * i)] & 0xff) |
+                (iv[(4 * i) + 1] & 0xff) << 8 |
+                (iv[(4 * i) + 2] & 0xff) << 16 |
+                (iv[(4 * i) + 3] & 0xff) << 24;
+        }
+
+        // Expand directly into the tables.  Only the first WINDOW
+        // words of each table depend on words outside it, so those
+        // are computed in the scratch space and copied over.
+        expand(expansion, IV_WORDS + KEY_WORDS, PTABLE_START + WINDOW, 0);
+        System.arraycopy(expansion, PTABLE_START, ptable, 0, WINDOW);
+        expand(ptable, WINDOW, TABLE_SIZE, PTABLE_START);
+        System.arraycopy(ptable, TABLE_SIZE - WINDOW, expansion, 0, WINDOW);
+        expand(expansion, WINDOW, WINDOW * 2, QTABLE_START - WINDOW);
+        System.arraycopy(expansion, WINDOW, qtable, 0, WINDOW);
+        expand(qtable, WINDOW, TABLE_SIZE, QTABLE_START);
+        Arrays.fill(expansion, 0);
+
+        // Run the cipher 4096 steps, a whole table at a time.
+        updateP(0, TABLE_SIZE);
+        updateQ(0, TABLE_SIZE);
+        updateP(0, TABLE_SIZE);
+        updateQ(0, TABLE_SIZE);
+    }
+
+    /**
+     * Compute words of the key expansion in place.  Word {@code i}
+     * of the expansion is at {@code i - base} in {@code w}.
+     *
+     * @param w The array holding the expansion.
+     * @param from The first index in {@code w} to compute.
+     * @param to The index in {@code w} at which to stop.
+     * @param base The expansion index of {@code w[0]}.
+     */
+    private static void expand(final int[] w,
+                               final int from,
+                               final int to,
+                               final int base) {
+        for(int i = from; i < to; i++) {
+            w[i] = f2(w[i - 2]) + w[i - 7] + f1(w[i - 15]) + w[i - 16] +
+                   base + i;
+        }
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    protected final void updateP(final int start,
+                                 final int end) {
+        final int head = Math.min(end, 10);
+        final int body = Math.min(end, TABLE_MASK);
+        int j = start;
+
+        for(; j < head; j++) {
+            ptable[j] += ptable[(j - 10) & TABLE_MASK] +
+                         g1(ptable[(j - 3) & TABLE_MASK], ptable[j + 1]);
+        }
+
+        for(; j < body; j++) {
+            ptable[j] += ptable[j - 10] + g1(ptable[j - 3], ptable[j + 1]);
+        }
+
+        for(; j < end; j++) {
+            ptable[j] += ptable[j - 10] + g1(ptable[j - 3], ptable[0]);
+        }
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    protected final void updateQ(final int start,
+                                 final int end) {
+        final int head = Math.min(end, 10);
+        final int body = Math.min(end, TABLE_MASK);
+        int j = start;
+
+        for(; j < head; j++) {
+            qtable[j] += qtable[(j - 10) & TABLE_MASK] +
+                         g2(qtable[(j - 3) & TABLE_MASK], qtable[j + 1]);
+        }
+
+        for(; j < body; j++) {
+            qtable[j] += qtable[j - 10] + g2(qtable[j - 3], qtable[j + 1]);
+        }
+
+        for(; j < end; j++) {
+            qtable[j] += qtable[j - 10] + g2(qtable[j - 3], qtable[0]);
+        }
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    protected final void generateP(final int start,
+                                   final int end,
+                                   final byte[] out,
+                                   final int outOffset) {
+        final int head = Math.min(end, 12);
+        final int body = Math.min(end, TABLE_MASK);
+        int j = start;
+        int o = outOffset;
+
+        for(; j < head; j++, o += 4) {
+            store(out, o, stepP(j));
         }
 
-        for(int i = IV_WORDS + KEY_WORDS; i < INIT_SIZE; i++) {
-            data[i] = f2(data[i - 2]) + data[i - 7] +
-                f1(data[i - 15]) + data[i - 16] + i;
+        for(; j < body; j++, o += 4) {
+            final int p = ptable[j] + ptable[j - 10] +
+                          g1(ptable[j - 3], ptable[j + 1]);
+
+            ptable[j] = p;
+            store(out, o, h1(ptable[j - 12]) ^ p);
         }
 
-        for(int i = 0; i < TABLE_SIZE; i++) {
-            ptable[i] = data[i + 512];
+        for(; j < end; j++, o += 4) {
+            store(out, o, stepP(j));
         }
+    }
 
-        for(int i = 0; i < TABLE_SIZE; i++) {
-            qtable[i] = data[i + 1536];
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    protected final void generateQ(final int start,
+                                   final int end,
+                                   final byte[] out,
+                                   final int outOffset) {
+        final int head = Math.min(end, 12);
+        final int body = Math.min(end, TABLE_MASK);
+        int j = start;
+        int o = outOffset;
+
+        for(; j < head; j++, o += 4) {
+            store(out, o, stepQ(j));
         }
 
-        Arrays.fill(data, 0);
-        blockOffset = 0;
-        idx = 0;
+        for(; j < body; j++, o += 4) {
+            final int q = qtable[j] + qtable[j - 10] +
+                          g2(qtable[j - 3], qtable[j + 1]);
 
-        for(int i = 0; i < 4096; i++) {
-            generateWord();
+            qtable[j] = q;
+            store(out, o, h2(qtable[j - 12]) ^ q);
+        }
+
+        for(; j < end; j++, o += 4) {
+            store(out, o, stepQ(j));
         }
     }
 
@@ -273,30 +442,26 @@ public final class HC256CipherSpi
         return (((lhs - rhs) & TABLE_MASK) + TABLE_SIZE) % TABLE_SIZE;
     }
 
-    private int generateWord() {
-        final int i = idx;
-        final int j = idx & TABLE_MASK;
-
-        idx = (idx + 1) & (2048 - 1);
-
-        if (i < 1024) {
-            ptable[j] = ptable[j] + ptable[(j - 10) & TABLE_MASK] +
-                        g1(ptable[(j - 3) & TABLE_MASK],
-                           ptable[(j - 1023) & TABLE_MASK]);
-            return h1(ptable[(j - 12) & TABLE_MASK]) ^ ptable[j];
-        } else {
-            qtable[j] = qtable[j] + qtable[(j - 10) & TABLE_MASK] +
-                        g2(qtable[(j - 3) & TABLE_MASK],
-                           qtable[(j - 1023) & TABLE_MASK]);
-            return h2(qtable[(j - 12) & TABLE_MASK]) ^ qtable[j];
-        }
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    protected final int stepP(final int j) {
+        ptable[j] = ptable[j] + ptable[(j - 10) & TABLE_MASK] +
+                    g1(ptable[(j - 3) & TABLE_MASK],
+                       ptable[(j - 1023) & TABLE_MASK]);
+        return h1(ptable[(j - 12) & TABLE_MASK]) ^ ptable[j];
     }
 
+    /**
+     * {@inheritDoc}
+     */
     @Override
-    protected void streamBlock() {
-        for(int i = 0; i < BLOCK_SIZE; i++) {
-            block[i] = generateWord();
-        }
+    protected final int stepQ(final int j) {
+        qtable[j] = qtable[j] + qtable[(j - 10) & TABLE_MASK] +
+                    g2(qtable[(j - 3) & TABLE_MASK],
+                       qtable[(j - 1023) & TABLE_MASK]);
+        return h2(qtable[(j - 12) & TABLE_MASK]) ^ qtable[j];
     }
 
     /**
@@ -304,7 +469,7 @@ public final class HC256CipherSpi
      */
     @Override
     protected final void engineInit(final Key key,
-                                    final IvParameterSpec spec)
+                                    final HCFamilyParameterSpec spec)
         throws InvalidKeyException {
         try {
             engineInit((HC256Key)key, spec);
@@ -347,50 +512,13 @@ public final class HC256CipherSpi
         }
     }
 
-    protected final void engineInit(final HC256Key key,
-                                    final AlgorithmParameterSpec spec,
-                                    final SecureRandom random)
-        throws InvalidAlgorithmParameterException {
-        if (spec instanceof IvParameterSpec) {
-            engineInit(key, (IvParameterSpec)spec);
-        } else {
-            throw new InvalidAlgorithmParameterException();
-        }
-    }
-
-    protected final void engineInit(final int opmode,
-                                    final HC256Key key,
-                                    final AlgorithmParameterSpec spec,
-                                    final SecureRandom random)
-        throws InvalidAlgorithmParameterException {
-        engineInit(key, spec, random);
-    }
-
-    protected final void engineInit(final int opmode,
-                                    final HC256Key key,
-                                    final SecureRandom random) {
-        final byte[] iv = new byte[IV_LEN];
-        random.nextBytes(iv);
-
-        engineInit(key, iv);
-    }
-
-    /**
-     * Get the {@link java.security.spec.AlgorithmParameterSpec} to
-     * initialize {@link java.security.AlgorithmParameters} from the
-     * current state of the cipher.
-     *
-     * @return A {@link IvParameterSpec} representing the
-     *         current state of the cipher.
-     */
-    protected final IvParameterSpec parameterSpec() {
-        return new IvParameterSpec(iv);
-    }
-
     /**
-     * Returns an {@link HC256ParameterSpec} containing the IV.
+     * Returns an {@link HCFamilyParameterSpec} containing the IV and
+     * current position.  Note that the position of the return value
+     * will vary if the stream is advanced.
      *
-     * @return An {@link HC256ParameterSpec} containing the IV.
+     * @return An {@link HCFamilyParameterSpec} containing the IV and
+     *         current position.
      */
     @Override
     protected final AlgorithmParameters engineGetParameters() {
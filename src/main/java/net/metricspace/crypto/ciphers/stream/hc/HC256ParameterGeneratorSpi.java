@@ -1,4 +1,4 @@
-/* Copyright (c) 2017, Eric McCorkle.  All rights reserved.
+/* Copyright (c) 2018, Eric McCorkle.  All rights reserved.
  *
  * Redistribution and use in source and binary forms, with or without
  * modification, are permitted provided that the following conditions
@@ -32,85 +32,46 @@
 package net.metricspace.crypto.ciphers.stream.hc;
 
 import java.security.AlgorithmParameters;
-import java.security.AlgorithmParameterGeneratorSpi;
-import java.security.InvalidAlgorithmParameterException;
 import java.security.NoSuchAlgorithmException;
 import java.security.NoSuchProviderException;
-import java.security.SecureRandom;
-import java.security.spec.AlgorithmParameterSpec;
-import java.security.spec.InvalidParameterSpecException;
-import java.util.Arrays;
 
-import javax.crypto.spec.IvParameterSpec;
-
-import net.metricspace.crypto.ciphers.stream.PositionParameterSpec;
 import net.metricspace.crypto.providers.KryptonProvider;
 
 /**
- * A base class for {@link
- * java.security.AlgorithmParameterGeneratorSpi} instances for the
- * HC-256 cipher.  This provides basic functionality, leaving only the
- * creation of parameter objects to subclasses.
+ * A {@link java.security.AlgorithmParameterGeneratorSpi} instance
+ * for the HC-256 cipher.
+ * <h2>Usage</h2>
+ *
+ * This class should not be used directly.  It provides the underlying
+ * implementation for the Java Cryptography Architecture (JCA).  See
+ * the {@link java.security.AlgorithmParameterGenerator} class
+ * documentation for information on how to use this parameter
+ * generator.
+ *
+ * @see net.metricspace.crypto.providers.KryptonProvider
+ * @see java.security.AlgorithmParameterGenerator
  */
 public final class HC256ParameterGeneratorSpi
-    extends AlgorithmParameterGeneratorSpi {
+    extends HCFamilyParameterGeneratorSpi {
     /**
-     * Random source to use.
+     * Initialize the generator for IVs of {@link
+     * HC256CipherSpi#IV_LEN} bytes.
      */
-    private SecureRandom random;
-
-    private AlgorithmParameters createParameters()
-        throws NoSuchProviderException {
-        try {
-            return AlgorithmParameters.getInstance(HC256CipherSpi.NAME,
-                                                   KryptonProvider.NAME);
-        } catch(final NoSuchAlgorithmException e) {
-            throw new IllegalStateException(e);
-        }
+    public HC256ParameterGeneratorSpi() {
+        super(HC256CipherSpi.IV_LEN);
     }
 
     /**
      * {@inheritDoc}
      */
     @Override
-    protected final AlgorithmParameters engineGenerateParameters() {
-        final byte[] iv = new byte[HC256CipherSpi.IV_LEN];
-        final AlgorithmParameters out;
-
+    protected final AlgorithmParameters createParameters()
+        throws NoSuchProviderException {
         try {
-            random.nextBytes(iv);
-            out = createParameters();
-            out.init(new IvParameterSpec(iv));
-
-            return out;
-        } catch(final NoSuchProviderException |
-                      InvalidParameterSpecException e) {
+            return AlgorithmParameters.getInstance(HC256CipherSpi.NAME,
+                                                   KryptonProvider.NAME);
+        } catch(final NoSuchAlgorithmException e) {
             throw new IllegalStateException(e);
-        } finally {
-            Arrays.fill(iv, (byte)0);
         }
     }
-
-    /**
-     * Initialize this generator to use the given secure random
-     * source.  The {@code size} parameter is ignored.
-     *
-     * @param size Ignored.
-     * @param random The random source to use.
-     */
-    @Override
-    protected final void engineInit(final int size,
-                                    final SecureRandom random) {
-        this.random = random;
-    }
-
-    /**
-     * {@inheritDoc}
-     */
-    @Override
-    protected final void engineInit(final AlgorithmParameterSpec spec,
-                                    final SecureRandom random)
-        throws InvalidAlgorithmParameterException {
-        throw new InvalidAlgorithmParameterException();
-    }
 }
@@ -1,4 +1,4 @@
-/* Copyright (c) 2017, Eric McCorkle.  All rights reserved.
+/* Copyright (c) 2018, Eric McCorkle.  All rights reserved.
  *
  * Redistribution and use in source and binary forms, with or without
  * modification, are permitted provided that the following conditions
@@ -31,126 +31,16 @@
  */
 package net.metricspace.crypto.ciphers.stream.hc;
 
-import java.security.AlgorithmParametersSpi;
-import java.security.spec.AlgorithmParameterSpec;
-import java.security.spec.InvalidParameterSpecException;
-import java.util.Arrays;
-
-import javax.crypto.spec.IvParameterSpec;
-
-import net.metricspace.crypto.ciphers.stream.PositionParameterSpec;
-
 /**
  * The {@link java.security.AlgorithmParametersSpi} implementation for the
  * HC-256 cipher.
  */
-public final class HC256ParametersSpi extends AlgorithmParametersSpi {
-    /**
-     * The initialization vector.
-     */
-    private final byte[] iv = new byte[HC256CipherSpi.IV_LEN];
-
-    /**
-     * {@inheritDoc}
-     */
-    @Override
-    protected byte[] engineGetEncoded() {
-        return iv.clone();
-    }
-
-    /**
-     * {@inheritDoc}
-     */
-    @Override
-    protected byte[] engineGetEncoded(final String format) {
-        return engineGetEncoded();
-    }
-
-    /**
-     * Get a {@link HC256ParameterSpec} instance describing
-     * these parameters.  Valid arguments are {@link
-     * SalsaFamilyParameterSpec}, {@link PositionParameterSpec}, or
-     * {@link IvParameterSpec}.  A {@link HC256ParameterSpec}
-     * instance is returned regardless, as {@link
-     * HC256ParameterSpec} extends both {@link
-     * PositionParameterSpec} and {@link IvParameterSpec}
-     *
-     * @param paramSpec Either {@link HC256ParameterSpec},
-     *                  {@link PositionParameterSpec}, or {@link
-     *                  IvParameterSpec}.
-     * @return A {@link HC256ParameterSpec} instance describing
-     * these parameters
-     */
-    @Override
-    protected <T extends AlgorithmParameterSpec>
-        T engineGetParameterSpec(final Class<T> paramSpec)
-        throws InvalidParameterSpecException {
-        if (paramSpec.equals(IvParameterSpec.class)) {
-            return paramSpec.cast(new IvParameterSpec(iv));
-        } else {
-            throw new InvalidParameterSpecException();
-        }
-    }
-
+public final class HC256ParametersSpi extends HCFamilyParametersSpi {
     /**
-     * Fully initialize the parameters.
-     *
-     * @param spec The parameter spec.
+     * Initialize a {@code HC256ParametersSpi} for IVs of {@link
+     * HC256CipherSpi#IV_LEN} bytes.
      */
-    private void engineInit(final IvParameterSpec spec) {
-        engineInit(spec.getIV());
-    }
-
-    /**
-     * Initialize the parameters from a parameter spec.  If {@code
-     * spec} is an instance of {@link HC256ParameterSpec}, then
-     * the parameters are fully initialized with an IV and position.
-     * Otherwise, if {@code spec} is an instance of {@link
-     * IvParameterSpec}, then the IV is initialized from {@code spec}
-     * and the position is initialized to 0.
-     *
-     * @param spec An {@link IvParameterSpec}
-     */
-    @Override
-    protected void engineInit(final AlgorithmParameterSpec spec)
-        throws InvalidParameterSpecException {
-        if (spec instanceof IvParameterSpec) {
-            engineInit(((IvParameterSpec)spec).getIV());
-        } else {
-            throw new InvalidParameterSpecException();
-        }
-    }
-
-    /**
-     * {@inheritDoc}
-     */
-    @Override
-    protected void engineInit(final byte[] data) {
-        for(int i = 0; i < HC256CipherSpi.IV_LEN; i++) {
-            this.iv[i] = data[i];
-        }
-    }
-
-    /**
-     * {@inheritDoc}
-     */
-    @Override
-    protected void engineInit(final byte[] data,
-                              final String format) {
-        engineInit(data);
-    }
-
-    /**
-     * {@inheritDoc}
-     */
-    @Override
-    protected String engineToString() {
-        final StringBuilder sb = new StringBuilder();
-
-        for(int i = 0; i < iv.length; i++) {
-            sb.append(String.format("%02x", iv[i]));
-        }
-
-        return sb.toString();
+    public HC256ParametersSpi() {
+        super(HC256CipherSpi.IV_LEN);
     }
 }
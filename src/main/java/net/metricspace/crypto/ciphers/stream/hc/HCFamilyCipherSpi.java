@@ -0,0 +1,527 @@
+/* Copyright (c) 2018, Eric McCorkle.  All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions
+ * are met:
+ *
+ * * Redistributions of source code must retain the above copyright
+ *   notice, this list of conditions and the following disclaimer.
+ *
+ * * Redistributions in binary form must reproduce the above copyright
+ *   notice, this list of conditions and the following disclaimer in
+ *   the documentation and/or other materials provided with the
+ *   distribution.
+ *
+ * * Neither the name of the copyright holder nor the names of its
+ *   contributors may be used to endorse or promote products derived
+ *   from this software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS
+ * "AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT
+ * LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS
+ * FOR A PARTICULAR PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE
+ * COPYRIGHT HOLDER OR CONTRIBUTORS BE LIABLE FOR ANY DIRECT,
+ * INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES
+ * (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR
+ * SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION)
+ * HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT,
+ * STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED
+ * OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+package net.metricspace.crypto.ciphers.stream.hc;
+
+import java.security.InvalidAlgorithmParameterException;
+import java.security.Key;
+import java.security.SecureRandom;
+import java.security.spec.AlgorithmParameterSpec;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import javax.crypto.SecretKey;
+import javax.crypto.spec.IvParameterSpec;
+
+import net.metricspace.crypto.ciphers.stream.PositionParameterSpec;
+import net.metricspace.crypto.ciphers.stream.SeekableKeystreamCipherSpi;
+
+/**
+ * A {@link javax.crypto.CipherSpi} base class for HC family ciphers.
+ * This includes HC-128 and HC-256.  Both generate their keystream
+ * from a pair of tables, {@link #ptable} and {@link #qtable}, which
+ * are updated one word at a time, first all of {@link #ptable} and
+ * then all of {@link #qtable}.  This provides the stream position,
+ * seeking, and checkpoint handling, leaving the key setup and the
+ * table update functions up to the variants.
+ *
+ * @param <K> The type of keys.
+ */
+abstract class HCFamilyCipherSpi<K extends SecretKey & Key>
+    extends SeekableKeystreamCipherSpi<K, HCFamilyParameterSpec> {
+    /**
+     * The number of words in a stream block.
+     */
+    protected static final int BLOCK_SIZE = 16;
+
+    /**
+     * The P table.
+     */
+    protected final int[] ptable;
+
+    /**
+     * The Q table.
+     */
+    protected final int[] qtable;
+
+    /**
+     * The index of the next word to generate, counting the words of
+     * {@link #ptable} and then those of {@link #qtable}.
+     */
+    private int idx = 0;
+
+    /**
+     * The index of the next stream block that the tables will
+     * generate.
+     */
+    private long stateIdx = 0;
+
+    /**
+     * The checkpoint interval in stream blocks, or {@code 0} if
+     * checkpoints are disabled.
+     */
+    private final long checkpointBlocks;
+
+    /**
+     * Saved tables.  Checkpoint {@code k} holds the tables as they
+     * were before generating block {@code k * checkpointBlocks}.
+     * Arrays past {@link #checkpointCount} are zeroed and kept for
+     * reuse.
+     */
+    private final List<int[]> checkpoints = new ArrayList<>();
+
+    /**
+     * The number of valid entries in {@link #checkpoints}.
+     */
+    private int checkpointCount = 0;
+
+    /**
+     * Initialize the cipher engine.  The keystream lookahead covers
+     * one full pass over both tables.
+     *
+     * @param ivLen The IV length in bytes.
+     * @param tableSize The number of words in each table, which must
+     *                  be a power of two.
+     * @param checkpointInterval The checkpoint interval in bytes, or
+     *                           {@code 0} to disable checkpoints.
+     * @throws IllegalArgumentException If {@code checkpointInterval}
+     *                                  is negative.
+     */
+    protected HCFamilyCipherSpi(final int ivLen,
+                                final int tableSize,
+                                final int checkpointInterval) {
+        super(HCFamilyParameterSpec.class,
+              new int[BLOCK_SIZE], new byte[ivLen],
+              (2 * tableSize) / BLOCK_SIZE);
+
+        if (checkpointInterval < 0) {
+            throw new IllegalArgumentException("Checkpoint interval " +
+                                               "must not be negative");
+        }
+
+        this.ptable = new int[tableSize];
+        this.qtable = new int[tableSize];
+        this.checkpointBlocks =
+            (checkpointInterval + blockBytes - 1) / blockBytes;
+    }
+
+    /**
+     * Fill {@link #ptable} and {@link #qtable} from the key and IV,
+     * and run them up to the start of the stream.
+     */
+    protected abstract void initTables();
+
+    /**
+     * Generate one word of keystream from word {@code j} of {@link
+     * #ptable}, masking every index.
+     *
+     * @param j The word index in the table.
+     * @return The keystream word.
+     */
+    protected abstract int stepP(final int j);
+
+    /**
+     * Generate one word of keystream from word {@code j} of {@link
+     * #qtable}, masking every index.
+     *
+     * @param j The word index in the table.
+     * @return The keystream word.
+     */
+    protected abstract int stepQ(final int j);
+
+    /**
+     * Update words {@code start} to {@code end} of {@link #ptable}
+     * without producing output, as the corresponding calls to {@link
+     * #stepP} would.  Only the first and last few words wrap around
+     * the table, so only those need their indices masked.
+     *
+     * @param start The first word to update.
+     * @param end The word at which to stop.
+     */
+    protected abstract void updateP(final int start,
+                                    final int end);
+
+    /**
+     * Update words {@code start} to {@code end} of {@link #qtable}
+     * without producing output, as the corresponding calls to {@link
+     * #stepQ} would.  Only the first and last few words wrap around
+     * the table, so only those need their indices masked.
+     *
+     * @param start The first word to update.
+     * @param end The word at which to stop.
+     */
+    protected abstract void updateQ(final int start,
+                                    final int end);
+
+    /**
+     * Generate keystream from words {@code start} to {@code end} of
+     * {@link #ptable}, as the corresponding calls to {@link #stepP}
+     * would.  Only the first and last few words wrap around the
+     * table, so only those need their indices masked.
+     *
+     * @param start The first word to update.
+     * @param end The word at which to stop.
+     * @param out The array into which to write the keystream.
+     * @param outOffset The offset at which to start writing.
+     */
+    protected abstract void generateP(final int start,
+                                      final int end,
+                                      final byte[] out,
+                                      final int outOffset);
+
+    /**
+     * Generate keystream from words {@code start} to {@code end} of
+     * {@link #qtable}, as the corresponding calls to {@link #stepQ}
+     * would.  Only the first and last few words wrap around the
+     * table, so only those need their indices masked.
+     *
+     * @param start The first word to update.
+     * @param end The word at which to stop.
+     * @param out The array into which to write the keystream.
+     * @param outOffset The offset at which to start writing.
+     */
+    protected abstract void generateQ(final int start,
+                                      final int end,
+                                      final byte[] out,
+                                      final int outOffset);
+
+    /**
+     * Write a little-endian word into a byte array.
+     *
+     * @param out The byte array.
+     * @param offset The offset of the word.
+     * @param word The word.
+     */
+    protected static void store(final byte[] out,
+                                final int offset,
+                                final int word) {
+        out[offset] = (byte)word;
+        out[offset + 1] = (byte)(word >>> 8);
+        out[offset + 2] = (byte)(word >>> 16);
+        out[offset + 3] = (byte)(word >>> 24);
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    protected final void initState() {
+        for(int i = 0; i < checkpointCount; i++) {
+            Arrays.fill(checkpoints.get(i), 0);
+        }
+
+        checkpointCount = 0;
+        resetTables();
+    }
+
+    /**
+     * Bring the tables back to the start of the stream.
+     */
+    private void resetTables() {
+        initTables();
+        idx = 0;
+        stateIdx = 0;
+    }
+
+    /**
+     * Generate the next word of keystream.
+     *
+     * @return The keystream word.
+     */
+    private int generateWord() {
+        final int size = ptable.length;
+        final int i = idx;
+
+        idx = (idx + 1) & ((2 * size) - 1);
+
+        if (i < size) {
+            return stepP(i);
+        } else {
+            return stepQ(i - size);
+        }
+    }
+
+    /**
+     * Generate {@code nwords} words of keystream, a table span at a
+     * time.
+     *
+     * @param out The array into which to write the keystream.
+     * @param outOffset The offset at which to start writing.
+     * @param nwords The number of words to generate.
+     */
+    private void generateWords(final byte[] out,
+                               final int outOffset,
+                               final int nwords) {
+        final int size = ptable.length;
+
+        for(int i = 0; i < nwords;) {
+            final int j = idx & (size - 1);
+            final int n = Math.min(nwords - i, size - j);
+
+            if (idx < size) {
+                generateP(j, j + n, out, outOffset + (4 * i));
+            } else {
+                generateQ(j, j + n, out, outOffset + (4 * i));
+            }
+
+            idx = (idx + n) & ((2 * size) - 1);
+            i += n;
+        }
+    }
+
+    /**
+     * Advance by {@code nwords} words without producing output, a
+     * table span at a time.
+     *
+     * @param nwords The number of words to skip.
+     */
+    private void skipWords(final long nwords) {
+        final int size = ptable.length;
+
+        for(long i = 0; i < nwords;) {
+            final int j = idx & (size - 1);
+            final int n = (int)Math.min(nwords - i, size - j);
+
+            if (idx < size) {
+                updateP(j, j + n);
+            } else {
+                updateQ(j, j + n);
+            }
+
+            idx = (idx + n) & ((2 * size) - 1);
+            i += n;
+        }
+    }
+
+    /**
+     * Get the number of blocks that can be generated before the next
+     * checkpoint, up to a limit.
+     *
+     * @param limit The most blocks wanted.
+     * @return The number of blocks to generate in one run.
+     */
+    private long runLength(final long limit) {
+        if (checkpointBlocks > 0) {
+            return Math.min(limit,
+                            checkpointBlocks - (stateIdx % checkpointBlocks));
+        } else {
+            return limit;
+        }
+    }
+
+    /**
+     * Bring the tables to the state for generating stream block
+     * {@code target}, restoring a checkpoint if that is closer than
+     * the current state.  Checkpoints are recorded along the way.
+     *
+     * @param target The stream block index.
+     */
+    private void seek(final long target) {
+        final int size = ptable.length;
+
+        if (checkpointBlocks > 0 && checkpointCount > 0) {
+            final int k = (int)Math.min(target / checkpointBlocks,
+                                        checkpointCount - 1);
+            final long start = k * checkpointBlocks;
+
+            if (target < stateIdx || start > stateIdx) {
+                final int[] checkpoint = checkpoints.get(k);
+
+                System.arraycopy(checkpoint, 0, ptable, 0, size);
+                System.arraycopy(checkpoint, size, qtable, 0, size);
+                stateIdx = start;
+                // The word index only depends on the stream position.
+                idx = (int)((start * BLOCK_SIZE) & ((2 * size) - 1));
+            }
+        } else if (target < stateIdx) {
+            resetTables();
+        }
+
+        while (stateIdx < target) {
+            checkpoint();
+
+            final long n = runLength(target - stateIdx);
+
+            skipWords(n * BLOCK_SIZE);
+            stateIdx += n;
+        }
+    }
+
+    /**
+     * Save the tables if checkpoints are enabled and the next block
+     * starts a checkpoint interval that has not been saved yet.
+     */
+    private void checkpoint() {
+        if (checkpointBlocks > 0 && stateIdx % checkpointBlocks == 0 &&
+            stateIdx / checkpointBlocks == checkpointCount) {
+            final int size = ptable.length;
+
+            if (checkpointCount == checkpoints.size()) {
+                checkpoints.add(new int[size * 2]);
+            }
+
+            final int[] checkpoint = checkpoints.get(checkpointCount);
+
+            System.arraycopy(ptable, 0, checkpoint, 0, size);
+            System.arraycopy(qtable, 0, checkpoint, size, size);
+            checkpointCount++;
+        }
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    protected final void streamBlock() {
+        if (stateIdx != blockIdx) {
+            seek(blockIdx);
+        }
+
+        checkpoint();
+
+        for(int i = 0; i < BLOCK_SIZE; i++) {
+            block[i] = generateWord();
+        }
+
+        stateIdx++;
+    }
+
+    /**
+     * Generate the stream blocks a table span at a time, rather than
+     * a word at a time as {@link #streamBlock} does.
+     *
+     * @param out The array into which to write the keystream.
+     * @param outOffset The offset at which to start writing.
+     * @param nblocks The number of stream blocks to compute.
+     */
+    @Override
+    protected final void streamBlocks(final byte[] out,
+                                      final int outOffset,
+                                      final int nblocks) {
+        if (stateIdx != blockIdx) {
+            seek(blockIdx);
+        }
+
+        for(int i = 0; i < nblocks;) {
+            checkpoint();
+
+            final int n = (int)runLength(nblocks - i);
+
+            generateWords(out, outOffset + (i * blockBytes),
+                          n * BLOCK_SIZE);
+            stateIdx += n;
+            i += n;
+        }
+    }
+
+    /**
+     * Initialize from a well-typed key and a generally-typed spec.
+     * If {@code spec} is a {@link HCFamilyParameterSpec}, both the IV
+     * and position will be initialized.  If {@code spec} is an {@link
+     * IvParameterSpec}, the IV will be initialized and the position
+     * will be set to {@code 0}.  If {@code spec} is a {@link
+     * PositionParameterSpec}, the position will be initialized and
+     * the IV will be initialized from {@code random}.  Otherwise, an
+     * {@link InvalidAlgorithmParameterException} will be thrown.
+     *
+     * @param key The key.
+     * @param spec The parameter spec.
+     * @param random The random source for the IV.
+     * @throws InvalidAlgorithmParameterException if {@code spec} is
+     * not a {@link HCFamilyParameterSpec}, an {@link
+     * IvParameterSpec}, or a {@link PositionParameterSpec}, or if the
+     * IV is the wrong length.
+     */
+    protected final void engineInit(final K key,
+                                    final AlgorithmParameterSpec spec,
+                                    final SecureRandom random)
+        throws InvalidAlgorithmParameterException {
+        if (spec instanceof IvParameterSpec &&
+            ((IvParameterSpec)spec).getIV().length != iv.length) {
+            throw new InvalidAlgorithmParameterException("IV must be " +
+                                                         iv.length +
+                                                         " bytes");
+        }
+
+        if (spec instanceof HCFamilyParameterSpec) {
+            engineInit(key, (HCFamilyParameterSpec)spec);
+        } else if (spec instanceof IvParameterSpec) {
+            engineInit(key, 0, (IvParameterSpec)spec);
+        } else if (spec instanceof PositionParameterSpec) {
+            engineInit(key, ((PositionParameterSpec)spec).getPosition(),
+                       random);
+        } else {
+            throw new InvalidAlgorithmParameterException();
+        }
+    }
+
+    protected final void engineInit(final int opmode,
+                                    final K key,
+                                    final AlgorithmParameterSpec spec,
+                                    final SecureRandom random)
+        throws InvalidAlgorithmParameterException {
+        engineInit(key, spec, random);
+    }
+
+    protected final void engineInit(final int opmode,
+                                    final K key,
+                                    final SecureRandom random) {
+        final byte[] iv = new byte[this.iv.length];
+        random.nextBytes(iv);
+
+        engineInit(key, iv);
+    }
+
+    /**
+     * Returns {@code false}, as reaching a position means stepping
+     * the tables through every block before it.  Checkpoints only
+     * make seeking backward cheaper.
+     *
+     * @return {@code false}.
+     */
+    @Override
+    protected final boolean isRandomAccess() {
+        return false;
+    }
+
+    /**
+     * Get the {@link java.security.spec.AlgorithmParameterSpec} to
+     * initialize {@link java.security.AlgorithmParameters} from the
+     * current state of the cipher.
+     *
+     * @return A {@link HCFamilyParameterSpec} representing the
+     *         current state of the cipher.
+     */
+    protected final HCFamilyParameterSpec parameterSpec() {
+        return new HCFamilyParameterSpec(iv, position());
+    }
+}
@@ -0,0 +1,231 @@
+/* Copyright (c) 2017, Eric McCorkle.  All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions
+ * are met:
+ *
+ * * Redistributions of source code must retain the above copyright
+ *   notice, this list of conditions and the following disclaimer.
+ *
+ * * Redistributions in binary form must reproduce the above copyright
+ *   notice, this list of conditions and the following disclaimer in
+ *   the documentation and/or other materials provided with the
+ *   distribution.
+ *
+ * * Neither the name of the copyright holder nor the names of its
+ *   contributors may be used to endorse or promote products derived
+ *   from this software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS
+ * "AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT
+ * LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS
+ * FOR A PARTICULAR PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE
+ * COPYRIGHT HOLDER OR CONTRIBUTORS BE LIABLE FOR ANY DIRECT,
+ * INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES
+ * (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR
+ * SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION)
+ * HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT,
+ * STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED
+ * OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+package net.metricspace.crypto.ciphers.stream.hc;
+
+import java.io.IOException;
+import java.security.AlgorithmParametersSpi;
+import java.security.spec.AlgorithmParameterSpec;
+import java.security.spec.InvalidParameterSpecException;
+import java.util.Arrays;
+
+import javax.crypto.spec.IvParameterSpec;
+
+import net.metricspace.crypto.ciphers.stream.PositionParameterSpec;
+
+/**
+ * A base class for {@link java.security.AlgorithmParametersSpi}
+ * implementations for HC family ciphers, which differ only in the
+ * length of their IV.
+ */
+abstract class HCFamilyParametersSpi extends AlgorithmParametersSpi {
+    /**
+     * The initialization vector.
+     */
+    private final byte[] iv;
+
+    /**
+     * The stream position in bytes.
+     */
+    private long pos;
+
+    /**
+     * Initialize a {@code HCFamilyParametersSpi} for ciphers using an
+     * IV of a given length.
+     *
+     * @param ivLen The IV length in bytes.
+     */
+    protected HCFamilyParametersSpi(final int ivLen) {
+        this.iv = new byte[ivLen];
+    }
+
+    /**
+     * Get the encoding of these parameters, which is the IV followed
+     * by the position as an 8-byte little-endian integer.
+     *
+     * @return The encoded parameters.
+     */
+    @Override
+    protected byte[] engineGetEncoded() {
+        final int posstart = iv.length;
+        final byte[] out = Arrays.copyOf(iv, posstart + 8);
+
+        for(int i = 0; i < 8; i++) {
+            out[posstart + i] = (byte)(pos >>> (8 * i));
+        }
+
+        return out;
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    protected byte[] engineGetEncoded(final String format) {
+        return engineGetEncoded();
+    }
+
+    /**
+     * Get a {@link HCFamilyParameterSpec} instance describing these
+     * parameters.  Valid arguments are {@link HCFamilyParameterSpec},
+     * {@link PositionParameterSpec}, or {@link IvParameterSpec}.  A
+     * {@link HCFamilyParameterSpec} instance is returned regardless,
+     * as {@link HCFamilyParameterSpec} extends both {@link
+     * PositionParameterSpec} and {@link IvParameterSpec}
+     *
+     * @param paramSpec Either {@link HCFamilyParameterSpec}, {@link
+     *                  PositionParameterSpec}, or {@link
+     *                  IvParameterSpec}.
+     * @return A {@link HCFamilyParameterSpec} instance describing
+     * these parameters
+     */
+    @Override
+    protected <T extends AlgorithmParameterSpec>
+        T engineGetParameterSpec(final Class<T> paramSpec)
+        throws InvalidParameterSpecException {
+        if (paramSpec.equals(HCFamilyParameterSpec.class) ||
+            paramSpec.equals(PositionParameterSpec.class) ||
+            paramSpec.equals(IvParameterSpec.class)) {
+            return paramSpec.cast(new HCFamilyParameterSpec(iv, pos));
+        } else {
+            throw new InvalidParameterSpecException();
+        }
+    }
+
+    /**
+     * Set the parameters from raw values.
+     *
+     * @param iv The IV.
+     * @param pos The position in bytes.
+     * @throws InvalidParameterSpecException If {@code iv} is the
+     *                                       wrong length.
+     */
+    private void engineInit(final byte[] iv,
+                            final long pos)
+        throws InvalidParameterSpecException {
+        if (iv.length != this.iv.length) {
+            throw new InvalidParameterSpecException("IV must be " +
+                                                    this.iv.length +
+                                                    " bytes");
+        }
+
+        for(int i = 0; i < this.iv.length; i++) {
+            this.iv[i] = iv[i];
+        }
+
+        this.pos = pos;
+    }
+
+    /**
+     * Initialize the parameters from a parameter spec.  If {@code
+     * spec} is an instance of {@link HCFamilyParameterSpec}, then
+     * the parameters are fully initialized with an IV and position.
+     * Otherwise, if {@code spec} is an instance of {@link
+     * IvParameterSpec}, then the IV is initialized from {@code spec}
+     * and the position is initialized to 0.
+     *
+     * @param spec Either a {@link HCFamilyParameterSpec} or an
+     *             {@link IvParameterSpec}
+     */
+    @Override
+    protected void engineInit(final AlgorithmParameterSpec spec)
+        throws InvalidParameterSpecException {
+        if (spec instanceof HCFamilyParameterSpec) {
+            final HCFamilyParameterSpec hcspec =
+                (HCFamilyParameterSpec)spec;
+
+            engineInit(hcspec.getIV(), hcspec.getPosition());
+        } else if (spec instanceof IvParameterSpec) {
+            engineInit(((IvParameterSpec)spec).getIV(), 0);
+        } else {
+            throw new InvalidParameterSpecException();
+        }
+    }
+
+    /**
+     * Initialize the parameters from their encoding.  An encoding
+     * consisting of the IV alone is also accepted, with a position of
+     * {@code 0}.
+     *
+     * @param data The encoded parameters.
+     * @throws IOException If {@code data} is the wrong length.
+     */
+    @Override
+    protected void engineInit(final byte[] data)
+        throws IOException {
+        final int posstart = iv.length;
+        long pos = 0;
+
+        if (data.length == posstart + 8) {
+            for(int i = 7; i >= 0; i--) {
+                pos = (pos << 8) | (data[posstart + i] & 0xffL);
+            }
+        } else if (data.length != posstart) {
+            throw new IOException("Encoded parameters must be " +
+                                  posstart + " or " + (posstart + 8) +
+                                  " bytes");
+        }
+
+        try {
+            engineInit(Arrays.copyOf(data, posstart), pos);
+        } catch(final InvalidParameterSpecException e) {
+            throw new IOException(e);
+        }
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    protected void engineInit(final byte[] data,
+                              final String format)
+        throws IOException {
+        engineInit(data);
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    protected String engineToString() {
+        final StringBuilder sb = new StringBuilder();
+
+        sb.append("pos: ");
+        sb.append(pos);
+        sb.append(" iv: ");
+
+        for(int i = 0; i < iv.length; i++) {
+            sb.append(String.format("%02x", iv[i]));
+        }
+
+        return sb.toString();
+    }
+}
@@ -196,6 +196,58 @@ public final class ChaCha20CipherSpi
         return out;
     }
 
+    /**
+     * Initialize for the RFC 8439 layout, which uses a 12-byte nonce
+     * and a 32-bit block counter.  RFC 8439 places the counter in
+     * state word 12 and the nonce in words 13 to 15, whereas this
+     * cipher places a 64-bit block index in words 12 and 13 and the
+     * IV in words 14 and 15.  Putting the first nonce word in the
+     * upper half of the block index and the rest in the IV gives the
+     * same state, so long as the 32-bit counter does not wrap.
+     *
+     * @param key The key.
+     * @param nonce The 12-byte nonce.
+     * @param counter The initial block counter.
+     */
+    void initIETF(final ChaCha20Key key,
+                  final byte[] nonce,
+                  final int counter) {
+        System.arraycopy(nonce, 4, iv, 0, IV_LEN);
+        this.key = key;
+        initState();
+        discardKeystream();
+        blockIdx = (((long)littleEndianWord(nonce, 0)) << 32) |
+                   (counter & 0xffffffffL);
+        blockOffset = 0;
+    }
+
+    /**
+     * XOR data with the keystream, advancing the stream.
+     *
+     * @param input The input array.
+     * @param inputOffset The offset of the input.
+     * @param inputLen The length of the input.
+     * @param output The output array.
+     * @param outputOffset The offset of the output.
+     */
+    void crypt(final byte[] input,
+               final int inputOffset,
+               final int inputLen,
+               final byte[] output,
+               final int outputOffset) {
+        engineUpdate(input, inputOffset, inputLen, output, outputOffset);
+    }
+
+    /**
+     * Discard the key, the state template, and any precomputed
+     * keystream.
+     */
+    void clear() {
+        key = null;
+        discardTemplate();
+        discardKeystream();
+    }
+
     /**
      * {@inheritDoc}
      */
@@ -212,4 +264,12 @@ public final class ChaCha20CipherSpi
         doubleRound();
         doubleRound();
     }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    protected final void wideRounds() {
+        wideRounds(10);
+    }
 }
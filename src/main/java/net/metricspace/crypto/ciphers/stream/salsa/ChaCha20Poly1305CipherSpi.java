@@ -0,0 +1,857 @@
+/* Copyright (c) 2018, Eric McCorkle.  All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions
+ * are met:
+ *
+ * * Redistributions of source code must retain the above copyright
+ *   notice, this list of conditions and the following disclaimer.
+ *
+ * * Redistributions in binary form must reproduce the above copyright
+ *   notice, this list of conditions and the following disclaimer in
+ *   the documentation and/or other materials provided with the
+ *   distribution.
+ *
+ * * Neither the name of the copyright holder nor the names of its
+ *   contributors may be used to endorse or promote products derived
+ *   from this software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS
+ * "AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT
+ * LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS
+ * FOR A PARTICULAR PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE
+ * COPYRIGHT HOLDER OR CONTRIBUTORS BE LIABLE FOR ANY DIRECT,
+ * INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES
+ * (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR
+ * SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION)
+ * HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT,
+ * STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED
+ * OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+package net.metricspace.crypto.ciphers.stream.salsa;
+
+import java.nio.ByteBuffer;
+
+import java.security.AlgorithmParameters;
+import java.security.InvalidAlgorithmParameterException;
+import java.security.InvalidKeyException;
+import java.security.Key;
+import java.security.NoSuchAlgorithmException;
+import java.security.NoSuchProviderException;
+import java.security.SecureRandom;
+import java.security.spec.AlgorithmParameterSpec;
+import java.security.spec.InvalidParameterSpecException;
+import java.util.Arrays;
+
+import javax.crypto.AEADBadTagException;
+import javax.crypto.Cipher;
+import javax.crypto.CipherSpi;
+import javax.crypto.NoSuchPaddingException;
+import javax.crypto.ShortBufferException;
+import javax.crypto.spec.IvParameterSpec;
+
+import net.metricspace.crypto.common.ByteBuffers;
+import net.metricspace.crypto.macs.poly1305.Poly1305;
+import net.metricspace.crypto.providers.KryptonProvider;
+
+/**
+ * The ChaCha20-Poly1305 authenticated cipher, as specified in RFC
+ * 8439.  This combines the {@link ChaCha20CipherSpi} keystream with
+ * the {@link Poly1305} authenticator, keyed from the first block of
+ * the keystream.
+ * <p>
+ * Data is processed in a single pass: each tile of up to {@link
+ * #TILE_BYTES} bytes is XORed with the keystream and absorbed into
+ * the authenticator while it is still in cache, rather than walking
+ * the whole message twice.
+ * <p>
+ * Keys are the same as {@link ChaCha20CipherSpi} keys.  Parameters
+ * are an {@link IvParameterSpec} holding a 12-byte nonce; if none is
+ * given for encryption, a random nonce is generated.  Additional
+ * authenticated data must be supplied with {@code updateAAD} before
+ * any ciphertext or plaintext.
+ * <p>
+ * When decrypting, {@code update} releases plaintext as it goes,
+ * holding back only the last 16 bytes seen, which may be the tag.
+ * This means the whole ciphertext is never buffered, but it also
+ * means that plaintext returned by {@code update} is not
+ * authenticated until {@code doFinal} succeeds.  Callers that cannot
+ * tolerate this should pass the whole ciphertext to {@code doFinal},
+ * which wipes its output if the tag does not match.
+ * <p>
+ * After {@code doFinal}, a decrypting cipher may be reused with the
+ * same key and nonce, but an encrypting cipher must be initialized
+ * again with a new nonce.  Initializing for encryption with the same
+ * key and nonce as the previous encryption is rejected.
+ */
+public final class ChaCha20Poly1305CipherSpi extends CipherSpi {
+    /**
+     * The name of this cipher.
+     */
+    public static final String NAME = "ChaCha20-Poly1305";
+
+    /**
+     * Length of the nonce in bytes.
+     */
+    public static final int NONCE_LEN = 12;
+
+    /**
+     * Length of the tag in bytes.
+     */
+    public static final int TAG_LEN = Poly1305.TAG_BYTES;
+
+    /**
+     * Size of the tiles in which data is encrypted and authenticated.
+     */
+    static final int TILE_BYTES = 4096;
+
+    /**
+     * Maximum length of a message, set by the 32-bit block counter.
+     */
+    private static final long MAX_MESSAGE_LEN = ((1L << 32) - 1) * 64;
+
+    /**
+     * The underlying keystream.
+     */
+    private final ChaCha20CipherSpi engine = new ChaCha20CipherSpi();
+
+    /**
+     * The authenticator.
+     */
+    private final Poly1305 poly = new Poly1305();
+
+    /**
+     * The nonce.
+     */
+    private final byte[] nonce = new byte[NONCE_LEN];
+
+    /**
+     * When decrypting, the trailing bytes which may be the tag.  When
+     * finishing, this holds the computed tag.
+     */
+    private final byte[] held = new byte[TAG_LEN];
+
+    /**
+     * Scratch space for the one-time key and the length block.
+     */
+    private final byte[] scratch = new byte[64];
+
+    /**
+     * Input tile for {@link ByteBuffer}s that are not array-backed.
+     */
+    private byte[] tileIn;
+
+    /**
+     * Output tile for {@link ByteBuffer}s that are not array-backed.
+     */
+    private byte[] tileOut;
+
+    /**
+     * The key.
+     */
+    private ChaCha20CipherSpi.ChaCha20Key key;
+
+    /**
+     * Key data from the last initialization for encryption.
+     */
+    private final int[] lastKey = new int[8];
+
+    /**
+     * Nonce from the last initialization for encryption.
+     */
+    private final byte[] lastNonce = new byte[NONCE_LEN];
+
+    /**
+     * Whether {@link #lastKey} and {@link #lastNonce} are set.
+     */
+    private boolean lastSet;
+
+    /**
+     * Whether the cipher is encrypting.
+     */
+    private boolean encrypting;
+
+    /**
+     * Whether the cipher needs to be initialized before use.
+     */
+    private boolean needsInit = true;
+
+    /**
+     * Whether the additional authenticated data is complete.
+     */
+    private boolean aadDone;
+
+    /**
+     * Length of the additional authenticated data.
+     */
+    private long aadLen;
+
+    /**
+     * Length of the text processed so far, not counting held bytes.
+     */
+    private long textLen;
+
+    /**
+     * Number of bytes in {@link #held}.
+     */
+    private int heldLen;
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    protected int engineGetBlockSize() {
+        return 1;
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    protected byte[] engineGetIV() {
+        return Arrays.copyOf(nonce, nonce.length);
+    }
+
+    /**
+     * Get the output size for the next {@code doFinal} with an input
+     * of {@code inputLen} bytes.  This is also an upper bound for the
+     * next {@code update}.
+     *
+     * @param inputLen The input length.
+     * @return The output size.
+     */
+    @Override
+    protected int engineGetOutputSize(final int inputLen) {
+        if (encrypting) {
+            return inputLen + TAG_LEN;
+        } else {
+            return Math.max(0, heldLen + inputLen - TAG_LEN);
+        }
+    }
+
+    /**
+     * Returns an {@link AlgorithmParameters} containing the nonce.
+     *
+     * @return An {@link AlgorithmParameters} containing the nonce.
+     */
+    @Override
+    protected AlgorithmParameters engineGetParameters() {
+        final AlgorithmParameters out;
+
+        try {
+            out = AlgorithmParameters.getInstance(NAME,
+                                                  KryptonProvider.NAME);
+            out.init(new IvParameterSpec(nonce));
+        } catch(final NoSuchAlgorithmException e) {
+            throw new IllegalStateException(e);
+        } catch(final NoSuchProviderException e) {
+            throw new IllegalStateException(e);
+        } catch(final InvalidParameterSpecException e) {
+            throw new IllegalStateException(e);
+        }
+
+        return out;
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    protected void engineSetMode(final String mode)
+        throws NoSuchAlgorithmException {
+        throw new NoSuchAlgorithmException("This engine does " +
+                                           "not support modes");
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    protected void engineSetPadding(final String padding)
+        throws NoSuchPaddingException {
+        if (!padding.equals("NoPadding")) {
+            throw new NoSuchPaddingException("ChaCha20-Poly1305 does " +
+                                             "not support padding");
+        }
+    }
+
+    /**
+     * Initialize with a key and nonce.
+     *
+     * @param opmode The operation mode.
+     * @param key The key.
+     * @param nonce The nonce, or {@code null} to generate one.
+     * @param random The random source for generating a nonce.
+     * @throws InvalidKeyException If {@code key} is not a ChaCha20
+     *         key, or if encrypting with the same key and nonce as the
+     *         last encryption.
+     * @throws InvalidAlgorithmParameterException If the nonce is
+     *         missing when decrypting, or is the wrong length.
+     */
+    private void engineInit(final int opmode,
+                            final Key key,
+                            final byte[] nonce,
+                            final SecureRandom random)
+        throws InvalidKeyException, InvalidAlgorithmParameterException {
+        final boolean encrypting = opmode == Cipher.ENCRYPT_MODE ||
+                                   opmode == Cipher.WRAP_MODE;
+
+        if (!(key instanceof ChaCha20CipherSpi.ChaCha20Key)) {
+            throw new InvalidKeyException("Cannot accept key for " +
+                                          key.getAlgorithm());
+        }
+
+        if (nonce == null) {
+            if (!encrypting) {
+                throw new InvalidAlgorithmParameterException("Decryption " +
+                                                             "requires a " +
+                                                             "nonce");
+            }
+
+            random.nextBytes(this.nonce);
+        } else if (nonce.length != NONCE_LEN) {
+            throw new InvalidAlgorithmParameterException("Nonce must be " +
+                                                         NONCE_LEN +
+                                                         " bytes");
+        } else {
+            if (encrypting && lastSet &&
+                Arrays.equals(lastNonce, nonce) &&
+                Arrays.equals(lastKey,
+                              ((ChaCha20CipherSpi.ChaCha20Key)key)
+                              .getData())) {
+                throw new InvalidKeyException("Matching key and nonce " +
+                                              "from previous " +
+                                              "initialization");
+            }
+
+            System.arraycopy(nonce, 0, this.nonce, 0, NONCE_LEN);
+        }
+
+        if (encrypting) {
+            final int[] data = ((ChaCha20CipherSpi.ChaCha20Key)key).getData();
+
+            System.arraycopy(data, 0, lastKey, 0, lastKey.length);
+            System.arraycopy(this.nonce, 0, lastNonce, 0, NONCE_LEN);
+            lastSet = true;
+        }
+
+        this.key = (ChaCha20CipherSpi.ChaCha20Key)key;
+        this.encrypting = encrypting;
+        start();
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    protected void engineInit(final int opmode,
+                              final Key key,
+                              final SecureRandom random)
+        throws InvalidKeyException {
+        try {
+            engineInit(opmode, key, (byte[])null, random);
+        } catch(final InvalidAlgorithmParameterException e) {
+            throw new InvalidKeyException(e);
+        }
+    }
+
+    /**
+     * Initialize with a key and an {@link IvParameterSpec} holding
+     * the nonce.
+     *
+     * @param opmode The operation mode.
+     * @param key The key.
+     * @param spec An {@link IvParameterSpec} holding the nonce, or
+     *             {@code null} to generate one when encrypting.
+     * @param random The random source for generating a nonce.
+     * @throws InvalidKeyException If {@code key} is not a ChaCha20 key.
+     * @throws InvalidAlgorithmParameterException If {@code spec} is
+     *         not an {@link IvParameterSpec} with a 12-byte nonce.
+     */
+    @Override
+    protected void engineInit(final int opmode,
+                              final Key key,
+                              final AlgorithmParameterSpec spec,
+                              final SecureRandom random)
+        throws InvalidKeyException, InvalidAlgorithmParameterException {
+        if (spec == null) {
+            engineInit(opmode, key, (byte[])null, random);
+        } else if (spec instanceof IvParameterSpec) {
+            engineInit(opmode, key, ((IvParameterSpec)spec).getIV(),
+                       random);
+        } else {
+            throw new InvalidAlgorithmParameterException();
+        }
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    protected void engineInit(final int opmode,
+                              final Key key,
+                              final AlgorithmParameters params,
+                              final SecureRandom random)
+        throws InvalidKeyException, InvalidAlgorithmParameterException {
+        try {
+            final IvParameterSpec spec = params == null ? null :
+                params.getParameterSpec(IvParameterSpec.class);
+
+            engineInit(opmode, key, spec, random);
+        } catch(final InvalidParameterSpecException e) {
+            throw new InvalidAlgorithmParameterException(e);
+        }
+    }
+
+    /**
+     * Start a message: derive the one-time Poly1305 key from block 0
+     * and position the keystream at block 1.
+     */
+    private void start() {
+        Arrays.fill(scratch, (byte)0);
+        engine.initIETF(key, nonce, 0);
+        engine.crypt(scratch, 0, scratch.length, scratch, 0);
+        poly.init(scratch, 0);
+        Arrays.fill(scratch, (byte)0);
+        engine.initIETF(key, nonce, 1);
+        aadDone = false;
+        aadLen = 0;
+        textLen = 0;
+        heldLen = 0;
+        needsInit = false;
+    }
+
+    /**
+     * Check that the cipher is ready for use.
+     *
+     * @throws IllegalStateException If the cipher needs to be
+     *         initialized.
+     */
+    private void checkInit() {
+        if (needsInit) {
+            throw new IllegalStateException("Cipher must be initialized " +
+                                            "with a new nonce");
+        }
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    protected void engineUpdateAAD(final byte[] src,
+                                   final int offset,
+                                   final int len) {
+        checkInit();
+
+        if (aadDone) {
+            throw new IllegalStateException("AAD must be supplied " +
+                                            "before any text");
+        }
+
+        poly.update(src, offset, len);
+        aadLen += len;
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    protected void engineUpdateAAD(final ByteBuffer src) {
+        checkInit();
+
+        if (aadDone) {
+            throw new IllegalStateException("AAD must be supplied " +
+                                            "before any text");
+        }
+
+        aadLen += src.remaining();
+        poly.update(src);
+    }
+
+    /**
+     * Encrypt and authenticate, tile by tile.
+     *
+     * @param input The input array.
+     * @param inputOffset The offset of the input.
+     * @param len The length of the input.
+     * @param output The output array.
+     * @param outputOffset The offset of the output.
+     */
+    private void encrypt(final byte[] input,
+                         final int inputOffset,
+                         final int len,
+                         final byte[] output,
+                         final int outputOffset) {
+        for(int i = 0; i < len; i += TILE_BYTES) {
+            final int n = Math.min(TILE_BYTES, len - i);
+
+            engine.crypt(input, inputOffset + i, n,
+                         output, outputOffset + i);
+            poly.update(output, outputOffset + i, n);
+        }
+    }
+
+    /**
+     * Authenticate and decrypt, tile by tile.
+     *
+     * @param input The input array.
+     * @param inputOffset The offset of the input.
+     * @param len The length of the input.
+     * @param output The output array.
+     * @param outputOffset The offset of the output.
+     */
+    private void decrypt(final byte[] input,
+                         final int inputOffset,
+                         final int len,
+                         final byte[] output,
+                         final int outputOffset) {
+        for(int i = 0; i < len; i += TILE_BYTES) {
+            final int n = Math.min(TILE_BYTES, len - i);
+
+            poly.update(input, inputOffset + i, n);
+            engine.crypt(input, inputOffset + i, n,
+                         output, outputOffset + i);
+        }
+    }
+
+    /**
+     * Process text, holding back the last {@link #TAG_LEN} bytes when
+     * decrypting.
+     *
+     * @param input The input array.
+     * @param inputOffset The offset of the input.
+     * @param inputLen The length of the input.
+     * @param output The output array.
+     * @param outputOffset The offset of the output.
+     * @return The number of bytes written to {@code output}.
+     * @throws ShortBufferException If {@code output} is too small.
+     */
+    private int process(final byte[] input,
+                        final int inputOffset,
+                        final int inputLen,
+                        final byte[] output,
+                        final int outputOffset)
+        throws ShortBufferException {
+        final int outLen = encrypting ? inputLen :
+            Math.max(0, heldLen + inputLen - TAG_LEN);
+        final int fromHeld = encrypting ? 0 : Math.min(heldLen, outLen);
+
+        checkInit();
+
+        if (output.length - outputOffset < outLen) {
+            throw new ShortBufferException("Need " + outLen +
+                                           " bytes of output space");
+        }
+
+        if (textLen + outLen > MAX_MESSAGE_LEN) {
+            throw new IllegalStateException("Message is too long");
+        }
+
+        if (!aadDone) {
+            poly.pad();
+            aadDone = true;
+        }
+
+        // Processing runs forward, so the output must not be ahead of
+        // the input that remains to be read.
+        final byte[] in;
+        final int inOffset;
+
+        if (input == output && outputOffset + fromHeld > inputOffset &&
+            outputOffset < inputOffset + inputLen) {
+            in = Arrays.copyOfRange(input, inputOffset,
+                                    inputOffset + inputLen);
+            inOffset = 0;
+        } else {
+            in = input;
+            inOffset = inputOffset;
+        }
+
+        if (encrypting) {
+            encrypt(in, inOffset, inputLen, output, outputOffset);
+        } else {
+            final int fromInput = outLen - fromHeld;
+            final int toHold = inputLen - fromInput;
+
+            decrypt(held, 0, fromHeld, output, outputOffset);
+            System.arraycopy(held, fromHeld, held, 0, heldLen - fromHeld);
+            heldLen -= fromHeld;
+            decrypt(in, inOffset, fromInput, output,
+                    outputOffset + fromHeld);
+            if (toHold > 0) {
+                System.arraycopy(in, inOffset + fromInput, held, heldLen,
+                                 toHold);
+                heldLen += toHold;
+            }
+        }
+
+        if (in != input) {
+            Arrays.fill(in, (byte)0);
+        }
+
+        textLen += outLen;
+
+        return outLen;
+    }
+
+    /**
+     * Absorb the final padding and lengths, and compute the tag into
+     * {@link #scratch}.
+     */
+    private void finish() {
+        poly.pad();
+
+        final long[] lens = { aadLen, textLen };
+
+        for(int i = 0; i < lens.length; i++) {
+            for(int j = 0; j < 8; j++) {
+                scratch[(i * 8) + j] = (byte)(lens[i] >>> (j * 8));
+            }
+        }
+
+        poly.update(scratch, 0, 16);
+        poly.finish(scratch, 0);
+        poly.wipe();
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    protected byte[] engineUpdate(final byte[] input,
+                                  final int inputOffset,
+                                  final int inputLen) {
+        final byte[] out = new byte[engineGetOutputSize(inputLen) -
+                                    (encrypting ? TAG_LEN : 0)];
+
+        try {
+            process(input, inputOffset, inputLen, out, 0);
+        } catch(final ShortBufferException e) {
+            throw new IllegalStateException(e);
+        }
+
+        return out;
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    protected int engineUpdate(final byte[] input,
+                               final int inputOffset,
+                               final int inputLen,
+                               final byte[] output,
+                               final int outputOffset)
+        throws ShortBufferException {
+        return process(input, inputOffset, inputLen, output, outputOffset);
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    protected byte[] engineDoFinal(final byte[] input,
+                                   final int inputOffset,
+                                   final int inputLen)
+        throws AEADBadTagException {
+        checkInit();
+
+        final byte[] out = new byte[engineGetOutputSize(inputLen)];
+
+        try {
+            engineDoFinal(input, inputOffset, inputLen, out, 0);
+        } catch(final ShortBufferException e) {
+            throw new IllegalStateException(e);
+        }
+
+        return out;
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    protected int engineDoFinal(final byte[] input,
+                                final int inputOffset,
+                                final int inputLen,
+                                final byte[] output,
+                                final int outputOffset)
+        throws ShortBufferException, AEADBadTagException {
+        checkInit();
+
+        final int outLen = engineGetOutputSize(inputLen);
+
+        if (output.length - outputOffset < outLen) {
+            throw new ShortBufferException("Need " + outLen +
+                                           " bytes of output space");
+        }
+
+        if (!encrypting && heldLen + inputLen < TAG_LEN) {
+            start();
+            throw new AEADBadTagException("Input is shorter than the tag");
+        }
+
+        final int len = process(input, inputOffset, inputLen,
+                                output, outputOffset);
+
+        finish();
+
+        if (encrypting) {
+            System.arraycopy(scratch, 0, output, outputOffset + len,
+                             TAG_LEN);
+            Arrays.fill(scratch, (byte)0);
+            key = null;
+            engine.clear();
+            needsInit = true;
+
+            return len + TAG_LEN;
+        } else {
+            int diff = 0;
+
+            for(int i = 0; i < TAG_LEN; i++) {
+                diff |= scratch[i] ^ held[i];
+            }
+
+            Arrays.fill(scratch, (byte)0);
+            start();
+
+            if (diff != 0) {
+                Arrays.fill(output, outputOffset, outputOffset + len,
+                            (byte)0);
+
+                throw new AEADBadTagException("Tag mismatch");
+            }
+
+            return len;
+        }
+    }
+
+    /**
+     * Run a non-array-backed buffer operation through the tile
+     * arrays.  If {@code output} starts part way into the same
+     * memory as {@code input}, the input is copied first, as the
+     * tiles would otherwise overwrite input before it is read.
+     *
+     * @param input The input buffer.
+     * @param output The output buffer.
+     * @param last Whether to finish the message.
+     * @return The number of bytes written to {@code output}.
+     * @throws ShortBufferException If {@code output} is too small.
+     * @throws AEADBadTagException If the tag does not match.
+     */
+    private int bufferCrypt(final ByteBuffer input,
+                            final ByteBuffer output,
+                            final boolean last)
+        throws ShortBufferException, AEADBadTagException {
+        final int inputLen = input.remaining();
+        final int outLen = engineGetOutputSize(inputLen) -
+                           (encrypting && !last ? TAG_LEN : 0);
+        final int outputPos = output.position();
+
+        checkInit();
+
+        if (output.remaining() < outLen) {
+            throw new ShortBufferException("Need " + outLen +
+                                           " bytes of output space");
+        }
+
+        if (ByteBuffers.overlapsAhead(input, output)) {
+            final byte[] copy = new byte[inputLen];
+
+            input.get(copy);
+
+            try {
+                return bufferCrypt(ByteBuffer.wrap(copy), output, last);
+            } finally {
+                Arrays.fill(copy, (byte)0);
+            }
+        }
+
+        if (input.hasArray() && output.hasArray()) {
+            final int inputPos = input.position();
+            final int len;
+
+            if (last) {
+                len = engineDoFinal(input.array(),
+                                    input.arrayOffset() + inputPos,
+                                    inputLen, output.array(),
+                                    output.arrayOffset() + outputPos);
+            } else {
+                len = process(input.array(),
+                              input.arrayOffset() + inputPos,
+                              inputLen, output.array(),
+                              output.arrayOffset() + outputPos);
+            }
+
+            input.position(inputPos + inputLen);
+            output.position(outputPos + len);
+
+            return len;
+        }
+
+        if (tileIn == null) {
+            tileIn = new byte[TILE_BYTES];
+            tileOut = new byte[TILE_BYTES + TAG_LEN];
+        }
+
+        int len = 0;
+
+        try {
+            while (input.hasRemaining()) {
+                final int n = Math.min(TILE_BYTES, input.remaining());
+
+                input.get(tileIn, 0, n);
+
+                final int m = process(tileIn, 0, n, tileOut, 0);
+
+                output.put(tileOut, 0, m);
+                len += m;
+            }
+
+            if (last) {
+                final int m = engineDoFinal(tileIn, 0, 0, tileOut, 0);
+
+                output.put(tileOut, 0, m);
+                len += m;
+            }
+        } catch(final AEADBadTagException e) {
+            for(int i = 0; i < len; i++) {
+                output.put(outputPos + i, (byte)0);
+            }
+
+            output.position(outputPos);
+
+            throw e;
+        } finally {
+            Arrays.fill(tileIn, (byte)0);
+            Arrays.fill(tileOut, (byte)0);
+        }
+
+        return len;
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    protected int engineUpdate(final ByteBuffer input,
+                               final ByteBuffer output)
+        throws ShortBufferException {
+        try {
+            return bufferCrypt(input, output, false);
+        } catch(final AEADBadTagException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    protected int engineDoFinal(final ByteBuffer input,
+                                final ByteBuffer output)
+        throws ShortBufferException, AEADBadTagException {
+        return bufferCrypt(input, output, true);
+    }
+}
@@ -0,0 +1,159 @@
+/* Copyright (c) 2018, Eric McCorkle.  All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions
+ * are met:
+ *
+ * * Redistributions of source code must retain the above copyright
+ *   notice, this list of conditions and the following disclaimer.
+ *
+ * * Redistributions in binary form must reproduce the above copyright
+ *   notice, this list of conditions and the following disclaimer in
+ *   the documentation and/or other materials provided with the
+ *   distribution.
+ *
+ * * Neither the name of the copyright holder nor the names of its
+ *   contributors may be used to endorse or promote products derived
+ *   from this software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS
+ * "AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT
+ * LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS
+ * FOR A PARTICULAR PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE
+ * COPYRIGHT HOLDER OR CONTRIBUTORS BE LIABLE FOR ANY DIRECT,
+ * INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES
+ * (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR
+ * SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION)
+ * HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT,
+ * STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED
+ * OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+package net.metricspace.crypto.ciphers.stream.salsa;
+
+import java.io.IOException;
+import java.security.AlgorithmParametersSpi;
+import java.security.spec.AlgorithmParameterSpec;
+import java.security.spec.InvalidParameterSpecException;
+import java.util.Arrays;
+
+import javax.crypto.spec.IvParameterSpec;
+
+/**
+ * The {@link java.security.AlgorithmParametersSpi} implementation for
+ * the ChaCha20-Poly1305 cipher.  The only parameter is the 12-byte
+ * nonce, which is also the encoded form.
+ */
+public final class ChaCha20Poly1305ParametersSpi
+    extends AlgorithmParametersSpi {
+    /**
+     * The nonce.
+     */
+    private final byte[] nonce =
+        new byte[ChaCha20Poly1305CipherSpi.NONCE_LEN];
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    protected byte[] engineGetEncoded() {
+        return Arrays.copyOf(nonce, nonce.length);
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    protected byte[] engineGetEncoded(final String format) {
+        return engineGetEncoded();
+    }
+
+    /**
+     * Get an {@link IvParameterSpec} containing the nonce.
+     *
+     * @param paramSpec {@link IvParameterSpec}.
+     * @return An {@link IvParameterSpec} containing the nonce.
+     */
+    @Override
+    protected <T extends AlgorithmParameterSpec>
+        T engineGetParameterSpec(final Class<T> paramSpec)
+        throws InvalidParameterSpecException {
+        if (paramSpec.equals(IvParameterSpec.class)) {
+            return paramSpec.cast(new IvParameterSpec(nonce));
+        } else {
+            throw new InvalidParameterSpecException();
+        }
+    }
+
+    /**
+     * Set the nonce.
+     *
+     * @param nonce The nonce.
+     * @throws InvalidParameterSpecException If {@code nonce} is the
+     *                                       wrong length.
+     */
+    private void engineInitNonce(final byte[] nonce)
+        throws InvalidParameterSpecException {
+        if (nonce.length != this.nonce.length) {
+            throw new InvalidParameterSpecException("Nonce must be " +
+                                                    this.nonce.length +
+                                                    " bytes");
+        }
+
+        System.arraycopy(nonce, 0, this.nonce, 0, nonce.length);
+    }
+
+    /**
+     * Initialize the parameters from an {@link IvParameterSpec}.
+     *
+     * @param spec An {@link IvParameterSpec} containing the nonce.
+     */
+    @Override
+    protected void engineInit(final AlgorithmParameterSpec spec)
+        throws InvalidParameterSpecException {
+        if (spec instanceof IvParameterSpec) {
+            engineInitNonce(((IvParameterSpec)spec).getIV());
+        } else {
+            throw new InvalidParameterSpecException();
+        }
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    protected void engineInit(final byte[] data)
+        throws IOException {
+        try {
+            engineInitNonce(data);
+        } catch(final InvalidParameterSpecException e) {
+            throw new IOException(e);
+        }
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    protected void engineInit(final byte[] data,
+                              final String format)
+        throws IOException {
+        engineInit(data);
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    protected String engineToString() {
+        final StringBuilder sb = new StringBuilder();
+
+        sb.append("nonce: ");
+
+        for(int i = 0; i < nonce.length; i++) {
+            sb.append(String.format("%02x", nonce[i]));
+        }
+
+        return sb.toString();
+    }
+}
@@ -31,6 +31,8 @@
  */
 package net.metricspace.crypto.ciphers.stream.salsa;
 
+import java.util.Arrays;
+
 /**
  * A {@link javax.crypto.CipherSpi} base class for ChaCha{@code N}
  * variants.  ChaCha is a sub-family of the Salsa family, introduced
@@ -71,6 +73,32 @@ package net.metricspace.crypto.ciphers.stream.salsa;
 public abstract class
     ChaChaCipherSpi<K extends SalsaFamilyCipherSpi.SalsaFamilyKey>
     extends SalsaFamilyCipherSpi<K> {
+    /**
+     * Index of the low block counter word in the cipher state.
+     */
+    private static final int COUNTER_WORD = 12;
+
+    /**
+     * Index of the first nonce word in the cipher state.
+     */
+    private static final int NONCE_WORD = 14;
+
+    /**
+     * Initialize the cipher engine.
+     */
+    protected ChaChaCipherSpi() {
+        super(COUNTER_WORD, NONCE_WORD);
+    }
+
+    /**
+     * Initialize the cipher engine with a given IV length.
+     *
+     * @param ivLen The IV length, either {@link #IV_LEN} or {@link
+     *              #EXTENDED_IV_LEN}.
+     */
+    protected ChaChaCipherSpi(final int ivLen) {
+        super(ivLen, COUNTER_WORD, NONCE_WORD);
+    }
 
     public static void quarterRound(final int a,
                                     final int b,
@@ -94,6 +122,85 @@ public abstract class
         block[b] = (block[b] << 7) | (block[b] >>> 57);
     }
 
+    /**
+     * Compute a quarter round on every lane of a lane-interleaved
+     * state.
+     *
+     * @param a Index of the first word.
+     * @param b Index of the second word.
+     * @param c Index of the third word.
+     * @param d Index of the fourth word.
+     * @param wide The lane-interleaved state.
+     */
+    private static void wideQuarterRound(final int a,
+                                         final int b,
+                                         final int c,
+                                         final int d,
+                                         final int[] wide) {
+        final int ai = a * LANES;
+        final int bi = b * LANES;
+        final int ci = c * LANES;
+        final int di = d * LANES;
+
+        for(int i = 0; i < LANES; i++) {
+            int wa = wide[ai + i];
+            int wb = wide[bi + i];
+            int wc = wide[ci + i];
+            int wd = wide[di + i];
+
+            wa += wb;
+            wd ^= wa;
+            wd = (wd << 16) | (wd >>> 16);
+
+            wc += wd;
+            wb ^= wc;
+            wb = (wb << 12) | (wb >>> 20);
+
+            wa += wb;
+            wd ^= wa;
+            wd = (wd << 8) | (wd >>> 24);
+
+            wc += wd;
+            wb ^= wc;
+            wb = (wb << 7) | (wb >>> 25);
+
+            wide[ai + i] = wa;
+            wide[bi + i] = wb;
+            wide[ci + i] = wc;
+            wide[di + i] = wd;
+        }
+    }
+
+    /**
+     * Compute one double round on every lane of {@link #wide}.
+     */
+    protected final void wideDoubleRound() {
+        wideQuarterRound(0, 4, 8, 12, wide);
+        wideQuarterRound(1, 5, 9, 13, wide);
+        wideQuarterRound(2, 6, 10, 14, wide);
+        wideQuarterRound(3, 7, 11, 15, wide);
+        wideQuarterRound(0, 5, 10, 15, wide);
+        wideQuarterRound(1, 6, 11, 12, wide);
+        wideQuarterRound(2, 7, 8, 13, wide);
+        wideQuarterRound(3, 4, 9, 14, wide);
+    }
+
+    /**
+     * Compute a number of double rounds on every lane of {@link
+     * #wide}, using the vectorized kernel if it is available.
+     *
+     * @param doubleRounds The number of double rounds.
+     */
+    protected final void wideRounds(final int doubleRounds) {
+        if (VectorKernels.AVAILABLE) {
+            VectorKernels.chachaRounds(wide, doubleRounds);
+        } else {
+            for(int i = 0; i < doubleRounds; i++) {
+                wideDoubleRound();
+            }
+        }
+    }
+
     /**
      * Compute one double round (a row round followed by a column round).
      */
@@ -109,28 +216,43 @@ public abstract class
     }
 
     /**
-     * {@inheritDoc}
+     * Derive the subkey using the HChaCha function.  This computes
+     * the ChaCha rounds over a state containing the key and the first
+     * {@link #SUBKEY_NONCE_LEN} bytes of the IV, and takes the first
+     * and last rows of the result, without the final addition.
+     *
+     * @param out The array into which to write the subkey.
      */
     @Override
-    protected final void addBlock() {
+    protected final void deriveSubkey(final int[] out) {
         final int[] data = key.getData();
 
-        block[0] += 0x61707865;
-        block[1] += 0x3320646e;
-        block[2] += 0x79622d32;
-        block[3] += 0x6b206574;
-        block[4] += data[0];
-        block[5] += data[1];
-        block[6] += data[2];
-        block[7] += data[3];
-        block[8] += data[4];
-        block[9] += data[5];
-        block[10] += data[6];
-        block[11] += data[7];
-        block[12] += (int)(blockIdx & 0xffffffffL);
-        block[13] += (int)((blockIdx >> 32) & 0xffffffffL);
-        block[14] += iv[0] | iv[1] << 8 | iv[2] << 16 | iv[3] << 24;
-        block[15] += iv[4] | iv[5] << 8 | iv[6] << 16 | iv[7] << 24;
+        block[0] = 0x61707865;
+        block[1] = 0x3320646e;
+        block[2] = 0x79622d32;
+        block[3] = 0x6b206574;
+        block[4] = data[0];
+        block[5] = data[1];
+        block[6] = data[2];
+        block[7] = data[3];
+        block[8] = data[4];
+        block[9] = data[5];
+        block[10] = data[6];
+        block[11] = data[7];
+        block[12] = littleEndianWord(iv, 0);
+        block[13] = littleEndianWord(iv, 4);
+        block[14] = littleEndianWord(iv, 8);
+        block[15] = littleEndianWord(iv, 12);
+        rounds();
+        out[0] = block[0];
+        out[1] = block[1];
+        out[2] = block[2];
+        out[3] = block[3];
+        out[4] = block[12];
+        out[5] = block[13];
+        out[6] = block[14];
+        out[7] = block[15];
+        Arrays.fill(block, 0);
     }
 
     /**
@@ -138,7 +260,7 @@ public abstract class
      */
     @Override
     protected final void initBlock() {
-        final int[] data = key.getData();
+        final int[] data = keyWords();
 
         block[0] = 0x61707865;
         block[1] = 0x3320646e;
@@ -154,7 +276,7 @@ public abstract class
         block[11] = data[7];
         block[12] = (int)(blockIdx & 0xffffffffL);
         block[13] = (int)((blockIdx >> 32) & 0xffffffffL);
-        block[14] = iv[0] | iv[1] << 8 | iv[2] << 16 | iv[3] << 24;
-        block[15] = iv[4] | iv[5] << 8 | iv[6] << 16 | iv[7] << 24;
+        block[14] = ivWord(0);
+        block[15] = ivWord(1);
     }
 }
@@ -211,4 +211,12 @@ public final class Salsa20CipherSpi
         doubleRound();
         doubleRound();
     }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    protected final void wideRounds() {
+        wideRounds(10);
+    }
 }
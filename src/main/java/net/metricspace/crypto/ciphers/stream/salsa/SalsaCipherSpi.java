@@ -31,6 +31,8 @@
  */
 package net.metricspace.crypto.ciphers.stream.salsa;
 
+import java.util.Arrays;
+
 /**
  * A {@link javax.crypto.CipherSpi} base class for Salsa{@code n}
  * variants.  The Salsa cipher is an ARX (add-rotate-xor) cipher.  It
@@ -68,6 +70,106 @@ package net.metricspace.crypto.ciphers.stream.salsa;
  */
 abstract class SalsaCipherSpi<K extends SalsaFamilyCipherSpi.SalsaFamilyKey>
     extends SalsaFamilyCipherSpi<K> {
+    /**
+     * Index of the low block counter word in the cipher state.
+     */
+    private static final int COUNTER_WORD = 8;
+
+    /**
+     * Index of the first nonce word in the cipher state.
+     */
+    private static final int NONCE_WORD = 6;
+
+    /**
+     * Initialize the cipher engine.
+     */
+    protected SalsaCipherSpi() {
+        super(COUNTER_WORD, NONCE_WORD);
+    }
+
+    /**
+     * Initialize the cipher engine with a given IV length.
+     *
+     * @param ivLen The IV length, either {@link #IV_LEN} or {@link
+     *              #EXTENDED_IV_LEN}.
+     */
+    protected SalsaCipherSpi(final int ivLen) {
+        super(ivLen, COUNTER_WORD, NONCE_WORD);
+    }
+
+    /**
+     * Compute a quarter round on every lane of a lane-interleaved
+     * state.
+     *
+     * @param a Index of the first word.
+     * @param b Index of the second word.
+     * @param c Index of the third word.
+     * @param d Index of the fourth word.
+     * @param wide The lane-interleaved state.
+     */
+    private static void wideQuarterRound(final int a,
+                                         final int b,
+                                         final int c,
+                                         final int d,
+                                         final int[] wide) {
+        final int ai = a * LANES;
+        final int bi = b * LANES;
+        final int ci = c * LANES;
+        final int di = d * LANES;
+
+        for(int i = 0; i < LANES; i++) {
+            int wa = wide[ai + i];
+            int wb = wide[bi + i];
+            int wc = wide[ci + i];
+            int wd = wide[di + i];
+            int t;
+
+            t = wa + wd;
+            wb ^= (t << 7) | (t >>> 25);
+            t = wb + wa;
+            wc ^= (t << 9) | (t >>> 23);
+            t = wc + wb;
+            wd ^= (t << 13) | (t >>> 19);
+            t = wd + wc;
+            wa ^= (t << 18) | (t >>> 14);
+
+            wide[ai + i] = wa;
+            wide[bi + i] = wb;
+            wide[ci + i] = wc;
+            wide[di + i] = wd;
+        }
+    }
+
+    /**
+     * Compute one double round on every lane of {@link #wide}.
+     */
+    protected final void wideDoubleRound() {
+        wideQuarterRound(0, 4, 8, 12, wide);
+        wideQuarterRound(5, 9, 13, 1, wide);
+        wideQuarterRound(10, 14, 2, 6, wide);
+        wideQuarterRound(15, 3, 7, 11, wide);
+        wideQuarterRound(0, 1, 2, 3, wide);
+        wideQuarterRound(5, 6, 7, 4, wide);
+        wideQuarterRound(10, 11, 8, 9, wide);
+        wideQuarterRound(15, 12, 13, 14, wide);
+    }
+
+    /**
+     * Compute a number of double rounds on every lane of {@link
+     * #wide}, using the vectorized kernel if it is available.
+     *
+     * @param doubleRounds The number of double rounds.
+     */
+    protected final void wideRounds(final int doubleRounds) {
+        if (VectorKernels.AVAILABLE) {
+            VectorKernels.salsaRounds(wide, doubleRounds);
+        } else {
+            for(int i = 0; i < doubleRounds; i++) {
+                wideDoubleRound();
+            }
+        }
+    }
+
     /**
      * Compute one double round (a row round followed by a column round).
      */
@@ -148,28 +250,44 @@ abstract class SalsaCipherSpi<K extends SalsaFamilyCipherSpi.SalsaFamilyKey>
     }
 
     /**
-     * {@inheritDoc}
+     * Derive the subkey using the HSalsa function.  This computes the
+     * Salsa rounds over a state containing the key and the first
+     * {@link #SUBKEY_NONCE_LEN} bytes of the IV, and takes the
+     * diagonal and the nonce and counter words of the result, without
+     * the final addition.
+     *
+     * @param out The array into which to write the subkey.
      */
     @Override
-    protected final void addBlock() {
+    protected final void deriveSubkey(final int[] out) {
         final int[] data = key.getData();
 
-        block[0] += 0x61707865;
-        block[1] += data[0];
-        block[2] += data[1];
-        block[3] += data[2];
-        block[4] += data[3];
-        block[5] += 0x3320646e;
-        block[6] += iv[0] | iv[1] << 8 | iv[2] << 16 | iv[3] << 24;
-        block[7] += iv[4] | iv[5] << 8 | iv[6] << 16 | iv[7] << 24;
-        block[8] += (int)(blockIdx & 0xffffffffL);
-        block[9] += (int)((blockIdx >> 32) & 0xffffffffL);
-        block[10] += 0x79622d32;
-        block[11] += data[4];
-        block[12] += data[5];
-        block[13] += data[6];
-        block[14] += data[7];
-        block[15] += 0x6b206574;
+        block[0] = 0x61707865;
+        block[1] = data[0];
+        block[2] = data[1];
+        block[3] = data[2];
+        block[4] = data[3];
+        block[5] = 0x3320646e;
+        block[6] = littleEndianWord(iv, 0);
+        block[7] = littleEndianWord(iv, 4);
+        block[8] = littleEndianWord(iv, 8);
+        block[9] = littleEndianWord(iv, 12);
+        block[10] = 0x79622d32;
+        block[11] = data[4];
+        block[12] = data[5];
+        block[13] = data[6];
+        block[14] = data[7];
+        block[15] = 0x6b206574;
+        rounds();
+        out[0] = block[0];
+        out[1] = block[5];
+        out[2] = block[10];
+        out[3] = block[15];
+        out[4] = block[6];
+        out[5] = block[7];
+        out[6] = block[8];
+        out[7] = block[9];
+        Arrays.fill(block, 0);
     }
 
     /**
@@ -177,7 +295,7 @@ abstract class SalsaCipherSpi<K extends SalsaFamilyCipherSpi.SalsaFamilyKey>
      */
     @Override
     protected final void initBlock() {
-        final int[] data = key.getData();
+        final int[] data = keyWords();
 
         block[0] = 0x61707865;
         block[1] = data[0];
@@ -185,8 +303,8 @@ abstract class SalsaCipherSpi<K extends SalsaFamilyCipherSpi.SalsaFamilyKey>
         block[3] = data[2];
         block[4] = data[3];
         block[5] = 0x3320646e;
-        block[6] = iv[0] | iv[1] << 8 | iv[2] << 16 | iv[3] << 24;
-        block[7] = iv[4] | iv[5] << 8 | iv[6] << 16 | iv[7] << 24;
+        block[6] = ivWord(0);
+        block[7] = ivWord(1);
         block[8] = (int)(blockIdx & 0xffffffffL);
         block[9] = (int)((blockIdx >> 32) & 0xffffffffL);
         block[10] = 0x79622d32;
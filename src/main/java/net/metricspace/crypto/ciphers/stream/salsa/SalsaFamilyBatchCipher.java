@@ -0,0 +1,266 @@
+/* Copyright (c) 2018, Eric McCorkle.  All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions
+ * are met:
+ *
+ * * Redistributions of source code must retain the above copyright
+ *   notice, this list of conditions and the following disclaimer.
+ *
+ * * Redistributions in binary form must reproduce the above copyright
+ *   notice, this list of conditions and the following disclaimer in
+ *   the documentation and/or other materials provided with the
+ *   distribution.
+ *
+ * * Neither the name of the copyright holder nor the names of its
+ *   contributors may be used to endorse or promote products derived
+ *   from this software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS
+ * "AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT
+ * LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS
+ * FOR A PARTICULAR PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE
+ * COPYRIGHT HOLDER OR CONTRIBUTORS BE LIABLE FOR ANY DIRECT,
+ * INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES
+ * (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR
+ * SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION)
+ * HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT,
+ * STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED
+ * OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+package net.metricspace.crypto.ciphers.stream.salsa;
+
+import java.security.InvalidAlgorithmParameterException;
+import java.security.InvalidKeyException;
+import java.security.Key;
+import java.util.Arrays;
+
+import javax.crypto.ShortBufferException;
+
+import net.metricspace.crypto.ciphers.stream.SeekableKeystreamCipherSpi;
+
+/**
+ * Encryption and decryption of many small messages under one key,
+ * each with its own nonce, for the Salsa family ciphers.  Setting up
+ * a {@link javax.crypto.Cipher} for every message costs more than
+ * encrypting a message of a few hundred bytes.  This sets the key up
+ * once, and for each message only decodes the nonce.  The stream
+ * blocks of all the messages in a call are then computed together:
+ * each lane of the wide kernel has its own nonce and block counter.
+ * So a short message costs about as much as computing its stream
+ * blocks.
+ * <p>
+ * Each message is encrypted from the start of its stream, exactly
+ * as a {@link javax.crypto.Cipher} initialized with the same key and
+ * an {@link javax.crypto.spec.IvParameterSpec} holding its nonce
+ * would encrypt it.
+ * <h2>Usage</h2>
+ *
+ * Instances are created from an engine and a key.  The extended-nonce
+ * variants (XSalsa20 and XChaCha20) derive a separate subkey for
+ * every nonce, so they cannot be batched.
+ * <pre>
+ * try (final SalsaFamilyBatchCipher batch =
+ *          new SalsaFamilyBatchCipher(new ChaCha20CipherSpi(), key)) {
+ *     batch.crypt(nonces, inputs, outputs);
+ * }
+ * </pre>
+ * The engine belongs to the batch cipher from then on, and must not
+ * be used for anything else.  Closing the batch cipher zeros the
+ * engine's key schedule.  Instances are not safe for use by multiple
+ * threads at once.
+ * <h2>Misuses</h2>
+ *
+ * The nonce of every message encrypted under a key must be unique.
+ * Reusing a nonce encrypts two messages with the same cipher stream,
+ * exactly as with re-used initialization vectors in the {@link
+ * javax.crypto.Cipher} interface.
+ */
+public final class SalsaFamilyBatchCipher implements AutoCloseable {
+    /**
+     * The number of stream blocks computed together.
+     */
+    private static final int LANES = SalsaFamilyCipherSpi.LANES;
+
+    /**
+     * The size of a stream block in bytes.
+     */
+    private static final int BLOCK_BYTES = SalsaFamilyCipherSpi.STATE_BYTES;
+
+    /**
+     * The length of a nonce in bytes.
+     */
+    private static final int NONCE_LEN = SalsaFamilyCipherSpi.IV_LEN;
+
+    /**
+     * The engine, which computes the stream blocks.
+     */
+    private final SalsaFamilyCipherSpi<?> engine;
+
+    /**
+     * The stream blocks of the current group, serialized.
+     */
+    private final byte[] keystream =
+        new byte[LANES * BLOCK_BYTES];
+
+    /**
+     * The nonce words for each block of the current group.
+     */
+    private final int[] blockNonces = new int[2 * LANES];
+
+    /**
+     * The block index for each block of the current group.
+     */
+    private final long[] blockIdxs = new long[LANES];
+
+    /**
+     * The message to which each block of the current group belongs.
+     */
+    private final int[] blockMsgs = new int[LANES];
+
+    /**
+     * Whether this has been closed.
+     */
+    private boolean closed;
+
+    /**
+     * Create a {@code SalsaFamilyBatchCipher}.
+     *
+     * @param engine The engine, which must not be used for anything
+     *               else afterwards.
+     * @param key The key.
+     * @throws InvalidKeyException If {@code key} is not valid for
+     *                             {@code engine}.
+     * @throws IllegalArgumentException If {@code engine} is not a
+     *                                  Salsa family engine, or is an
+     *                                  extended-nonce variant.
+     */
+    public SalsaFamilyBatchCipher(final SeekableKeystreamCipherSpi<?,
+                                  SalsaFamilyParameterSpec> engine,
+                                  final Key key)
+        throws InvalidKeyException {
+        if (!(engine instanceof SalsaFamilyCipherSpi)) {
+            throw new IllegalArgumentException("Only Salsa family " +
+                                               "engines can be batched");
+        }
+
+        this.engine = (SalsaFamilyCipherSpi<?>)engine;
+        this.engine.initBatch(key);
+    }
+
+    /**
+     * Encrypt or decrypt a batch of messages.  Message {@code i} is
+     * {@code inputs[i]}, and is transformed with the nonce {@code
+     * nonces[i]} into the start of {@code outputs[i]}.  An output may
+     * be the same array as its input, but must not otherwise overlap
+     * any input.
+     *
+     * @param nonces The nonce for each message.
+     * @param inputs The messages.
+     * @param outputs The arrays into which to write the transformed
+     *                messages.
+     * @throws InvalidAlgorithmParameterException If a nonce is not
+     *                                            8 bytes.
+     * @throws ShortBufferException If an output is shorter than its
+     *                              input.
+     * @throws IllegalArgumentException If the three arrays do not
+     *                                  have the same length.
+     * @throws IllegalStateException If this has been closed.
+     */
+    public void crypt(final byte[][] nonces,
+                      final byte[][] inputs,
+                      final byte[][] outputs)
+        throws InvalidAlgorithmParameterException, ShortBufferException {
+        if (closed) {
+            throw new IllegalStateException("Cipher is closed");
+        }
+
+        if (nonces.length != inputs.length ||
+            outputs.length != inputs.length) {
+            throw new IllegalArgumentException("Need one nonce and one " +
+                                               "output per input");
+        }
+
+        // Check everything first, so that nothing is written on
+        // failure.
+        for(int i = 0; i < inputs.length; i++) {
+            if (nonces[i].length != NONCE_LEN) {
+                throw new InvalidAlgorithmParameterException("IV must be " +
+                                                             NONCE_LEN +
+                                                             " bytes");
+            }
+
+            if (outputs[i].length < inputs[i].length) {
+                throw new ShortBufferException("Need " + inputs[i].length +
+                                               " bytes of output space");
+            }
+        }
+
+        int nblocks = 0;
+
+        for(int i = 0; i < inputs.length; i++) {
+            final int n0 = SalsaFamilyCipherSpi.littleEndianWord(nonces[i], 0);
+            final int n1 = SalsaFamilyCipherSpi.littleEndianWord(nonces[i], 4);
+            final int len = inputs[i].length;
+
+            for(int off = 0; off < len; off += BLOCK_BYTES) {
+                blockNonces[2 * nblocks] = n0;
+                blockNonces[(2 * nblocks) + 1] = n1;
+                blockIdxs[nblocks] = off / BLOCK_BYTES;
+                blockMsgs[nblocks] = i;
+                nblocks++;
+
+                if (nblocks == LANES) {
+                    group(inputs, outputs, nblocks);
+                    nblocks = 0;
+                }
+            }
+        }
+
+        if (nblocks > 0) {
+            group(inputs, outputs, nblocks);
+        }
+
+        Arrays.fill(keystream, (byte)0);
+        engine.discardBatch();
+    }
+
+    /**
+     * Zero the key schedule held by the engine.  This cannot be used
+     * afterwards.
+     */
+    @Override
+    public void close() {
+        closed = true;
+        engine.closeBatch();
+    }
+
+    /**
+     * Compute the stream blocks of the current group, and XOR each
+     * one with its part of its message.
+     *
+     * @param inputs The messages.
+     * @param outputs The arrays into which to write the transformed
+     *                messages.
+     * @param nblocks The number of blocks in the group.
+     */
+    private void group(final byte[][] inputs,
+                       final byte[][] outputs,
+                       final int nblocks) {
+        engine.streamBatch(blockNonces, blockIdxs, nblocks, keystream);
+
+        for(int i = 0; i < nblocks; i++) {
+            final byte[] input = inputs[blockMsgs[i]];
+            final byte[] output = outputs[blockMsgs[i]];
+            final int off = (int)blockIdxs[i] * BLOCK_BYTES;
+            final int len = Math.min(BLOCK_BYTES, input.length - off);
+            final int ksOff = i * BLOCK_BYTES;
+
+            for(int j = 0; j < len; j++) {
+                output[off + j] =
+                    (byte)(input[off + j] ^ keystream[ksOff + j]);
+            }
+        }
+    }
+}
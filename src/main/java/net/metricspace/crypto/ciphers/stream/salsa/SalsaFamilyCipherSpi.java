@@ -64,6 +64,18 @@ abstract class
      */
     public static final int IV_LEN = 8;
 
+    /**
+     * Length of the initialization vector in bytes for the
+     * extended-nonce variants (XSalsa20 and XChaCha20).
+     */
+    public static final int EXTENDED_IV_LEN = 24;
+
+    /**
+     * Length of the part of an extended IV that is used to derive
+     * the subkey.
+     */
+    protected static final int SUBKEY_NONCE_LEN = EXTENDED_IV_LEN - IV_LEN;
+
     /**
      * Keys for the Salsa cipher family.
      */
@@ -99,12 +111,121 @@ abstract class
      */
     protected static final int STATE_BYTES = STATE_WORDS * 4;
 
+    /**
+     * The number of stream blocks computed at once by the wide
+     * kernel.
+     */
+    protected static final int LANES = 16;
+
+    /**
+     * The smallest batch for which {@link #streamBatch} uses the wide
+     * kernel.  Below this, computing the unused lanes costs more than
+     * computing the blocks one at a time.
+     */
+    static final int MIN_WIDE_BATCH = LANES / 2;
+
+    /**
+     * Lane-interleaved state for the wide kernel.  Word {@code w} of
+     * lane {@code l} is stored at index {@code (w * LANES) + l}, so
+     * that each step of the round function is a loop over adjacent
+     * elements.
+     */
+    protected final int[] wide = new int[STATE_WORDS * LANES];
+
+    /**
+     * Initial state for the wide kernel, in the same layout as
+     * {@link #wide}.
+     */
+    private final int[] wideInit = new int[STATE_WORDS * LANES];
+
+    /**
+     * The input state for the current key and IV, with the two block
+     * counter words set to zero.  This is built by {@link
+     * #initState} so that computing a block only needs to copy it and
+     * fill in the counter, rather than reloading the constants and
+     * key words and decoding the IV every time.
+     */
+    private final int[] template = new int[STATE_WORDS];
+
+    /**
+     * Index of the low block counter word in the cipher state.  The
+     * high word immediately follows it.
+     */
+    private final int counterWord;
+
+    /**
+     * Index of the first of the two nonce words in the cipher state.
+     */
+    private final int nonceWord;
+
+    /**
+     * Subkey derived from the key and the first {@link
+     * #SUBKEY_NONCE_LEN} bytes of the IV, or {@code null} if this is
+     * not an extended-nonce variant.
+     */
+    private final int[] subkey;
+
+    /**
+     * The key from which {@link #subkey} was derived.
+     */
+    private K subkeyKey;
+
+    /**
+     * The IV prefix from which {@link #subkey} was derived.
+     */
+    private final byte[] subkeyNonce;
+
     /**
      * Initialize the cipher engine.
+     *
+     * @param counterWord Index of the low block counter word in the
+     *                    cipher state.
+     * @param nonceWord Index of the first nonce word in the cipher
+     *                  state.
      */
-    protected SalsaFamilyCipherSpi() {
+    protected SalsaFamilyCipherSpi(final int counterWord,
+                                   final int nonceWord) {
+        this(IV_LEN, counterWord, nonceWord);
+    }
+
+    /**
+     * Initialize the cipher engine with a given IV length.  If the
+     * IV length is {@link #EXTENDED_IV_LEN}, this is an
+     * extended-nonce variant: the key used for the stream is a
+     * subkey derived by {@link #deriveSubkey} from the key and the
+     * first {@link #SUBKEY_NONCE_LEN} bytes of the IV, and the last
+     * {@link #IV_LEN} bytes of the IV are used as the nonce.
+     *
+     * @param ivLen The IV length, either {@link #IV_LEN} or {@link
+     *              #EXTENDED_IV_LEN}.
+     * @param counterWord Index of the low block counter word in the
+     *                    cipher state.
+     * @param nonceWord Index of the first nonce word in the cipher
+     *                  state.
+     * @throws IllegalArgumentException If {@code ivLen} is not a
+     *                                  valid length.
+     */
+    protected SalsaFamilyCipherSpi(final int ivLen,
+                                   final int counterWord,
+                                   final int nonceWord) {
         super(SalsaFamilyParameterSpec.class,
-              new int[STATE_WORDS], new byte[IV_LEN]);
+              new int[STATE_WORDS], new byte[ivLen]);
+
+        this.counterWord = counterWord;
+        this.nonceWord = nonceWord;
+
+        switch(ivLen) {
+        case IV_LEN:
+            this.subkey = null;
+            this.subkeyNonce = null;
+            break;
+        case EXTENDED_IV_LEN:
+            this.subkey = new int[Common256BitKey.KEY_WORDS];
+            this.subkeyNonce = new byte[SUBKEY_NONCE_LEN];
+            break;
+        default:
+            throw new IllegalArgumentException("Bad IV length " + ivLen);
+        }
     }
 
     protected final void engineInit(final K key,
@@ -132,6 +253,13 @@ abstract class
                                     final AlgorithmParameterSpec spec,
                                     final SecureRandom random)
         throws InvalidAlgorithmParameterException {
+        if (spec instanceof IvParameterSpec &&
+            ((IvParameterSpec)spec).getIV().length != iv.length) {
+            throw new InvalidAlgorithmParameterException("IV must be " +
+                                                         iv.length +
+                                                         " bytes");
+        }
+
         if (spec instanceof SalsaFamilyParameterSpec) {
             engineInit(key, (SalsaFamilyParameterSpec)spec);
         } else if (spec instanceof IvParameterSpec) {
@@ -157,7 +285,7 @@ abstract class
     protected final void engineInit(final int opmode,
                                     final K key,
                                     final SecureRandom random) {
-        final byte[] iv = new byte[IV_LEN];
+        final byte[] iv = new byte[this.iv.length];
         random.nextBytes(iv);
 
         engineInit(key, iv);
@@ -172,36 +300,330 @@ abstract class
      *         current state of the cipher.
      */
     protected final SalsaFamilyParameterSpec parameterSpec() {
-        final long pos = (blockIdx * STATE_BYTES) + blockOffset;
-
-        return new SalsaFamilyParameterSpec(iv, pos);
+        return new SalsaFamilyParameterSpec(iv, position());
     }
 
+    /**
+     * Derive the subkey for extended-nonce variants, and build the
+     * input state template for the current key and IV.  The subkey
+     * is only recomputed if the key or the IV prefix it depends on
+     * have changed since it was last derived, so reinitializing with
+     * the same key and nonce (for example, to seek) costs nothing
+     * extra.
+     */
     @Override
-    protected final void initState() {}
+    protected final void initState() {
+        if (subkey != null) {
+            boolean same = subkeyKey == key;
+
+            for(int i = 0; i < SUBKEY_NONCE_LEN; i++) {
+                same &= subkeyNonce[i] == iv[i];
+            }
+
+            if (!same) {
+                deriveSubkey(subkey);
+                subkeyKey = key;
+                System.arraycopy(iv, 0, subkeyNonce, 0, SUBKEY_NONCE_LEN);
+            }
+        }
+
+        final long savedIdx = blockIdx;
+
+        blockIdx = 0;
+        initBlock();
+        blockIdx = savedIdx;
+        System.arraycopy(block, 0, template, 0, STATE_WORDS);
+        Arrays.fill(block, 0);
+
+        for(int i = 0; i < STATE_WORDS; i++) {
+            Arrays.fill(wideInit, i * LANES, (i + 1) * LANES, template[i]);
+        }
+    }
+
+    /**
+     * Zero out the input state template built by {@link #initState},
+     * along with the derived subkey for extended-nonce variants.
+     * This should be called whenever the key is discarded.
+     */
+    protected final void discardTemplate() {
+        Arrays.fill(template, 0);
+        Arrays.fill(wideInit, 0);
+
+        if (subkey != null) {
+            // Forget which key the subkey came from as well, so the
+            // next initState derives it again.
+            Arrays.fill(subkey, 0);
+            Arrays.fill(subkeyNonce, (byte)0);
+            subkeyKey = null;
+        }
+    }
+
+    /**
+     * Get the key words to use in the cipher state.  This is the
+     * derived subkey for extended-nonce variants, and the key itself
+     * otherwise.
+     *
+     * @return The key words to use in the cipher state.
+     */
+    protected final int[] keyWords() {
+        if (subkey != null) {
+            return subkey;
+        } else {
+            return key.getData();
+        }
+    }
+
+    /**
+     * Get one of the two nonce words to use in the cipher state.
+     * These are taken from the last {@link #IV_LEN} bytes of the IV.
+     *
+     * @param idx The index of the word, either {@code 0} or {@code 1}.
+     * @return The nonce word.
+     */
+    protected final int ivWord(final int idx) {
+        return littleEndianWord(iv, (iv.length - IV_LEN) + (idx * 4));
+    }
+
+    /**
+     * Read a little-endian word from a byte array.
+     *
+     * @param data The byte array.
+     * @param offset The offset of the word.
+     * @return The word.
+     */
+    protected static int littleEndianWord(final byte[] data,
+                                          final int offset) {
+        return (data[offset] & 0xff) |
+               (data[offset + 1] & 0xff) << 8 |
+               (data[offset + 2] & 0xff) << 16 |
+               (data[offset + 3] & 0xff) << 24;
+    }
+
+    /**
+     * Derive the subkey for an extended-nonce variant (the HSalsa or
+     * HChaCha function) from {@link #key} and the first {@link
+     * #SUBKEY_NONCE_LEN} bytes of {@link #iv}.
+     *
+     * @param out The array into which to write the subkey.
+     */
+    protected abstract void deriveSubkey(final int[] out);
 
     /**
      * Compute the current stream block.
      */
     @Override
     protected final void streamBlock() {
-        initBlock();
+        final int lo = (int)blockIdx;
+        final int hi = (int)(blockIdx >>> 32);
+
+        System.arraycopy(template, 0, block, 0, STATE_WORDS);
+        block[counterWord] = lo;
+        block[counterWord + 1] = hi;
         rounds();
-        addBlock();
+
+        for(int i = 0; i < STATE_WORDS; i++) {
+            block[i] += template[i];
+        }
+
+        block[counterWord] += lo;
+        block[counterWord + 1] += hi;
     }
 
     /**
-     * Compute all cipher rounds on {@code block}.
+     * Compute stream blocks, {@link #LANES} at a time using the wide
+     * kernel, and any remainder one at a time.
+     *
+     * @param out The array into which to write the keystream.
+     * @param outOffset The offset at which to start writing.
+     * @param nblocks The number of stream blocks to compute.
      */
-    protected abstract void rounds();
+    @Override
+    protected final void streamBlocks(final byte[] out,
+                                      final int outOffset,
+                                      final int nblocks) {
+        final long startIdx = blockIdx;
+        final int wideBlocks = nblocks - (nblocks % LANES);
+        final int loBase = counterWord * LANES;
+        final int hiBase = loBase + LANES;
+
+        for(int i = 0; i < wideBlocks; i += LANES) {
+            for(int lane = 0; lane < LANES; lane++) {
+                final long idx = startIdx + i + lane;
+
+                wideInit[loBase + lane] = (int)idx;
+                wideInit[hiBase + lane] = (int)(idx >>> 32);
+            }
+
+            System.arraycopy(wideInit, 0, wide, 0, wide.length);
+            wideRounds();
+            serializeWide(wide, wideInit, out,
+                          outOffset + (i * STATE_BYTES));
+        }
+
+        blockIdx = startIdx + wideBlocks;
+        super.streamBlocks(out, outOffset + (wideBlocks * STATE_BYTES),
+                           nblocks - wideBlocks);
+        blockIdx = startIdx;
+    }
 
     /**
-     * Add the initial block state to the final state.
+     * Initialize for computing batches of blocks with {@link
+     * #streamBatch}, under the given key and an all-zero IV.
+     *
+     * @param key The key.
+     * @throws InvalidKeyException If {@code key} is not valid for
+     *                             this cipher.
+     * @throws IllegalArgumentException If this is an extended-nonce
+     *                                  variant, whose subkey depends
+     *                                  on the nonce.
      */
-    protected abstract void addBlock();
+    final void initBatch(final Key key) throws InvalidKeyException {
+        if (subkey != null) {
+            throw new IllegalArgumentException("Extended-nonce variants " +
+                                               "cannot be batched");
+        }
+
+        engineInit(key, new SalsaFamilyParameterSpec(new byte[IV_LEN], 0));
+    }
+
+    /**
+     * Compute stream blocks for a batch of unrelated nonces and block
+     * indexes under the current key, and serialize them into {@code
+     * out}.  Block {@code i} is computed with the nonce words {@code
+     * nonces[2 * i]} and {@code nonces[(2 * i) + 1]} and the block
+     * index {@code idxs[i]}, and is written at offset {@code i *
+     * STATE_BYTES}.  Large batches use the wide kernel, with a
+     * different nonce and counter in each lane, and small ones are
+     * computed one block at a time.  This leaves {@link #blockIdx}
+     * unchanged.
+     *
+     * @param nonces The nonce words for each block.
+     * @param idxs The block index for each block.
+     * @param nblocks The number of blocks, at most {@link #LANES}.
+     * @param out The array into which to write the keystream, which
+     *            must have space for {@link #LANES} blocks.
+     */
+    final void streamBatch(final int[] nonces,
+                           final long[] idxs,
+                           final int nblocks,
+                           final byte[] out) {
+        if (nblocks >= MIN_WIDE_BATCH) {
+            final int counterBase = counterWord * LANES;
+            final int nonceBase = nonceWord * LANES;
+
+            for(int lane = 0; lane < nblocks; lane++) {
+                wideInit[counterBase + lane] = (int)idxs[lane];
+                wideInit[counterBase + LANES + lane] =
+                    (int)(idxs[lane] >>> 32);
+                wideInit[nonceBase + lane] = nonces[2 * lane];
+                wideInit[nonceBase + LANES + lane] = nonces[(2 * lane) + 1];
+            }
+
+            System.arraycopy(wideInit, 0, wide, 0, wide.length);
+            wideRounds();
+            serializeWide(wide, wideInit, out, 0);
+
+            // Only the counter words may vary in the wide initial
+            // state outside of this method.
+            Arrays.fill(wideInit, nonceBase, nonceBase + LANES,
+                        template[nonceWord]);
+            Arrays.fill(wideInit, nonceBase + LANES, nonceBase + (2 * LANES),
+                        template[nonceWord + 1]);
+        } else {
+            for(int i = 0; i < nblocks; i++) {
+                final int lo = (int)idxs[i];
+                final int hi = (int)(idxs[i] >>> 32);
+                final int n0 = nonces[2 * i];
+                final int n1 = nonces[(2 * i) + 1];
+
+                System.arraycopy(template, 0, block, 0, STATE_WORDS);
+                block[counterWord] = lo;
+                block[counterWord + 1] = hi;
+                block[nonceWord] = n0;
+                block[nonceWord + 1] = n1;
+                rounds();
+
+                for(int j = 0; j < STATE_WORDS; j++) {
+                    block[j] += template[j];
+                }
+
+                // The template holds the nonce from initialization,
+                // so trade it for this block's nonce.
+                block[counterWord] += lo;
+                block[counterWord + 1] += hi;
+                block[nonceWord] += n0 - template[nonceWord];
+                block[nonceWord + 1] += n1 - template[nonceWord + 1];
+                serialize(block, out, i * STATE_BYTES);
+            }
+        }
+    }
+
+    /**
+     * Zero the working state left behind by {@link #streamBatch}.
+     * The final states of the last blocks are left in {@link #block}
+     * or {@link #wide}, and they are keystream less the initial
+     * state.
+     */
+    final void discardBatch() {
+        Arrays.fill(block, 0);
+        Arrays.fill(wide, 0);
+    }
+
+    /**
+     * Zero everything derived from the key by {@link #initBatch} and
+     * {@link #streamBatch}.  This cannot be used for batches
+     * afterwards without calling {@link #initBatch} again.
+     */
+    final void closeBatch() {
+        discardBatch();
+        discardKeystream();
+        discardTemplate();
+    }
+
+    /**
+     * Add the initial state to the final state of the wide kernel and
+     * serialize each lane as consecutive stream blocks.
+     *
+     * @param wide The final lane-interleaved state.
+     * @param init The initial lane-interleaved state.
+     * @param out The array into which to write the keystream.
+     * @param outOffset The offset at which to start writing.
+     */
+    private static void serializeWide(final int[] wide,
+                                      final int[] init,
+                                      final byte[] out,
+                                      final int outOffset) {
+        for(int lane = 0; lane < LANES; lane++) {
+            final int base = outOffset + (lane * STATE_BYTES);
+
+            for(int i = 0; i < STATE_WORDS; i++) {
+                final int idx = (i * LANES) + lane;
+                final int word = wide[idx] + init[idx];
+                final int pos = base + (i * 4);
+
+                out[pos] = (byte)word;
+                out[pos + 1] = (byte)(word >>> 8);
+                out[pos + 2] = (byte)(word >>> 16);
+                out[pos + 3] = (byte)(word >>> 24);
+            }
+        }
+    }
+
+    /**
+     * Compute all cipher rounds on {@link #wide}.
+     */
+    protected abstract void wideRounds();
+
+    /**
+     * Compute all cipher rounds on {@code block}.
+     */
+    protected abstract void rounds();
 
     /**
-     * Initialize the stream block state.
+     * Initialize {@link #block} to the full input state for the
+     * current key, IV, and block index.  This reads the key and IV
+     * directly, and is used to build the template from which stream
+     * blocks are actually computed.
      */
     protected abstract void initBlock();
 }
@@ -61,6 +61,28 @@ abstract class SalsaFamilyParameterGeneratorSpi
      */
     private long pos;
 
+    /**
+     * Length of the IVs to generate.
+     */
+    private final int ivLen;
+
+    /**
+     * Initialize the generator for IVs of {@link
+     * SalsaFamilyCipherSpi#IV_LEN} bytes.
+     */
+    protected SalsaFamilyParameterGeneratorSpi() {
+        this(SalsaFamilyCipherSpi.IV_LEN);
+    }
+
+    /**
+     * Initialize the generator for IVs of a given length.
+     *
+     * @param ivLen The IV length in bytes.
+     */
+    protected SalsaFamilyParameterGeneratorSpi(final int ivLen) {
+        this.ivLen = ivLen;
+    }
+
     /**
      * Create an empty {@link java.security.AlgorithmParameters} to be
      * initialized.  This is used by {@link #engineGenerateParameters}
@@ -80,7 +102,7 @@ abstract class SalsaFamilyParameterGeneratorSpi
      */
     @Override
     protected final AlgorithmParameters engineGenerateParameters() {
-        final byte[] iv = new byte[SalsaFamilyCipherSpi.IV_LEN];
+        final byte[] iv = new byte[ivLen];
         final AlgorithmParameters out;
 
         try {
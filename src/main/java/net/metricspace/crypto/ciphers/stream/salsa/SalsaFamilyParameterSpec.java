@@ -57,7 +57,7 @@ public class SalsaFamilyParameterSpec
      */
     SalsaFamilyParameterSpec(final byte[] iv,
                              final long pos) {
-        super(iv, 0, SalsaFamilyCipherSpi.IV_LEN);
+        super(iv);
         this.pos = pos;
     }
 
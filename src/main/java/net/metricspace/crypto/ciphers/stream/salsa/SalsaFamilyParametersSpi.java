@@ -31,6 +31,7 @@
  */
 package net.metricspace.crypto.ciphers.stream.salsa;
 
+import java.io.IOException;
 import java.security.AlgorithmParametersSpi;
 import java.security.spec.AlgorithmParameterSpec;
 import java.security.spec.InvalidParameterSpecException;
@@ -48,19 +49,37 @@ public class SalsaFamilyParametersSpi extends AlgorithmParametersSpi {
     /**
      * The initialization vector.
      */
-    private final byte[] iv = new byte[SalsaFamilyCipherSpi.IV_LEN];
+    private final byte[] iv;
 
     /**
      * The stream position in bytes.
      */
     private long pos;
 
+    /**
+     * Initialize a {@code SalsaFamilyParametersSpi} for ciphers using
+     * an IV of {@link SalsaFamilyCipherSpi#IV_LEN} bytes.
+     */
+    public SalsaFamilyParametersSpi() {
+        this(SalsaFamilyCipherSpi.IV_LEN);
+    }
+
+    /**
+     * Initialize a {@code SalsaFamilyParametersSpi} for ciphers using
+     * an IV of a given length.
+     *
+     * @param ivLen The IV length in bytes.
+     */
+    protected SalsaFamilyParametersSpi(final int ivLen) {
+        this.iv = new byte[ivLen];
+    }
+
     /**
      * {@inheritDoc}
      */
     @Override
     protected byte[] engineGetEncoded() {
-        final int posstart = SalsaFamilyCipherSpi.IV_LEN;
+        final int posstart = iv.length;
         final byte[] out = Arrays.copyOf(iv, posstart + 8);
 
         out[posstart] = (byte)(pos & 0xffL);
@@ -116,10 +135,19 @@ public class SalsaFamilyParametersSpi extends AlgorithmParametersSpi {
      *
      * @param iv The IV.
      * @param pos The position in bytes.
+     * @throws InvalidParameterSpecException If {@code iv} is the
+     *                                       wrong length.
      */
     private void engineInit(final byte[] iv,
-                            final long pos) {
-        for(int i = 0; i < SalsaFamilyCipherSpi.IV_LEN; i++) {
+                            final long pos)
+        throws InvalidParameterSpecException {
+        if (iv.length != this.iv.length) {
+            throw new InvalidParameterSpecException("IV must be " +
+                                                    this.iv.length +
+                                                    " bytes");
+        }
+
+        for(int i = 0; i < this.iv.length; i++) {
             this.iv[i] = iv[i];
         }
 
@@ -130,8 +158,11 @@ public class SalsaFamilyParametersSpi extends AlgorithmParametersSpi {
      * Fully initialize the parameters.
      *
      * @param spec The parameter spec.
+     * @throws InvalidParameterSpecException If the IV is the wrong
+     *                                       length.
      */
-    private void engineInit(final SalsaFamilyParameterSpec spec) {
+    private void engineInit(final SalsaFamilyParameterSpec spec)
+        throws InvalidParameterSpecException {
         engineInit(spec.getIV(), spec.getPosition());
     }
 
@@ -162,15 +193,26 @@ public class SalsaFamilyParametersSpi extends AlgorithmParametersSpi {
      * {@inheritDoc}
      */
     @Override
-    protected void engineInit(final byte[] data) {
-        final int posstart = SalsaFamilyCipherSpi.IV_LEN;
-        final long pos =
-            (long)data[posstart] | (long)data[posstart + 1] << 8 |
-            (long)data[posstart + 2] << 16 | (long)data[posstart + 3] << 24 |
-            (long)data[posstart + 4] << 32 | (long)data[posstart + 5] << 40 |
-            (long)data[posstart + 6] << 48 | (long)data[posstart + 7] << 56;
-
-        engineInit(data, pos);
+    protected void engineInit(final byte[] data)
+        throws IOException {
+        final int posstart = iv.length;
+
+        if (data.length != posstart + 8) {
+            throw new IOException("Encoded parameters must be " +
+                                  (posstart + 8) + " bytes");
+        }
+
+        long pos = 0;
+
+        for(int i = 7; i >= 0; i--) {
+            pos = (pos << 8) | (data[posstart + i] & 0xffL);
+        }
+
+        try {
+            engineInit(Arrays.copyOf(data, posstart), pos);
+        } catch(final InvalidParameterSpecException e) {
+            throw new IOException(e);
+        }
     }
 
     /**
@@ -178,7 +220,8 @@ public class SalsaFamilyParametersSpi extends AlgorithmParametersSpi {
      */
     @Override
     protected void engineInit(final byte[] data,
-                              final String format) {
+                              final String format)
+        throws IOException {
         engineInit(data);
     }
 
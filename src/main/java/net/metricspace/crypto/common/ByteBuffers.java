@@ -0,0 +1,145 @@
+/* Copyright (c) 2018, Eric McCorkle.  All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions
+ * are met:
+ *
+ * * Redistributions of source code must retain the above copyright
+ *   notice, this list of conditions and the following disclaimer.
+ *
+ * * Redistributions in binary form must reproduce the above copyright
+ *   notice, this list of conditions and the following disclaimer in
+ *   the documentation and/or other materials provided with the
+ *   distribution.
+ *
+ * * Neither the name of the copyright holder nor the names of its
+ *   contributors may be used to endorse or promote products derived
+ *   from this software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS
+ * "AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT
+ * LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS
+ * FOR A PARTICULAR PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE
+ * COPYRIGHT HOLDER OR CONTRIBUTORS BE LIABLE FOR ANY DIRECT,
+ * INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES
+ * (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR
+ * SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION)
+ * HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT,
+ * STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED
+ * OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+package net.metricspace.crypto.common;
+
+import java.lang.invoke.MethodHandle;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.MethodType;
+import java.lang.reflect.Field;
+import java.nio.Buffer;
+import java.nio.ByteBuffer;
+
+/**
+ * Overlap checks for {@link ByteBuffer}s.  Ciphers that transform a
+ * buffer in a single forward pass, without copying the input first,
+ * give the wrong result if the output is a view of the same memory
+ * starting part way into the input: each write overwrites input that
+ * has not been read yet.  This tells callers when that can happen, so
+ * that they can copy the input first, as {@link javax.crypto.CipherSpi}
+ * does.
+ * <p>
+ * Array-backed buffers are compared by array and offset.  Direct
+ * buffers are compared by native address, which Java only exposes
+ * through {@code sun.misc.Unsafe}; it is looked up reflectively, and
+ * if it is not available, any two direct buffers are assumed to
+ * overlap.  A heap buffer and a direct buffer never overlap.
+ */
+public final class ByteBuffers {
+    private ByteBuffers() {}
+
+    /**
+     * Handle which gets the native address of a direct buffer, or
+     * {@code null} if that is not available.
+     */
+    private static final MethodHandle ADDRESS = addressHandle();
+
+    /**
+     * Look up the native address of direct buffers.
+     *
+     * @return A handle taking a {@link ByteBuffer} and returning its
+     *         address, or {@code null} if that is not available.
+     */
+    private static MethodHandle addressHandle() {
+        try {
+            final Class<?> unsafeClass = Class.forName("sun.misc.Unsafe");
+            final Field field = unsafeClass.getDeclaredField("theUnsafe");
+
+            field.setAccessible(true);
+
+            final Object unsafe = field.get(null);
+            final Field address = Buffer.class.getDeclaredField("address");
+            final long offset =
+                (Long)unsafeClass.getMethod("objectFieldOffset",
+                                            Field.class)
+                .invoke(unsafe, address);
+            final MethodHandle getLong =
+                MethodHandles.lookup()
+                .findVirtual(unsafeClass, "getLong",
+                             MethodType.methodType(long.class,
+                                                   Object.class,
+                                                   long.class));
+
+            return MethodHandles.insertArguments(getLong.bindTo(unsafe),
+                                                 1, offset)
+                .asType(MethodType.methodType(long.class,
+                                              ByteBuffer.class));
+        } catch(final ReflectiveOperationException | RuntimeException e) {
+            return null;
+        }
+    }
+
+    /**
+     * Check whether a forward pass from {@code input} to {@code
+     * output} could overwrite input before reading it.  That is the
+     * case when the output starts strictly after the start of the
+     * remaining input, and before its end.  Input and output at the
+     * same place are safe, as each byte is read before it is
+     * written.  This errs towards {@code true} when it cannot tell.
+     *
+     * @param input The input buffer.
+     * @param output The output buffer.
+     * @return Whether the output may lie ahead of the input within
+     *         the same memory.
+     */
+    public static boolean overlapsAhead(final ByteBuffer input,
+                                        final ByteBuffer output) {
+        final int inputLen = input.remaining();
+
+        if (inputLen == 0 || input.isDirect() != output.isDirect()) {
+            return false;
+        } else if (input.hasArray() && output.hasArray()) {
+            final int inputStart = input.arrayOffset() + input.position();
+            final int outputStart =
+                output.arrayOffset() + output.position();
+
+            return input.array() == output.array() &&
+                   outputStart > inputStart &&
+                   outputStart < inputStart + inputLen;
+        } else if (input.isDirect() && ADDRESS != null) {
+            try {
+                final long inputStart =
+                    (long)ADDRESS.invokeExact(input) + input.position();
+                final long outputStart =
+                    (long)ADDRESS.invokeExact(output) + output.position();
+
+                return outputStart > inputStart &&
+                       outputStart < inputStart + inputLen;
+            } catch(final Throwable t) {
+                return true;
+            }
+        } else {
+            // Direct buffers without addresses, and read-only heap
+            // buffers, which hide their array.
+            return true;
+        }
+    }
+}
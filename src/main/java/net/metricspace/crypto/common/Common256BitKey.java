@@ -83,29 +83,29 @@ public abstract class Common256BitKey implements Key, SecretKey {
     protected Common256BitKey(final byte[] data) {
         this.data = new int[KEY_WORDS];
         this.data[0] =
-            data[0] | data[1] << 8 |
-            data[2] << 16 | data[3] << 24;
+            (data[0] & 0xff) | (data[1] & 0xff) << 8 |
+            (data[2] & 0xff) << 16 | (data[3] & 0xff) << 24;
         this.data[1] =
-            data[4] | data[5] << 8 |
-            data[6] << 16 | data[7] << 24;
+            (data[4] & 0xff) | (data[5] & 0xff) << 8 |
+            (data[6] & 0xff) << 16 | (data[7] & 0xff) << 24;
         this.data[2] =
-            data[8] | data[9] << 8 |
-            data[10] << 16 | data[11] << 24;
+            (data[8] & 0xff) | (data[9] & 0xff) << 8 |
+            (data[10] & 0xff) << 16 | (data[11] & 0xff) << 24;
         this.data[3] =
-            data[12] | data[13] << 8 |
-            data[14] << 16 | data[15] << 24;
+            (data[12] & 0xff) | (data[13] & 0xff) << 8 |
+            (data[14] & 0xff) << 16 | (data[15] & 0xff) << 24;
         this.data[4] =
-            data[16] | data[17] << 8 |
-            data[18] << 16 | data[19] << 24;
+            (data[16] & 0xff) | (data[17] & 0xff) << 8 |
+            (data[18] & 0xff) << 16 | (data[19] & 0xff) << 24;
         this.data[5] =
-            data[20] | data[21] << 8 |
-            data[22] << 16 | data[23] << 24;
+            (data[20] & 0xff) | (data[21] & 0xff) << 8 |
+            (data[22] & 0xff) << 16 | (data[23] & 0xff) << 24;
         this.data[6] =
-            data[24] | data[25] << 8 |
-            data[26] << 16 | data[27] << 24;
+            (data[24] & 0xff) | (data[25] & 0xff) << 8 |
+            (data[26] & 0xff) << 16 | (data[27] & 0xff) << 24;
         this.data[7] =
-            data[28] | data[29] << 8 |
-            data[30] << 16 | data[31] << 24;
+            (data[28] & 0xff) | (data[29] & 0xff) << 8 |
+            (data[30] & 0xff) << 16 | (data[31] & 0xff) << 24;
     }
 
     /**
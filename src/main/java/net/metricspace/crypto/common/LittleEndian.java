@@ -0,0 +1,81 @@
+/* Copyright (c) 2018, Eric McCorkle.  All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions
+ * are met:
+ *
+ * * Redistributions of source code must retain the above copyright
+ *   notice, this list of conditions and the following disclaimer.
+ *
+ * * Redistributions in binary form must reproduce the above copyright
+ *   notice, this list of conditions and the following disclaimer in
+ *   the documentation and/or other materials provided with the
+ *   distribution.
+ *
+ * * Neither the name of the copyright holder nor the names of its
+ *   contributors may be used to endorse or promote products derived
+ *   from this software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS
+ * "AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT
+ * LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS
+ * FOR A PARTICULAR PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE
+ * COPYRIGHT HOLDER OR CONTRIBUTORS BE LIABLE FOR ANY DIRECT,
+ * INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES
+ * (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR
+ * SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION)
+ * HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT,
+ * STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED
+ * OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+package net.metricspace.crypto.common;
+
+/**
+ * Little-endian loads and stores on byte arrays, as used by the hash
+ * cores to read message words and write out their state.  Each word
+ * is assembled from or split into individual bytes, which HotSpot
+ * compiles to straight-line code with no calls.
+ */
+public final class LittleEndian {
+    private LittleEndian() {}
+
+    /**
+     * Read a 64-bit little-endian word.
+     *
+     * @param data The array to read from.
+     * @param offset The offset of the first byte of the word.
+     * @return The word.
+     */
+    public static long load64(final byte[] data,
+                              final int offset) {
+        return ((long)data[offset]) & 0xff |
+               (((long)data[offset + 1]) & 0xff) << 8 |
+               (((long)data[offset + 2]) & 0xff) << 16 |
+               (((long)data[offset + 3]) & 0xff) << 24 |
+               (((long)data[offset + 4]) & 0xff) << 32 |
+               (((long)data[offset + 5]) & 0xff) << 40 |
+               (((long)data[offset + 6]) & 0xff) << 48 |
+               (((long)data[offset + 7]) & 0xff) << 56;
+    }
+
+    /**
+     * Write a 64-bit little-endian word.
+     *
+     * @param value The word.
+     * @param data The array to write to.
+     * @param offset The offset of the first byte of the word.
+     */
+    public static void store64(final long value,
+                               final byte[] data,
+                               final int offset) {
+        data[offset] = (byte)value;
+        data[offset + 1] = (byte)(value >>> 8);
+        data[offset + 2] = (byte)(value >>> 16);
+        data[offset + 3] = (byte)(value >>> 24);
+        data[offset + 4] = (byte)(value >>> 32);
+        data[offset + 5] = (byte)(value >>> 40);
+        data[offset + 6] = (byte)(value >>> 48);
+        data[offset + 7] = (byte)(value >>> 56);
+    }
+}
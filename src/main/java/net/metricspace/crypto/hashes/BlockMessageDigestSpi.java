@@ -36,12 +36,19 @@ import java.nio.ByteBuffer;
 import java.security.DigestException;
 import java.security.MessageDigestSpi;
 
+import java.util.Arrays;
+
 /**
  * A common abstraction for {@link MessageDigestSpi} implementations
  * that operate on fixed-size blocks of data.  This handles the
  * buffering, leaving the core hash functions to subclasses.
  */
 public abstract class BlockMessageDigestSpi extends MessageDigestSpi {
+    /**
+     * Number of blocks copied out of a direct buffer at a time.
+     */
+    private static final int TRANSFER_BLOCKS = 32;
+
     /**
      * Number of bytes in a block.
      */
@@ -62,6 +69,13 @@ public abstract class BlockMessageDigestSpi extends MessageDigestSpi {
      */
     protected long inputBytes = 0;
 
+    /**
+     * Array for copying input out of buffers that have no accessible
+     * array, allocated on first use.  This is zeroed after each use,
+     * so it never holds message data between updates.
+     */
+    private byte[] transfer;
+
     /**
      * Initialize a {@code BlockMessageDigestSpi} with its basic
      * components.
@@ -85,11 +99,42 @@ public abstract class BlockMessageDigestSpi extends MessageDigestSpi {
     }
 
     /**
-     * Process a full block of input.
+     * Process a full block of input, read directly from {@code data}.
+     * This allows full blocks to be processed straight out of the
+     * caller's array without first being copied into {@link #block}.
      *
-     * @param last Whether this is the last block.
+     * @param data The array containing the block.
+     * @param offset The offset of the block in {@code data}.
      */
-    protected abstract void processBlock();
+    protected abstract void processBlock(final byte[] data,
+                                         final int offset);
+
+    /**
+     * Process the full block held in {@link #block}.
+     */
+    protected final void processBlock() {
+        processBlock(block, 0);
+    }
+
+    /**
+     * Process a run of consecutive full blocks straight from {@code
+     * data}, advancing {@link #inputBytes} over each one before it is
+     * processed.  Subclasses can override this to process the blocks
+     * in some other way, for example in parallel, provided the result
+     * is the same.
+     *
+     * @param data The array containing the blocks.
+     * @param offset The offset of the first block in {@code data}.
+     * @param nblocks The number of blocks.
+     */
+    protected void processBlocks(final byte[] data,
+                                 final int offset,
+                                 final int nblocks) {
+        for(int i = 0; i < nblocks; i++) {
+            inputBytes += blockBytes;
+            processBlock(data, offset + (i * blockBytes));
+        }
+    }
 
     /**
      * {@inheritDoc}
@@ -126,60 +171,84 @@ public abstract class BlockMessageDigestSpi extends MessageDigestSpi {
 
     /**
      * {@inheritDoc}
+     * <p>
+     * Buffers backed by an accessible array are processed in place.
+     * Other buffers (direct or read-only ones) are copied out several
+     * blocks at a time, and then processed like an array; the copy is
+     * zeroed once it has been processed.
      */
     @Override
     protected final void engineUpdate(final ByteBuffer buf) {
-        for(int i = 0; buf.hasRemaining();) {
-            final int inputRemaining = buf.remaining() - i;
-            final int blockRemaining = blockBytes - blockOffset;
-            final int groupLen;
-
-            if (inputRemaining <= blockRemaining) {
-                groupLen = inputRemaining;
-                inputBytes += groupLen;
-                buf.get(block, blockOffset, groupLen);
-                blockOffset += groupLen;
-                i += groupLen;
-            } else {
-                groupLen = blockRemaining;
-                inputBytes += groupLen;
-                buf.get(block, blockOffset, groupLen);
-                processBlock();
-                blockOffset = 0;
-                i += groupLen;
+        if (buf.hasArray()) {
+            final int len = buf.remaining();
+            final int pos = buf.position();
+
+            engineUpdate(buf.array(), buf.arrayOffset() + pos, len);
+            buf.position(pos + len);
+        } else {
+            if (transfer == null) {
+                transfer = new byte[TRANSFER_BLOCKS * blockBytes];
+            }
+
+            while (buf.hasRemaining()) {
+                final int len = Math.min(buf.remaining(), transfer.length);
+
+                buf.get(transfer, 0, len);
+                engineUpdate(transfer, 0, len);
+                Arrays.fill(transfer, 0, len, (byte)0);
             }
         }
     }
 
     /**
      * {@inheritDoc}
+     * <p>
+     * Only a partial block at the start or the end of the input is
+     * copied into the block array; full blocks in between are
+     * processed directly from {@code input}.  As with the staged
+     * path, a full block is only processed once more input follows
+     * it, so the final block of a message is always left in the
+     * block array for {@link #engineDigest(byte[], int, int)}.
      */
     @Override
     protected void engineUpdate(final byte[] input,
                                 final int inputOffset,
                                 final int inputLen) {
-        for(int i = 0; i < inputLen;) {
-            final int inputRemaining = inputLen - i;
+        final int end = inputOffset + inputLen;
+        int pos = inputOffset;
+
+        if (blockOffset > 0) {
             final int blockRemaining = blockBytes - blockOffset;
-            final int groupLen;
-
-            if (inputRemaining <= blockRemaining) {
-                groupLen = inputRemaining;
-                inputBytes += groupLen;
-                System.arraycopy(input, inputOffset + i, block,
-                                 blockOffset, groupLen);
-                blockOffset += groupLen;
-                i += groupLen;
-            } else {
-                groupLen = blockRemaining;
-                inputBytes += groupLen;
-                System.arraycopy(input, inputOffset + i, block,
-                                 blockOffset, groupLen);
-                processBlock();
-                blockOffset = 0;
-                i += groupLen;
+
+            if (inputLen <= blockRemaining) {
+                inputBytes += inputLen;
+                System.arraycopy(input, pos, block, blockOffset, inputLen);
+                blockOffset += inputLen;
+
+                return;
             }
+
+            inputBytes += blockRemaining;
+            System.arraycopy(input, pos, block, blockOffset,
+                             blockRemaining);
+            processBlock();
+            blockOffset = 0;
+            pos += blockRemaining;
+        }
+
+        // Leave the last block, even if it is full.
+        final int nblocks = (end - pos - 1) / blockBytes;
+
+        if (nblocks > 0) {
+            processBlocks(input, pos, nblocks);
+            pos += nblocks * blockBytes;
         }
+
+        final int tailLen = end - pos;
+
+        inputBytes += tailLen;
+        System.arraycopy(input, pos, block, 0, tailLen);
+        blockOffset = tailLen;
     }
 
     /**
@@ -36,6 +36,10 @@ public final class Blake2b384MessageDigestSpi extends Blake2bMessageDigestSpi {
     public static final int HASH_BITS = 384;
     public static final int HASH_BYTES = HASH_BITS / 8;
 
+    public Blake2b384MessageDigestSpi(final byte[] key) {
+        super(HASH_BYTES, key);
+    }
+
     public Blake2b384MessageDigestSpi() {
         super(HASH_BYTES);
     }
@@ -36,6 +36,7 @@ import java.security.MessageDigestSpi;
 
 import java.util.Arrays;
 
+import net.metricspace.crypto.common.LittleEndian;
 import net.metricspace.crypto.hashes.BlockMessageDigestSpi;
 
 /**
@@ -49,7 +50,6 @@ import net.metricspace.crypto.hashes.BlockMessageDigestSpi;
  */
 abstract class Blake2bMessageDigestSpi extends BlockMessageDigestSpi {
     private static final int BLOCK_BYTES = 128;
-    private static final int BLOCK_WORDS = BLOCK_BYTES / 8;
     private static final int HASH_WORDS = 8;
     private static final int IV_WORDS = 8;
     private static final int STATE_WORDS = HASH_WORDS + IV_WORDS;
@@ -64,7 +64,6 @@ abstract class Blake2bMessageDigestSpi extends BlockMessageDigestSpi {
 
     private final long[] state = new long[STATE_WORDS];
     private final long[] hash = new long[HASH_WORDS];
-    private final long[] message = new long[BLOCK_WORDS];
     private final byte[] key;
     private final int hashBytes;
 
@@ -126,186 +125,237 @@ abstract class Blake2bMessageDigestSpi extends BlockMessageDigestSpi {
         return hashBytes;
     }
 
-    private void mix(final int a,
-                     final int b,
-                     final int c,
-                     final int d,
-                     final long x,
-                     final long y) {
-        state[a] = (state[a] + state[b] + x);
-        state[d] = (state[d] ^ state[a]);
-        state[d] = (state[d] >>> 32) | (state[d] << 32);
-        state[c] = (state[c] + state[d]);
-        state[b] = (state[b] ^ state[c]);
-        state[b] = (state[b] >>> 24) | (state[b] << 40);
-        state[a] = (state[a] + state[b] + y);
-        state[d] = (state[d] ^ state[a]);
-        state[d] = (state[d] >>> 16) | (state[d] << 48);
-        state[c] = (state[c] + state[d]);
-        state[b] = (state[b] ^ state[c]);
-        state[b] = (state[b] >>> 63) | (state[b] << 1);
+    /**
+     * One round of the compression function.  The working vector is
+     * held in locals for the duration of the round, and the message
+     * words are passed as {@code x0} to {@code x15} in the order
+     * given by the round's row of the sigma schedule, so every round
+     * runs the same code.  The rounds are kept out of {@link
+     * #processBlock(byte[], int, boolean)} because fully unrolling all
+     * twelve there produces a method too large for HotSpot to
+     * compile.
+     */
+    private static void round(final long[] v,
+                              final long x0,
+                              final long x1,
+                              final long x2,
+                              final long x3,
+                              final long x4,
+                              final long x5,
+                              final long x6,
+                              final long x7,
+                              final long x8,
+                              final long x9,
+                              final long x10,
+                              final long x11,
+                              final long x12,
+                              final long x13,
+                              final long x14,
+                              final long x15) {
+        long v0 = v[0];
+        long v1 = v[1];
+        long v2 = v[2];
+        long v3 = v[3];
+        long v4 = v[4];
+        long v5 = v[5];
+        long v6 = v[6];
+        long v7 = v[7];
+        long v8 = v[8];
+        long v9 = v[9];
+        long v10 = v[10];
+        long v11 = v[11];
+        long v12 = v[12];
+        long v13 = v[13];
+        long v14 = v[14];
+        long v15 = v[15];
+
+        v0 += v4 + x0;
+        v12 ^= v0;
+        v12 = (v12 >>> 32) | (v12 << 32);
+        v8 += v12;
+        v4 ^= v8;
+        v4 = (v4 >>> 24) | (v4 << 40);
+        v0 += v4 + x1;
+        v12 ^= v0;
+        v12 = (v12 >>> 16) | (v12 << 48);
+        v8 += v12;
+        v4 ^= v8;
+        v4 = (v4 >>> 63) | (v4 << 1);
+
+        v1 += v5 + x2;
+        v13 ^= v1;
+        v13 = (v13 >>> 32) | (v13 << 32);
+        v9 += v13;
+        v5 ^= v9;
+        v5 = (v5 >>> 24) | (v5 << 40);
+        v1 += v5 + x3;
+        v13 ^= v1;
+        v13 = (v13 >>> 16) | (v13 << 48);
+        v9 += v13;
+        v5 ^= v9;
+        v5 = (v5 >>> 63) | (v5 << 1);
+
+        v2 += v6 + x4;
+        v14 ^= v2;
+        v14 = (v14 >>> 32) | (v14 << 32);
+        v10 += v14;
+        v6 ^= v10;
+        v6 = (v6 >>> 24) | (v6 << 40);
+        v2 += v6 + x5;
+        v14 ^= v2;
+        v14 = (v14 >>> 16) | (v14 << 48);
+        v10 += v14;
+        v6 ^= v10;
+        v6 = (v6 >>> 63) | (v6 << 1);
+
+        v3 += v7 + x6;
+        v15 ^= v3;
+        v15 = (v15 >>> 32) | (v15 << 32);
+        v11 += v15;
+        v7 ^= v11;
+        v7 = (v7 >>> 24) | (v7 << 40);
+        v3 += v7 + x7;
+        v15 ^= v3;
+        v15 = (v15 >>> 16) | (v15 << 48);
+        v11 += v15;
+        v7 ^= v11;
+        v7 = (v7 >>> 63) | (v7 << 1);
+
+        v0 += v5 + x8;
+        v15 ^= v0;
+        v15 = (v15 >>> 32) | (v15 << 32);
+        v10 += v15;
+        v5 ^= v10;
+        v5 = (v5 >>> 24) | (v5 << 40);
+        v0 += v5 + x9;
+        v15 ^= v0;
+        v15 = (v15 >>> 16) | (v15 << 48);
+        v10 += v15;
+        v5 ^= v10;
+        v5 = (v5 >>> 63) | (v5 << 1);
+
+        v1 += v6 + x10;
+        v12 ^= v1;
+        v12 = (v12 >>> 32) | (v12 << 32);
+        v11 += v12;
+        v6 ^= v11;
+        v6 = (v6 >>> 24) | (v6 << 40);
+        v1 += v6 + x11;
+        v12 ^= v1;
+        v12 = (v12 >>> 16) | (v12 << 48);
+        v11 += v12;
+        v6 ^= v11;
+        v6 = (v6 >>> 63) | (v6 << 1);
+
+        v2 += v7 + x12;
+        v13 ^= v2;
+        v13 = (v13 >>> 32) | (v13 << 32);
+        v8 += v13;
+        v7 ^= v8;
+        v7 = (v7 >>> 24) | (v7 << 40);
+        v2 += v7 + x13;
+        v13 ^= v2;
+        v13 = (v13 >>> 16) | (v13 << 48);
+        v8 += v13;
+        v7 ^= v8;
+        v7 = (v7 >>> 63) | (v7 << 1);
+
+        v3 += v4 + x14;
+        v14 ^= v3;
+        v14 = (v14 >>> 32) | (v14 << 32);
+        v9 += v14;
+        v4 ^= v9;
+        v4 = (v4 >>> 24) | (v4 << 40);
+        v3 += v4 + x15;
+        v14 ^= v3;
+        v14 = (v14 >>> 16) | (v14 << 48);
+        v9 += v14;
+        v4 ^= v9;
+        v4 = (v4 >>> 63) | (v4 << 1);
+
+        v[0] = v0;
+        v[1] = v1;
+        v[2] = v2;
+        v[3] = v3;
+        v[4] = v4;
+        v[5] = v5;
+        v[6] = v6;
+        v[7] = v7;
+        v[8] = v8;
+        v[9] = v9;
+        v[10] = v10;
+        v[11] = v11;
+        v[12] = v12;
+        v[13] = v13;
+        v[14] = v14;
+        v[15] = v15;
     }
 
-    private void processBlock(final boolean last) {
+    private void processBlock(final byte[] data,
+                              final int offset,
+                              final boolean last) {
+        final long m0 = LittleEndian.load64(data, offset);
+        final long m1 = LittleEndian.load64(data, offset + 8);
+        final long m2 = LittleEndian.load64(data, offset + 16);
+        final long m3 = LittleEndian.load64(data, offset + 24);
+        final long m4 = LittleEndian.load64(data, offset + 32);
+        final long m5 = LittleEndian.load64(data, offset + 40);
+        final long m6 = LittleEndian.load64(data, offset + 48);
+        final long m7 = LittleEndian.load64(data, offset + 56);
+        final long m8 = LittleEndian.load64(data, offset + 64);
+        final long m9 = LittleEndian.load64(data, offset + 72);
+        final long m10 = LittleEndian.load64(data, offset + 80);
+        final long m11 = LittleEndian.load64(data, offset + 88);
+        final long m12 = LittleEndian.load64(data, offset + 96);
+        final long m13 = LittleEndian.load64(data, offset + 104);
+        final long m14 = LittleEndian.load64(data, offset + 112);
+        final long m15 = LittleEndian.load64(data, offset + 120);
+
         System.arraycopy(hash, 0, state, 0, HASH_WORDS);
         System.arraycopy(IV, 0, state, HASH_WORDS, IV_WORDS);
-
-        for(int i = 0; i < BLOCK_WORDS; i++) {
-            message[i] = ((long)block[8 * i]) & 0xff |
-                         (((long)block[(8 * i) + 1]) & 0xff) << 8 |
-                         (((long)block[(8 * i) + 2]) & 0xff) << 16 |
-                         (((long)block[(8 * i) + 3]) & 0xff) << 24 |
-                         (((long)block[(8 * i) + 4]) & 0xff) << 32 |
-                         (((long)block[(8 * i) + 5]) & 0xff) << 40 |
-                         (((long)block[(8 * i) + 6]) & 0xff) << 48 |
-                         (((long)block[(8 * i) + 7]) & 0xff) << 56;
-        }
-
         state[12] ^= inputBytes;
 
         if (last) {
             state[14] ^= 0xffffffffffffffffL;
         }
 
-        // Round 1
-
-        mix(0, 4,  8, 12, message[0], message[1]);
-        mix(1, 5,  9, 13, message[2], message[3]);
-        mix(2, 6, 10, 14, message[4], message[5]);
-        mix(3, 7, 11, 15, message[6], message[7]);
-        mix(0, 5, 10, 15, message[8], message[9]);
-        mix(1, 6, 11, 12, message[10], message[11]);
-        mix(2, 7,  8, 13, message[12], message[13]);
-        mix(3, 4,  9, 14, message[14], message[15]);
-
-        // Round 2
-
-        mix(0, 4,  8, 12, message[14], message[10]);
-        mix(1, 5,  9, 13, message[4], message[8]);
-        mix(2, 6, 10, 14, message[9], message[15]);
-        mix(3, 7, 11, 15, message[13], message[6]);
-        mix(0, 5, 10, 15, message[1], message[12]);
-        mix(1, 6, 11, 12, message[0], message[2]);
-        mix(2, 7,  8, 13, message[11], message[7]);
-        mix(3, 4,  9, 14, message[5], message[3]);
-
-        // Round 3
-
-        mix(0, 4,  8, 12, message[11], message[8]);
-        mix(1, 5,  9, 13, message[12], message[0]);
-        mix(2, 6, 10, 14, message[5], message[2]);
-        mix(3, 7, 11, 15, message[15], message[13]);
-        mix(0, 5, 10, 15, message[10], message[14]);
-        mix(1, 6, 11, 12, message[3], message[6]);
-        mix(2, 7,  8, 13, message[7], message[1]);
-        mix(3, 4,  9, 14, message[9], message[4]);
-
-        // Round 4
-
-        mix(0, 4,  8, 12, message[7], message[9]);
-        mix(1, 5,  9, 13, message[3], message[1]);
-        mix(2, 6, 10, 14, message[13], message[12]);
-        mix(3, 7, 11, 15, message[11], message[14]);
-        mix(0, 5, 10, 15, message[2], message[6]);
-        mix(1, 6, 11, 12, message[5], message[10]);
-        mix(2, 7,  8, 13, message[4], message[0]);
-        mix(3, 4,  9, 14, message[15], message[8]);
-
-        // Round 5
-
-        mix(0, 4,  8, 12, message[9], message[0]);
-        mix(1, 5,  9, 13, message[5], message[7]);
-        mix(2, 6, 10, 14, message[2], message[4]);
-        mix(3, 7, 11, 15, message[10], message[15]);
-        mix(0, 5, 10, 15, message[14], message[1]);
-        mix(1, 6, 11, 12, message[11], message[12]);
-        mix(2, 7,  8, 13, message[6], message[8]);
-        mix(3, 4,  9, 14, message[3], message[13]);
-
-        // Round 6
-
-        mix(0, 4,  8, 12, message[2], message[12]);
-        mix(1, 5,  9, 13, message[6], message[10]);
-        mix(2, 6, 10, 14, message[0], message[11]);
-        mix(3, 7, 11, 15, message[8], message[3]);
-        mix(0, 5, 10, 15, message[4], message[13]);
-        mix(1, 6, 11, 12, message[7], message[5]);
-        mix(2, 7,  8, 13, message[15], message[14]);
-        mix(3, 4,  9, 14, message[1], message[9]);
-
-        // Round 7
-
-        mix(0, 4,  8, 12, message[12], message[5]);
-        mix(1, 5,  9, 13, message[1], message[15]);
-        mix(2, 6, 10, 14, message[14], message[13]);
-        mix(3, 7, 11, 15, message[4], message[10]);
-        mix(0, 5, 10, 15, message[0], message[7]);
-        mix(1, 6, 11, 12, message[6], message[3]);
-        mix(2, 7,  8, 13, message[9], message[2]);
-        mix(3, 4,  9, 14, message[8], message[11]);
-
-        // Round 8
-
-        mix(0, 4,  8, 12, message[13], message[11]);
-        mix(1, 5,  9, 13, message[7], message[14]);
-        mix(2, 6, 10, 14, message[12], message[1]);
-        mix(3, 7, 11, 15, message[3], message[9]);
-        mix(0, 5, 10, 15, message[5], message[0]);
-        mix(1, 6, 11, 12, message[15], message[4]);
-        mix(2, 7,  8, 13, message[8], message[6]);
-        mix(3, 4,  9, 14, message[2], message[10]);
-
-        // Round 9
-
-        mix(0, 4,  8, 12, message[6], message[15]);
-        mix(1, 5,  9, 13, message[14], message[9]);
-        mix(2, 6, 10, 14, message[11], message[3]);
-        mix(3, 7, 11, 15, message[0], message[8]);
-        mix(0, 5, 10, 15, message[12], message[2]);
-        mix(1, 6, 11, 12, message[13], message[7]);
-        mix(2, 7,  8, 13, message[1], message[4]);
-        mix(3, 4,  9, 14, message[10], message[5]);
-
-        // Round 10
-
-        mix(0, 4,  8, 12, message[10], message[2]);
-        mix(1, 5,  9, 13, message[8], message[4]);
-        mix(2, 6, 10, 14, message[7], message[6]);
-        mix(3, 7, 11, 15, message[1], message[5]);
-        mix(0, 5, 10, 15, message[15], message[11]);
-        mix(1, 6, 11, 12, message[9], message[14]);
-        mix(2, 7,  8, 13, message[3], message[12]);
-        mix(3, 4,  9, 14, message[13], message[0]);
-
-        // Round 11
-
-        mix(0, 4,  8, 12, message[0], message[1]);
-        mix(1, 5,  9, 13, message[2], message[3]);
-        mix(2, 6, 10, 14, message[4], message[5]);
-        mix(3, 7, 11, 15, message[6], message[7]);
-        mix(0, 5, 10, 15, message[8], message[9]);
-        mix(1, 6, 11, 12, message[10], message[11]);
-        mix(2, 7,  8, 13, message[12], message[13]);
-        mix(3, 4,  9, 14, message[14], message[15]);
-
-        // Round 12
-
-        mix(0, 4,  8, 12, message[14], message[10]);
-        mix(1, 5,  9, 13, message[4], message[8]);
-        mix(2, 6, 10, 14, message[9], message[15]);
-        mix(3, 7, 11, 15, message[13], message[6]);
-        mix(0, 5, 10, 15, message[1], message[12]);
-        mix(1, 6, 11, 12, message[0], message[2]);
-        mix(2, 7,  8, 13, message[11], message[7]);
-        mix(3, 4,  9, 14, message[5], message[3]);
-
-        for(int i = 0; i < 8; i++) {
+        // The sigma schedule, one row per round.  Rounds 11 and 12
+        // reuse the first two rows.
+
+        round(state, m0, m1, m2, m3, m4, m5, m6, m7, m8, m9, m10, m11, m12, m13,
+              m14, m15);
+        round(state, m14, m10, m4, m8, m9, m15, m13, m6, m1, m12, m0, m2, m11,
+              m7, m5, m3);
+        round(state, m11, m8, m12, m0, m5, m2, m15, m13, m10, m14, m3, m6, m7,
+              m1, m9, m4);
+        round(state, m7, m9, m3, m1, m13, m12, m11, m14, m2, m6, m5, m10, m4,
+              m0, m15, m8);
+        round(state, m9, m0, m5, m7, m2, m4, m10, m15, m14, m1, m11, m12, m6,
+              m8, m3, m13);
+        round(state, m2, m12, m6, m10, m0, m11, m8, m3, m4, m13, m7, m5, m15,
+              m14, m1, m9);
+        round(state, m12, m5, m1, m15, m14, m13, m4, m10, m0, m7, m6, m3, m9,
+              m2, m8, m11);
+        round(state, m13, m11, m7, m14, m12, m1, m3, m9, m5, m0, m15, m4, m8,
+              m6, m2, m10);
+        round(state, m6, m15, m14, m9, m11, m3, m0, m8, m12, m2, m13, m7, m1,
+              m4, m10, m5);
+        round(state, m10, m2, m8, m4, m7, m6, m1, m5, m15, m11, m9, m14, m3,
+              m12, m13, m0);
+        round(state, m0, m1, m2, m3, m4, m5, m6, m7, m8, m9, m10, m11, m12, m13,
+              m14, m15);
+        round(state, m14, m10, m4, m8, m9, m15, m13, m6, m1, m12, m0, m2, m11,
+              m7, m5, m3);
+
+        for(int i = 0; i < HASH_WORDS; i++) {
             hash[i] ^= state[i] ^ state[i + 8];
         }
     }
 
     /**
      * {@inheritDoc}
+     * <p>
+     * This resets the digest afterwards.
      */
     @Override
     protected final int engineDigest(final byte[] output,
@@ -317,19 +367,18 @@ abstract class Blake2bMessageDigestSpi extends BlockMessageDigestSpi {
         }
 
         Arrays.fill(block, blockOffset, BLOCK_BYTES, (byte)0);
-        processBlock(true);
-
-        for(int i = 0; i < HASH_WORDS; i++) {
-            output[8 * i] = (byte)(hash[i] & 0xff);
-            output[(8 * i) + 1] = (byte)((hash[i] >>> 8) & 0xff);
-            output[(8 * i) + 2] = (byte)((hash[i] >>> 16) & 0xff);
-            output[(8 * i) + 3] = (byte)((hash[i] >>> 24) & 0xff);
-            output[(8 * i) + 4] = (byte)((hash[i] >>> 32) & 0xff);
-            output[(8 * i) + 5] = (byte)((hash[i] >>> 40) & 0xff);
-            output[(8 * i) + 6] = (byte)((hash[i] >>> 48) & 0xff);
-            output[(8 * i) + 7] = (byte)((hash[i] >>> 56) & 0xff);
+        processBlock(block, 0, true);
+
+        // The digest is the first hashBytes bytes of the
+        // little-endian hash words, which for the shorter variants
+        // ends partway through a word.
+        for(int i = 0; i < hashBytes; i++) {
+            output[outputOffset + i] =
+                (byte)(hash[i >>> 3] >>> (8 * (i & 7)));
         }
 
+        engineReset();
+
         return hashBytes;
     }
 
@@ -337,7 +386,8 @@ abstract class Blake2bMessageDigestSpi extends BlockMessageDigestSpi {
      * {@inheritDoc}
      */
     @Override
-    protected void processBlock() {
-        processBlock(false);
+    protected void processBlock(final byte[] data,
+                                final int offset) {
+        processBlock(data, offset, false);
     }
 }
@@ -0,0 +1,469 @@
+/* Copyright (c) 2018, Eric McCorkle.  All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions
+ * are met:
+ *
+ * * Redistributions of source code must retain the above copyright
+ *   notice, this list of conditions and the following disclaimer.
+ *
+ * * Redistributions in binary form must reproduce the above copyright
+ *   notice, this list of conditions and the following disclaimer in
+ *   the documentation and/or other materials provided with the
+ *   distribution.
+ *
+ * * Neither the name of the copyright holder nor the names of its
+ *   contributors may be used to endorse or promote products derived
+ *   from this software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS
+ * "AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT
+ * LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS
+ * FOR A PARTICULAR PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE
+ * COPYRIGHT HOLDER OR CONTRIBUTORS BE LIABLE FOR ANY DIRECT,
+ * INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES
+ * (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR
+ * SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION)
+ * HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT,
+ * STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED
+ * OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+package net.metricspace.crypto.hashes.keccak;
+
+import java.nio.ByteBuffer;
+
+import java.security.DigestException;
+
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+
+import net.metricspace.crypto.hashes.BlockMessageDigestSpi;
+
+/**
+ * The KangarooTwelve (KT128) hash function from RFC 9861, a tree hash
+ * built on TurboSHAKE128.  The input is cut into 8 KiB chunks; every
+ * chunk after the first is hashed on its own into a 32-byte chaining
+ * value, and the first chunk and the chaining values, in order, make
+ * up the final node.
+ * <p>
+ * Since the leaf chunks are independent of each other, runs of them
+ * that arrive in a single update are hashed in parallel on a {@link
+ * ForkJoinPool}.  The chaining values are collected by index and
+ * absorbed into the final node in order once the whole run is done,
+ * so the result does not depend on how the work was scheduled.
+ * <p>
+ * Through the JCA, this produces 32-byte digests with no
+ * customization string, using the common pool.  Used directly, the
+ * output length, customization string, and pool can be chosen, and
+ * the {@code update} and {@code digest} methods used to hash data.
+ * <p>
+ * Instances are not thread-safe.
+ */
+public final class KangarooTwelveMessageDigestSpi
+    extends BlockMessageDigestSpi {
+    public static final String NAME = "KangarooTwelve";
+
+    /**
+     * Length of digests produced through the JCA.
+     */
+    public static final int DEFAULT_HASH_BYTES = 32;
+
+    /**
+     * Size of a chunk in bytes.
+     */
+    private static final int CHUNK_BYTES = 8192;
+
+    /**
+     * Size of a chaining value in bytes.
+     */
+    private static final int CV_BYTES = 32;
+
+    /**
+     * Domain separation byte for a message that fits in one chunk.
+     */
+    private static final byte SINGLE_DOMAIN = 0x07;
+
+    /**
+     * Domain separation byte for the final node of a tree.
+     */
+    private static final byte FINAL_DOMAIN = 0x06;
+
+    /**
+     * Domain separation byte for a leaf chunk.
+     */
+    private static final byte LEAF_DOMAIN = 0x0b;
+
+    /**
+     * Bytes following the first chunk in the final node.
+     */
+    private static final byte[] FIRST_CHUNK_SUFFIX = new byte[] {
+        0x03, 0x00, 0x00, 0x00, 0x00, 0x00, 0x00, 0x00
+    };
+
+    /**
+     * Minimum number of leaf chunks in an update for them to be
+     * hashed in parallel.
+     */
+    private static final int PARALLEL_CHUNKS = 8;
+
+    /**
+     * Number of leaf chunks below which a task is not split further.
+     */
+    private static final int TASK_CHUNKS = 4;
+
+    /**
+     * Maximum number of leaf chunks hashed in parallel at once.  This
+     * bounds the size of {@link #cvs}.
+     */
+    private static final int BATCH_CHUNKS = 1024;
+
+    private final int hashBytes;
+
+    /**
+     * The customization string.
+     */
+    private final byte[] customization;
+
+    /**
+     * The pool on which to hash leaf chunks.
+     */
+    private final ForkJoinPool pool;
+
+    /**
+     * Sponge for the final node.
+     */
+    private final TurboShake node = new TurboShake();
+
+    /**
+     * Sponge for leaf chunks hashed on this thread.
+     */
+    private final TurboShake leaf = new TurboShake();
+
+    /**
+     * Chaining value of a leaf chunk hashed on this thread.
+     */
+    private final byte[] cv = new byte[CV_BYTES];
+
+    /**
+     * Chaining values of leaf chunks hashed in parallel, allocated on
+     * first use.
+     */
+    private byte[] cvs;
+
+    /**
+     * Number of chunks absorbed into the final node so far, counting
+     * the first.
+     */
+    private long chunks = 0;
+
+    /**
+     * Initialize a {@code KangarooTwelveMessageDigestSpi} with no
+     * customization string, using the common {@link ForkJoinPool}.
+     */
+    public KangarooTwelveMessageDigestSpi() {
+        this(DEFAULT_HASH_BYTES, new byte[0], ForkJoinPool.commonPool());
+    }
+
+    /**
+     * Initialize a {@code KangarooTwelveMessageDigestSpi}.
+     *
+     * @param hashBytes The number of bytes in a hash value.
+     * @param customization The customization string.
+     * @param pool The pool on which to hash leaf chunks.
+     */
+    public KangarooTwelveMessageDigestSpi(final int hashBytes,
+                                          final byte[] customization,
+                                          final ForkJoinPool pool) {
+        super(CHUNK_BYTES);
+
+        if (hashBytes < 1) {
+            throw new IllegalArgumentException("Hash length must be " +
+                                               "positive");
+        }
+
+        this.hashBytes = hashBytes;
+        this.customization = customization.clone();
+        this.pool = pool;
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    protected int engineGetDigestLength() {
+        return hashBytes;
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    protected void engineReset() {
+        super.engineReset();
+
+        node.reset();
+        chunks = 0;
+    }
+
+    /**
+     * Add input to the message.
+     *
+     * @param input The array containing the input.
+     * @param offset The offset of the input.
+     * @param len The length of the input.
+     */
+    public void update(final byte[] input,
+                       final int offset,
+                       final int len) {
+        engineUpdate(input, offset, len);
+    }
+
+    /**
+     * Add all of an array to the message.
+     *
+     * @param input The input.
+     */
+    public void update(final byte[] input) {
+        engineUpdate(input, 0, input.length);
+    }
+
+    /**
+     * Add the remaining contents of a buffer to the message.
+     *
+     * @param input The buffer containing the input.
+     */
+    public void update(final ByteBuffer input) {
+        engineUpdate(input);
+    }
+
+    /**
+     * Finish hashing the message, and reset for a new one.
+     *
+     * @return The hash value.
+     */
+    public byte[] digest() {
+        return engineDigest();
+    }
+
+    /**
+     * Hash a leaf chunk into its chaining value.
+     *
+     * @param sponge The sponge to use.
+     * @param data The array containing the chunk.
+     * @param offset The offset of the chunk in {@code data}.
+     * @param len The length of the chunk.
+     * @param out The array to which to write the chaining value.
+     * @param outOffset The offset at which to write the chaining
+     *                  value.
+     */
+    private static void chainingValue(final TurboShake sponge,
+                                      final byte[] data,
+                                      final int offset,
+                                      final int len,
+                                      final byte[] out,
+                                      final int outOffset) {
+        sponge.reset();
+        sponge.absorb(data, offset, len);
+        sponge.pad(LEAF_DOMAIN);
+        sponge.squeeze(out, outOffset, CV_BYTES);
+    }
+
+    /**
+     * Encode a length as in RFC 9861: the big-endian bytes of the
+     * value with no leading zeros, followed by the number of such
+     * bytes.
+     *
+     * @param value The value to encode.
+     * @return The encoded value.
+     */
+    private static byte[] lengthEncode(final long value) {
+        int len = 0;
+
+        for(long v = value; v != 0; v >>>= 8) {
+            len++;
+        }
+
+        final byte[] out = new byte[len + 1];
+
+        for(int i = 0; i < len; i++) {
+            out[i] = (byte)(value >>> (8 * (len - 1 - i)));
+        }
+
+        out[len] = (byte)len;
+
+        return out;
+    }
+
+    /**
+     * {@inheritDoc}
+     * <p>
+     * The first chunk goes straight into the final node; any other
+     * chunk is hashed as a leaf, and its chaining value goes into the
+     * final node.
+     */
+    @Override
+    protected void processBlock(final byte[] data,
+                                final int offset) {
+        if (chunks == 0) {
+            node.absorb(data, offset, CHUNK_BYTES);
+            node.absorb(FIRST_CHUNK_SUFFIX, 0, FIRST_CHUNK_SUFFIX.length);
+        } else {
+            chainingValue(leaf, data, offset, CHUNK_BYTES, cv, 0);
+            node.absorb(cv, 0, CV_BYTES);
+        }
+
+        chunks++;
+    }
+
+    /**
+     * {@inheritDoc}
+     * <p>
+     * Runs of enough leaf chunks are hashed in parallel, in batches
+     * of at most {@link #BATCH_CHUNKS} chunks, and their chaining
+     * values absorbed in order afterwards.
+     */
+    @Override
+    protected void processBlocks(final byte[] data,
+                                 final int offset,
+                                 final int nblocks) {
+        int pos = offset;
+        int remaining = nblocks;
+
+        if (chunks == 0 && remaining > 0) {
+            inputBytes += CHUNK_BYTES;
+            processBlock(data, pos);
+            pos += CHUNK_BYTES;
+            remaining--;
+        }
+
+        if (pool.getParallelism() > 1) {
+            while (remaining >= PARALLEL_CHUNKS) {
+                final int n = Math.min(remaining, BATCH_CHUNKS);
+
+                if (cvs == null) {
+                    cvs = new byte[BATCH_CHUNKS * CV_BYTES];
+                }
+
+                pool.invoke(new LeafTask(data, pos, 0, n));
+                node.absorb(cvs, 0, n * CV_BYTES);
+                chunks += n;
+                inputBytes += (long)n * CHUNK_BYTES;
+                pos += n * CHUNK_BYTES;
+                remaining -= n;
+            }
+        }
+
+        super.processBlocks(data, pos, remaining);
+    }
+
+    /**
+     * {@inheritDoc}
+     * <p>
+     * This resets the digest afterwards.
+     */
+    @Override
+    protected int engineDigest(final byte[] output,
+                               final int outputOffset,
+                               final int outputLen)
+        throws DigestException {
+        if (outputLen < hashBytes) {
+            throw new DigestException("Insufficient space for digest");
+        }
+
+        final byte[] customizationLen = lengthEncode(customization.length);
+
+        engineUpdate(customization, 0, customization.length);
+        engineUpdate(customizationLen, 0, customizationLen.length);
+
+        if (chunks == 0) {
+            node.absorb(block, 0, blockOffset);
+            node.pad(SINGLE_DOMAIN);
+        } else {
+            chainingValue(leaf, block, 0, blockOffset, cv, 0);
+            node.absorb(cv, 0, CV_BYTES);
+
+            // The first chunk is not a leaf, but the last one has not
+            // been counted, so this is the number of leaves.
+            final byte[] leaves = lengthEncode(chunks);
+
+            node.absorb(leaves, 0, leaves.length);
+            node.absorb((byte)0xff);
+            node.absorb((byte)0xff);
+            node.pad(FINAL_DOMAIN);
+        }
+
+        node.squeeze(output, outputOffset, hashBytes);
+        engineReset();
+
+        return hashBytes;
+    }
+
+    /**
+     * Task hashing a range of leaf chunks into {@link #cvs}.
+     */
+    private final class LeafTask extends RecursiveAction {
+        private static final long serialVersionUID = 1L;
+
+        /**
+         * The array containing the chunks.
+         */
+        private final byte[] data;
+
+        /**
+         * Offset in {@code data} of the first chunk of the batch.
+         */
+        private final int base;
+
+        /**
+         * Index in the batch of the first chunk in this range.
+         */
+        private final int from;
+
+        /**
+         * Number of chunks in this range.
+         */
+        private final int count;
+
+        /**
+         * Initialize a {@code LeafTask}.
+         *
+         * @param data The array containing the chunks.
+         * @param base Offset in {@code data} of the first chunk of
+         *             the batch.
+         * @param from Index in the batch of the first chunk in this
+         *             range.
+         * @param count Number of chunks in this range.
+         */
+        LeafTask(final byte[] data,
+                 final int base,
+                 final int from,
+                 final int count) {
+            this.data = data;
+            this.base = base;
+            this.from = from;
+            this.count = count;
+        }
+
+        /**
+         * {@inheritDoc}
+         */
+        @Override
+        protected void compute() {
+            if (count > TASK_CHUNKS) {
+                final int half = count / 2;
+
+                invokeAll(new LeafTask(data, base, from, half),
+                          new LeafTask(data, base, from + half,
+                                       count - half));
+            } else {
+                final TurboShake sponge = new TurboShake();
+
+                for(int i = from; i < from + count; i++) {
+                    chainingValue(sponge, data, base + (i * CHUNK_BYTES),
+                                  CHUNK_BYTES, cvs, i * CV_BYTES);
+                }
+            }
+        }
+    }
+}
@@ -31,16 +31,25 @@
  */
 package net.metricspace.crypto.hashes.keccak;
 
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+
 import java.security.DigestException;
 import java.security.MessageDigestSpi;
 
 import java.util.Arrays;
 
+import net.metricspace.crypto.common.LittleEndian;
 import net.metricspace.crypto.hashes.BlockMessageDigestSpi;
 
 /**
  */
 abstract class KeccakMessageDigestSpi extends BlockMessageDigestSpi {
+    /**
+     * Domain separation bits and first padding bit for SHA3.
+     */
+    static final byte SHA3_SUFFIX = 0x06;
+
     private static final long[] RC = new long[] {
         0x0000000000000001L,
         0x0000000000008082L,
@@ -68,28 +77,59 @@ abstract class KeccakMessageDigestSpi extends BlockMessageDigestSpi {
         0x8000000080008008L
     };
 
-    private final long[][] lanes = new long[5][5];
-    private final long[][] tempb = new long[5][5];
-    private final long[] tempc = new long[5];
-    private final long[] tempd = new long[5];
+    private final long[] state = new long[25];
     private final int hashBytes;
     private final int capacity;
     private final int rate;
+    private final int rateWords;
     private final int nrounds;
+    private final byte suffix;
+
+    /**
+     * Whether the input has been padded, and output is being
+     * squeezed out.
+     */
+    private boolean squeezing = false;
+
+    /**
+     * Number of bytes of the current rate block already squeezed out.
+     */
+    private int squeezeOffset = 0;
 
     /**
-     * Initialize a {@code KeccakMessageDigestSpi} with a hash size.
+     * Initialize a {@code KeccakMessageDigestSpi} for a SHA3 hash.
      *
      * @param hashBytes The number of bytes in a hash value.
+     * @param capacity The capacity in bits.
+     * @param rate The rate in bits.
      */
     protected KeccakMessageDigestSpi(final int hashBytes,
                                      final int capacity,
                                      final int rate) {
+        this(hashBytes, capacity, rate, SHA3_SUFFIX);
+    }
+
+    /**
+     * Initialize a {@code KeccakMessageDigestSpi} with the given
+     * domain separation suffix.
+     *
+     * @param hashBytes The number of bytes in a hash value.
+     * @param capacity The capacity in bits.
+     * @param rate The rate in bits.
+     * @param suffix The domain separation bits, followed by the first
+     *               bit of the padding.
+     */
+    protected KeccakMessageDigestSpi(final int hashBytes,
+                                     final int capacity,
+                                     final int rate,
+                                     final byte suffix) {
         super(rate / 8);
 
+        this.suffix = suffix;
         this.hashBytes = hashBytes;
         this.capacity = capacity;
         this.rate = rate;
+        this.rateWords = rate / 64;
 
         switch(capacity + rate) {
         default:
@@ -127,11 +167,18 @@ abstract class KeccakMessageDigestSpi extends BlockMessageDigestSpi {
     protected void engineReset() {
         super.engineReset();
 
-        Arrays.fill(lanes[0], 0, 5, (long)0);
-        Arrays.fill(lanes[1], 0, 5, (long)0);
-        Arrays.fill(lanes[2], 0, 5, (long)0);
-        Arrays.fill(lanes[3], 0, 5, (long)0);
-        Arrays.fill(lanes[4], 0, 5, (long)0);
+        Arrays.fill(state, (long)0);
+        squeezing = false;
+        squeezeOffset = 0;
+    }
+
+    /**
+     * Check whether output has started to be squeezed out.
+     *
+     * @return Whether output has started to be squeezed out.
+     */
+    final boolean squeezing() {
+        return squeezing;
     }
 
     /**
@@ -142,198 +189,411 @@ abstract class KeccakMessageDigestSpi extends BlockMessageDigestSpi {
         return hashBytes;
     }
 
-    private void round(final long rc) {
-        // Theta step
-
-        tempc[0] = lanes[0][0] ^ lanes[0][1] ^ lanes[0][2] ^
-            lanes[0][3] ^ lanes[0][4];
-        tempc[1] = lanes[1][0] ^ lanes[1][1] ^ lanes[1][2] ^
-            lanes[1][3] ^ lanes[1][4];
-        tempc[2] = lanes[2][0] ^ lanes[2][1] ^ lanes[2][2] ^
-            lanes[2][3] ^ lanes[2][4];
-        tempc[3] = lanes[3][0] ^ lanes[3][1] ^ lanes[3][2] ^
-            lanes[3][3] ^ lanes[3][4];
-        tempc[4] = lanes[4][0] ^ lanes[4][1] ^ lanes[4][2] ^
-            lanes[4][3] ^ lanes[4][4];
-
-        tempd[0] = tempc[4] ^ ((tempc[1] << 1) | (tempc[1] >>> 63));
-        tempd[1] = tempc[0] ^ ((tempc[2] << 1) | (tempc[2] >>> 63));
-        tempd[2] = tempc[1] ^ ((tempc[3] << 1) | (tempc[3] >>> 63));
-        tempd[3] = tempc[2] ^ ((tempc[4] << 1) | (tempc[4] >>> 63));
-        tempd[4] = tempc[3] ^ ((tempc[0] << 1) | (tempc[0] >>> 63));
-
-        lanes[0][0] ^= tempd[0];
-        lanes[0][1] ^= tempd[0];
-        lanes[0][2] ^= tempd[0];
-        lanes[0][3] ^= tempd[0];
-        lanes[0][4] ^= tempd[0];
-        lanes[1][0] ^= tempd[1];
-        lanes[1][1] ^= tempd[1];
-        lanes[1][2] ^= tempd[1];
-        lanes[1][3] ^= tempd[1];
-        lanes[1][4] ^= tempd[1];
-        lanes[2][0] ^= tempd[2];
-        lanes[2][1] ^= tempd[2];
-        lanes[2][2] ^= tempd[2];
-        lanes[2][3] ^= tempd[2];
-        lanes[2][4] ^= tempd[2];
-        lanes[3][0] ^= tempd[3];
-        lanes[3][1] ^= tempd[3];
-        lanes[3][2] ^= tempd[3];
-        lanes[3][3] ^= tempd[3];
-        lanes[3][4] ^= tempd[3];
-        lanes[4][0] ^= tempd[4];
-        lanes[4][1] ^= tempd[4];
-        lanes[4][2] ^= tempd[4];
-        lanes[4][3] ^= tempd[4];
-        lanes[4][4] ^= tempd[4];
-
-        // Rho and Pi steps
-
-        tempb[0][0] = lanes[0][0];
-        tempb[1][3] = ((lanes[0][1] >>> 28) | (lanes[0][1] << 36));
-        tempb[2][1] = ((lanes[0][2] >>> 61) | (lanes[0][2] << 3));
-        tempb[3][4] = ((lanes[0][3] >>> 23) | (lanes[0][3] << 41));
-        tempb[4][2] = ((lanes[0][4] >>> 46) | (lanes[0][4] << 18));
-
-        tempb[0][2] = ((lanes[1][0] >>> 63) | (lanes[1][0] << 1));
-        tempb[1][0] = ((lanes[1][1] >>> 20) | (lanes[1][1] << 44));
-        tempb[2][3] = ((lanes[1][2] >>> 54) | (lanes[1][2] << 10));
-        tempb[3][1] = ((lanes[1][3] >>> 19) | (lanes[1][3] << 45));
-        tempb[4][4] = ((lanes[1][4] >>> 62) | (lanes[1][4] << 2));
-
-        tempb[0][4] = ((lanes[2][0] >>> 2) | (lanes[2][0] << 62));
-        tempb[1][2] = ((lanes[2][1] >>> 58) | (lanes[2][1] << 6));
-        tempb[2][0] = ((lanes[2][2] >>> 21) | (lanes[2][2] << 43));
-        tempb[3][3] = ((lanes[2][3] >>> 49) | (lanes[2][3] << 15));
-        tempb[4][1] = ((lanes[2][4] >>> 3) | (lanes[2][4] << 61));
-
-        tempb[0][1] = ((lanes[3][0] >>> 36) | (lanes[3][0] << 28));
-        tempb[1][4] = ((lanes[3][1] >>> 9) | (lanes[3][1] << 55));
-        tempb[2][2] = ((lanes[3][2] >>> 39) | (lanes[3][2] << 25));
-        tempb[3][0] = ((lanes[3][3] >>> 43) | (lanes[3][3] << 21));
-        tempb[4][3] = ((lanes[3][4] >>> 8) | (lanes[3][4] << 56));
-
-        tempb[0][3] = ((lanes[4][0] >>> 37) | (lanes[4][0] << 27));
-        tempb[1][1] = ((lanes[4][1] >>> 44) | (lanes[4][1] << 20));
-        tempb[2][4] = ((lanes[4][2] >>> 25) | (lanes[4][2] << 39));
-        tempb[3][2] = ((lanes[4][3] >>> 56) | (lanes[4][3] << 8));
-        tempb[4][0] = ((lanes[4][4] >>> 50) | (lanes[4][4] << 14));
-
-        // Chi step
-
-        lanes[0][0] = tempb[0][0] ^ ((~tempb[1][0]) & tempb[2][0]);
-        lanes[0][1] = tempb[0][1] ^ ((~tempb[1][1]) & tempb[2][1]);
-        lanes[0][2] = tempb[0][2] ^ ((~tempb[1][2]) & tempb[2][2]);
-        lanes[0][3] = tempb[0][3] ^ ((~tempb[1][3]) & tempb[2][3]);
-        lanes[0][4] = tempb[0][4] ^ ((~tempb[1][4]) & tempb[2][4]);
-        lanes[1][0] = tempb[1][0] ^ ((~tempb[2][0]) & tempb[3][0]);
-        lanes[1][1] = tempb[1][1] ^ ((~tempb[2][1]) & tempb[3][1]);
-        lanes[1][2] = tempb[1][2] ^ ((~tempb[2][2]) & tempb[3][2]);
-        lanes[1][3] = tempb[1][3] ^ ((~tempb[2][3]) & tempb[3][3]);
-        lanes[1][4] = tempb[1][4] ^ ((~tempb[2][4]) & tempb[3][4]);
-        lanes[2][0] = tempb[2][0] ^ ((~tempb[3][0]) & tempb[4][0]);
-        lanes[2][1] = tempb[2][1] ^ ((~tempb[3][1]) & tempb[4][1]);
-        lanes[2][2] = tempb[2][2] ^ ((~tempb[3][2]) & tempb[4][2]);
-        lanes[2][3] = tempb[2][3] ^ ((~tempb[3][3]) & tempb[4][3]);
-        lanes[2][4] = tempb[2][4] ^ ((~tempb[3][4]) & tempb[4][4]);
-        lanes[3][0] = tempb[3][0] ^ ((~tempb[4][0]) & tempb[0][0]);
-        lanes[3][1] = tempb[3][1] ^ ((~tempb[4][1]) & tempb[0][1]);
-        lanes[3][2] = tempb[3][2] ^ ((~tempb[4][2]) & tempb[0][2]);
-        lanes[3][3] = tempb[3][3] ^ ((~tempb[4][3]) & tempb[0][3]);
-        lanes[3][4] = tempb[3][4] ^ ((~tempb[4][4]) & tempb[0][4]);
-        lanes[4][0] = tempb[4][0] ^ ((~tempb[0][0]) & tempb[1][0]);
-        lanes[4][1] = tempb[4][1] ^ ((~tempb[0][1]) & tempb[1][1]);
-        lanes[4][2] = tempb[4][2] ^ ((~tempb[0][2]) & tempb[1][2]);
-        lanes[4][3] = tempb[4][3] ^ ((~tempb[0][3]) & tempb[1][3]);
-        lanes[4][4] = tempb[4][4] ^ ((~tempb[0][4]) & tempb[1][4]);
-
-        // Iota step
-
-        lanes[0][0] = lanes[0][0] ^ rc;
-    }
-
-    private void keccakF() {
-        for(int i = 0; i < nrounds; i++) {
-            round(RC[i]);
+    /**
+     * Apply the last {@code rounds} rounds of the Keccak-p[1600]
+     * permutation to {@code state}, which holds the 25 lanes with
+     * lane (x, y) at index {@code x + 5 * y}.  {@code rounds} must be
+     * even; the full Keccak-f[1600] permutation is 24 rounds.
+     * <p>
+     * The lanes are kept in locals, and the rounds are unrolled in
+     * pairs, with the first round of each pair writing the {@code e}
+     * lanes and the second writing the {@code a} lanes back.  Lanes 1,
+     * 2, 8, 12, 17, and 20 are held complemented for the duration
+     * (the lane complementing transform from the Keccak
+     * implementation overview), which lets the chi step get by with 8
+     * NOT operations per round rather than 25.
+     *
+     * @param state The state.
+     * @param rounds The number of rounds.
+     */
+    static void keccakP(final long[] state,
+                        final int rounds) {
+        long a0 = state[0];
+        long a1 = ~state[1];
+        long a2 = ~state[2];
+        long a3 = state[3];
+        long a4 = state[4];
+        long a5 = state[5];
+        long a6 = state[6];
+        long a7 = state[7];
+        long a8 = ~state[8];
+        long a9 = state[9];
+        long a10 = state[10];
+        long a11 = state[11];
+        long a12 = ~state[12];
+        long a13 = state[13];
+        long a14 = state[14];
+        long a15 = state[15];
+        long a16 = state[16];
+        long a17 = ~state[17];
+        long a18 = state[18];
+        long a19 = state[19];
+        long a20 = ~state[20];
+        long a21 = state[21];
+        long a22 = state[22];
+        long a23 = state[23];
+        long a24 = state[24];
+        long e0, e1, e2, e3, e4, e5, e6, e7, e8, e9, e10, e11, e12, e13, e14,
+             e15, e16, e17, e18, e19, e20, e21, e22, e23, e24;
+        long b0, b1, b2, b3, b4, c0, c1, c2, c3, c4, d0, d1, d2, d3, d4, t;
+
+        for(int i = 24 - rounds; i < 24; i += 2) {
+            // Round i, from a into e.  Theta is computed into d, then
+            // rho, pi, and chi are done one output plane at a time.
+
+            c0 = a0 ^ a5 ^ a10 ^ a15 ^ a20;
+            c1 = a1 ^ a6 ^ a11 ^ a16 ^ a21;
+            c2 = a2 ^ a7 ^ a12 ^ a17 ^ a22;
+            c3 = a3 ^ a8 ^ a13 ^ a18 ^ a23;
+            c4 = a4 ^ a9 ^ a14 ^ a19 ^ a24;
+            d0 = c4 ^ ((c1 << 1) | (c1 >>> 63));
+            d1 = c0 ^ ((c2 << 1) | (c2 >>> 63));
+            d2 = c1 ^ ((c3 << 1) | (c3 >>> 63));
+            d3 = c2 ^ ((c4 << 1) | (c4 >>> 63));
+            d4 = c3 ^ ((c0 << 1) | (c0 >>> 63));
+
+            b0 = a0 ^ d0;
+            t = a6 ^ d1;
+            b1 = (t << 44) | (t >>> 20);
+            t = a12 ^ d2;
+            b2 = (t << 43) | (t >>> 21);
+            t = a18 ^ d3;
+            b3 = (t << 21) | (t >>> 43);
+            t = a24 ^ d4;
+            b4 = (t << 14) | (t >>> 50);
+            e0 = b0 ^ (b1 | b2);
+            e1 = b1 ^ (~b2 | b3);
+            e2 = b2 ^ (b3 & b4);
+            e3 = b3 ^ (b4 | b0);
+            e4 = b4 ^ (b0 & b1);
+
+            t = a3 ^ d3;
+            b0 = (t << 28) | (t >>> 36);
+            t = a9 ^ d4;
+            b1 = (t << 20) | (t >>> 44);
+            t = a10 ^ d0;
+            b2 = (t << 3) | (t >>> 61);
+            t = a16 ^ d1;
+            b3 = (t << 45) | (t >>> 19);
+            t = a22 ^ d2;
+            b4 = (t << 61) | (t >>> 3);
+            e5 = b0 ^ (b1 | b2);
+            e6 = b1 ^ (b2 & b3);
+            e7 = b2 ^ (b3 | ~b4);
+            e8 = b3 ^ (b4 | b0);
+            e9 = b4 ^ (b0 & b1);
+
+            t = a1 ^ d1;
+            b0 = (t << 1) | (t >>> 63);
+            t = a7 ^ d2;
+            b1 = (t << 6) | (t >>> 58);
+            t = a13 ^ d3;
+            b2 = (t << 25) | (t >>> 39);
+            t = a19 ^ d4;
+            b3 = (t << 8) | (t >>> 56);
+            t = a20 ^ d0;
+            b4 = (t << 18) | (t >>> 46);
+            e10 = b0 ^ (b1 | b2);
+            e11 = b1 ^ (b2 & b3);
+            e12 = b2 ^ (~b3 & b4);
+            e13 = ~b3 ^ (b4 | b0);
+            e14 = b4 ^ (b0 & b1);
+
+            t = a4 ^ d4;
+            b0 = (t << 27) | (t >>> 37);
+            t = a5 ^ d0;
+            b1 = (t << 36) | (t >>> 28);
+            t = a11 ^ d1;
+            b2 = (t << 10) | (t >>> 54);
+            t = a17 ^ d2;
+            b3 = (t << 15) | (t >>> 49);
+            t = a23 ^ d3;
+            b4 = (t << 56) | (t >>> 8);
+            e15 = b0 ^ (b1 & b2);
+            e16 = b1 ^ (b2 | b3);
+            e17 = b2 ^ (~b3 | b4);
+            e18 = ~b3 ^ (b4 & b0);
+            e19 = b4 ^ (b0 | b1);
+
+            t = a2 ^ d2;
+            b0 = (t << 62) | (t >>> 2);
+            t = a8 ^ d3;
+            b1 = (t << 55) | (t >>> 9);
+            t = a14 ^ d4;
+            b2 = (t << 39) | (t >>> 25);
+            t = a15 ^ d0;
+            b3 = (t << 41) | (t >>> 23);
+            t = a21 ^ d1;
+            b4 = (t << 2) | (t >>> 62);
+            e20 = b0 ^ (~b1 & b2);
+            e21 = ~b1 ^ (b2 | b3);
+            e22 = b2 ^ (b3 & b4);
+            e23 = b3 ^ (b4 | b0);
+            e24 = b4 ^ (b0 & b1);
+            e0 ^= RC[i];
+
+            // Round i + 1, from e back into a.
+
+            c0 = e0 ^ e5 ^ e10 ^ e15 ^ e20;
+            c1 = e1 ^ e6 ^ e11 ^ e16 ^ e21;
+            c2 = e2 ^ e7 ^ e12 ^ e17 ^ e22;
+            c3 = e3 ^ e8 ^ e13 ^ e18 ^ e23;
+            c4 = e4 ^ e9 ^ e14 ^ e19 ^ e24;
+            d0 = c4 ^ ((c1 << 1) | (c1 >>> 63));
+            d1 = c0 ^ ((c2 << 1) | (c2 >>> 63));
+            d2 = c1 ^ ((c3 << 1) | (c3 >>> 63));
+            d3 = c2 ^ ((c4 << 1) | (c4 >>> 63));
+            d4 = c3 ^ ((c0 << 1) | (c0 >>> 63));
+
+            b0 = e0 ^ d0;
+            t = e6 ^ d1;
+            b1 = (t << 44) | (t >>> 20);
+            t = e12 ^ d2;
+            b2 = (t << 43) | (t >>> 21);
+            t = e18 ^ d3;
+            b3 = (t << 21) | (t >>> 43);
+            t = e24 ^ d4;
+            b4 = (t << 14) | (t >>> 50);
+            a0 = b0 ^ (b1 | b2);
+            a1 = b1 ^ (~b2 | b3);
+            a2 = b2 ^ (b3 & b4);
+            a3 = b3 ^ (b4 | b0);
+            a4 = b4 ^ (b0 & b1);
+
+            t = e3 ^ d3;
+            b0 = (t << 28) | (t >>> 36);
+            t = e9 ^ d4;
+            b1 = (t << 20) | (t >>> 44);
+            t = e10 ^ d0;
+            b2 = (t << 3) | (t >>> 61);
+            t = e16 ^ d1;
+            b3 = (t << 45) | (t >>> 19);
+            t = e22 ^ d2;
+            b4 = (t << 61) | (t >>> 3);
+            a5 = b0 ^ (b1 | b2);
+            a6 = b1 ^ (b2 & b3);
+            a7 = b2 ^ (b3 | ~b4);
+            a8 = b3 ^ (b4 | b0);
+            a9 = b4 ^ (b0 & b1);
+
+            t = e1 ^ d1;
+            b0 = (t << 1) | (t >>> 63);
+            t = e7 ^ d2;
+            b1 = (t << 6) | (t >>> 58);
+            t = e13 ^ d3;
+            b2 = (t << 25) | (t >>> 39);
+            t = e19 ^ d4;
+            b3 = (t << 8) | (t >>> 56);
+            t = e20 ^ d0;
+            b4 = (t << 18) | (t >>> 46);
+            a10 = b0 ^ (b1 | b2);
+            a11 = b1 ^ (b2 & b3);
+            a12 = b2 ^ (~b3 & b4);
+            a13 = ~b3 ^ (b4 | b0);
+            a14 = b4 ^ (b0 & b1);
+
+            t = e4 ^ d4;
+            b0 = (t << 27) | (t >>> 37);
+            t = e5 ^ d0;
+            b1 = (t << 36) | (t >>> 28);
+            t = e11 ^ d1;
+            b2 = (t << 10) | (t >>> 54);
+            t = e17 ^ d2;
+            b3 = (t << 15) | (t >>> 49);
+            t = e23 ^ d3;
+            b4 = (t << 56) | (t >>> 8);
+            a15 = b0 ^ (b1 & b2);
+            a16 = b1 ^ (b2 | b3);
+            a17 = b2 ^ (~b3 | b4);
+            a18 = ~b3 ^ (b4 & b0);
+            a19 = b4 ^ (b0 | b1);
+
+            t = e2 ^ d2;
+            b0 = (t << 62) | (t >>> 2);
+            t = e8 ^ d3;
+            b1 = (t << 55) | (t >>> 9);
+            t = e14 ^ d4;
+            b2 = (t << 39) | (t >>> 25);
+            t = e15 ^ d0;
+            b3 = (t << 41) | (t >>> 23);
+            t = e21 ^ d1;
+            b4 = (t << 2) | (t >>> 62);
+            a20 = b0 ^ (~b1 & b2);
+            a21 = ~b1 ^ (b2 | b3);
+            a22 = b2 ^ (b3 & b4);
+            a23 = b3 ^ (b4 | b0);
+            a24 = b4 ^ (b0 & b1);
+            a0 ^= RC[i + 1];
         }
+
+        state[0] = a0;
+        state[1] = ~a1;
+        state[2] = ~a2;
+        state[3] = a3;
+        state[4] = a4;
+        state[5] = a5;
+        state[6] = a6;
+        state[7] = a7;
+        state[8] = ~a8;
+        state[9] = a9;
+        state[10] = a10;
+        state[11] = a11;
+        state[12] = ~a12;
+        state[13] = a13;
+        state[14] = a14;
+        state[15] = a15;
+        state[16] = a16;
+        state[17] = ~a17;
+        state[18] = a18;
+        state[19] = a19;
+        state[20] = ~a20;
+        state[21] = a21;
+        state[22] = a22;
+        state[23] = a23;
+        state[24] = a24;
     }
 
     /**
      * {@inheritDoc}
      */
     @Override
-    protected void processBlock() {
-        for(int i = 0; i < 5; i++) {
-            for(int j = 0; j < 5 && (5 * j) + i < rate / 64; j++) {
-                final int idx = 8 * ((5 * j) + i);
-                final long word = ((long)block[idx]) & 0xff |
-                    (((long)block[idx + 1]) & 0xff) << 8 |
-                    (((long)block[idx + 2]) & 0xff) << 16 |
-                    (((long)block[idx + 3]) & 0xff) << 24 |
-                    (((long)block[idx + 4]) & 0xff) << 32 |
-                    (((long)block[idx + 5]) & 0xff) << 40 |
-                    (((long)block[idx + 6]) & 0xff) << 48 |
-                    (((long)block[idx + 7]) & 0xff) << 56;
-
-                lanes[i][j] ^= word;
-            }
+    protected void processBlock(final byte[] data,
+                                final int offset) {
+        for(int i = 0; i < rateWords; i++) {
+            state[i] ^= LittleEndian.load64(data, offset + (8 * i));
         }
 
-        keccakF();
+        keccakP(state, nrounds);
     }
 
     /**
-     * {@inheritDoc}
+     * Pad the remaining input and absorb it, switching over to
+     * squeezing.
      */
-    @Override
-    protected final int engineDigest(final byte[] output,
-                                     final int outputOffset,
-                                     final int outputLen)
-        throws DigestException {
-        final int rateBytes = rate >> 3;
+    private void pad() {
+        if (blockOffset >= blockBytes) {
+            processBlock();
+            blockOffset = 0;
+        }
 
-        if (outputLen > hashBytes) {
-            throw new DigestException("Insufficient space for digest");
+        block[blockOffset] = suffix;
+        Arrays.fill(block, blockOffset + 1, blockBytes, (byte)0);
+        block[blockBytes - 1] ^= (byte)0x80;
+        processBlock();
+        blockOffset = 0;
+        squeezing = true;
+        squeezeOffset = 0;
+    }
+
+    /**
+     * Squeeze output out of the sponge, padding the input first if
+     * that has not already happened.  Successive calls continue
+     * where the last one left off.  Whole lanes are written at a
+     * time where possible.
+     *
+     * @param output The array to write to.
+     * @param offset The offset at which to start writing.
+     * @param len The number of bytes to write.
+     */
+    final void extract(final byte[] output,
+                       final int offset,
+                       final int len) {
+        final int end = offset + len;
+
+        if (!squeezing) {
+            pad();
         }
 
-        if (blockOffset >= rateBytes) {
-            processBlock();
-            blockOffset = 0;
+        for(int pos = offset; pos < end;) {
+            if (squeezeOffset == blockBytes) {
+                keccakP(state, nrounds);
+                squeezeOffset = 0;
+            }
+
+            if ((squeezeOffset & 7) == 0 && end - pos >= 8) {
+                final int lanes = Math.min(end - pos,
+                                           blockBytes - squeezeOffset) >> 3;
+                final int first = squeezeOffset >> 3;
+
+                for(int i = 0; i < lanes; i++) {
+                    LittleEndian.store64(state[first + i], output,
+                                         pos + (8 * i));
+                }
+
+                pos += lanes << 3;
+                squeezeOffset += lanes << 3;
+            } else {
+                output[pos] = (byte)(state[squeezeOffset >> 3] >>>
+                                     (8 * (squeezeOffset & 7)));
+                pos++;
+                squeezeOffset++;
+            }
         }
+    }
+
+    /**
+     * Squeeze enough output out of the sponge to fill the remaining
+     * space in a buffer.  This otherwise behaves like {@link
+     * #extract(byte[], int, int)}.
+     *
+     * @param output The buffer to fill.
+     */
+    final void extract(final ByteBuffer output) {
+        if (output.hasArray()) {
+            final int len = output.remaining();
+            final int pos = output.position();
+
+            extract(output.array(), output.arrayOffset() + pos, len);
+            output.position(pos + len);
+        } else {
+            final ByteOrder order = output.order();
+
+            if (!squeezing) {
+                pad();
+            }
 
+            output.order(ByteOrder.LITTLE_ENDIAN);
 
-        block[blockOffset] = (byte)0x06;
-        blockOffset++;
-        Arrays.fill(block, blockOffset, rateBytes, (byte)0);
-        block[rateBytes - 1] ^= (byte)0x80;
-        processBlock();
+            try {
+                while (output.hasRemaining()) {
+                    if (squeezeOffset == blockBytes) {
+                        keccakP(state, nrounds);
+                        squeezeOffset = 0;
+                    }
 
-        // Squeezing phase
-        exit:
-        for(int i = 0;;) {
-            for(int j = 0; j < 5; j++) {
-                for(int k = 0; k < 5 && (5 * j) + k < rate / 64; k++) {
-                    final long word = lanes[k][j];
-
-                    output[i++] = (byte)(word & 0xff);
-                    output[i++] = (byte)((word >>> 8) & 0xff);
-                    output[i++] = (byte)((word >>> 16) & 0xff);
-                    output[i++] = (byte)((word >>> 24) & 0xff);
-                    output[i++] = (byte)((word >>> 32) & 0xff);
-                    output[i++] = (byte)((word >>> 40) & 0xff);
-                    output[i++] = (byte)((word >>> 48) & 0xff);
-                    output[i++] = (byte)((word >>> 56) & 0xff);
-
-                    if (i >= hashBytes) {
-                        break exit;
+                    if ((squeezeOffset & 7) == 0 &&
+                        output.remaining() >= 8) {
+                        output.putLong(state[squeezeOffset >> 3]);
+                        squeezeOffset += 8;
+                    } else {
+                        output.put((byte)(state[squeezeOffset >> 3] >>>
+                                          (8 * (squeezeOffset & 7))));
+                        squeezeOffset++;
                     }
                 }
+            } finally {
+                output.order(order);
             }
+        }
+    }
 
-            keccakF();
+    /**
+     * {@inheritDoc}
+     * <p>
+     * This resets the digest afterwards.
+     */
+    @Override
+    protected final int engineDigest(final byte[] output,
+                                     final int outputOffset,
+                                     final int outputLen)
+        throws DigestException {
+        if (outputLen < hashBytes) {
+            throw new DigestException("Insufficient space for digest");
         }
 
+        extract(output, outputOffset, hashBytes);
+        engineReset();
+
         return hashBytes;
     }
 }
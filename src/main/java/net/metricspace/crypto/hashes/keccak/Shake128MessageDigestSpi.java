@@ -0,0 +1,64 @@
+/* Copyright (c) 2018, Eric McCorkle.  All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions
+ * are met:
+ *
+ * * Redistributions of source code must retain the above copyright
+ *   notice, this list of conditions and the following disclaimer.
+ *
+ * * Redistributions in binary form must reproduce the above copyright
+ *   notice, this list of conditions and the following disclaimer in
+ *   the documentation and/or other materials provided with the
+ *   distribution.
+ *
+ * * Neither the name of the copyright holder nor the names of its
+ *   contributors may be used to endorse or promote products derived
+ *   from this software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS
+ * "AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT
+ * LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS
+ * FOR A PARTICULAR PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE
+ * COPYRIGHT HOLDER OR CONTRIBUTORS BE LIABLE FOR ANY DIRECT,
+ * INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES
+ * (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR
+ * SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION)
+ * HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT,
+ * STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED
+ * OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+package net.metricspace.crypto.hashes.keccak;
+
+/**
+ * The SHAKE128 extendable-output function from FIPS 202.  When used
+ * as a {@link java.security.MessageDigest}, this produces 32-byte
+ * digests.  See {@link ShakeMessageDigestSpi} for the streaming
+ * interface.
+ */
+public final class Shake128MessageDigestSpi extends ShakeMessageDigestSpi {
+    public static final String NAME = "SHAKE128";
+
+    /**
+     * Length of digests produced through the JCA.
+     */
+    public static final int DEFAULT_HASH_BYTES = 32;
+
+    /**
+     * Initialize a {@code Shake128MessageDigestSpi}.
+     */
+    public Shake128MessageDigestSpi() {
+        this(DEFAULT_HASH_BYTES);
+    }
+
+    /**
+     * Initialize a {@code Shake128MessageDigestSpi} that produces
+     * digests of the given length through the JCA.
+     *
+     * @param hashBytes The number of bytes in a hash value.
+     */
+    public Shake128MessageDigestSpi(final int hashBytes) {
+        super(hashBytes, 256);
+    }
+}
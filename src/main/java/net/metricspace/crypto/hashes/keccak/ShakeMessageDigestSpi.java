@@ -0,0 +1,161 @@
+/* Copyright (c) 2018, Eric McCorkle.  All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions
+ * are met:
+ *
+ * * Redistributions of source code must retain the above copyright
+ *   notice, this list of conditions and the following disclaimer.
+ *
+ * * Redistributions in binary form must reproduce the above copyright
+ *   notice, this list of conditions and the following disclaimer in
+ *   the documentation and/or other materials provided with the
+ *   distribution.
+ *
+ * * Neither the name of the copyright holder nor the names of its
+ *   contributors may be used to endorse or promote products derived
+ *   from this software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS
+ * "AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT
+ * LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS
+ * FOR A PARTICULAR PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE
+ * COPYRIGHT HOLDER OR CONTRIBUTORS BE LIABLE FOR ANY DIRECT,
+ * INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES
+ * (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR
+ * SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION)
+ * HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT,
+ * STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED
+ * OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+package net.metricspace.crypto.hashes.keccak;
+
+import java.nio.ByteBuffer;
+
+/**
+ * Common superclass for the SHAKE extendable-output functions from
+ * FIPS 202.  Through the JCA, these act as fixed-length hashes.  Used
+ * directly, they also provide a streaming interface: absorb input
+ * with the {@code absorb} methods, then pull any amount of output
+ * from the sponge with successive calls to the {@code squeeze}
+ * methods, which write straight into the caller's array or buffer.
+ * Once squeezing has begun, no more input can be absorbed until
+ * {@link #reset()} is called.
+ * <p>
+ * Instances are not thread-safe.
+ */
+public abstract class ShakeMessageDigestSpi extends KeccakMessageDigestSpi {
+    /**
+     * Domain separation bits and first padding bit for SHAKE.
+     */
+    static final byte SHAKE_SUFFIX = 0x1f;
+
+    /**
+     * Initialize a {@code ShakeMessageDigestSpi}.
+     *
+     * @param hashBytes The number of bytes in a hash value, when used
+     *                  through the JCA.
+     * @param capacity The capacity in bits.
+     */
+    ShakeMessageDigestSpi(final int hashBytes,
+                          final int capacity) {
+        super(hashBytes, capacity, 1600 - capacity, SHAKE_SUFFIX);
+    }
+
+    /**
+     * Check that input can still be absorbed.
+     *
+     * @throws IllegalStateException If output has already been
+     *                               squeezed.
+     */
+    private void checkAbsorbing() {
+        if (squeezing()) {
+            throw new IllegalStateException("Cannot absorb input " +
+                                            "after squeezing output");
+        }
+    }
+
+    /**
+     * Absorb input into the sponge.
+     *
+     * @param input The array containing the input.
+     * @param offset The offset of the input.
+     * @param len The length of the input.
+     * @throws IllegalStateException If output has already been
+     *                               squeezed.
+     */
+    public final void absorb(final byte[] input,
+                             final int offset,
+                             final int len) {
+        checkAbsorbing();
+        engineUpdate(input, offset, len);
+    }
+
+    /**
+     * Absorb all of an array into the sponge.
+     *
+     * @param input The input.
+     * @throws IllegalStateException If output has already been
+     *                               squeezed.
+     */
+    public final void absorb(final byte[] input) {
+        absorb(input, 0, input.length);
+    }
+
+    /**
+     * Absorb the remaining contents of a buffer into the sponge.
+     *
+     * @param input The buffer containing the input.
+     * @throws IllegalStateException If output has already been
+     *                               squeezed.
+     */
+    public final void absorb(final ByteBuffer input) {
+        checkAbsorbing();
+        engineUpdate(input);
+    }
+
+    /**
+     * Squeeze output from the sponge.  The first call pads the input
+     * and finishes absorbing it; each call continues the output
+     * stream from where the previous one stopped.
+     *
+     * @param output The array to write to.
+     * @param offset The offset at which to start writing.
+     * @param len The number of bytes to write.
+     */
+    public final void squeeze(final byte[] output,
+                              final int offset,
+                              final int len) {
+        extract(output, offset, len);
+    }
+
+    /**
+     * Squeeze enough output from the sponge to fill an array.
+     *
+     * @param output The array to fill.
+     * @see #squeeze(byte[], int, int)
+     */
+    public final void squeeze(final byte[] output) {
+        extract(output, 0, output.length);
+    }
+
+    /**
+     * Squeeze enough output from the sponge to fill the remaining
+     * space in a buffer.
+     *
+     * @param output The buffer to fill.
+     * @see #squeeze(byte[], int, int)
+     */
+    public final void squeeze(final ByteBuffer output) {
+        extract(output);
+    }
+
+    /**
+     * Reset the sponge, discarding all absorbed input, so that it can
+     * be used again.
+     */
+    public final void reset() {
+        engineReset();
+    }
+}
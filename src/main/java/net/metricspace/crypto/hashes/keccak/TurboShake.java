@@ -0,0 +1,190 @@
+/* Copyright (c) 2018, Eric McCorkle.  All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions
+ * are met:
+ *
+ * * Redistributions of source code must retain the above copyright
+ *   notice, this list of conditions and the following disclaimer.
+ *
+ * * Redistributions in binary form must reproduce the above copyright
+ *   notice, this list of conditions and the following disclaimer in
+ *   the documentation and/or other materials provided with the
+ *   distribution.
+ *
+ * * Neither the name of the copyright holder nor the names of its
+ *   contributors may be used to endorse or promote products derived
+ *   from this software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS
+ * "AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT
+ * LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS
+ * FOR A PARTICULAR PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE
+ * COPYRIGHT HOLDER OR CONTRIBUTORS BE LIABLE FOR ANY DIRECT,
+ * INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES
+ * (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR
+ * SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION)
+ * HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT,
+ * STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED
+ * OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+package net.metricspace.crypto.hashes.keccak;
+
+import java.util.Arrays;
+
+import net.metricspace.crypto.common.LittleEndian;
+
+/**
+ * A bare TurboSHAKE128 sponge: Keccak-p[1600] reduced to 12 rounds,
+ * with a 168-byte rate and a caller-supplied domain separation byte.
+ * This is the building block for {@link
+ * KangarooTwelveMessageDigestSpi}, which runs one of these for the
+ * final node and one for each leaf chunk.
+ * <p>
+ * The sponge tracks its position in the rate itself, so input and
+ * output can be of any length and need not line up with the rate.
+ * Lane-aligned runs are handled a whole lane at a time.
+ */
+final class TurboShake {
+    /**
+     * Rate in bytes.
+     */
+    static final int RATE_BYTES = 168;
+
+    /**
+     * Number of rounds of the permutation.
+     */
+    private static final int ROUNDS = 12;
+
+    /**
+     * Lane holding the last byte of the rate.
+     */
+    private static final int LAST_LANE = (RATE_BYTES - 1) >> 3;
+
+    private final long[] state = new long[25];
+
+    /**
+     * Position in the rate, either of the next input byte or of the
+     * next output byte once the sponge has been padded.
+     */
+    private int offset = 0;
+
+    /**
+     * Clear the sponge, for reuse on a new message.
+     */
+    void reset() {
+        Arrays.fill(state, (long)0);
+        offset = 0;
+    }
+
+    /**
+     * Absorb input into the sponge.
+     *
+     * @param data The array containing the input.
+     * @param off The offset of the input in {@code data}.
+     * @param len The length of the input.
+     */
+    void absorb(final byte[] data,
+                final int off,
+                final int len) {
+        final int end = off + len;
+        int pos = off;
+
+        while (pos < end) {
+            if ((offset & 7) == 0 && end - pos >= 8) {
+                final int lanes = Math.min(end - pos,
+                                           RATE_BYTES - offset) >> 3;
+                final int first = offset >> 3;
+
+                for(int i = 0; i < lanes; i++) {
+                    state[first + i] ^= LittleEndian.load64(data,
+                                                            pos + (8 * i));
+                }
+
+                pos += lanes << 3;
+                offset += lanes << 3;
+            } else {
+                state[offset >> 3] ^= (data[pos] & 0xffL) <<
+                                      (8 * (offset & 7));
+                pos++;
+                offset++;
+            }
+
+            if (offset == RATE_BYTES) {
+                KeccakMessageDigestSpi.keccakP(state, ROUNDS);
+                offset = 0;
+            }
+        }
+    }
+
+    /**
+     * Absorb a single byte into the sponge.
+     *
+     * @param b The byte.
+     */
+    void absorb(final byte b) {
+        state[offset >> 3] ^= (b & 0xffL) << (8 * (offset & 7));
+        offset++;
+
+        if (offset == RATE_BYTES) {
+            KeccakMessageDigestSpi.keccakP(state, ROUNDS);
+            offset = 0;
+        }
+    }
+
+    /**
+     * Pad the input with the given domain separation byte, and switch
+     * the sponge over to squeezing.
+     *
+     * @param domain The domain separation byte, between {@code 0x01}
+     *               and {@code 0x7f}.
+     */
+    void pad(final byte domain) {
+        state[offset >> 3] ^= (domain & 0xffL) << (8 * (offset & 7));
+        state[LAST_LANE] ^= 0x80L << 56;
+        KeccakMessageDigestSpi.keccakP(state, ROUNDS);
+        offset = 0;
+    }
+
+    /**
+     * Squeeze output out of a padded sponge.  Successive calls
+     * continue where the last one left off.
+     *
+     * @param output The array to write to.
+     * @param off The offset at which to start writing.
+     * @param len The number of bytes to write.
+     */
+    void squeeze(final byte[] output,
+                 final int off,
+                 final int len) {
+        final int end = off + len;
+        int pos = off;
+
+        while (pos < end) {
+            if (offset == RATE_BYTES) {
+                KeccakMessageDigestSpi.keccakP(state, ROUNDS);
+                offset = 0;
+            }
+
+            if ((offset & 7) == 0 && end - pos >= 8) {
+                final int lanes = Math.min(end - pos,
+                                           RATE_BYTES - offset) >> 3;
+                final int first = offset >> 3;
+
+                for(int i = 0; i < lanes; i++) {
+                    LittleEndian.store64(state[first + i], output,
+                                         pos + (8 * i));
+                }
+
+                pos += lanes << 3;
+                offset += lanes << 3;
+            } else {
+                output[pos] = (byte)(state[offset >> 3] >>>
+                                     (8 * (offset & 7)));
+                pos++;
+                offset++;
+            }
+        }
+    }
+}
@@ -149,7 +149,8 @@ public final class RipeMD160MessageDigestSpi extends BlockMessageDigestSpi {
      * {@inheritDoc}
      */
     @Override
-    protected void processBlock() {
+    protected void processBlock(final byte[] data,
+                                final int offset) {
         int a = state[0];
         int b = state[1];
         int c = state[2];
@@ -163,10 +164,12 @@ public final class RipeMD160MessageDigestSpi extends BlockMessageDigestSpi {
         int t;
 
         for(int i = 0; i < BLOCK_WORDS; i++) {
-            wordsblock[i] = (block[4 * i] & 0xff) |
-                            ((block[(4 * i) + 1] & 0xff) << 8) |
-                            ((block[(4 * i) + 2] & 0xff) << 16) |
-                            ((block[(4 * i) + 3] & 0xff) << 24);
+            final int idx = offset + (4 * i);
+
+            wordsblock[i] = (data[idx] & 0xff) |
+                            ((data[idx + 1] & 0xff) << 8) |
+                            ((data[idx + 2] & 0xff) << 16) |
+                            ((data[idx + 3] & 0xff) << 24);
         }
 
         /* round 1 */
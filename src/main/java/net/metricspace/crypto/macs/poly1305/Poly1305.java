@@ -0,0 +1,571 @@
+/* Copyright (c) 2018, Eric McCorkle.  All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions
+ * are met:
+ *
+ * * Redistributions of source code must retain the above copyright
+ *   notice, this list of conditions and the following disclaimer.
+ *
+ * * Redistributions in binary form must reproduce the above copyright
+ *   notice, this list of conditions and the following disclaimer in
+ *   the documentation and/or other materials provided with the
+ *   distribution.
+ *
+ * * Neither the name of the copyright holder nor the names of its
+ *   contributors may be used to endorse or promote products derived
+ *   from this software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS
+ * "AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT
+ * LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS
+ * FOR A PARTICULAR PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE
+ * COPYRIGHT HOLDER OR CONTRIBUTORS BE LIABLE FOR ANY DIRECT,
+ * INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES
+ * (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR
+ * SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION)
+ * HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT,
+ * STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED
+ * OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+package net.metricspace.crypto.macs.poly1305;
+
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+
+/**
+ * The Poly1305 one-time authenticator.  This holds the state of a
+ * single Poly1305 computation: the clamped multiplier {@code r}, the
+ * final pad {@code s}, the accumulator, and any buffered partial
+ * block.
+ * <p>
+ * Arithmetic modulo 2^130-5 is done with five 26-bit limbs, so that
+ * every limb product fits comfortably in a {@code long}.
+ * <p>
+ * When {@link VectorKernels} are available, bulk input is processed
+ * {@code n = VectorKernels.LANES} blocks at a time, with each vector
+ * lane accumulating every {@code n}th block and multiplying by {@code
+ * r^n} between them.  At the end, lane {@code j} is multiplied by
+ * {@code r^(n-j)} and the lanes are summed, which gives the same
+ * result as processing the blocks one at a time.  For four lanes and
+ * four blocks, this is {@code h = (h + m0) r^4 + m1 r^3 + m2 r^2 + m3
+ * r}.  The powers of {@code r} are computed once, when the key is
+ * set.
+ * <p>
+ * A Poly1305 key must never be used for more than one message.
+ */
+public final class Poly1305 {
+    /**
+     * Size of a Poly1305 key in bytes.
+     */
+    public static final int KEY_BYTES = 32;
+
+    /**
+     * Size of a Poly1305 block in bytes.
+     */
+    public static final int BLOCK_BYTES = 16;
+
+    /**
+     * Size of a Poly1305 tag in bytes.
+     */
+    public static final int TAG_BYTES = 16;
+
+    /**
+     * Mask for a 26-bit limb.
+     */
+    private static final int MASK = 0x3ffffff;
+
+    /**
+     * The bit set above each full block.
+     */
+    private static final int HIBIT = 1 << 24;
+
+    /**
+     * Number of limbs in a field element.
+     */
+    private static final int LIMBS = 5;
+
+    /**
+     * Number of powers of {@code r} to precompute.
+     */
+    private static final int POWERS = Math.max(1, VectorKernels.LANES);
+
+    /**
+     * Powers of the multiplier {@code r}, in 26-bit limbs: {@code r}
+     * at index {@code 0}, then {@code r^2}, and so on up to {@code
+     * r^}{@link #POWERS}, each {@link #LIMBS} limbs long.
+     */
+    private final int[] rpow = new int[LIMBS * POWERS];
+
+    /**
+     * Per-lane accumulators for {@link VectorKernels}.
+     */
+    private final long[] vacc = new long[LIMBS * VectorKernels.LANES];
+
+    /**
+     * The final pad {@code s}, as little-endian words.
+     */
+    private int s0, s1, s2, s3;
+
+    /**
+     * The accumulator, in 26-bit limbs.
+     */
+    private int h0, h1, h2, h3, h4;
+
+    /**
+     * Buffered partial block.
+     */
+    private final byte[] buf = new byte[BLOCK_BYTES];
+
+    /**
+     * Number of bytes in {@link #buf}.
+     */
+    private int bufLen;
+
+    /**
+     * Staging area for input from buffers that are not array-backed.
+     */
+    private final byte[] chunk = new byte[BLOCK_BYTES * 16];
+
+    /**
+     * Read a little-endian word from a byte array.
+     *
+     * @param data The byte array.
+     * @param offset The offset of the word.
+     * @return The word.
+     */
+    private static int word(final byte[] data,
+                            final int offset) {
+        return (data[offset] & 0xff) |
+               ((data[offset + 1] & 0xff) << 8) |
+               ((data[offset + 2] & 0xff) << 16) |
+               ((data[offset + 3] & 0xff) << 24);
+    }
+
+    /**
+     * Initialize the authenticator with a one-time key.  This also
+     * discards any previous state.
+     *
+     * @param key The array containing the key.
+     * @param offset The offset of the {@link #KEY_BYTES}-byte key.
+     */
+    public void init(final byte[] key,
+                     final int offset) {
+        rpow[0] = word(key, offset) & 0x3ffffff;
+        rpow[1] = (word(key, offset + 3) >>> 2) & 0x3ffff03;
+        rpow[2] = (word(key, offset + 6) >>> 4) & 0x3ffc0ff;
+        rpow[3] = (word(key, offset + 9) >>> 6) & 0x3f03fff;
+        rpow[4] = (word(key, offset + 12) >>> 8) & 0x00fffff;
+
+        for(int i = 1; i < POWERS; i++) {
+            mul(rpow, (i - 1) * LIMBS, rpow, 0, rpow, i * LIMBS);
+        }
+
+        s0 = word(key, offset + 16);
+        s1 = word(key, offset + 20);
+        s2 = word(key, offset + 24);
+        s3 = word(key, offset + 28);
+        h0 = 0;
+        h1 = 0;
+        h2 = 0;
+        h3 = 0;
+        h4 = 0;
+        bufLen = 0;
+    }
+
+    /**
+     * Absorb a single byte into the authenticator.
+     *
+     * @param input The byte.
+     */
+    public void update(final byte input) {
+        buf[bufLen] = input;
+        bufLen++;
+
+        if (bufLen == BLOCK_BYTES) {
+            blocks(buf, 0, 1, HIBIT);
+            bufLen = 0;
+        }
+    }
+
+    /**
+     * Absorb data into the authenticator.
+     *
+     * @param input The array containing the data.
+     * @param offset The offset of the data.
+     * @param len The length of the data.
+     */
+    public void update(final byte[] input,
+                       final int offset,
+                       final int len) {
+        int i = 0;
+
+        if (bufLen > 0) {
+            final int n = Math.min(len, BLOCK_BYTES - bufLen);
+
+            System.arraycopy(input, offset, buf, bufLen, n);
+            bufLen += n;
+            i = n;
+
+            if (bufLen < BLOCK_BYTES) {
+                return;
+            }
+
+            blocks(buf, 0, 1, HIBIT);
+            bufLen = 0;
+        }
+
+        final int nblocks = (len - i) / BLOCK_BYTES;
+
+        blocks(input, offset + i, nblocks, HIBIT);
+        i += nblocks * BLOCK_BYTES;
+        System.arraycopy(input, offset + i, buf, 0, len - i);
+        bufLen = len - i;
+    }
+
+    /**
+     * Absorb the remaining data in a buffer into the authenticator.
+     *
+     * @param input The buffer containing the data.
+     */
+    public void update(final ByteBuffer input) {
+        if (input.hasArray()) {
+            final int len = input.remaining();
+
+            update(input.array(), input.arrayOffset() + input.position(),
+                   len);
+            input.position(input.position() + len);
+        } else {
+            if (bufLen > 0) {
+                final int n = Math.min(input.remaining(),
+                                       BLOCK_BYTES - bufLen);
+
+                input.get(buf, bufLen, n);
+                bufLen += n;
+
+                if (bufLen < BLOCK_BYTES) {
+                    return;
+                }
+
+                blocks(buf, 0, 1, HIBIT);
+                bufLen = 0;
+            }
+
+            while (input.remaining() >= BLOCK_BYTES) {
+                final int n = Math.min(input.remaining() & -BLOCK_BYTES,
+                                       chunk.length);
+
+                input.get(chunk, 0, n);
+                blocks(chunk, 0, n / BLOCK_BYTES, HIBIT);
+            }
+
+            bufLen = input.remaining();
+            input.get(buf, 0, bufLen);
+            Arrays.fill(chunk, (byte)0);
+        }
+    }
+
+    /**
+     * Pad the data absorbed so far with zeros up to a block boundary.
+     * This is the padding used by the ChaCha20-Poly1305 construction,
+     * which is distinct from the final Poly1305 padding.
+     */
+    public void pad() {
+        if (bufLen > 0) {
+            Arrays.fill(buf, bufLen, BLOCK_BYTES, (byte)0);
+            blocks(buf, 0, 1, HIBIT);
+            bufLen = 0;
+        }
+    }
+
+    /**
+     * Finish the computation and write the tag.  This resets the
+     * accumulator but keeps the key; use {@link #wipe} to discard
+     * the key once it is no longer needed.
+     *
+     * @param out The array into which to write the tag.
+     * @param offset The offset at which to write the
+     *               {@link #TAG_BYTES}-byte tag.
+     */
+    public void finish(final byte[] out,
+                       final int offset) {
+        if (bufLen > 0) {
+            buf[bufLen] = 1;
+            Arrays.fill(buf, bufLen + 1, BLOCK_BYTES, (byte)0);
+            blocks(buf, 0, 1, 0);
+        }
+
+        // Fully carry h.
+        int c;
+
+        c = h1 >>> 26; h1 &= MASK; h2 += c;
+        c = h2 >>> 26; h2 &= MASK; h3 += c;
+        c = h3 >>> 26; h3 &= MASK; h4 += c;
+        c = h4 >>> 26; h4 &= MASK; h0 += c * 5;
+        c = h0 >>> 26; h0 &= MASK; h1 += c;
+
+        // Compute h - p, and select it if it does not underflow.
+        int g0 = h0 + 5;
+        c = g0 >>> 26; g0 &= MASK;
+        int g1 = h1 + c;
+        c = g1 >>> 26; g1 &= MASK;
+        int g2 = h2 + c;
+        c = g2 >>> 26; g2 &= MASK;
+        int g3 = h3 + c;
+        c = g3 >>> 26; g3 &= MASK;
+        int g4 = h4 + c - (1 << 26);
+
+        final int mask = (g4 >>> 31) - 1;
+
+        h0 = (h0 & ~mask) | (g0 & mask);
+        h1 = (h1 & ~mask) | (g1 & mask);
+        h2 = (h2 & ~mask) | (g2 & mask);
+        h3 = (h3 & ~mask) | (g3 & mask);
+        h4 = (h4 & ~mask) | (g4 & mask);
+
+        // h = (h + s) mod 2^128
+        long f;
+
+        f = ((h0 | (h1 << 26)) & 0xffffffffL) + (s0 & 0xffffffffL);
+        store(out, offset, (int)f);
+        f = (((h1 >>> 6) | (h2 << 20)) & 0xffffffffL) +
+            (s1 & 0xffffffffL) + (f >>> 32);
+        store(out, offset + 4, (int)f);
+        f = (((h2 >>> 12) | (h3 << 14)) & 0xffffffffL) +
+            (s2 & 0xffffffffL) + (f >>> 32);
+        store(out, offset + 8, (int)f);
+        f = (((h3 >>> 18) | (h4 << 8)) & 0xffffffffL) +
+            (s3 & 0xffffffffL) + (f >>> 32);
+        store(out, offset + 12, (int)f);
+
+        reset();
+    }
+
+    /**
+     * Discard the data absorbed so far, keeping the key.
+     */
+    public void reset() {
+        h0 = 0; h1 = 0; h2 = 0; h3 = 0; h4 = 0;
+        Arrays.fill(buf, (byte)0);
+        bufLen = 0;
+    }
+
+    /**
+     * Clear all key material and intermediate state.
+     */
+    public void wipe() {
+        Arrays.fill(rpow, 0);
+        s0 = 0; s1 = 0; s2 = 0; s3 = 0;
+        reset();
+    }
+
+    /**
+     * Write a little-endian word into a byte array.
+     *
+     * @param out The byte array.
+     * @param offset The offset of the word.
+     * @param word The word.
+     */
+    private static void store(final byte[] out,
+                              final int offset,
+                              final int word) {
+        out[offset] = (byte)word;
+        out[offset + 1] = (byte)(word >>> 8);
+        out[offset + 2] = (byte)(word >>> 16);
+        out[offset + 3] = (byte)(word >>> 24);
+    }
+
+
+    /**
+     * Multiply two field elements, with a partial reduction.
+     *
+     * @param a The array containing the first element.
+     * @param aOffset The offset of the first element.
+     * @param b The array containing the second element.
+     * @param bOffset The offset of the second element.
+     * @param out The array into which to write the product.
+     * @param outOffset The offset at which to write the product.
+     */
+    private static void mul(final int[] a,
+                            final int aOffset,
+                            final int[] b,
+                            final int bOffset,
+                            final int[] out,
+                            final int outOffset) {
+        final long a0 = a[aOffset];
+        final long a1 = a[aOffset + 1];
+        final long a2 = a[aOffset + 2];
+        final long a3 = a[aOffset + 3];
+        final long a4 = a[aOffset + 4];
+        final long b0 = b[bOffset];
+        final long b1 = b[bOffset + 1];
+        final long b2 = b[bOffset + 2];
+        final long b3 = b[bOffset + 3];
+        final long b4 = b[bOffset + 4];
+        final long bs1 = b1 * 5;
+        final long bs2 = b2 * 5;
+        final long bs3 = b3 * 5;
+        final long bs4 = b4 * 5;
+        final long d0 = (a0 * b0) + (a1 * bs4) + (a2 * bs3) +
+                        (a3 * bs2) + (a4 * bs1);
+        long d1 = (a0 * b1) + (a1 * b0) + (a2 * bs4) +
+                  (a3 * bs3) + (a4 * bs2);
+        long d2 = (a0 * b2) + (a1 * b1) + (a2 * b0) +
+                  (a3 * bs4) + (a4 * bs3);
+        long d3 = (a0 * b3) + (a1 * b2) + (a2 * b1) +
+                  (a3 * b0) + (a4 * bs4);
+        long d4 = (a0 * b4) + (a1 * b3) + (a2 * b2) +
+                  (a3 * b1) + (a4 * b0);
+
+        out[outOffset] = (int)d0 & MASK;
+        d1 += d0 >>> 26;
+        out[outOffset + 1] = (int)d1 & MASK;
+        d2 += d1 >>> 26;
+        out[outOffset + 2] = (int)d2 & MASK;
+        d3 += d2 >>> 26;
+        out[outOffset + 3] = (int)d3 & MASK;
+        d4 += d3 >>> 26;
+        out[outOffset + 4] = (int)d4 & MASK;
+
+        final long c = ((d4 >>> 26) * 5) + out[outOffset];
+
+        out[outOffset] = (int)c & MASK;
+        out[outOffset + 1] += (int)(c >>> 26);
+    }
+
+    /**
+     * Absorb whole blocks into the accumulator.
+     *
+     * @param input The array containing the blocks.
+     * @param offset The offset of the first block.
+     * @param nblocks The number of blocks.
+     * @param hibit The bit to add above each block; {@link #HIBIT}
+     *              for all but a final partial block.
+     */
+    private void blocks(final byte[] input,
+                        final int offset,
+                        final int nblocks,
+                        final int hibit) {
+        final long r0 = rpow[0];
+        final long r1 = rpow[1];
+        final long r2 = rpow[2];
+        final long r3 = rpow[3];
+        final long r4 = rpow[4];
+        final long s1 = r1 * 5;
+        final long s2 = r2 * 5;
+        final long s3 = r3 * 5;
+        final long s4 = r4 * 5;
+        long h0 = this.h0;
+        long h1 = this.h1;
+        long h2 = this.h2;
+        long h3 = this.h3;
+        long h4 = this.h4;
+        int i = 0;
+
+        if (VectorKernels.AVAILABLE && hibit == HIBIT &&
+            nblocks >= VectorKernels.MIN_BLOCKS) {
+            final int lanes = VectorKernels.LANES;
+            final int steps = nblocks / lanes;
+
+            Arrays.fill(vacc, 0);
+            vacc[0] = h0;
+            vacc[lanes] = h1;
+            vacc[lanes * 2] = h2;
+            vacc[lanes * 3] = h3;
+            vacc[lanes * 4] = h4;
+            VectorKernels.blocks(vacc, input, offset, steps, rpow);
+
+            // Multiply lane j by r^(n-j), and sum the lanes.
+            long d0 = 0;
+            long d1 = 0;
+            long d2 = 0;
+            long d3 = 0;
+            long d4 = 0;
+
+            for(int j = 0; j < lanes; j++) {
+                final int p = (lanes - j - 1) * LIMBS;
+                final long a0 = vacc[j];
+                final long a1 = vacc[lanes + j];
+                final long a2 = vacc[(lanes * 2) + j];
+                final long a3 = vacc[(lanes * 3) + j];
+                final long a4 = vacc[(lanes * 4) + j];
+                final long b0 = rpow[p];
+                final long b1 = rpow[p + 1];
+                final long b2 = rpow[p + 2];
+                final long b3 = rpow[p + 3];
+                final long b4 = rpow[p + 4];
+
+                d0 += (a0 * b0) + (a1 * b4 * 5) + (a2 * b3 * 5) +
+                      (a3 * b2 * 5) + (a4 * b1 * 5);
+                d1 += (a0 * b1) + (a1 * b0) + (a2 * b4 * 5) +
+                      (a3 * b3 * 5) + (a4 * b2 * 5);
+                d2 += (a0 * b2) + (a1 * b1) + (a2 * b0) +
+                      (a3 * b4 * 5) + (a4 * b3 * 5);
+                d3 += (a0 * b3) + (a1 * b2) + (a2 * b1) +
+                      (a3 * b0) + (a4 * b4 * 5);
+                d4 += (a0 * b4) + (a1 * b3) + (a2 * b2) +
+                      (a3 * b1) + (a4 * b0);
+            }
+
+            Arrays.fill(vacc, 0);
+            h0 = d0 & MASK;
+            d1 += d0 >>> 26;
+            h1 = d1 & MASK;
+            d2 += d1 >>> 26;
+            h2 = d2 & MASK;
+            d3 += d2 >>> 26;
+            h3 = d3 & MASK;
+            d4 += d3 >>> 26;
+            h4 = d4 & MASK;
+            h0 += (d4 >>> 26) * 5;
+            h1 += h0 >>> 26;
+            h0 &= MASK;
+            i = steps * lanes;
+        }
+
+        for(; i < nblocks; i++) {
+            final int idx = offset + (i * BLOCK_BYTES);
+            final int t0 = word(input, idx);
+            final int t1 = word(input, idx + 4);
+            final int t2 = word(input, idx + 8);
+            final int t3 = word(input, idx + 12);
+
+            h0 += t0 & MASK;
+            h1 += ((t0 >>> 26) | (t1 << 6)) & MASK;
+            h2 += ((t1 >>> 20) | (t2 << 12)) & MASK;
+            h3 += ((t2 >>> 14) | (t3 << 18)) & MASK;
+            h4 += (t3 >>> 8) | hibit;
+
+            final long d0 = (h0 * r0) + (h1 * s4) + (h2 * s3) +
+                            (h3 * s2) + (h4 * s1);
+            long d1 = (h0 * r1) + (h1 * r0) + (h2 * s4) +
+                      (h3 * s3) + (h4 * s2);
+            long d2 = (h0 * r2) + (h1 * r1) + (h2 * r0) +
+                      (h3 * s4) + (h4 * s3);
+            long d3 = (h0 * r3) + (h1 * r2) + (h2 * r1) +
+                      (h3 * r0) + (h4 * s4);
+            long d4 = (h0 * r4) + (h1 * r3) + (h2 * r2) +
+                      (h3 * r1) + (h4 * r0);
+
+            h0 = d0 & MASK;
+            d1 += d0 >>> 26;
+            h1 = d1 & MASK;
+            d2 += d1 >>> 26;
+            h2 = d2 & MASK;
+            d3 += d2 >>> 26;
+            h3 = d3 & MASK;
+            d4 += d3 >>> 26;
+            h4 = d4 & MASK;
+            h0 += (d4 >>> 26) * 5;
+            h1 += h0 >>> 26;
+            h0 &= MASK;
+        }
+
+        this.h0 = (int)h0;
+        this.h1 = (int)h1;
+        this.h2 = (int)h2;
+        this.h3 = (int)h3;
+        this.h4 = (int)h4;
+    }
+}
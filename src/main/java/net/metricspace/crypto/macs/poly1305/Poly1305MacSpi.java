@@ -0,0 +1,166 @@
+/* Copyright (c) 2018, Eric McCorkle.  All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions
+ * are met:
+ *
+ * * Redistributions of source code must retain the above copyright
+ *   notice, this list of conditions and the following disclaimer.
+ *
+ * * Redistributions in binary form must reproduce the above copyright
+ *   notice, this list of conditions and the following disclaimer in
+ *   the documentation and/or other materials provided with the
+ *   distribution.
+ *
+ * * Neither the name of the copyright holder nor the names of its
+ *   contributors may be used to endorse or promote products derived
+ *   from this software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS
+ * "AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT
+ * LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS
+ * FOR A PARTICULAR PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE
+ * COPYRIGHT HOLDER OR CONTRIBUTORS BE LIABLE FOR ANY DIRECT,
+ * INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES
+ * (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR
+ * SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION)
+ * HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT,
+ * STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED
+ * OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+package net.metricspace.crypto.macs.poly1305;
+
+import java.nio.ByteBuffer;
+import java.security.InvalidAlgorithmParameterException;
+import java.security.InvalidKeyException;
+import java.security.Key;
+import java.security.spec.AlgorithmParameterSpec;
+import java.util.Arrays;
+
+import javax.crypto.MacSpi;
+
+/**
+ * A {@link MacSpi} implementation for the Poly1305 one-time
+ * authenticator, introduced by Daniel J. Bernstein in 2005.
+ * <h2>Usage</h2>
+ *
+ * This class should not be used directly.  It provides the underlying
+ * implementation for the Java Cryptography Architecture (JCA).  See
+ * the {@link javax.crypto.Mac} class documentation for information on
+ * how to use this MAC.
+ * <p>
+ * Any key whose encoding is 32 bytes is accepted, such as a {@link
+ * javax.crypto.spec.SecretKeySpec}.  No parameters are used.
+ * <p>
+ * Bulk updates are processed several blocks at a time, using
+ * precomputed powers of the key; see {@link Poly1305}.  Updates do
+ * not allocate.
+ * <h2>Misuses</h2>
+ *
+ * The following are possible misuses of the Poly1305 MAC.
+ * <ul>
+ * <li> <b>Authenticating multiple messages with the same key</b>:
+ * Poly1305 is a one-time authenticator.  Anyone who sees the tags of
+ * two messages under the same key can forge tags for other messages.
+ * Note that {@link javax.crypto.Mac#doFinal()} and {@link
+ * javax.crypto.Mac#reset()} keep the key, so a {@link
+ * javax.crypto.Mac} must be re-initialized with a fresh key for each
+ * message.
+ * </ul>
+ *
+ * @see net.metricspace.crypto.providers.KryptonProvider
+ * @see javax.crypto.Mac
+ */
+public final class Poly1305MacSpi extends MacSpi {
+    /**
+     * The name of this MAC.
+     */
+    public static final String NAME = "Poly1305";
+
+    /**
+     * The authenticator state.
+     */
+    private final Poly1305 poly = new Poly1305();
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    protected int engineGetMacLength() {
+        return Poly1305.TAG_BYTES;
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    protected void engineInit(final Key key,
+                              final AlgorithmParameterSpec params)
+        throws InvalidKeyException, InvalidAlgorithmParameterException {
+        if (params != null) {
+            throw new InvalidAlgorithmParameterException(
+                "Poly1305 takes no parameters");
+        }
+
+        final byte[] encoded = key.getEncoded();
+
+        if (encoded == null || encoded.length != Poly1305.KEY_BYTES) {
+            if (encoded != null) {
+                Arrays.fill(encoded, (byte)0);
+            }
+
+            throw new InvalidKeyException("Poly1305 keys must be " +
+                                          Poly1305.KEY_BYTES + " bytes");
+        }
+
+        poly.init(encoded, 0);
+        Arrays.fill(encoded, (byte)0);
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    protected void engineUpdate(final byte input) {
+        poly.update(input);
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    protected void engineUpdate(final byte[] input,
+                                final int offset,
+                                final int len) {
+        poly.update(input, offset, len);
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    protected void engineUpdate(final ByteBuffer input) {
+        poly.update(input);
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    protected byte[] engineDoFinal() {
+        final byte[] out = new byte[Poly1305.TAG_BYTES];
+
+        poly.finish(out, 0);
+
+        return out;
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    protected void engineReset() {
+        poly.reset();
+    }
+}
@@ -0,0 +1,97 @@
+/* Copyright (c) 2018, Eric McCorkle.  All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions
+ * are met:
+ *
+ * * Redistributions of source code must retain the above copyright
+ *   notice, this list of conditions and the following disclaimer.
+ *
+ * * Redistributions in binary form must reproduce the above copyright
+ *   notice, this list of conditions and the following disclaimer in
+ *   the documentation and/or other materials provided with the
+ *   distribution.
+ *
+ * * Neither the name of the copyright holder nor the names of its
+ *   contributors may be used to endorse or promote products derived
+ *   from this software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS
+ * "AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT
+ * LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS
+ * FOR A PARTICULAR PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE
+ * COPYRIGHT HOLDER OR CONTRIBUTORS BE LIABLE FOR ANY DIRECT,
+ * INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES
+ * (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR
+ * SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION)
+ * HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT,
+ * STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED
+ * OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+package net.metricspace.crypto.macs.poly1305;
+
+/**
+ * Hooks for a vectorized Poly1305 block kernel.  This version is used
+ * on Java releases that lack the vector API, and never reports the
+ * kernel as available.  The multi-release JAR replaces it on Java 17
+ * and later with a version that uses the {@code
+ * jdk.incubator.vector} module whenever that module is present in the
+ * boot layer.
+ * <p>
+ * None of the fields here are compile-time constants, so that the
+ * values from whichever version is loaded are the ones used.
+ */
+final class VectorKernels {
+    /**
+     * Whether the vectorized kernel can be used.
+     */
+    static final boolean AVAILABLE = available();
+
+    /**
+     * Number of blocks processed per step, or {@code 0} if the kernel
+     * is not available.
+     */
+    static final int LANES = AVAILABLE ? 1 : 0;
+
+    /**
+     * Fewest blocks for which the kernel is worth using.
+     */
+    static final int MIN_BLOCKS = AVAILABLE ? 1 : Integer.MAX_VALUE;
+
+    private VectorKernels() {}
+
+    /**
+     * Determine whether the vectorized kernel can be used.
+     *
+     * @return {@code false}, as there is no vector API.
+     */
+    private static boolean available() {
+        return false;
+    }
+
+    /**
+     * Absorb {@code steps * LANES} full blocks into per-lane
+     * accumulators.  Lane {@code j} absorbs blocks {@code j}, {@code
+     * j + LANES}, and so on, multiplying by {@code r^LANES} between
+     * them.  The last block of each lane is added but not multiplied;
+     * the caller must multiply lane {@code j} by {@code r^(LANES-j)}
+     * and sum the lanes.
+     *
+     * @param acc The accumulators, in 26-bit limbs, with limb {@code
+     *            k} of lane {@code j} at {@code k * LANES + j}.
+     * @param input The array containing the blocks.
+     * @param offset The offset of the first block.
+     * @param steps The number of steps.
+     * @param rpow The powers of {@code r}, as kept by {@link
+     *             Poly1305}, up to at least {@code r^LANES}.
+     * @throws UnsupportedOperationException Always.
+     */
+    static void blocks(final long[] acc,
+                       final byte[] input,
+                       final int offset,
+                       final int steps,
+                       final int[] rpow) {
+        throw new UnsupportedOperationException();
+    }
+}
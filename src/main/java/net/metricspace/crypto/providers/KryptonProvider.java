@@ -34,6 +34,10 @@ package net.metricspace.crypto.providers;
 import java.security.Security;
 import java.security.Provider;
 
+import net.metricspace.crypto.ciphers.stream.hc.HC128CipherSpi;
+import net.metricspace.crypto.ciphers.stream.hc.HC128KeyGeneratorSpi;
+import net.metricspace.crypto.ciphers.stream.hc.HC128ParameterGeneratorSpi;
+import net.metricspace.crypto.ciphers.stream.hc.HC128ParametersSpi;
 import net.metricspace.crypto.ciphers.stream.hc.HC256CipherSpi;
 import net.metricspace.crypto.ciphers.stream.hc.HC256KeyGeneratorSpi;
 import net.metricspace.crypto.ciphers.stream.hc.HC256ParameterGeneratorSpi;
@@ -41,18 +45,31 @@ import net.metricspace.crypto.ciphers.stream.hc.HC256ParametersSpi;
 import net.metricspace.crypto.ciphers.stream.salsa.ChaCha20CipherSpi;
 import net.metricspace.crypto.ciphers.stream.salsa.ChaCha20KeyGeneratorSpi;
 import net.metricspace.crypto.ciphers.stream.salsa.ChaCha20ParameterGeneratorSpi;
+import net.metricspace.crypto.ciphers.stream.salsa.ChaCha20Poly1305CipherSpi;
+import net.metricspace.crypto.ciphers.stream.salsa.ChaCha20Poly1305ParametersSpi;
+import net.metricspace.crypto.ciphers.stream.salsa.ExtendedSalsaFamilyParametersSpi;
 import net.metricspace.crypto.ciphers.stream.salsa.Salsa20CipherSpi;
 import net.metricspace.crypto.ciphers.stream.salsa.Salsa20KeyGeneratorSpi;
 import net.metricspace.crypto.ciphers.stream.salsa.Salsa20ParameterGeneratorSpi;
 import net.metricspace.crypto.ciphers.stream.salsa.SalsaFamilyParametersSpi;
+import net.metricspace.crypto.ciphers.stream.salsa.XChaCha20CipherSpi;
+import net.metricspace.crypto.ciphers.stream.salsa.XChaCha20KeyGeneratorSpi;
+import net.metricspace.crypto.ciphers.stream.salsa.XChaCha20ParameterGeneratorSpi;
+import net.metricspace.crypto.ciphers.stream.salsa.XSalsa20CipherSpi;
+import net.metricspace.crypto.ciphers.stream.salsa.XSalsa20KeyGeneratorSpi;
+import net.metricspace.crypto.ciphers.stream.salsa.XSalsa20ParameterGeneratorSpi;
 import net.metricspace.crypto.hashes.blake.Blake2b256MessageDigestSpi;
 import net.metricspace.crypto.hashes.blake.Blake2b384MessageDigestSpi;
 import net.metricspace.crypto.hashes.blake.Blake2b512MessageDigestSpi;
+import net.metricspace.crypto.hashes.keccak.KangarooTwelveMessageDigestSpi;
 import net.metricspace.crypto.hashes.keccak.Keccak224MessageDigestSpi;
 import net.metricspace.crypto.hashes.keccak.Keccak256MessageDigestSpi;
 import net.metricspace.crypto.hashes.keccak.Keccak384MessageDigestSpi;
 import net.metricspace.crypto.hashes.keccak.Keccak512MessageDigestSpi;
+import net.metricspace.crypto.hashes.keccak.Shake128MessageDigestSpi;
+import net.metricspace.crypto.hashes.keccak.Shake256MessageDigestSpi;
 import net.metricspace.crypto.hashes.ripemd.RipeMD160MessageDigestSpi;
+import net.metricspace.crypto.macs.poly1305.Poly1305MacSpi;
 
 /**
  * The {@link Provider} for curated cryptographic algorithms.
@@ -72,10 +89,28 @@ import net.metricspace.crypto.hashes.ripemd.RipeMD160MessageDigestSpi;
  *      ({@link net.metricspace.crypto.ciphers.stream.salsa.Salsa20CipherSpi})
  * <li> ChaCha20
  *      ({@link net.metricspace.crypto.ciphers.stream.salsa.ChaCha20CipherSpi})
+ * <li> XSalsa20
+ *      ({@link net.metricspace.crypto.ciphers.stream.salsa.XSalsa20CipherSpi})
+ * <li> XChaCha20
+ *      ({@link net.metricspace.crypto.ciphers.stream.salsa.XChaCha20CipherSpi})
+ * <li> HC-128
+ *      ({@link net.metricspace.crypto.ciphers.stream.hc.HC128CipherSpi})
  * <li> HC-256
  *      ({@link net.metricspace.crypto.ciphers.stream.hc.HC256CipherSpi})
  * </ul>
  * <p>
+ * <b>Authenticated Ciphers</b>
+ * <ul>
+ * <li> ChaCha20-Poly1305
+ *      ({@link net.metricspace.crypto.ciphers.stream.salsa.ChaCha20Poly1305CipherSpi})
+ * </ul>
+ * <p>
+ * <b>MACs</b>
+ * <ul>
+ * <li> Poly1305
+ *      ({@link net.metricspace.crypto.macs.poly1305.Poly1305MacSpi})
+ * </ul>
+ * <p>
  * <b>Hashes</b>
  * <ul>
  * <li> RipeMD-160
@@ -88,6 +123,12 @@ import net.metricspace.crypto.hashes.ripemd.RipeMD160MessageDigestSpi;
  *      ({@link net.metricspace.crypto.hashes.keccak.Keccak384MessageDigestSpi})
  * <li> SHA3-512
  *      ({@link net.metricspace.crypto.hashes.keccak.Keccak512MessageDigestSpi})
+ * <li> SHAKE128
+ *      ({@link net.metricspace.crypto.hashes.keccak.Shake128MessageDigestSpi})
+ * <li> SHAKE256
+ *      ({@link net.metricspace.crypto.hashes.keccak.Shake256MessageDigestSpi})
+ * <li> KangarooTwelve
+ *      ({@link net.metricspace.crypto.hashes.keccak.KangarooTwelveMessageDigestSpi})
  * <li> Blake2b-256
  *      ({@link net.metricspace.crypto.hashes.blake.Blake2b256MessageDigestSpi})
  * <li> Blake2b-384
@@ -132,6 +173,12 @@ public final class KryptonProvider extends Provider {
         // Cipher key generators
         put("KeyGenerator.ChaCha20", ChaCha20KeyGeneratorSpi.class.getName());
         put("KeyGenerator.Salsa20", Salsa20KeyGeneratorSpi.class.getName());
+        put("KeyGenerator.XChaCha20",
+            XChaCha20KeyGeneratorSpi.class.getName());
+        put("KeyGenerator.XSalsa20", XSalsa20KeyGeneratorSpi.class.getName());
+        put("KeyGenerator.ChaCha20-Poly1305",
+            ChaCha20KeyGeneratorSpi.class.getName());
+        put("KeyGenerator.HC-128", HC128KeyGeneratorSpi.class.getName());
         put("KeyGenerator.HC-256", HC256KeyGeneratorSpi.class.getName());
 
         // Cipher parameters
@@ -139,6 +186,14 @@ public final class KryptonProvider extends Provider {
             SalsaFamilyParametersSpi.class.getName());
         put("AlgorithmParameters.Salsa20",
             SalsaFamilyParametersSpi.class.getName());
+        put("AlgorithmParameters.XChaCha20",
+            ExtendedSalsaFamilyParametersSpi.class.getName());
+        put("AlgorithmParameters.XSalsa20",
+            ExtendedSalsaFamilyParametersSpi.class.getName());
+        put("AlgorithmParameters.ChaCha20-Poly1305",
+            ChaCha20Poly1305ParametersSpi.class.getName());
+        put("AlgorithmParameters.HC-128",
+            HC128ParametersSpi.class.getName());
         put("AlgorithmParameters.HC-256",
             HC256ParametersSpi.class.getName());
 
@@ -147,14 +202,28 @@ public final class KryptonProvider extends Provider {
             ChaCha20ParameterGeneratorSpi.class.getName());
         put("AlgorithmParameterGenerator.Salsa20",
             Salsa20ParameterGeneratorSpi.class.getName());
+        put("AlgorithmParameterGenerator.XChaCha20",
+            XChaCha20ParameterGeneratorSpi.class.getName());
+        put("AlgorithmParameterGenerator.XSalsa20",
+            XSalsa20ParameterGeneratorSpi.class.getName());
+        put("AlgorithmParameterGenerator.HC-128",
+            HC128ParameterGeneratorSpi.class.getName());
         put("AlgorithmParameterGenerator.HC-256",
             HC256ParameterGeneratorSpi.class.getName());
 
         // Stream ciphers
         put("Cipher.ChaCha20", ChaCha20CipherSpi.class.getName());
         put("Cipher.Salsa20", Salsa20CipherSpi.class.getName());
+        put("Cipher.XChaCha20", XChaCha20CipherSpi.class.getName());
+        put("Cipher.XSalsa20", XSalsa20CipherSpi.class.getName());
+        put("Cipher.ChaCha20-Poly1305",
+            ChaCha20Poly1305CipherSpi.class.getName());
+        put("Cipher.HC-128", HC128CipherSpi.class.getName());
         put("Cipher.HC-256", HC256CipherSpi.class.getName());
 
+        // MACs
+        put("Mac.Poly1305", Poly1305MacSpi.class.getName());
+
         // Hashes
         put("MessageDigest.RipeMD-160",
             RipeMD160MessageDigestSpi.class.getName());
@@ -172,6 +241,12 @@ public final class KryptonProvider extends Provider {
             Keccak256MessageDigestSpi.class.getName());
         put("MessageDigest.SHA3-224",
             Keccak224MessageDigestSpi.class.getName());
+        put("MessageDigest.SHAKE256",
+            Shake256MessageDigestSpi.class.getName());
+        put("MessageDigest.SHAKE128",
+            Shake128MessageDigestSpi.class.getName());
+        put("MessageDigest.KangarooTwelve",
+            KangarooTwelveMessageDigestSpi.class.getName());
     }
 
     /**
@@ -34,6 +34,20 @@ package net.metricspace.crypto.providers;
 import java.security.Security;
 import java.security.Provider;
 
+import net.metricspace.crypto.ciphers.stream.salsa.ChaCha12CipherSpi;
+import net.metricspace.crypto.ciphers.stream.salsa.ChaCha12KeyGeneratorSpi;
+import net.metricspace.crypto.ciphers.stream.salsa.ChaCha12ParameterGeneratorSpi;
+import net.metricspace.crypto.ciphers.stream.salsa.ChaCha8CipherSpi;
+import net.metricspace.crypto.ciphers.stream.salsa.ChaCha8KeyGeneratorSpi;
+import net.metricspace.crypto.ciphers.stream.salsa.ChaCha8ParameterGeneratorSpi;
+import net.metricspace.crypto.ciphers.stream.salsa.Salsa12CipherSpi;
+import net.metricspace.crypto.ciphers.stream.salsa.Salsa12KeyGeneratorSpi;
+import net.metricspace.crypto.ciphers.stream.salsa.Salsa12ParameterGeneratorSpi;
+import net.metricspace.crypto.ciphers.stream.salsa.Salsa8CipherSpi;
+import net.metricspace.crypto.ciphers.stream.salsa.Salsa8KeyGeneratorSpi;
+import net.metricspace.crypto.ciphers.stream.salsa.Salsa8ParameterGeneratorSpi;
+import net.metricspace.crypto.ciphers.stream.salsa.SalsaFamilyParametersSpi;
+
 /**
  * The {@link Provider} for experimental cryptographic algorithms.
  * Algorithms provided in the experimental set are currently
@@ -48,6 +62,28 @@ import java.security.Provider;
  * <p>
  * However, should an experimental algorithm be compromised, it will
  * be dropped from the experimental set immediately.
+ * <p>
+ * The experimental set consists of the following algorithms:
+ * <p>
+ * <b>Stream Ciphers</b>
+ * <ul>
+ * <li> ChaCha8
+ *      ({@link net.metricspace.crypto.ciphers.stream.salsa.ChaCha8CipherSpi})
+ * <li> ChaCha12
+ *      ({@link net.metricspace.crypto.ciphers.stream.salsa.ChaCha12CipherSpi})
+ * <li> Salsa8, also known as Salsa20/8
+ *      ({@link net.metricspace.crypto.ciphers.stream.salsa.Salsa8CipherSpi})
+ * <li> Salsa12, also known as Salsa20/12
+ *      ({@link net.metricspace.crypto.ciphers.stream.salsa.Salsa12CipherSpi})
+ * </ul>
+ * <p>
+ * These are reduced-round variants of ChaCha20 and Salsa20, which
+ * trade security margin for speed.
+ * <p>
+ * For each stream cipher, there are {@code Cipher}.<i>algName</i>,
+ * {@code AlgorithmParameters}.<i>algName</i>,
+ * {@code AlgorithmParameterGenerator}.<i>algName</i>, and
+ * {@code KeyGenerator}.<i>algName</i> instances.
  *
  * @see net.metricspace.crypto.providers.KryptonProvider
  */
@@ -73,6 +109,38 @@ public final class KryptonProviderExperimental extends Provider {
      */
     private KryptonProviderExperimental() {
         super(NAME, VERSION, "Krypton curated cipher suite");
+
+        // Cipher key generators
+        put("KeyGenerator.ChaCha8", ChaCha8KeyGeneratorSpi.class.getName());
+        put("KeyGenerator.ChaCha12", ChaCha12KeyGeneratorSpi.class.getName());
+        put("KeyGenerator.Salsa8", Salsa8KeyGeneratorSpi.class.getName());
+        put("KeyGenerator.Salsa12", Salsa12KeyGeneratorSpi.class.getName());
+
+        // Cipher parameters
+        put("AlgorithmParameters.ChaCha8",
+            SalsaFamilyParametersSpi.class.getName());
+        put("AlgorithmParameters.ChaCha12",
+            SalsaFamilyParametersSpi.class.getName());
+        put("AlgorithmParameters.Salsa8",
+            SalsaFamilyParametersSpi.class.getName());
+        put("AlgorithmParameters.Salsa12",
+            SalsaFamilyParametersSpi.class.getName());
+
+        // Cipher parameter generators
+        put("AlgorithmParameterGenerator.ChaCha8",
+            ChaCha8ParameterGeneratorSpi.class.getName());
+        put("AlgorithmParameterGenerator.ChaCha12",
+            ChaCha12ParameterGeneratorSpi.class.getName());
+        put("AlgorithmParameterGenerator.Salsa8",
+            Salsa8ParameterGeneratorSpi.class.getName());
+        put("AlgorithmParameterGenerator.Salsa12",
+            Salsa12ParameterGeneratorSpi.class.getName());
+
+        // Stream ciphers
+        put("Cipher.ChaCha8", ChaCha8CipherSpi.class.getName());
+        put("Cipher.ChaCha12", ChaCha12CipherSpi.class.getName());
+        put("Cipher.Salsa8", Salsa8CipherSpi.class.getName());
+        put("Cipher.Salsa12", Salsa12CipherSpi.class.getName());
     }
 
     /**
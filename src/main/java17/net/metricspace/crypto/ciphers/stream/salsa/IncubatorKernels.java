@@ -0,0 +1,316 @@
+/* Copyright (c) 2018, Eric McCorkle.  All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions
+ * are met:
+ *
+ * * Redistributions of source code must retain the above copyright
+ *   notice, this list of conditions and the following disclaimer.
+ *
+ * * Redistributions in binary form must reproduce the above copyright
+ *   notice, this list of conditions and the following disclaimer in
+ *   the documentation and/or other materials provided with the
+ *   distribution.
+ *
+ * * Neither the name of the copyright holder nor the names of its
+ *   contributors may be used to endorse or promote products derived
+ *   from this software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS
+ * "AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT
+ * LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS
+ * FOR A PARTICULAR PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE
+ * COPYRIGHT HOLDER OR CONTRIBUTORS BE LIABLE FOR ANY DIRECT,
+ * INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES
+ * (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR
+ * SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION)
+ * HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT,
+ * STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED
+ * OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+package net.metricspace.crypto.ciphers.stream.salsa;
+
+import jdk.incubator.vector.IntVector;
+import jdk.incubator.vector.VectorSpecies;
+
+import static jdk.incubator.vector.VectorOperators.ROL;
+import static jdk.incubator.vector.VectorOperators.XOR;
+
+/**
+ * Salsa family wide kernels using the {@code jdk.incubator.vector}
+ * API.  Each group of {@link #SPECIES} lanes of the lane-interleaved
+ * state is loaded into sixteen vectors, one per state word, which
+ * stay in registers for all of the rounds.  This class must only be
+ * loaded when the vector module is present; see {@link
+ * VectorKernels}.
+ */
+final class IncubatorKernels {
+    /**
+     * The number of words in the cipher state.
+     */
+    private static final int STATE_WORDS = 16;
+
+    /**
+     * The preferred vector shape on this platform.
+     */
+    private static final VectorSpecies<Integer> SPECIES =
+        IntVector.SPECIES_PREFERRED;
+
+    private IncubatorKernels() {}
+
+    /**
+     * Determine whether the preferred vector shape can be used with
+     * the given number of lanes.
+     *
+     * @param lanes The number of lanes in the interleaved state.
+     * @return Whether the vector length evenly divides {@code lanes}.
+     */
+    static boolean supports(final int lanes) {
+        return lanes % SPECIES.length() == 0;
+    }
+
+    /**
+     * Compute ChaCha double rounds on every lane of a lane-interleaved
+     * state.
+     *
+     * @param wide The lane-interleaved state.
+     * @param doubleRounds The number of double rounds.
+     */
+    static void chachaRounds(final int[] wide,
+                             final int doubleRounds) {
+        final int lanes = wide.length / STATE_WORDS;
+
+        for(int i = 0; i < lanes; i += SPECIES.length()) {
+            IntVector x0 =
+                IntVector.fromArray(SPECIES, wide, (lanes * 0) + i);
+            IntVector x1 =
+                IntVector.fromArray(SPECIES, wide, (lanes * 1) + i);
+            IntVector x2 =
+                IntVector.fromArray(SPECIES, wide, (lanes * 2) + i);
+            IntVector x3 =
+                IntVector.fromArray(SPECIES, wide, (lanes * 3) + i);
+            IntVector x4 =
+                IntVector.fromArray(SPECIES, wide, (lanes * 4) + i);
+            IntVector x5 =
+                IntVector.fromArray(SPECIES, wide, (lanes * 5) + i);
+            IntVector x6 =
+                IntVector.fromArray(SPECIES, wide, (lanes * 6) + i);
+            IntVector x7 =
+                IntVector.fromArray(SPECIES, wide, (lanes * 7) + i);
+            IntVector x8 =
+                IntVector.fromArray(SPECIES, wide, (lanes * 8) + i);
+            IntVector x9 =
+                IntVector.fromArray(SPECIES, wide, (lanes * 9) + i);
+            IntVector x10 =
+                IntVector.fromArray(SPECIES, wide, (lanes * 10) + i);
+            IntVector x11 =
+                IntVector.fromArray(SPECIES, wide, (lanes * 11) + i);
+            IntVector x12 =
+                IntVector.fromArray(SPECIES, wide, (lanes * 12) + i);
+            IntVector x13 =
+                IntVector.fromArray(SPECIES, wide, (lanes * 13) + i);
+            IntVector x14 =
+                IntVector.fromArray(SPECIES, wide, (lanes * 14) + i);
+            IntVector x15 =
+                IntVector.fromArray(SPECIES, wide, (lanes * 15) + i);
+
+            for(int j = 0; j < doubleRounds; j++) {
+                x0 = x0.add(x4);
+                x12 = x12.lanewise(XOR, x0).lanewise(ROL, 16);
+                x8 = x8.add(x12);
+                x4 = x4.lanewise(XOR, x8).lanewise(ROL, 12);
+                x0 = x0.add(x4);
+                x12 = x12.lanewise(XOR, x0).lanewise(ROL, 8);
+                x8 = x8.add(x12);
+                x4 = x4.lanewise(XOR, x8).lanewise(ROL, 7);
+
+                x1 = x1.add(x5);
+                x13 = x13.lanewise(XOR, x1).lanewise(ROL, 16);
+                x9 = x9.add(x13);
+                x5 = x5.lanewise(XOR, x9).lanewise(ROL, 12);
+                x1 = x1.add(x5);
+                x13 = x13.lanewise(XOR, x1).lanewise(ROL, 8);
+                x9 = x9.add(x13);
+                x5 = x5.lanewise(XOR, x9).lanewise(ROL, 7);
+
+                x2 = x2.add(x6);
+                x14 = x14.lanewise(XOR, x2).lanewise(ROL, 16);
+                x10 = x10.add(x14);
+                x6 = x6.lanewise(XOR, x10).lanewise(ROL, 12);
+                x2 = x2.add(x6);
+                x14 = x14.lanewise(XOR, x2).lanewise(ROL, 8);
+                x10 = x10.add(x14);
+                x6 = x6.lanewise(XOR, x10).lanewise(ROL, 7);
+
+                x3 = x3.add(x7);
+                x15 = x15.lanewise(XOR, x3).lanewise(ROL, 16);
+                x11 = x11.add(x15);
+                x7 = x7.lanewise(XOR, x11).lanewise(ROL, 12);
+                x3 = x3.add(x7);
+                x15 = x15.lanewise(XOR, x3).lanewise(ROL, 8);
+                x11 = x11.add(x15);
+                x7 = x7.lanewise(XOR, x11).lanewise(ROL, 7);
+
+                x0 = x0.add(x5);
+                x15 = x15.lanewise(XOR, x0).lanewise(ROL, 16);
+                x10 = x10.add(x15);
+                x5 = x5.lanewise(XOR, x10).lanewise(ROL, 12);
+                x0 = x0.add(x5);
+                x15 = x15.lanewise(XOR, x0).lanewise(ROL, 8);
+                x10 = x10.add(x15);
+                x5 = x5.lanewise(XOR, x10).lanewise(ROL, 7);
+
+                x1 = x1.add(x6);
+                x12 = x12.lanewise(XOR, x1).lanewise(ROL, 16);
+                x11 = x11.add(x12);
+                x6 = x6.lanewise(XOR, x11).lanewise(ROL, 12);
+                x1 = x1.add(x6);
+                x12 = x12.lanewise(XOR, x1).lanewise(ROL, 8);
+                x11 = x11.add(x12);
+                x6 = x6.lanewise(XOR, x11).lanewise(ROL, 7);
+
+                x2 = x2.add(x7);
+                x13 = x13.lanewise(XOR, x2).lanewise(ROL, 16);
+                x8 = x8.add(x13);
+                x7 = x7.lanewise(XOR, x8).lanewise(ROL, 12);
+                x2 = x2.add(x7);
+                x13 = x13.lanewise(XOR, x2).lanewise(ROL, 8);
+                x8 = x8.add(x13);
+                x7 = x7.lanewise(XOR, x8).lanewise(ROL, 7);
+
+                x3 = x3.add(x4);
+                x14 = x14.lanewise(XOR, x3).lanewise(ROL, 16);
+                x9 = x9.add(x14);
+                x4 = x4.lanewise(XOR, x9).lanewise(ROL, 12);
+                x3 = x3.add(x4);
+                x14 = x14.lanewise(XOR, x3).lanewise(ROL, 8);
+                x9 = x9.add(x14);
+                x4 = x4.lanewise(XOR, x9).lanewise(ROL, 7);
+            }
+
+            x0.intoArray(wide, (lanes * 0) + i);
+            x1.intoArray(wide, (lanes * 1) + i);
+            x2.intoArray(wide, (lanes * 2) + i);
+            x3.intoArray(wide, (lanes * 3) + i);
+            x4.intoArray(wide, (lanes * 4) + i);
+            x5.intoArray(wide, (lanes * 5) + i);
+            x6.intoArray(wide, (lanes * 6) + i);
+            x7.intoArray(wide, (lanes * 7) + i);
+            x8.intoArray(wide, (lanes * 8) + i);
+            x9.intoArray(wide, (lanes * 9) + i);
+            x10.intoArray(wide, (lanes * 10) + i);
+            x11.intoArray(wide, (lanes * 11) + i);
+            x12.intoArray(wide, (lanes * 12) + i);
+            x13.intoArray(wide, (lanes * 13) + i);
+            x14.intoArray(wide, (lanes * 14) + i);
+            x15.intoArray(wide, (lanes * 15) + i);
+        }
+    }
+
+    /**
+     * Compute Salsa double rounds on every lane of a lane-interleaved
+     * state.
+     *
+     * @param wide The lane-interleaved state.
+     * @param doubleRounds The number of double rounds.
+     */
+    static void salsaRounds(final int[] wide,
+                            final int doubleRounds) {
+        final int lanes = wide.length / STATE_WORDS;
+
+        for(int i = 0; i < lanes; i += SPECIES.length()) {
+            IntVector x0 =
+                IntVector.fromArray(SPECIES, wide, (lanes * 0) + i);
+            IntVector x1 =
+                IntVector.fromArray(SPECIES, wide, (lanes * 1) + i);
+            IntVector x2 =
+                IntVector.fromArray(SPECIES, wide, (lanes * 2) + i);
+            IntVector x3 =
+                IntVector.fromArray(SPECIES, wide, (lanes * 3) + i);
+            IntVector x4 =
+                IntVector.fromArray(SPECIES, wide, (lanes * 4) + i);
+            IntVector x5 =
+                IntVector.fromArray(SPECIES, wide, (lanes * 5) + i);
+            IntVector x6 =
+                IntVector.fromArray(SPECIES, wide, (lanes * 6) + i);
+            IntVector x7 =
+                IntVector.fromArray(SPECIES, wide, (lanes * 7) + i);
+            IntVector x8 =
+                IntVector.fromArray(SPECIES, wide, (lanes * 8) + i);
+            IntVector x9 =
+                IntVector.fromArray(SPECIES, wide, (lanes * 9) + i);
+            IntVector x10 =
+                IntVector.fromArray(SPECIES, wide, (lanes * 10) + i);
+            IntVector x11 =
+                IntVector.fromArray(SPECIES, wide, (lanes * 11) + i);
+            IntVector x12 =
+                IntVector.fromArray(SPECIES, wide, (lanes * 12) + i);
+            IntVector x13 =
+                IntVector.fromArray(SPECIES, wide, (lanes * 13) + i);
+            IntVector x14 =
+                IntVector.fromArray(SPECIES, wide, (lanes * 14) + i);
+            IntVector x15 =
+                IntVector.fromArray(SPECIES, wide, (lanes * 15) + i);
+
+            for(int j = 0; j < doubleRounds; j++) {
+                x4 = x4.lanewise(XOR, x0.add(x12).lanewise(ROL, 7));
+                x8 = x8.lanewise(XOR, x4.add(x0).lanewise(ROL, 9));
+                x12 = x12.lanewise(XOR, x8.add(x4).lanewise(ROL, 13));
+                x0 = x0.lanewise(XOR, x12.add(x8).lanewise(ROL, 18));
+
+                x9 = x9.lanewise(XOR, x5.add(x1).lanewise(ROL, 7));
+                x13 = x13.lanewise(XOR, x9.add(x5).lanewise(ROL, 9));
+                x1 = x1.lanewise(XOR, x13.add(x9).lanewise(ROL, 13));
+                x5 = x5.lanewise(XOR, x1.add(x13).lanewise(ROL, 18));
+
+                x14 = x14.lanewise(XOR, x10.add(x6).lanewise(ROL, 7));
+                x2 = x2.lanewise(XOR, x14.add(x10).lanewise(ROL, 9));
+                x6 = x6.lanewise(XOR, x2.add(x14).lanewise(ROL, 13));
+                x10 = x10.lanewise(XOR, x6.add(x2).lanewise(ROL, 18));
+
+                x3 = x3.lanewise(XOR, x15.add(x11).lanewise(ROL, 7));
+                x7 = x7.lanewise(XOR, x3.add(x15).lanewise(ROL, 9));
+                x11 = x11.lanewise(XOR, x7.add(x3).lanewise(ROL, 13));
+                x15 = x15.lanewise(XOR, x11.add(x7).lanewise(ROL, 18));
+
+                x1 = x1.lanewise(XOR, x0.add(x3).lanewise(ROL, 7));
+                x2 = x2.lanewise(XOR, x1.add(x0).lanewise(ROL, 9));
+                x3 = x3.lanewise(XOR, x2.add(x1).lanewise(ROL, 13));
+                x0 = x0.lanewise(XOR, x3.add(x2).lanewise(ROL, 18));
+
+                x6 = x6.lanewise(XOR, x5.add(x4).lanewise(ROL, 7));
+                x7 = x7.lanewise(XOR, x6.add(x5).lanewise(ROL, 9));
+                x4 = x4.lanewise(XOR, x7.add(x6).lanewise(ROL, 13));
+                x5 = x5.lanewise(XOR, x4.add(x7).lanewise(ROL, 18));
+
+                x11 = x11.lanewise(XOR, x10.add(x9).lanewise(ROL, 7));
+                x8 = x8.lanewise(XOR, x11.add(x10).lanewise(ROL, 9));
+                x9 = x9.lanewise(XOR, x8.add(x11).lanewise(ROL, 13));
+                x10 = x10.lanewise(XOR, x9.add(x8).lanewise(ROL, 18));
+
+                x12 = x12.lanewise(XOR, x15.add(x14).lanewise(ROL, 7));
+                x13 = x13.lanewise(XOR, x12.add(x15).lanewise(ROL, 9));
+                x14 = x14.lanewise(XOR, x13.add(x12).lanewise(ROL, 13));
+                x15 = x15.lanewise(XOR, x14.add(x13).lanewise(ROL, 18));
+            }
+
+            x0.intoArray(wide, (lanes * 0) + i);
+            x1.intoArray(wide, (lanes * 1) + i);
+            x2.intoArray(wide, (lanes * 2) + i);
+            x3.intoArray(wide, (lanes * 3) + i);
+            x4.intoArray(wide, (lanes * 4) + i);
+            x5.intoArray(wide, (lanes * 5) + i);
+            x6.intoArray(wide, (lanes * 6) + i);
+            x7.intoArray(wide, (lanes * 7) + i);
+            x8.intoArray(wide, (lanes * 8) + i);
+            x9.intoArray(wide, (lanes * 9) + i);
+            x10.intoArray(wide, (lanes * 10) + i);
+            x11.intoArray(wide, (lanes * 11) + i);
+            x12.intoArray(wide, (lanes * 12) + i);
+            x13.intoArray(wide, (lanes * 13) + i);
+            x14.intoArray(wide, (lanes * 14) + i);
+            x15.intoArray(wide, (lanes * 15) + i);
+        }
+    }
+}
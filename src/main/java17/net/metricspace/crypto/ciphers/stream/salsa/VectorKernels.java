@@ -0,0 +1,91 @@
+/* Copyright (c) 2018, Eric McCorkle.  All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions
+ * are met:
+ *
+ * * Redistributions of source code must retain the above copyright
+ *   notice, this list of conditions and the following disclaimer.
+ *
+ * * Redistributions in binary form must reproduce the above copyright
+ *   notice, this list of conditions and the following disclaimer in
+ *   the documentation and/or other materials provided with the
+ *   distribution.
+ *
+ * * Neither the name of the copyright holder nor the names of its
+ *   contributors may be used to endorse or promote products derived
+ *   from this software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS
+ * "AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT
+ * LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS
+ * FOR A PARTICULAR PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE
+ * COPYRIGHT HOLDER OR CONTRIBUTORS BE LIABLE FOR ANY DIRECT,
+ * INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES
+ * (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR
+ * SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION)
+ * HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT,
+ * STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED
+ * OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+package net.metricspace.crypto.ciphers.stream.salsa;
+
+/**
+ * Hooks for vectorized versions of the Salsa family wide kernels.
+ * This is the Java 17 version, which uses {@link IncubatorKernels}
+ * when the {@code jdk.incubator.vector} module is present in the boot
+ * layer.  That class is only loaded after the check succeeds, so this
+ * class is safe to load without the module.
+ * <p>
+ * Both versions work on the lane-interleaved state used by {@link
+ * SalsaFamilyCipherSpi#wide}, and leave the result in place.
+ */
+final class VectorKernels {
+    /**
+     * Name of the vector API module.
+     */
+    private static final String VECTOR_MODULE = "jdk.incubator.vector";
+
+    /**
+     * Whether the vectorized kernels can be used.
+     */
+    static final boolean AVAILABLE = available();
+
+    private VectorKernels() {}
+
+    /**
+     * Determine whether the vectorized kernels can be used.
+     *
+     * @return Whether the vector API module is present, and its
+     *         preferred vector shape evenly divides the lanes.
+     */
+    private static boolean available() {
+        return ModuleLayer.boot().findModule(VECTOR_MODULE).isPresent() &&
+               IncubatorKernels.supports(SalsaFamilyCipherSpi.LANES);
+    }
+
+    /**
+     * Compute ChaCha double rounds on every lane of a lane-interleaved
+     * state.
+     *
+     * @param wide The lane-interleaved state.
+     * @param doubleRounds The number of double rounds.
+     */
+    static void chachaRounds(final int[] wide,
+                             final int doubleRounds) {
+        IncubatorKernels.chachaRounds(wide, doubleRounds);
+    }
+
+    /**
+     * Compute Salsa double rounds on every lane of a lane-interleaved
+     * state.
+     *
+     * @param wide The lane-interleaved state.
+     * @param doubleRounds The number of double rounds.
+     */
+    static void salsaRounds(final int[] wide,
+                            final int doubleRounds) {
+        IncubatorKernels.salsaRounds(wide, doubleRounds);
+    }
+}
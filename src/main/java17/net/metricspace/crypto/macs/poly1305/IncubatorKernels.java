@@ -0,0 +1,238 @@
+/* Copyright (c) 2018, Eric McCorkle.  All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions
+ * are met:
+ *
+ * * Redistributions of source code must retain the above copyright
+ *   notice, this list of conditions and the following disclaimer.
+ *
+ * * Redistributions in binary form must reproduce the above copyright
+ *   notice, this list of conditions and the following disclaimer in
+ *   the documentation and/or other materials provided with the
+ *   distribution.
+ *
+ * * Neither the name of the copyright holder nor the names of its
+ *   contributors may be used to endorse or promote products derived
+ *   from this software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS
+ * "AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT
+ * LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS
+ * FOR A PARTICULAR PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE
+ * COPYRIGHT HOLDER OR CONTRIBUTORS BE LIABLE FOR ANY DIRECT,
+ * INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES
+ * (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR
+ * SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION)
+ * HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT,
+ * STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED
+ * OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+package net.metricspace.crypto.macs.poly1305;
+
+import java.nio.ByteOrder;
+
+import jdk.incubator.vector.LongVector;
+import jdk.incubator.vector.VectorShuffle;
+import jdk.incubator.vector.VectorSpecies;
+
+import static jdk.incubator.vector.VectorOperators.LSHL;
+import static jdk.incubator.vector.VectorOperators.LSHR;
+
+/**
+ * Poly1305 block kernel using the {@code jdk.incubator.vector} API.
+ * Each lane of a {@link LongVector} holds a separate accumulator in
+ * 26-bit limbs, and absorbs every {@code n}th block, where {@code n}
+ * is the number of lanes.  This class must only be loaded when the
+ * vector module is present; see {@link VectorKernels}.
+ */
+final class IncubatorKernels {
+    /**
+     * The preferred vector shape on this platform.
+     */
+    private static final VectorSpecies<Long> SPECIES =
+        LongVector.SPECIES_PREFERRED;
+
+    /**
+     * Number of lanes.
+     */
+    private static final int LANES = SPECIES.length();
+
+    /**
+     * Number of limbs in a field element.
+     */
+    private static final int LIMBS = 5;
+
+    /**
+     * Mask for a 26-bit limb.
+     */
+    private static final long MASK = 0x3ffffff;
+
+    /**
+     * The bit set above each full block.
+     */
+    private static final long HIBIT = 1L << 24;
+
+    /**
+     * Selects the low halves of the blocks from two loaded vectors.
+     */
+    private static final VectorShuffle<Long> LOW =
+        VectorShuffle.fromOp(SPECIES, i -> i * 2);
+
+    /**
+     * Selects the high halves of the blocks from two loaded vectors.
+     */
+    private static final VectorShuffle<Long> HIGH =
+        VectorShuffle.fromOp(SPECIES, i -> (i * 2) + 1);
+
+    private IncubatorKernels() {}
+
+    /**
+     * Determine whether the preferred vector shape is worth using.
+     *
+     * @return Whether the preferred vector shape holds at least four
+     *         longs.
+     */
+    static boolean supported() {
+        return LANES >= 4;
+    }
+
+    /**
+     * Get the number of blocks processed per step.
+     *
+     * @return The number of lanes in the preferred vector shape.
+     */
+    static int lanes() {
+        return LANES;
+    }
+
+    /**
+     * Load the low halves of {@link #LANES} consecutive blocks.
+     *
+     * @param input The array containing the blocks.
+     * @param offset The offset of the first block.
+     * @return The low half of block {@code j} in lane {@code j}.
+     */
+    private static LongVector low(final byte[] input,
+                                  final int offset) {
+        final LongVector first =
+            LongVector.fromByteArray(SPECIES, input, offset,
+                                     ByteOrder.LITTLE_ENDIAN);
+        final LongVector second =
+            LongVector.fromByteArray(SPECIES, input, offset + (LANES * 8),
+                                     ByteOrder.LITTLE_ENDIAN);
+
+        return first.rearrange(LOW, second);
+    }
+
+    /**
+     * Load the high halves of {@link #LANES} consecutive blocks.
+     *
+     * @param input The array containing the blocks.
+     * @param offset The offset of the first block.
+     * @return The high half of block {@code j} in lane {@code j}.
+     */
+    private static LongVector high(final byte[] input,
+                                   final int offset) {
+        final LongVector first =
+            LongVector.fromByteArray(SPECIES, input, offset,
+                                     ByteOrder.LITTLE_ENDIAN);
+        final LongVector second =
+            LongVector.fromByteArray(SPECIES, input, offset + (LANES * 8),
+                                     ByteOrder.LITTLE_ENDIAN);
+
+        return first.rearrange(HIGH, second);
+    }
+
+    /**
+     * Absorb {@code steps * lanes()} full blocks into per-lane
+     * accumulators.  Lane {@code j} absorbs blocks {@code j}, {@code
+     * j + n}, {@code j + 2n}, and so on, multiplying by {@code r^n}
+     * between them, where {@code n} is the number of lanes.  The last
+     * block of each lane is added but not multiplied; the caller must
+     * multiply lane {@code j} by {@code r^(n-j)} and sum the lanes.
+     *
+     * @param acc The accumulators, in 26-bit limbs, with limb {@code
+     *            k} of lane {@code j} at {@code k * n + j}.  On
+     *            return, these are only partially carried.
+     * @param input The array containing the blocks.
+     * @param offset The offset of the first block.
+     * @param steps The number of steps.
+     * @param rpow The powers of {@code r}, as kept by {@link
+     *             Poly1305}, up to at least {@code r^n}.
+     */
+    static void blocks(final long[] acc,
+                       final byte[] input,
+                       final int offset,
+                       final int steps,
+                       final int[] rpow) {
+        final int rn = (LANES - 1) * LIMBS;
+        final LongVector u0 = LongVector.broadcast(SPECIES, rpow[rn]);
+        final LongVector u1 = LongVector.broadcast(SPECIES, rpow[rn + 1]);
+        final LongVector u2 = LongVector.broadcast(SPECIES, rpow[rn + 2]);
+        final LongVector u3 = LongVector.broadcast(SPECIES, rpow[rn + 3]);
+        final LongVector u4 = LongVector.broadcast(SPECIES, rpow[rn + 4]);
+        final LongVector us1 = u1.mul(5);
+        final LongVector us2 = u2.mul(5);
+        final LongVector us3 = u3.mul(5);
+        final LongVector us4 = u4.mul(5);
+        final int last = offset + ((steps - 1) * LANES * 16);
+        LongVector h0 = LongVector.fromArray(SPECIES, acc, 0);
+        LongVector h1 = LongVector.fromArray(SPECIES, acc, LANES);
+        LongVector h2 = LongVector.fromArray(SPECIES, acc, LANES * 2);
+        LongVector h3 = LongVector.fromArray(SPECIES, acc, LANES * 3);
+        LongVector h4 = LongVector.fromArray(SPECIES, acc, LANES * 4);
+
+        for(int idx = offset; idx < last; idx += LANES * 16) {
+            final LongVector lo = low(input, idx);
+            final LongVector hi = high(input, idx);
+            final LongVector a0 = h0.add(lo.and(MASK));
+            final LongVector a1 = h1.add(lo.lanewise(LSHR, 26).and(MASK));
+            final LongVector a2 =
+                h2.add(lo.lanewise(LSHR, 52)
+                         .or(hi.lanewise(LSHL, 12)).and(MASK));
+            final LongVector a3 = h3.add(hi.lanewise(LSHR, 14).and(MASK));
+            final LongVector a4 = h4.add(hi.lanewise(LSHR, 40).or(HIBIT));
+
+            final LongVector d0 =
+                a0.mul(u0).add(a1.mul(us4)).add(a2.mul(us3))
+                  .add(a3.mul(us2)).add(a4.mul(us1));
+            LongVector d1 =
+                a0.mul(u1).add(a1.mul(u0)).add(a2.mul(us4))
+                  .add(a3.mul(us3)).add(a4.mul(us2));
+            LongVector d2 =
+                a0.mul(u2).add(a1.mul(u1)).add(a2.mul(u0))
+                  .add(a3.mul(us4)).add(a4.mul(us3));
+            LongVector d3 =
+                a0.mul(u3).add(a1.mul(u2)).add(a2.mul(u1))
+                  .add(a3.mul(u0)).add(a4.mul(us4));
+            LongVector d4 =
+                a0.mul(u4).add(a1.mul(u3)).add(a2.mul(u2))
+                  .add(a3.mul(u1)).add(a4.mul(u0));
+
+            h0 = d0.and(MASK);
+            d1 = d1.add(d0.lanewise(LSHR, 26));
+            h1 = d1.and(MASK);
+            d2 = d2.add(d1.lanewise(LSHR, 26));
+            h2 = d2.and(MASK);
+            d3 = d3.add(d2.lanewise(LSHR, 26));
+            h3 = d3.and(MASK);
+            d4 = d4.add(d3.lanewise(LSHR, 26));
+            h4 = d4.and(MASK);
+            h0 = h0.add(d4.lanewise(LSHR, 26).mul(5));
+            h1 = h1.add(h0.lanewise(LSHR, 26));
+            h0 = h0.and(MASK);
+        }
+
+        final LongVector lo = low(input, last);
+        final LongVector hi = high(input, last);
+
+        h0.add(lo.and(MASK)).intoArray(acc, 0);
+        h1.add(lo.lanewise(LSHR, 26).and(MASK)).intoArray(acc, LANES);
+        h2.add(lo.lanewise(LSHR, 52).or(hi.lanewise(LSHL, 12)).and(MASK))
+          .intoArray(acc, LANES * 2);
+        h3.add(hi.lanewise(LSHR, 14).and(MASK)).intoArray(acc, LANES * 3);
+        h4.add(hi.lanewise(LSHR, 40).or(HIBIT)).intoArray(acc, LANES * 4);
+    }
+}
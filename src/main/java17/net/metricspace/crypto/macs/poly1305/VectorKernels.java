@@ -0,0 +1,100 @@
+/* Copyright (c) 2018, Eric McCorkle.  All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions
+ * are met:
+ *
+ * * Redistributions of source code must retain the above copyright
+ *   notice, this list of conditions and the following disclaimer.
+ *
+ * * Redistributions in binary form must reproduce the above copyright
+ *   notice, this list of conditions and the following disclaimer in
+ *   the documentation and/or other materials provided with the
+ *   distribution.
+ *
+ * * Neither the name of the copyright holder nor the names of its
+ *   contributors may be used to endorse or promote products derived
+ *   from this software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS
+ * "AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT
+ * LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS
+ * FOR A PARTICULAR PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE
+ * COPYRIGHT HOLDER OR CONTRIBUTORS BE LIABLE FOR ANY DIRECT,
+ * INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES
+ * (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR
+ * SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION)
+ * HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT,
+ * STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED
+ * OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+package net.metricspace.crypto.macs.poly1305;
+
+/**
+ * Hooks for a vectorized Poly1305 block kernel.  This is the Java 17
+ * version, which uses {@link IncubatorKernels} when the {@code
+ * jdk.incubator.vector} module is present in the boot layer.  That
+ * class is only loaded after the check succeeds, so this class is
+ * safe to load without the module.
+ */
+final class VectorKernels {
+    /**
+     * Name of the vector API module.
+     */
+    private static final String VECTOR_MODULE = "jdk.incubator.vector";
+
+    /**
+     * Whether the vectorized kernel can be used.
+     */
+    static final boolean AVAILABLE = available();
+
+    /**
+     * Number of blocks processed per step, or {@code 0} if the kernel
+     * is not available.
+     */
+    static final int LANES = AVAILABLE ? IncubatorKernels.lanes() : 0;
+
+    /**
+     * Fewest blocks for which the kernel is worth using.
+     */
+    static final int MIN_BLOCKS = AVAILABLE ? LANES * 2 : Integer.MAX_VALUE;
+
+    private VectorKernels() {}
+
+    /**
+     * Determine whether the vectorized kernel can be used.
+     *
+     * @return Whether the vector API module is present, and its
+     *         preferred vector shape holds at least four longs.
+     */
+    private static boolean available() {
+        return ModuleLayer.boot().findModule(VECTOR_MODULE).isPresent() &&
+               IncubatorKernels.supported();
+    }
+
+    /**
+     * Absorb {@code steps * LANES} full blocks into per-lane
+     * accumulators.  Lane {@code j} absorbs blocks {@code j}, {@code
+     * j + LANES}, and so on, multiplying by {@code r^LANES} between
+     * them.  The last block of each lane is added but not multiplied;
+     * the caller must multiply lane {@code j} by {@code r^(LANES-j)}
+     * and sum the lanes.
+     *
+     * @param acc The accumulators, in 26-bit limbs, with limb {@code
+     *            k} of lane {@code j} at {@code k * LANES + j}.  On
+     *            return, these are only partially carried.
+     * @param input The array containing the blocks.
+     * @param offset The offset of the first block.
+     * @param steps The number of steps.
+     * @param rpow The powers of {@code r}, as kept by {@link
+     *             Poly1305}, up to at least {@code r^LANES}.
+     */
+    static void blocks(final long[] acc,
+                       final byte[] input,
+                       final int offset,
+                       final int steps,
+                       final int[] rpow) {
+        IncubatorKernels.blocks(acc, input, offset, steps, rpow);
+    }
+}
@@ -0,0 +1,225 @@
+/* Copyright (c) 2018, Eric McCorkle.  All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions
+ * are met:
+ *
+ * * Redistributions of source code must retain the above copyright
+ *   notice, this list of conditions and the following disclaimer.
+ *
+ * * Redistributions in binary form must reproduce the above copyright
+ *   notice, this list of conditions and the following disclaimer in
+ *   the documentation and/or other materials provided with the
+ *   distribution.
+ *
+ * * Neither the name of the copyright holder nor the names of its
+ *   contributors may be used to endorse or promote products derived
+ *   from this software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS
+ * "AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT
+ * LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS
+ * FOR A PARTICULAR PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE
+ * COPYRIGHT HOLDER OR CONTRIBUTORS BE LIABLE FOR ANY DIRECT,
+ * INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES
+ * (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR
+ * SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION)
+ * HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT,
+ * STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED
+ * OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+package net.metricspace.crypto.ciphers.stream;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.IllegalBlockingModeException;
+import java.nio.channels.Pipe;
+
+import java.security.AlgorithmParameters;
+import java.security.AlgorithmParameterGenerator;
+import java.security.GeneralSecurityException;
+import java.util.Arrays;
+
+import javax.crypto.Cipher;
+import javax.crypto.KeyGenerator;
+import javax.crypto.SecretKey;
+
+import org.testng.Assert;
+import org.testng.annotations.AfterClass;
+import org.testng.annotations.BeforeClass;
+import org.testng.annotations.DataProvider;
+import org.testng.annotations.Test;
+
+import net.metricspace.crypto.ciphers.stream.salsa.ChaCha20CipherSpi;
+import net.metricspace.crypto.providers.KryptonProvider;
+
+@Test(groups = "unit")
+public class KeystreamCipherChannelTest {
+    private static final int MSG_LEN = 20000;
+    private static final int BUF_SIZE = 1000;
+    private static final int[] PIECES = { 1, 63, 64, 999, 1000, 1001, 5000 };
+
+    private static final byte[] MSG_DATA = new byte[MSG_LEN];
+
+    static {
+        for(int i = 0; i < MSG_DATA.length; i++) {
+            MSG_DATA[i] = (byte)(i * 13);
+        }
+    };
+
+    private SecretKey key;
+    private AlgorithmParameters params;
+    private byte[] ctext;
+
+    @BeforeClass
+    public void init() throws GeneralSecurityException {
+        KryptonProvider.register();
+
+        final KeyGenerator keygen =
+            KeyGenerator.getInstance(ChaCha20CipherSpi.NAME,
+                                     KryptonProvider.NAME);
+        final AlgorithmParameterGenerator paramgen =
+            AlgorithmParameterGenerator.getInstance(ChaCha20CipherSpi.NAME,
+                                                    KryptonProvider.NAME);
+        final Cipher cipher =
+            Cipher.getInstance(ChaCha20CipherSpi.NAME, KryptonProvider.NAME);
+
+        keygen.init(256);
+        key = keygen.generateKey();
+        paramgen.init(64);
+        params = paramgen.generateParameters();
+        cipher.init(Cipher.ENCRYPT_MODE, key, params);
+        ctext = cipher.doFinal(MSG_DATA);
+    }
+
+    @AfterClass
+    public void fini() {
+        KryptonProvider.unregister();
+    }
+
+    @DataProvider(name = "direct")
+    public static Object[][] direct() {
+        return new Object[][] {
+            new Object[] { false },
+            new Object[] { true }
+        };
+    }
+
+    private static ByteBuffer allocate(final int size,
+                                       final boolean direct) {
+        if (direct) {
+            return ByteBuffer.allocateDirect(size);
+        } else {
+            return ByteBuffer.allocate(size);
+        }
+    }
+
+    @Test(dataProvider = "direct")
+    public void writeTest(final boolean direct)
+        throws GeneralSecurityException, IOException {
+        final ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+
+        try(final KeystreamCipherWritableChannel channel =
+                new KeystreamCipherWritableChannel(
+                    Channels.newChannel(bytes), new ChaCha20CipherSpi(),
+                    key, params, allocate(BUF_SIZE, direct))) {
+            int pos = 0;
+
+            for(int i = 0; pos < MSG_LEN; i++) {
+                final int len = Math.min(PIECES[i % PIECES.length],
+                                         MSG_LEN - pos);
+                final ByteBuffer src = allocate(len, direct);
+
+                src.put(MSG_DATA, pos, len).flip();
+
+                if (i % 3 == 0) {
+                    Assert.assertEquals(channel.writeInPlace(src), len);
+
+                    final byte[] actual = new byte[len];
+
+                    src.flip();
+                    src.get(actual);
+                    Assert.assertEquals(actual,
+                                        Arrays.copyOfRange(ctext, pos,
+                                                           pos + len));
+                } else {
+                    Assert.assertEquals(channel.write(src), len);
+                }
+
+                Assert.assertFalse(src.hasRemaining());
+                pos += len;
+            }
+        }
+
+        Assert.assertEquals(bytes.toByteArray(), ctext);
+    }
+
+    @Test(dataProvider = "direct")
+    public void readTest(final boolean direct)
+        throws GeneralSecurityException, IOException {
+        final ByteBuffer actual = allocate(MSG_LEN, direct);
+
+        try(final KeystreamCipherReadableChannel channel =
+                new KeystreamCipherReadableChannel(
+                    Channels.newChannel(new ByteArrayInputStream(ctext)),
+                    new ChaCha20CipherSpi(), key, params)) {
+            for(int i = 0; actual.hasRemaining(); i++) {
+                final int len = Math.min(PIECES[i % PIECES.length],
+                                         actual.remaining());
+
+                actual.limit(actual.position() + len);
+
+                while (actual.hasRemaining()) {
+                    channel.read(actual);
+                }
+
+                actual.limit(MSG_LEN);
+            }
+
+            Assert.assertEquals(channel.read(allocate(1, direct)), -1);
+        }
+
+        final byte[] out = new byte[MSG_LEN];
+
+        actual.flip();
+        actual.get(out);
+        Assert.assertEquals(out, MSG_DATA);
+    }
+
+    @Test
+    public void nonBlockingTest()
+        throws GeneralSecurityException, IOException {
+        final Pipe pipe = Pipe.open();
+
+        try(final KeystreamCipherWritableChannel channel =
+                new KeystreamCipherWritableChannel(
+                    pipe.sink(), new ChaCha20CipherSpi(), key, params,
+                    ByteBuffer.allocate(BUF_SIZE))) {
+            final ByteBuffer src = ByteBuffer.wrap(MSG_DATA);
+
+            pipe.sink().configureBlocking(false);
+
+            try {
+                channel.write(src);
+                Assert.fail("Expected IllegalBlockingModeException");
+            } catch(final IllegalBlockingModeException e) {
+                // Nothing was encrypted or consumed.
+                Assert.assertEquals(src.position(), 0);
+            }
+        } finally {
+            pipe.source().close();
+        }
+    }
+
+    @Test(expectedExceptions = IllegalArgumentException.class)
+    public void readOnlyBufferTest() throws GeneralSecurityException {
+        new KeystreamCipherWritableChannel(
+            Channels.newChannel(new ByteArrayOutputStream()),
+            new ChaCha20CipherSpi(), key, params,
+            ByteBuffer.allocate(BUF_SIZE).asReadOnlyBuffer());
+    }
+}
@@ -0,0 +1,196 @@
+/* Copyright (c) 2018, Eric McCorkle.  All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions
+ * are met:
+ *
+ * * Redistributions of source code must retain the above copyright
+ *   notice, this list of conditions and the following disclaimer.
+ *
+ * * Redistributions in binary form must reproduce the above copyright
+ *   notice, this list of conditions and the following disclaimer in
+ *   the documentation and/or other materials provided with the
+ *   distribution.
+ *
+ * * Neither the name of the copyright holder nor the names of its
+ *   contributors may be used to endorse or promote products derived
+ *   from this software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS
+ * "AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT
+ * LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS
+ * FOR A PARTICULAR PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE
+ * COPYRIGHT HOLDER OR CONTRIBUTORS BE LIABLE FOR ANY DIRECT,
+ * INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES
+ * (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR
+ * SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION)
+ * HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT,
+ * STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED
+ * OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+package net.metricspace.crypto.ciphers.stream;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+
+import java.security.AlgorithmParameters;
+import java.security.AlgorithmParameterGenerator;
+import java.security.GeneralSecurityException;
+import java.util.Arrays;
+
+import javax.crypto.Cipher;
+import javax.crypto.KeyGenerator;
+import javax.crypto.SecretKey;
+
+import org.testng.Assert;
+import org.testng.annotations.AfterClass;
+import org.testng.annotations.BeforeClass;
+import org.testng.annotations.Test;
+
+import net.metricspace.crypto.ciphers.stream.salsa.ChaCha20CipherSpi;
+import net.metricspace.crypto.providers.KryptonProvider;
+
+@Test(groups = "unit")
+public class KeystreamCipherStreamTest {
+    private static final int MSG_LEN = 20000;
+    private static final int BUF_SIZE = 1000;
+    private static final int[] PIECES = { 1, 63, 64, 999, 1000, 1001, 5000 };
+
+    private static final byte[] MSG_DATA = new byte[MSG_LEN];
+
+    static {
+        for(int i = 0; i < MSG_DATA.length; i++) {
+            MSG_DATA[i] = (byte)(i * 13);
+        }
+    };
+
+    private SecretKey key;
+    private AlgorithmParameters params;
+    private byte[] ctext;
+
+    @BeforeClass
+    public void init() throws GeneralSecurityException {
+        KryptonProvider.register();
+
+        final KeyGenerator keygen =
+            KeyGenerator.getInstance(ChaCha20CipherSpi.NAME,
+                                     KryptonProvider.NAME);
+        final AlgorithmParameterGenerator paramgen =
+            AlgorithmParameterGenerator.getInstance(ChaCha20CipherSpi.NAME,
+                                                    KryptonProvider.NAME);
+        final Cipher cipher =
+            Cipher.getInstance(ChaCha20CipherSpi.NAME, KryptonProvider.NAME);
+
+        keygen.init(256);
+        key = keygen.generateKey();
+        paramgen.init(64);
+        params = paramgen.generateParameters();
+        cipher.init(Cipher.ENCRYPT_MODE, key, params);
+        ctext = cipher.doFinal(MSG_DATA);
+    }
+
+    @AfterClass
+    public void fini() {
+        KryptonProvider.unregister();
+    }
+
+    @Test
+    public void writeTest() throws GeneralSecurityException, IOException {
+        final ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+
+        try(final KeystreamCipherOutputStream out =
+                new KeystreamCipherOutputStream(bytes,
+                                                new ChaCha20CipherSpi(),
+                                                key, params, BUF_SIZE)) {
+            int pos = 0;
+
+            // Mix single bytes, pieces smaller and larger than the
+            // buffer, and in-place writes.
+            for(int i = 0; pos < MSG_LEN; i++) {
+                final int len = Math.min(PIECES[i % PIECES.length],
+                                         MSG_LEN - pos);
+
+                if (len == 1) {
+                    out.write(MSG_DATA[pos]);
+                } else if (i % 3 == 0) {
+                    final byte[] copy =
+                        Arrays.copyOfRange(MSG_DATA, pos, pos + len);
+
+                    out.writeInPlace(copy, 0, len);
+                    Assert.assertEquals(copy,
+                                        Arrays.copyOfRange(ctext, pos,
+                                                           pos + len));
+                } else {
+                    out.write(MSG_DATA, pos, len);
+                }
+
+                pos += len;
+            }
+        }
+
+        Assert.assertEquals(bytes.toByteArray(), ctext);
+    }
+
+    @Test
+    public void flushTest() throws GeneralSecurityException, IOException {
+        final ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        final KeystreamCipherOutputStream out =
+            new KeystreamCipherOutputStream(bytes, new ChaCha20CipherSpi(),
+                                            key, params, BUF_SIZE);
+
+        out.write(MSG_DATA, 0, 10);
+        Assert.assertEquals(bytes.size(), 0);
+        out.flush();
+        Assert.assertEquals(bytes.toByteArray(),
+                            Arrays.copyOfRange(ctext, 0, 10));
+        out.close();
+    }
+
+    @Test(expectedExceptions = IOException.class)
+    public void writeAfterCloseTest()
+        throws GeneralSecurityException, IOException {
+        final KeystreamCipherOutputStream out =
+            new KeystreamCipherOutputStream(new ByteArrayOutputStream(),
+                                            new ChaCha20CipherSpi(),
+                                            key, params);
+
+        out.close();
+        out.write(0);
+    }
+
+    @Test
+    public void readTest() throws GeneralSecurityException, IOException {
+        final byte[] actual = new byte[MSG_LEN];
+
+        try(final KeystreamCipherInputStream in =
+                new KeystreamCipherInputStream(new ByteArrayInputStream(ctext),
+                                               new ChaCha20CipherSpi(),
+                                               key, params)) {
+            int pos = 0;
+
+            for(int i = 0; pos < MSG_LEN; i++) {
+                final int len = Math.min(PIECES[i % PIECES.length],
+                                         MSG_LEN - pos);
+
+                if (len == 1) {
+                    actual[pos] = (byte)in.read();
+                    pos++;
+                } else if (i % 5 == 4) {
+                    // Skipped data must still consume the keystream.
+                    Assert.assertEquals(in.skip(len), len);
+                    System.arraycopy(MSG_DATA, pos, actual, pos, len);
+                    pos += len;
+                } else {
+                    pos += in.read(actual, pos, len);
+                }
+            }
+
+            Assert.assertEquals(in.read(), -1);
+            Assert.assertEquals(in.read(actual, 0, 1), -1);
+        }
+
+        Assert.assertEquals(actual, MSG_DATA);
+    }
+}
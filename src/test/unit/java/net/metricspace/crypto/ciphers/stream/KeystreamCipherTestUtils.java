@@ -31,6 +31,8 @@
  */
 package net.metricspace.crypto.ciphers.stream;
 
+import java.nio.ByteBuffer;
+
 import java.security.AlgorithmParameters;
 import java.security.InvalidAlgorithmParameterException;
 import java.security.InvalidKeyException;
@@ -39,6 +41,7 @@ import java.security.SecureRandom;
 import java.security.spec.InvalidParameterSpecException;
 
 import javax.crypto.SecretKey;
+import javax.crypto.ShortBufferException;
 
 public class KeystreamCipherTestUtils {
     public static void setIV(final KeystreamCipherSpi<?, ?> spi,
@@ -97,4 +100,11 @@ public class KeystreamCipherTestUtils {
                                     final int outputOffset) {
         spi.engineUpdate(input, inputOffset, inputLen, output, outputOffset);
     }
+
+    public static void engineUpdate(final KeystreamCipherSpi<?, ?> spi,
+                                    final ByteBuffer input,
+                                    final ByteBuffer output)
+        throws ShortBufferException {
+        spi.engineUpdate(input, output);
+    }
 }
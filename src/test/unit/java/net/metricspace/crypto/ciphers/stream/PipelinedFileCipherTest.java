@@ -0,0 +1,218 @@
+/* Copyright (c) 2018, Eric McCorkle.  All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions
+ * are met:
+ *
+ * * Redistributions of source code must retain the above copyright
+ *   notice, this list of conditions and the following disclaimer.
+ *
+ * * Redistributions in binary form must reproduce the above copyright
+ *   notice, this list of conditions and the following disclaimer in
+ *   the documentation and/or other materials provided with the
+ *   distribution.
+ *
+ * * Neither the name of the copyright holder nor the names of its
+ *   contributors may be used to endorse or promote products derived
+ *   from this software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS
+ * "AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT
+ * LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS
+ * FOR A PARTICULAR PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE
+ * COPYRIGHT HOLDER OR CONTRIBUTORS BE LIABLE FOR ANY DIRECT,
+ * INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES
+ * (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR
+ * SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION)
+ * HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT,
+ * STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED
+ * OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+package net.metricspace.crypto.ciphers.stream;
+
+import java.io.IOException;
+import java.nio.channels.AsynchronousFileChannel;
+import java.nio.channels.NonWritableChannelException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+
+import java.security.AlgorithmParameters;
+import java.security.AlgorithmParameterGenerator;
+import java.security.GeneralSecurityException;
+import java.util.function.Supplier;
+
+import javax.crypto.Cipher;
+import javax.crypto.KeyGenerator;
+import javax.crypto.SecretKey;
+
+import org.testng.Assert;
+import org.testng.annotations.AfterClass;
+import org.testng.annotations.BeforeClass;
+import org.testng.annotations.DataProvider;
+import org.testng.annotations.Test;
+
+import net.metricspace.crypto.ciphers.stream.hc.HC256CipherSpi;
+import net.metricspace.crypto.ciphers.stream.salsa.ChaCha20CipherSpi;
+import net.metricspace.crypto.providers.KryptonProvider;
+
+@Test(groups = "unit")
+public class PipelinedFileCipherTest {
+    private static final int MSG_LEN = 100003;
+    private static final int CHUNK_SIZE = 4000;
+
+    private static final byte[] MSG_DATA = new byte[MSG_LEN];
+
+    static {
+        for(int i = 0; i < MSG_DATA.length; i++) {
+            MSG_DATA[i] = (byte)(i * 11);
+        }
+    };
+
+    private Path source;
+    private Path target;
+
+    @BeforeClass
+    public void init() throws IOException {
+        KryptonProvider.register();
+        source = Files.createTempFile("krypton", ".src");
+        target = Files.createTempFile("krypton", ".enc");
+    }
+
+    @AfterClass
+    public void fini() throws IOException {
+        Files.deleteIfExists(source);
+        Files.deleteIfExists(target);
+        KryptonProvider.unregister();
+    }
+
+    @DataProvider(name = "configs")
+    public static Object[][] configs() {
+        final Supplier<ChaCha20CipherSpi> chacha = ChaCha20CipherSpi::new;
+        final Supplier<HC256CipherSpi> hc256 = HC256CipherSpi::new;
+
+        return new Object[][] {
+            new Object[] { ChaCha20CipherSpi.NAME, chacha, 1, 1 },
+            new Object[] { ChaCha20CipherSpi.NAME, chacha, 3, 1 },
+            new Object[] { ChaCha20CipherSpi.NAME, chacha, 8, 4 },
+            new Object[] { HC256CipherSpi.NAME, hc256, 1, 1 },
+            new Object[] { HC256CipherSpi.NAME, hc256, 4, 1 }
+        };
+    }
+
+    private static SecretKey key(final String name)
+        throws GeneralSecurityException {
+        final KeyGenerator keygen =
+            KeyGenerator.getInstance(name, KryptonProvider.NAME);
+
+        keygen.init(256);
+
+        return keygen.generateKey();
+    }
+
+    private static AlgorithmParameters params(final String name)
+        throws GeneralSecurityException {
+        final AlgorithmParameterGenerator paramgen =
+            AlgorithmParameterGenerator.getInstance(name,
+                                                    KryptonProvider.NAME);
+
+        paramgen.init(name.equals(HC256CipherSpi.NAME) ? 256 : 64);
+
+        return paramgen.generateParameters();
+    }
+
+    @Test(dataProvider = "configs")
+    public void roundTripTest(final String name,
+                              final Supplier<? extends
+                                             SeekableKeystreamCipherSpi<?, ?>>
+                              engines,
+                              final int buffers,
+                              final int threads)
+        throws GeneralSecurityException, IOException {
+        final SecretKey key = key(name);
+        final AlgorithmParameters params = params(name);
+        final Cipher cipher = Cipher.getInstance(name, KryptonProvider.NAME);
+        final PipelinedFileCipher files =
+            new PipelinedFileCipher(engines, key, params, CHUNK_SIZE,
+                                    buffers, threads);
+
+        cipher.init(Cipher.ENCRYPT_MODE, key, params);
+        Files.write(source, MSG_DATA);
+
+        final PipelinedFileCipher.Stats stats = files.crypt(source, target);
+
+        Assert.assertEquals(Files.readAllBytes(target),
+                            cipher.doFinal(MSG_DATA));
+        Assert.assertEquals(stats.getBytes(), MSG_LEN);
+        Assert.assertEquals(stats.getBuffers(), buffers);
+        Assert.assertTrue(stats.getMaxBuffersInUse() >= 1);
+        Assert.assertTrue(stats.getMaxBuffersInUse() <= buffers);
+        Assert.assertTrue(stats.getMeanBuffersInUse() >= 1);
+        Assert.assertTrue(stats.getMeanBuffersInUse() <= buffers);
+
+        // The same instance decrypts, as it starts every file at the
+        // same position.
+        files.crypt(target, source);
+        Assert.assertEquals(Files.readAllBytes(source), MSG_DATA);
+    }
+
+    @Test(dataProvider = "configs", timeOut = 10000)
+    public void failureTest(final String name,
+                            final Supplier<? extends
+                                           SeekableKeystreamCipherSpi<?, ?>>
+                            engines,
+                            final int buffers,
+                            final int threads)
+        throws GeneralSecurityException, IOException {
+        final PipelinedFileCipher files =
+            new PipelinedFileCipher(engines, key(name), params(name),
+                                    CHUNK_SIZE, buffers, threads);
+
+        Files.write(source, MSG_DATA);
+
+        // Every write fails, which must not leave any chunk behind.
+        try(final AsynchronousFileChannel in =
+                AsynchronousFileChannel.open(source,
+                                             StandardOpenOption.READ);
+            final AsynchronousFileChannel out =
+                AsynchronousFileChannel.open(target,
+                                             StandardOpenOption.READ)) {
+            files.crypt(in, out);
+            Assert.fail("Expected IOException");
+        } catch(final IOException e) {
+            Assert.assertTrue(e.getCause() instanceof
+                              NonWritableChannelException);
+        }
+
+        // The instance is still usable afterwards.
+        files.crypt(source, target);
+        files.crypt(target, source);
+        Assert.assertEquals(Files.readAllBytes(source), MSG_DATA);
+    }
+
+    @Test(expectedExceptions = IllegalArgumentException.class)
+    public void sequentialThreadsTest() throws GeneralSecurityException {
+        new PipelinedFileCipher(HC256CipherSpi::new,
+                                key(HC256CipherSpi.NAME),
+                                params(HC256CipherSpi.NAME),
+                                CHUNK_SIZE, 4, 2);
+    }
+
+    @Test
+    public void emptyTest() throws GeneralSecurityException, IOException {
+        final PipelinedFileCipher files =
+            new PipelinedFileCipher(ChaCha20CipherSpi::new,
+                                    key(ChaCha20CipherSpi.NAME),
+                                    params(ChaCha20CipherSpi.NAME));
+
+        Files.write(source, new byte[0]);
+        Files.write(target, MSG_DATA);
+
+        final PipelinedFileCipher.Stats stats = files.crypt(source, target);
+
+        Assert.assertEquals(Files.size(target), 0);
+        Assert.assertEquals(stats.getBytes(), 0);
+        Assert.assertEquals(stats.getStalls(), 0);
+    }
+}
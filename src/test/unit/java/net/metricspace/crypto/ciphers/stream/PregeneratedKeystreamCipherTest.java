@@ -0,0 +1,343 @@
+/* Copyright (c) 2018, Eric McCorkle.  All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions
+ * are met:
+ *
+ * * Redistributions of source code must retain the above copyright
+ *   notice, this list of conditions and the following disclaimer.
+ *
+ * * Redistributions in binary form must reproduce the above copyright
+ *   notice, this list of conditions and the following disclaimer in
+ *   the documentation and/or other materials provided with the
+ *   distribution.
+ *
+ * * Neither the name of the copyright holder nor the names of its
+ *   contributors may be used to endorse or promote products derived
+ *   from this software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS
+ * "AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT
+ * LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS
+ * FOR A PARTICULAR PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE
+ * COPYRIGHT HOLDER OR CONTRIBUTORS BE LIABLE FOR ANY DIRECT,
+ * INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES
+ * (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR
+ * SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION)
+ * HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT,
+ * STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED
+ * OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+package net.metricspace.crypto.ciphers.stream;
+
+import java.nio.ByteBuffer;
+
+import java.security.AlgorithmParameters;
+import java.security.AlgorithmParameterGenerator;
+import java.security.GeneralSecurityException;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.function.Supplier;
+
+import javax.crypto.Cipher;
+import javax.crypto.KeyGenerator;
+import javax.crypto.SecretKey;
+import javax.crypto.ShortBufferException;
+
+import org.testng.Assert;
+import org.testng.annotations.AfterClass;
+import org.testng.annotations.BeforeClass;
+import org.testng.annotations.DataProvider;
+import org.testng.annotations.Test;
+
+import net.metricspace.crypto.ciphers.stream.hc.HC256CipherSpi;
+import net.metricspace.crypto.ciphers.stream.salsa.ChaCha20CipherSpi;
+import net.metricspace.crypto.ciphers.stream.salsa.Salsa20CipherSpi;
+import net.metricspace.crypto.providers.KryptonProvider;
+
+@Test(groups = "unit")
+public class PregeneratedKeystreamCipherTest {
+    private static final int MSG_LEN = 100000;
+    private static final int CAPACITY = 4096;
+    private static final int LOW = 1024;
+    private static final int HIGH = 3000;
+    private static final int[] SPLITS = { 1, 63, 64, 4097, 50000 };
+
+    private static final byte[] MSG_DATA = new byte[MSG_LEN];
+
+    static {
+        for(int i = 0; i < MSG_DATA.length; i++) {
+            MSG_DATA[i] = (byte)(i * 7);
+        }
+    };
+
+    // Runs refills synchronously, so the buffer is always refilled
+    // before update returns.
+    private static final Executor DIRECT = Runnable::run;
+
+    // Never runs refills, so every update underruns.
+    private static final Executor NEVER = (task) -> {};
+
+    // Rejects refills, as a shut down executor would.
+    private static final Executor REJECT = (task) -> {
+        throw new RejectedExecutionException();
+    };
+
+    private final ForkJoinPool pool = new ForkJoinPool(1);
+
+    @BeforeClass
+    public static void init() {
+        KryptonProvider.register();
+    }
+
+    @AfterClass
+    public static void fini() {
+        KryptonProvider.unregister();
+    }
+
+    @DataProvider(name = "ciphers")
+    public static Object[][] ciphers() {
+        final Supplier<ChaCha20CipherSpi> chacha = ChaCha20CipherSpi::new;
+        final Supplier<Salsa20CipherSpi> salsa = Salsa20CipherSpi::new;
+        final Supplier<HC256CipherSpi> hc256 = HC256CipherSpi::new;
+
+        return new Object[][] {
+            new Object[] { ChaCha20CipherSpi.NAME, chacha },
+            new Object[] { Salsa20CipherSpi.NAME, salsa },
+            new Object[] { HC256CipherSpi.NAME, hc256 }
+        };
+    }
+
+    private static SecretKey key(final String name)
+        throws GeneralSecurityException {
+        final KeyGenerator keygen =
+            KeyGenerator.getInstance(name, KryptonProvider.NAME);
+
+        keygen.init(256);
+
+        return keygen.generateKey();
+    }
+
+    private static AlgorithmParameters params(final String name)
+        throws GeneralSecurityException {
+        final AlgorithmParameterGenerator paramgen =
+            AlgorithmParameterGenerator.getInstance(name,
+                                                    KryptonProvider.NAME);
+
+        paramgen.init(64);
+
+        return paramgen.generateParameters();
+    }
+
+    private static byte[] expected(final String name,
+                                   final SecretKey key,
+                                   final AlgorithmParameters params)
+        throws GeneralSecurityException {
+        final Cipher cipher = Cipher.getInstance(name, KryptonProvider.NAME);
+
+        cipher.init(Cipher.ENCRYPT_MODE, key, params);
+
+        return cipher.doFinal(MSG_DATA);
+    }
+
+    @Test(dataProvider = "ciphers")
+    public void arrayTest(final String name,
+                          final Supplier<? extends
+                                         KeystreamCipherSpi<?, ?>> engines)
+        throws GeneralSecurityException {
+        final SecretKey key = key(name);
+        final AlgorithmParameters params = params(name);
+        final byte[] expected = expected(name, key, params);
+
+        for(final int split : SPLITS) {
+            final PregeneratedKeystreamCipher cipher =
+                new PregeneratedKeystreamCipher(engines, key, params,
+                                                CAPACITY, LOW, HIGH,
+                                                DIRECT);
+            final byte[] actual = new byte[MSG_LEN];
+
+            Assert.assertEquals(cipher.getAvailable(), HIGH);
+            cipher.update(MSG_DATA, 0, split, actual, 0);
+            cipher.update(MSG_DATA, split, MSG_LEN - split, actual, split);
+            Assert.assertEquals(actual, expected);
+        }
+    }
+
+    @Test(dataProvider = "ciphers")
+    public void inPlaceTest(final String name,
+                            final Supplier<? extends
+                                           KeystreamCipherSpi<?, ?>> engines)
+        throws GeneralSecurityException {
+        final SecretKey key = key(name);
+        final AlgorithmParameters params = params(name);
+        final byte[] expected = expected(name, key, params);
+        final PregeneratedKeystreamCipher cipher =
+            new PregeneratedKeystreamCipher(engines, key, params,
+                                            CAPACITY, LOW, HIGH, DIRECT);
+        final byte[] actual = MSG_DATA.clone();
+
+        for(int i = 0; i < MSG_LEN; i += 1000) {
+            cipher.update(actual, i, 1000, actual, i);
+        }
+
+        Assert.assertEquals(actual, expected);
+        Assert.assertEquals(cipher.getUnderruns(), 0);
+        Assert.assertEquals(cipher.getUnderrunBytes(), 0);
+    }
+
+    @Test(dataProvider = "ciphers")
+    public void byteBufferTest(final String name,
+                               final Supplier<? extends
+                                              KeystreamCipherSpi<?, ?>>
+                               engines)
+        throws GeneralSecurityException {
+        final SecretKey key = key(name);
+        final AlgorithmParameters params = params(name);
+        final byte[] expected = expected(name, key, params);
+
+        for(final int split : SPLITS) {
+            final PregeneratedKeystreamCipher cipher =
+                new PregeneratedKeystreamCipher(engines, key, params,
+                                                CAPACITY, LOW, HIGH,
+                                                DIRECT);
+            final ByteBuffer input = ByteBuffer.allocateDirect(MSG_LEN);
+            final ByteBuffer output = ByteBuffer.allocateDirect(MSG_LEN);
+            final byte[] actual = new byte[MSG_LEN];
+
+            input.put(MSG_DATA).flip();
+            input.limit(split);
+            cipher.update(input, output);
+            Assert.assertEquals(input.position(), split);
+            Assert.assertEquals(output.position(), split);
+            input.limit(MSG_LEN);
+            cipher.update(input, output);
+            output.flip();
+            output.get(actual);
+            Assert.assertEquals(actual, expected);
+        }
+    }
+
+    @Test(dataProvider = "ciphers")
+    public void backgroundTest(final String name,
+                               final Supplier<? extends
+                                              KeystreamCipherSpi<?, ?>>
+                               engines)
+        throws GeneralSecurityException {
+        final SecretKey key = key(name);
+        final AlgorithmParameters params = params(name);
+        final byte[] expected = expected(name, key, params);
+        final PregeneratedKeystreamCipher cipher =
+            new PregeneratedKeystreamCipher(engines, key, params,
+                                            CAPACITY, LOW, HIGH, pool);
+        final byte[] actual = new byte[MSG_LEN];
+
+        for(int i = 0; i < MSG_LEN; i += 37) {
+            final int len = Math.min(37, MSG_LEN - i);
+
+            cipher.update(MSG_DATA, i, len, actual, i);
+        }
+
+        Assert.assertEquals(actual, expected);
+        Assert.assertEquals(cipher.getUnderrunBytes() <= MSG_LEN, true);
+    }
+
+    @Test(dataProvider = "ciphers")
+    public void underrunTest(final String name,
+                             final Supplier<? extends
+                                            KeystreamCipherSpi<?, ?>> engines)
+        throws GeneralSecurityException {
+        final SecretKey key = key(name);
+        final AlgorithmParameters params = params(name);
+        final byte[] expected = expected(name, key, params);
+        final PregeneratedKeystreamCipher cipher =
+            new PregeneratedKeystreamCipher(engines, key, params,
+                                            CAPACITY, LOW, HIGH, NEVER);
+        final byte[] actual = new byte[MSG_LEN];
+
+        Assert.assertEquals(cipher.getAvailable(), 0);
+        cipher.update(MSG_DATA, 0, MSG_LEN, actual, 0);
+        Assert.assertEquals(actual, expected);
+        Assert.assertTrue(cipher.getUnderruns() > 0);
+        Assert.assertEquals(cipher.getUnderrunBytes(), MSG_LEN);
+    }
+
+    @Test(dataProvider = "ciphers")
+    public void rejectTest(final String name,
+                           final Supplier<? extends
+                                          KeystreamCipherSpi<?, ?>> engines)
+        throws GeneralSecurityException {
+        final SecretKey key = key(name);
+        final AlgorithmParameters params = params(name);
+        final byte[] expected = expected(name, key, params);
+        final PregeneratedKeystreamCipher cipher =
+            new PregeneratedKeystreamCipher(engines, key, params,
+                                            CAPACITY, LOW, HIGH, REJECT);
+        final byte[] actual = new byte[MSG_LEN];
+
+        for(int i = 0; i < MSG_LEN; i += 5000) {
+            cipher.update(MSG_DATA, i, 5000, actual, i);
+        }
+
+        Assert.assertEquals(actual, expected);
+        Assert.assertEquals(cipher.getUnderrunBytes(), MSG_LEN);
+    }
+
+    @Test(dataProvider = "ciphers")
+    public void reinitTest(final String name,
+                           final Supplier<? extends
+                                          KeystreamCipherSpi<?, ?>> engines)
+        throws GeneralSecurityException {
+        final SecretKey key = key(name);
+        final AlgorithmParameters params = params(name);
+        final byte[] expected = expected(name, key, params);
+        final PregeneratedKeystreamCipher cipher =
+            new PregeneratedKeystreamCipher(engines, key(name), params(name),
+                                            CAPACITY, LOW, HIGH, DIRECT);
+        final byte[] actual = new byte[MSG_LEN];
+
+        cipher.update(MSG_DATA, 0, 1000, actual, 0);
+        cipher.init(key, params);
+        Assert.assertEquals(cipher.getAvailable(), HIGH);
+        cipher.update(MSG_DATA, 0, MSG_LEN, actual, 0);
+        Assert.assertEquals(actual, expected);
+    }
+
+    @Test(dataProvider = "ciphers",
+          expectedExceptions = IllegalStateException.class)
+    public void closeTest(final String name,
+                          final Supplier<? extends
+                                         KeystreamCipherSpi<?, ?>> engines)
+        throws GeneralSecurityException {
+        final PregeneratedKeystreamCipher cipher =
+            new PregeneratedKeystreamCipher(engines, key(name), params(name),
+                                            CAPACITY, LOW, HIGH, DIRECT);
+
+        cipher.close();
+        Assert.assertEquals(cipher.getAvailable(), 0);
+        cipher.update(MSG_DATA, 0, MSG_LEN, new byte[MSG_LEN], 0);
+    }
+
+    @Test(dataProvider = "ciphers",
+          expectedExceptions = ShortBufferException.class)
+    public void shortBufferTest(final String name,
+                                final Supplier<? extends
+                                               KeystreamCipherSpi<?, ?>>
+                                engines)
+        throws GeneralSecurityException {
+        final PregeneratedKeystreamCipher cipher =
+            new PregeneratedKeystreamCipher(engines, key(name), params(name),
+                                            CAPACITY, LOW, HIGH, DIRECT);
+
+        cipher.update(MSG_DATA, 0, MSG_LEN, new byte[MSG_LEN - 1], 0);
+    }
+
+    @Test(expectedExceptions = IllegalArgumentException.class)
+    public void watermarkTest() throws GeneralSecurityException {
+        new PregeneratedKeystreamCipher(ChaCha20CipherSpi::new,
+                                        key(ChaCha20CipherSpi.NAME),
+                                        params(ChaCha20CipherSpi.NAME),
+                                        CAPACITY, HIGH, LOW, DIRECT);
+    }
+}
@@ -0,0 +1,188 @@
+/* Copyright (c) 2018, Eric McCorkle.  All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions
+ * are met:
+ *
+ * * Redistributions of source code must retain the above copyright
+ *   notice, this list of conditions and the following disclaimer.
+ *
+ * * Redistributions in binary form must reproduce the above copyright
+ *   notice, this list of conditions and the following disclaimer in
+ *   the documentation and/or other materials provided with the
+ *   distribution.
+ *
+ * * Neither the name of the copyright holder nor the names of its
+ *   contributors may be used to endorse or promote products derived
+ *   from this software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS
+ * "AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT
+ * LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS
+ * FOR A PARTICULAR PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE
+ * COPYRIGHT HOLDER OR CONTRIBUTORS BE LIABLE FOR ANY DIRECT,
+ * INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES
+ * (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR
+ * SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION)
+ * HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT,
+ * STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED
+ * OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+package net.metricspace.crypto.ciphers.stream;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+
+import java.security.AlgorithmParameters;
+import java.security.AlgorithmParameterGenerator;
+import java.security.GeneralSecurityException;
+import java.util.Arrays;
+
+import javax.crypto.Cipher;
+import javax.crypto.KeyGenerator;
+import javax.crypto.SecretKey;
+
+import org.testng.Assert;
+import org.testng.annotations.AfterClass;
+import org.testng.annotations.BeforeClass;
+import org.testng.annotations.Test;
+
+import net.metricspace.crypto.ciphers.stream.salsa.ChaCha20CipherSpi;
+import net.metricspace.crypto.providers.KryptonProvider;
+
+@Test(groups = "unit")
+public class SeekableCipherChannelTest {
+    private static final int MSG_LEN = 20000;
+    private static final int BUF_SIZE = 1000;
+    private static final int[][] RANGES = {
+        { 0, 1 }, { 1, 63 }, { 64, 64 }, { 100, 5000 }, { 12345, 7655 },
+        { 19999, 1 }, { 7, 19993 }
+    };
+
+    private static final byte[] MSG_DATA = new byte[MSG_LEN];
+
+    static {
+        for(int i = 0; i < MSG_DATA.length; i++) {
+            MSG_DATA[i] = (byte)(i * 13);
+        }
+    };
+
+    private SecretKey key;
+    private AlgorithmParameters params;
+    private byte[] ctext;
+    private Path path;
+
+    @BeforeClass
+    public void init() throws GeneralSecurityException, IOException {
+        KryptonProvider.register();
+
+        final KeyGenerator keygen =
+            KeyGenerator.getInstance(ChaCha20CipherSpi.NAME,
+                                     KryptonProvider.NAME);
+        final AlgorithmParameterGenerator paramgen =
+            AlgorithmParameterGenerator.getInstance(ChaCha20CipherSpi.NAME,
+                                                    KryptonProvider.NAME);
+        final Cipher cipher =
+            Cipher.getInstance(ChaCha20CipherSpi.NAME, KryptonProvider.NAME);
+
+        keygen.init(256);
+        key = keygen.generateKey();
+        paramgen.init(64);
+        params = paramgen.generateParameters();
+        cipher.init(Cipher.ENCRYPT_MODE, key, params);
+        ctext = cipher.doFinal(MSG_DATA);
+        path = Files.createTempFile("krypton", ".enc");
+    }
+
+    @AfterClass
+    public void fini() throws IOException {
+        Files.deleteIfExists(path);
+        KryptonProvider.unregister();
+    }
+
+    private SeekableCipherChannel open()
+        throws GeneralSecurityException, IOException {
+        final FileChannel file =
+            FileChannel.open(path, StandardOpenOption.READ,
+                             StandardOpenOption.WRITE,
+                             StandardOpenOption.CREATE);
+
+        return new SeekableCipherChannel(file, new ChaCha20CipherSpi(),
+                                         key, params, BUF_SIZE);
+    }
+
+    @Test
+    public void writeTest() throws GeneralSecurityException, IOException {
+        Files.write(path, new byte[0]);
+
+        try(final SeekableCipherChannel channel = open()) {
+            final ByteBuffer src = ByteBuffer.wrap(MSG_DATA);
+
+            Assert.assertEquals(channel.write(src), MSG_LEN);
+            Assert.assertFalse(src.hasRemaining());
+            Assert.assertEquals(channel.position(), MSG_LEN);
+        }
+
+        Assert.assertEquals(Files.readAllBytes(path), ctext);
+    }
+
+    @Test
+    public void randomWriteTest()
+        throws GeneralSecurityException, IOException {
+        Files.write(path, new byte[0]);
+
+        try(final SeekableCipherChannel channel = open()) {
+            // Write the message backwards, in pieces.
+            for(int i = MSG_LEN; i > 0; i -= 777) {
+                final int first = Math.max(0, i - 777);
+
+                channel.position(first);
+                channel.write(ByteBuffer.wrap(MSG_DATA, first, i - first));
+            }
+        }
+
+        Assert.assertEquals(Files.readAllBytes(path), ctext);
+    }
+
+    @Test
+    public void randomReadTest()
+        throws GeneralSecurityException, IOException {
+        Files.write(path, ctext);
+
+        try(final SeekableCipherChannel channel = open()) {
+            for(final int[] range : RANGES) {
+                final ByteBuffer heap = ByteBuffer.allocate(range[1]);
+                final ByteBuffer direct = ByteBuffer.allocateDirect(range[1]);
+                final byte[] actual = new byte[range[1]];
+                final byte[] expected =
+                    Arrays.copyOfRange(MSG_DATA, range[0],
+                                       range[0] + range[1]);
+
+                channel.position(range[0]);
+
+                while (heap.hasRemaining()) {
+                    channel.read(heap);
+                }
+
+                Assert.assertEquals(heap.array(), expected);
+                channel.position(range[0]);
+
+                while (direct.hasRemaining()) {
+                    channel.read(direct);
+                }
+
+                direct.flip();
+                direct.get(actual);
+                Assert.assertEquals(actual, expected);
+                Assert.assertEquals(channel.position(), range[0] + range[1]);
+            }
+
+            Assert.assertEquals(channel.read(ByteBuffer.allocate(1)), -1);
+        }
+    }
+}
@@ -0,0 +1,439 @@
+/* Copyright (c) 2017, Eric McCorkle.  All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions
+ * are met:
+ *
+ * * Redistributions of source code must retain the above copyright
+ *   notice, this list of conditions and the following disclaimer.
+ *
+ * * Redistributions in binary form must reproduce the above copyright
+ *   notice, this list of conditions and the following disclaimer in
+ *   the documentation and/or other materials provided with the
+ *   distribution.
+ *
+ * * Neither the name of the copyright holder nor the names of its
+ *   contributors may be used to endorse or promote products derived
+ *   from this software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS
+ * "AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT
+ * LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS
+ * FOR A PARTICULAR PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE
+ * COPYRIGHT HOLDER OR CONTRIBUTORS BE LIABLE FOR ANY DIRECT,
+ * INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES
+ * (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR
+ * SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION)
+ * HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT,
+ * STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED
+ * OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+package net.metricspace.crypto.ciphers.stream.hc;
+
+import java.security.AlgorithmParameters;
+import java.security.InvalidKeyException;
+import java.security.InvalidAlgorithmParameterException;
+import java.security.spec.InvalidParameterSpecException;
+import java.util.Arrays;
+
+import javax.crypto.spec.IvParameterSpec;
+
+import org.testng.Assert;
+import org.testng.annotations.AfterClass;
+import org.testng.annotations.BeforeClass;
+import org.testng.annotations.Test;
+
+import net.metricspace.crypto.ciphers.stream.KeystreamCipherTestUtils;
+import net.metricspace.crypto.providers.KryptonProvider;
+
+public class HC128CipherSpiTest {
+    private static final HC128CipherSpi.HC128Key KEY =
+        new HC128CipherSpi.HC128Key(new int[] {
+                0x04030201, 0x08070605, 0x0c0b0a09, 0x100f0e0d
+            });
+
+    private static final byte[] KEY_EXPECTED = new byte[] {
+        (byte)1, (byte)2, (byte)3, (byte)4,
+        (byte)5, (byte)6, (byte)7, (byte)8,
+        (byte)9, (byte)10, (byte)11, (byte)12,
+        (byte)13, (byte)14, (byte)15, (byte)16
+    };
+
+    private static final HC128CipherSpi.HC128Key FROM_BYTES =
+        new HC128CipherSpi.HC128Key(KEY_EXPECTED);
+
+    private static final byte[] IV = new byte[] {
+        (byte)16, (byte)11, (byte)25, (byte)7,
+        (byte)4, (byte)22, (byte)1, (byte)15,
+        (byte)27, (byte)32, (byte)19, (byte)20,
+        (byte)10, (byte)5, (byte)26, (byte)8
+    };
+
+    private static HC128CipherSpi makeTestInstance() {
+        final HC128CipherSpi spi = new HC128CipherSpi();
+
+        KeystreamCipherTestUtils.setKey(spi, KEY);
+
+        final byte[] iv = KeystreamCipherTestUtils.getIV(spi);
+
+        for(int i = 0; i < IV.length; i++) {
+            iv[i] = IV[i];
+        }
+
+        return spi;
+    }
+
+    @BeforeClass
+    public static void init() {
+        KryptonProvider.register();
+    }
+
+    @AfterClass
+    public static void fini() {
+        KryptonProvider.unregister();
+    }
+
+    @Test
+    public static void keyTest() {
+        Assert.assertEquals(KEY.getEncoded(), KEY_EXPECTED);
+        Assert.assertEquals(FROM_BYTES.getEncoded(), KEY_EXPECTED);
+    }
+
+    @Test
+    public static void getParametersTest()
+        throws InvalidKeyException, InvalidAlgorithmParameterException,
+               InvalidParameterSpecException {
+        final HC128CipherSpi spi = makeTestInstance();
+
+        final AlgorithmParameters params = spi.engineGetParameters();
+        final IvParameterSpec spec =
+            params.getParameterSpec(IvParameterSpec.class);
+
+        final HC128CipherSpi newspi = new HC128CipherSpi();
+
+        KeystreamCipherTestUtils.engineInit(newspi, 0, KEY, params, null);
+
+        Assert.assertEquals(KeystreamCipherTestUtils.getIV(newspi), IV);
+    }
+
+    @Test
+    public static void initParameterSpecTest()
+        throws InvalidKeyException, InvalidAlgorithmParameterException,
+               InvalidParameterSpecException {
+        final HC128CipherSpi spi = new HC128CipherSpi();
+        final IvParameterSpec spec = new IvParameterSpec(IV);
+
+        spi.engineInit(0, KEY, spec, null);
+
+        Assert.assertEquals(KeystreamCipherTestUtils.getIV(spi), IV);
+    }
+
+    private static final HC128CipherSpi.HC128Key PAPER_KEY0 =
+        new HC128CipherSpi.HC128Key(new int[] {
+                0x00000000, 0x00000000, 0x00000000, 0x00000000
+            });
+    private static final HC128CipherSpi.HC128Key PAPER_KEY1 =
+        new HC128CipherSpi.HC128Key(new int[] {
+                0x00000055, 0x00000000, 0x00000000, 0x00000000
+            });
+
+    private static final byte[] PAPER_IV0 = new byte[] {
+        (byte)0, (byte)0, (byte)0, (byte)0,
+        (byte)0, (byte)0, (byte)0, (byte)0,
+        (byte)0, (byte)0, (byte)0, (byte)0,
+        (byte)0, (byte)0, (byte)0, (byte)0
+    };
+
+    private static final byte[] PAPER_IV1 = new byte[] {
+        (byte)1, (byte)0, (byte)0, (byte)0,
+        (byte)0, (byte)0, (byte)0, (byte)0,
+        (byte)0, (byte)0, (byte)0, (byte)0,
+        (byte)0, (byte)0, (byte)0, (byte)0
+    };
+
+    private static final byte[] HIGH_IV = new byte[] {
+        (byte)0x90, (byte)0xa1, (byte)0xb2, (byte)0xc3,
+        (byte)0xd4, (byte)0xe5, (byte)0xf6, (byte)0x07,
+        (byte)0x88, (byte)0x99, (byte)0xaa, (byte)0xbb,
+        (byte)0xcc, (byte)0xdd, (byte)0xee, (byte)0xff
+    };
+
+    private static final byte[] EXPECTED_PAPER_KEY0_IV0 = new byte[] {
+        (byte)0x82, (byte)0x00, (byte)0x15, (byte)0x73,
+        (byte)0xa0, (byte)0x03, (byte)0xfd, (byte)0x3b,
+        (byte)0x7f, (byte)0xd7, (byte)0x2f, (byte)0xfb,
+        (byte)0x0e, (byte)0xaf, (byte)0x63, (byte)0xaa,
+        (byte)0xc6, (byte)0x2f, (byte)0x12, (byte)0xde,
+        (byte)0xb6, (byte)0x29, (byte)0xdc, (byte)0xa7,
+        (byte)0x27, (byte)0x85, (byte)0xa6, (byte)0x62,
+        (byte)0x68, (byte)0xec, (byte)0x75, (byte)0x8b,
+        (byte)0x1e, (byte)0xdb, (byte)0x36, (byte)0x90,
+        (byte)0x05, (byte)0x60, (byte)0x89, (byte)0x81,
+        (byte)0x78, (byte)0xe0, (byte)0xad, (byte)0x00,
+        (byte)0x9a, (byte)0xbf, (byte)0x1f, (byte)0x49,
+        (byte)0x13, (byte)0x30, (byte)0xdc, (byte)0x1c,
+        (byte)0x24, (byte)0x6e, (byte)0x3d, (byte)0x6c,
+        (byte)0xb2, (byte)0x64, (byte)0xf6, (byte)0x90,
+        (byte)0x02, (byte)0x71, (byte)0xd5, (byte)0x9c
+    };
+
+    private static final byte[] EXPECTED_PAPER_KEY0_IV1 = new byte[] {
+        (byte)0xd5, (byte)0x93, (byte)0x18, (byte)0xc0,
+        (byte)0x58, (byte)0xe9, (byte)0xdb, (byte)0xb7,
+        (byte)0x98, (byte)0xec, (byte)0x65, (byte)0x8f,
+        (byte)0x04, (byte)0x66, (byte)0x17, (byte)0x64,
+        (byte)0x24, (byte)0x67, (byte)0xfc, (byte)0x36,
+        (byte)0xec, (byte)0x6e, (byte)0x2c, (byte)0xc8,
+        (byte)0xa7, (byte)0x38, (byte)0x1c, (byte)0x1b,
+        (byte)0x95, (byte)0x2a, (byte)0xb4, (byte)0xc9,
+        (byte)0x23, (byte)0xf1, (byte)0x3e, (byte)0x32,
+        (byte)0x8b, (byte)0x90, (byte)0x6a, (byte)0x0a,
+        (byte)0x68, (byte)0x7b, (byte)0x75, (byte)0xce,
+        (byte)0xbb, (byte)0xf7, (byte)0x14, (byte)0x9f,
+        (byte)0x11, (byte)0xe0, (byte)0xcd, (byte)0xe4,
+        (byte)0x3f, (byte)0x17, (byte)0xb5, (byte)0xae,
+        (byte)0x94, (byte)0x8c, (byte)0x60, (byte)0x89,
+        (byte)0xca, (byte)0x46, (byte)0xcf, (byte)0xb5
+    };
+
+    private static final byte[] EXPECTED_PAPER_KEY1_IV0 = new byte[] {
+        (byte)0xa4, (byte)0x51, (byte)0x82, (byte)0x51,
+        (byte)0x0a, (byte)0x93, (byte)0xb4, (byte)0x04,
+        (byte)0x31, (byte)0xf9, (byte)0x2a, (byte)0xb0,
+        (byte)0x32, (byte)0xf0, (byte)0x39, (byte)0x06,
+        (byte)0x7a, (byte)0xa4, (byte)0xb4, (byte)0xbc,
+        (byte)0x0b, (byte)0x48, (byte)0x22, (byte)0x57,
+        (byte)0x72, (byte)0x9f, (byte)0xf9, (byte)0x2b,
+        (byte)0x66, (byte)0xe5, (byte)0xc0, (byte)0xcd,
+        (byte)0x56, (byte)0x0c, (byte)0x0f, (byte)0x31,
+        (byte)0xe8, (byte)0x83, (byte)0xcc, (byte)0xd3,
+        (byte)0xef, (byte)0xb8, (byte)0x3d, (byte)0x66,
+        (byte)0x7f, (byte)0xe0, (byte)0xdf, (byte)0x62,
+        (byte)0x90, (byte)0x17, (byte)0x3e, (byte)0x59,
+        (byte)0x9c, (byte)0xaa, (byte)0xce, (byte)0xc5,
+        (byte)0x6f, (byte)0x80, (byte)0x03, (byte)0xab,
+        (byte)0xa0, (byte)0xe5, (byte)0xa6, (byte)0xc9
+    };
+
+    private static final byte[] EXPECTED_KEY_HIGH_IV = new byte[] {
+        (byte)0xa0, (byte)0xc8, (byte)0xf7, (byte)0x05,
+        (byte)0x4a, (byte)0x9b, (byte)0x71, (byte)0x7d,
+        (byte)0xb4, (byte)0xc9, (byte)0x75, (byte)0x33,
+        (byte)0x6b, (byte)0x65, (byte)0x4b, (byte)0x32,
+        (byte)0x6a, (byte)0x20, (byte)0x21, (byte)0xa6,
+        (byte)0xf3, (byte)0xd3, (byte)0xcc, (byte)0x45,
+        (byte)0xae, (byte)0xf6, (byte)0x01, (byte)0xed,
+        (byte)0xfd, (byte)0xa4, (byte)0x27, (byte)0x0c,
+        (byte)0x1d, (byte)0xef, (byte)0x2a, (byte)0x82,
+        (byte)0xe6, (byte)0x12, (byte)0x31, (byte)0xc7,
+        (byte)0x74, (byte)0x09, (byte)0x8f, (byte)0x1c,
+        (byte)0x33, (byte)0x06, (byte)0x18, (byte)0x1e,
+        (byte)0x9f, (byte)0x83, (byte)0x7f, (byte)0x57,
+        (byte)0x64, (byte)0x25, (byte)0xbd, (byte)0xab,
+        (byte)0xc6, (byte)0x9b, (byte)0x35, (byte)0x11,
+        (byte)0x0e, (byte)0x87, (byte)0x1d, (byte)0x6e
+    };
+
+    @Test
+    public static void ietfTestVectorKey0IV0()
+        throws InvalidKeyException, InvalidAlgorithmParameterException,
+               InvalidParameterSpecException {
+        final int len = EXPECTED_PAPER_KEY0_IV0.length;
+        final HC128CipherSpi spi = new HC128CipherSpi();
+        final byte[] actual = new byte[len];
+
+        spi.engineInit(0, PAPER_KEY0, new IvParameterSpec(PAPER_IV0), null);
+        KeystreamCipherTestUtils.engineUpdate(spi, actual, 0, len, actual, 0);
+
+        Assert.assertEquals(actual, EXPECTED_PAPER_KEY0_IV0);
+
+    }
+
+    @Test
+    public static void ietfTestVectorKey0IV1()
+        throws InvalidKeyException, InvalidAlgorithmParameterException,
+               InvalidParameterSpecException {
+        final int len = EXPECTED_PAPER_KEY0_IV1.length;
+        final HC128CipherSpi spi = new HC128CipherSpi();
+        final byte[] actual = new byte[len];
+
+        spi.engineInit(0, PAPER_KEY0, new IvParameterSpec(PAPER_IV1), null);
+        KeystreamCipherTestUtils.engineUpdate(spi, actual, 0, len, actual, 0);
+
+        Assert.assertEquals(actual, EXPECTED_PAPER_KEY0_IV1);
+
+    }
+
+    @Test
+    public static void ietfTestVectorKey1IV0()
+        throws InvalidKeyException, InvalidAlgorithmParameterException,
+               InvalidParameterSpecException {
+        final int len = EXPECTED_PAPER_KEY1_IV0.length;
+        final HC128CipherSpi spi = new HC128CipherSpi();
+        final byte[] actual = new byte[len];
+
+        spi.engineInit(0, PAPER_KEY1, new IvParameterSpec(PAPER_IV0), null);
+        KeystreamCipherTestUtils.engineUpdate(spi, actual, 0, len, actual, 0);
+
+        Assert.assertEquals(actual, EXPECTED_PAPER_KEY1_IV0);
+
+    }
+
+    @Test
+    public static void highIVBytesTest()
+        throws InvalidKeyException, InvalidAlgorithmParameterException,
+               InvalidParameterSpecException {
+        final int len = EXPECTED_KEY_HIGH_IV.length;
+        final HC128CipherSpi spi = new HC128CipherSpi();
+        final byte[] actual = new byte[len];
+
+        spi.engineInit(0, FROM_BYTES, new IvParameterSpec(HIGH_IV), null);
+        KeystreamCipherTestUtils.engineUpdate(spi, actual, 0, len, actual, 0);
+
+        Assert.assertEquals(actual, EXPECTED_KEY_HIGH_IV);
+    }
+
+    @Test(expectedExceptions = InvalidAlgorithmParameterException.class)
+    public static void wrongIVLengthTest()
+        throws InvalidKeyException, InvalidAlgorithmParameterException {
+        final HC128CipherSpi spi = new HC128CipherSpi();
+
+        spi.engineInit(0, KEY, new IvParameterSpec(new byte[32]), null);
+    }
+
+    private static final int STREAM_LEN = 10000;
+
+    private static final int[] SPLITS = new int[] {
+        1, 3, 60, 64, 65, 127, 1000, 2048, 4096
+    };
+
+    @Test
+    public static void splitUpdateTest()
+        throws InvalidKeyException, InvalidAlgorithmParameterException {
+        final HC128CipherSpi spi = new HC128CipherSpi();
+        final byte[] expected = new byte[STREAM_LEN];
+
+        spi.engineInit(0, KEY, new IvParameterSpec(IV), null);
+        KeystreamCipherTestUtils.engineUpdate(spi, expected, 0, STREAM_LEN,
+                                              expected, 0);
+
+        for(final int split : SPLITS) {
+            final byte[] actual = new byte[STREAM_LEN];
+
+            spi.engineInit(0, KEY, new IvParameterSpec(IV), null);
+
+            for(int i = 0; i < STREAM_LEN; i += split) {
+                final int len = Math.min(split, STREAM_LEN - i);
+
+                KeystreamCipherTestUtils.engineUpdate(spi, actual, i, len,
+                                                      actual, i);
+            }
+
+            Assert.assertEquals(actual, expected);
+        }
+    }
+
+    private static final int[] CHECKPOINT_INTERVALS = new int[] {
+        0, 64, 1000, 4096
+    };
+
+    private static final int[] SEEKS = new int[] {
+        5000, 0, 9000, 64, 4095, 4096, 3000, 8191, 1, 6000
+    };
+
+    private static final int SEEK_LEN = 300;
+
+    @Test
+    public static void seekTest()
+        throws InvalidKeyException, InvalidAlgorithmParameterException {
+        final HC128CipherSpi ref = new HC128CipherSpi();
+        final byte[] expected = new byte[STREAM_LEN];
+
+        ref.engineInit(0, KEY, new IvParameterSpec(IV), null);
+        KeystreamCipherTestUtils.engineUpdate(ref, expected, 0, STREAM_LEN,
+                                              expected, 0);
+
+        for(final int interval : CHECKPOINT_INTERVALS) {
+            final HC128CipherSpi spi = new HC128CipherSpi(interval);
+
+            spi.engineInit(0, KEY, new IvParameterSpec(IV), null);
+
+            for(final int pos : SEEKS) {
+                final byte[] actual = new byte[SEEK_LEN];
+
+                KeystreamCipherTestUtils.setBlockIdx(spi, pos / 64);
+                KeystreamCipherTestUtils.setBlockOffset(spi, pos % 64);
+                KeystreamCipherTestUtils.engineUpdate(spi, actual, 0,
+                                                      SEEK_LEN, actual, 0);
+
+                Assert.assertEquals(actual,
+                                    Arrays.copyOfRange(expected, pos,
+                                                       pos + SEEK_LEN));
+            }
+        }
+    }
+
+    @Test
+    public static void initPositionTest()
+        throws InvalidKeyException, InvalidAlgorithmParameterException {
+        final HC128CipherSpi ref = new HC128CipherSpi();
+        final byte[] expected = new byte[STREAM_LEN];
+
+        ref.engineInit(0, KEY, new IvParameterSpec(IV), null);
+        KeystreamCipherTestUtils.engineUpdate(ref, expected, 0, STREAM_LEN,
+                                              expected, 0);
+
+        for(final int interval : CHECKPOINT_INTERVALS) {
+            final HC128CipherSpi spi = new HC128CipherSpi(interval);
+
+            for(final int pos : SEEKS) {
+                final byte[] actual = new byte[SEEK_LEN];
+
+                spi.engineInit(0, KEY, new HCFamilyParameterSpec(IV, pos),
+                               null);
+                KeystreamCipherTestUtils.engineUpdate(spi, actual, 0,
+                                                      SEEK_LEN, actual, 0);
+
+                Assert.assertEquals(actual,
+                                    Arrays.copyOfRange(expected, pos,
+                                                       pos + SEEK_LEN));
+            }
+        }
+    }
+
+    @Test
+    public static void getParametersPositionTest()
+        throws InvalidKeyException, InvalidAlgorithmParameterException,
+               InvalidParameterSpecException {
+        final HC128CipherSpi spi = new HC128CipherSpi();
+        final byte[] expected = new byte[STREAM_LEN];
+
+        spi.engineInit(0, KEY, new IvParameterSpec(IV), null);
+        KeystreamCipherTestUtils.engineUpdate(spi, expected, 0, 1234,
+                                              expected, 0);
+
+        final AlgorithmParameters params = spi.engineGetParameters();
+        final HCFamilyParameterSpec spec =
+            params.getParameterSpec(HCFamilyParameterSpec.class);
+        final HC128CipherSpi newspi = new HC128CipherSpi(1024);
+        final byte[] actual = new byte[STREAM_LEN];
+
+        Assert.assertEquals(spec.getPosition(), 1234);
+        KeystreamCipherTestUtils.engineInit(newspi, 0, KEY, params, null);
+        KeystreamCipherTestUtils.engineUpdate(spi, expected, 1234,
+                                              STREAM_LEN - 1234,
+                                              expected, 1234);
+        KeystreamCipherTestUtils.engineUpdate(newspi, actual, 1234,
+                                              STREAM_LEN - 1234,
+                                              actual, 1234);
+
+        Assert.assertEquals(Arrays.copyOfRange(actual, 1234, STREAM_LEN),
+                            Arrays.copyOfRange(expected, 1234, STREAM_LEN));
+    }
+
+    @Test(expectedExceptions = IllegalArgumentException.class)
+    public static void negativeIntervalTest() {
+        new HC128CipherSpi(-1);
+    }
+}
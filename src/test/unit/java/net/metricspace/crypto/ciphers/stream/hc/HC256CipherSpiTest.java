@@ -171,6 +171,17 @@ public class HC256CipherSpiTest {
         (byte)0, (byte)0, (byte)0, (byte)0
     };
 
+    private static final byte[] HIGH_IV = new byte[] {
+        (byte)0x90, (byte)0xa1, (byte)0xb2, (byte)0xc3,
+        (byte)0xd4, (byte)0xe5, (byte)0xf6, (byte)0x07,
+        (byte)0x18, (byte)0x29, (byte)0x3a, (byte)0x4b,
+        (byte)0x5c, (byte)0x6d, (byte)0x7e, (byte)0x8f,
+        (byte)0xa0, (byte)0xb1, (byte)0xc2, (byte)0xd3,
+        (byte)0xe4, (byte)0xf5, (byte)0x06, (byte)0x17,
+        (byte)0x28, (byte)0x39, (byte)0x4a, (byte)0x5b,
+        (byte)0x6c, (byte)0x7d, (byte)0x8e, (byte)0x9f
+    };
+
     private static final byte[] EXPECTED_PAPER_KEY0_IV0 = new byte[] {
         (byte)0x5b, (byte)0x07, (byte)0x89, (byte)0x85,
         (byte)0xd8, (byte)0xf6, (byte)0xf3, (byte)0x0d,
@@ -228,6 +239,90 @@ public class HC256CipherSpiTest {
         (byte)0xe6, (byte)0xdd, (byte)0x75, (byte)0xf5
     };
 
+    private static final byte[] EXPECTED_KEY_HIGH_IV = new byte[] {
+        (byte)0xfb, (byte)0x6b, (byte)0x7f, (byte)0x95,
+        (byte)0x42, (byte)0x76, (byte)0xda, (byte)0x8d,
+        (byte)0xc2, (byte)0x96, (byte)0x1b, (byte)0xec,
+        (byte)0x69, (byte)0xa5, (byte)0x49, (byte)0x83,
+        (byte)0x01, (byte)0x72, (byte)0xef, (byte)0x43,
+        (byte)0x72, (byte)0xe2, (byte)0x8c, (byte)0xd3,
+        (byte)0x97, (byte)0x43, (byte)0xae, (byte)0x2a,
+        (byte)0xea, (byte)0x59, (byte)0x68, (byte)0xb8,
+        (byte)0x4a, (byte)0x3f, (byte)0xab, (byte)0xaa,
+        (byte)0xbf, (byte)0xd3, (byte)0x82, (byte)0x7a,
+        (byte)0x28, (byte)0x6a, (byte)0xd5, (byte)0xe2,
+        (byte)0x44, (byte)0xe5, (byte)0x97, (byte)0x7c,
+        (byte)0x87, (byte)0xbe, (byte)0xc9, (byte)0x27,
+        (byte)0x47, (byte)0x5a, (byte)0x17, (byte)0x54,
+        (byte)0xb2, (byte)0x73, (byte)0xd5, (byte)0x5e,
+        (byte)0xf8, (byte)0x93, (byte)0xc3, (byte)0x7c
+    };
+
+    /**
+     * A key with the high bit set in every byte.
+     */
+    private static final byte[] HIGH_KEY_BYTES = new byte[] {
+        (byte)0x80, (byte)0x87, (byte)0x8e, (byte)0x95,
+        (byte)0x9c, (byte)0xa3, (byte)0xaa, (byte)0xb1,
+        (byte)0xb8, (byte)0xbf, (byte)0xc6, (byte)0xcd,
+        (byte)0xd4, (byte)0xdb, (byte)0xe2, (byte)0xe9,
+        (byte)0xf0, (byte)0xf7, (byte)0xfe, (byte)0x05,
+        (byte)0x0c, (byte)0x13, (byte)0x1a, (byte)0x21,
+        (byte)0x28, (byte)0x2f, (byte)0x36, (byte)0x3d,
+        (byte)0x44, (byte)0x4b, (byte)0x52, (byte)0x59
+    };
+
+    private static final HC256CipherSpi.HC256Key HIGH_KEY =
+        new HC256CipherSpi.HC256Key(HIGH_KEY_BYTES);
+
+    private static final HC256CipherSpi.HC256Key HIGH_KEY_WORDS =
+        new HC256CipherSpi.HC256Key(new int[] {
+                0x958e8780, 0xb1aaa39c, 0xcdc6bfb8, 0xe9e2dbd4,
+                0x05fef7f0, 0x211a130c, 0x3d362f28, 0x59524b44
+            });
+
+    private static final byte[] EXPECTED_HIGH_KEY_HIGH_IV = new byte[] {
+        (byte)0xd8, (byte)0x3b, (byte)0x58, (byte)0xde,
+        (byte)0xdc, (byte)0x86, (byte)0x64, (byte)0x42,
+        (byte)0x15, (byte)0x6c, (byte)0x79, (byte)0x71,
+        (byte)0x35, (byte)0xb8, (byte)0x51, (byte)0xdd,
+        (byte)0x33, (byte)0x3f, (byte)0x31, (byte)0xa4,
+        (byte)0x4f, (byte)0x76, (byte)0x37, (byte)0x90,
+        (byte)0x94, (byte)0x10, (byte)0x4f, (byte)0xc6,
+        (byte)0x2f, (byte)0x9a, (byte)0xc1, (byte)0x07,
+        (byte)0xf7, (byte)0xbe, (byte)0x71, (byte)0xb6,
+        (byte)0x8e, (byte)0xac, (byte)0xf6, (byte)0x20,
+        (byte)0xa3, (byte)0xa3, (byte)0xc8, (byte)0x08,
+        (byte)0xa4, (byte)0xba, (byte)0x29, (byte)0x07,
+        (byte)0x99, (byte)0xb7, (byte)0x6b, (byte)0x2e,
+        (byte)0xbe, (byte)0x6b, (byte)0xba, (byte)0x40,
+        (byte)0xb4, (byte)0xa1, (byte)0x5b, (byte)0x97,
+        (byte)0x1b, (byte)0xe3, (byte)0x29, (byte)0xed
+    };
+
+    /**
+     * Keystream for {@link #HIGH_KEY} and {@link #HIGH_IV} at 5000,
+     * past the first turn of both tables.
+     */
+    private static final byte[] EXPECTED_HIGH_KEY_HIGH_IV_5000 = new byte[] {
+        (byte)0x50, (byte)0xe8, (byte)0xa0, (byte)0xed,
+        (byte)0x0a, (byte)0xb4, (byte)0x61, (byte)0xbd,
+        (byte)0xf9, (byte)0xab, (byte)0x3e, (byte)0x13,
+        (byte)0x7c, (byte)0xd9, (byte)0x2e, (byte)0x99,
+        (byte)0x2b, (byte)0x8a, (byte)0xb3, (byte)0x79,
+        (byte)0xec, (byte)0x66, (byte)0x8d, (byte)0x82,
+        (byte)0x4d, (byte)0x26, (byte)0xcb, (byte)0x3a,
+        (byte)0x76, (byte)0x98, (byte)0x79, (byte)0x56,
+        (byte)0x81, (byte)0xb9, (byte)0x28, (byte)0x16,
+        (byte)0xdb, (byte)0x1b, (byte)0x25, (byte)0x4e,
+        (byte)0x61, (byte)0x05, (byte)0xb5, (byte)0x45,
+        (byte)0x0d, (byte)0xbf, (byte)0x11, (byte)0x80,
+        (byte)0x05, (byte)0x62, (byte)0xe0, (byte)0xdf,
+        (byte)0x34, (byte)0x92, (byte)0x28, (byte)0xf3,
+        (byte)0xf4, (byte)0x76, (byte)0xa2, (byte)0xc7,
+        (byte)0x05, (byte)0x43, (byte)0x83, (byte)0x8f
+    };
+
     @Test
     public static void ietfTestVectorKey0IV0()
         throws InvalidKeyException, InvalidAlgorithmParameterException,
@@ -272,4 +367,189 @@ public class HC256CipherSpiTest {
         Assert.assertEquals(actual, EXPECTED_PAPER_KEY1_IV0);
 
     }
+
+    @Test
+    public static void highIVTest()
+        throws InvalidKeyException, InvalidAlgorithmParameterException {
+        final int len = EXPECTED_KEY_HIGH_IV.length;
+        final HC256CipherSpi spi = new HC256CipherSpi();
+        final byte[] actual = new byte[len];
+
+        spi.engineInit(0, FROM_BYTES, new IvParameterSpec(HIGH_IV), null);
+        KeystreamCipherTestUtils.engineUpdate(spi, actual, 0, len, actual, 0);
+
+        Assert.assertEquals(actual, EXPECTED_KEY_HIGH_IV);
+    }
+
+    @Test
+    public static void highKeyTest() {
+        Assert.assertEquals(HIGH_KEY.getEncoded(), HIGH_KEY_BYTES);
+        Assert.assertEquals(HIGH_KEY_WORDS.getEncoded(), HIGH_KEY_BYTES);
+    }
+
+    @Test
+    public static void highKeyHighIVTest()
+        throws InvalidKeyException, InvalidAlgorithmParameterException {
+        for(final HC256CipherSpi.HC256Key key :
+                new HC256CipherSpi.HC256Key[] { HIGH_KEY, HIGH_KEY_WORDS }) {
+            final int len = EXPECTED_HIGH_KEY_HIGH_IV.length;
+            final HC256CipherSpi spi = new HC256CipherSpi();
+            final byte[] actual = new byte[len];
+
+            spi.engineInit(0, key, new IvParameterSpec(HIGH_IV), null);
+            KeystreamCipherTestUtils.engineUpdate(spi, actual, 0, len,
+                                                  actual, 0);
+
+            Assert.assertEquals(actual, EXPECTED_HIGH_KEY_HIGH_IV);
+        }
+    }
+
+    @Test
+    public static void highKeyHighIVPositionTest()
+        throws InvalidKeyException, InvalidAlgorithmParameterException {
+        final int len = EXPECTED_HIGH_KEY_HIGH_IV_5000.length;
+        final HC256CipherSpi spi = new HC256CipherSpi(1024);
+        final byte[] actual = new byte[len];
+
+        spi.engineInit(0, HIGH_KEY, new HCFamilyParameterSpec(HIGH_IV, 5000),
+                       null);
+        KeystreamCipherTestUtils.engineUpdate(spi, actual, 0, len, actual, 0);
+
+        Assert.assertEquals(actual, EXPECTED_HIGH_KEY_HIGH_IV_5000);
+    }
+
+    private static final int STREAM_LEN = 10000;
+
+    private static final int[] SPLITS = new int[] {
+        1, 3, 60, 64, 65, 127, 1000, 2048, 4096
+    };
+
+    @Test
+    public static void splitUpdateTest()
+        throws InvalidKeyException, InvalidAlgorithmParameterException {
+        final HC256CipherSpi spi = new HC256CipherSpi();
+        final byte[] expected = new byte[STREAM_LEN];
+
+        spi.engineInit(0, KEY, new IvParameterSpec(IV), null);
+        KeystreamCipherTestUtils.engineUpdate(spi, expected, 0, STREAM_LEN,
+                                              expected, 0);
+
+        for(final int split : SPLITS) {
+            final byte[] actual = new byte[STREAM_LEN];
+
+            spi.engineInit(0, KEY, new IvParameterSpec(IV), null);
+
+            for(int i = 0; i < STREAM_LEN; i += split) {
+                final int len = Math.min(split, STREAM_LEN - i);
+
+                KeystreamCipherTestUtils.engineUpdate(spi, actual, i, len,
+                                                      actual, i);
+            }
+
+            Assert.assertEquals(actual, expected);
+        }
+    }
+
+    private static final int[] CHECKPOINT_INTERVALS = new int[] {
+        0, 64, 1000, 4096
+    };
+
+    private static final int[] SEEKS = new int[] {
+        5000, 0, 9000, 64, 4095, 4096, 3000, 8191, 1, 6000
+    };
+
+    private static final int SEEK_LEN = 300;
+
+    @Test
+    public static void seekTest()
+        throws InvalidKeyException, InvalidAlgorithmParameterException {
+        final HC256CipherSpi ref = new HC256CipherSpi();
+        final byte[] expected = new byte[STREAM_LEN];
+
+        ref.engineInit(0, KEY, new IvParameterSpec(IV), null);
+        KeystreamCipherTestUtils.engineUpdate(ref, expected, 0, STREAM_LEN,
+                                              expected, 0);
+
+        for(final int interval : CHECKPOINT_INTERVALS) {
+            final HC256CipherSpi spi = new HC256CipherSpi(interval);
+
+            spi.engineInit(0, KEY, new IvParameterSpec(IV), null);
+
+            for(final int pos : SEEKS) {
+                final byte[] actual = new byte[SEEK_LEN];
+
+                KeystreamCipherTestUtils.setBlockIdx(spi, pos / 64);
+                KeystreamCipherTestUtils.setBlockOffset(spi, pos % 64);
+                KeystreamCipherTestUtils.engineUpdate(spi, actual, 0,
+                                                      SEEK_LEN, actual, 0);
+
+                Assert.assertEquals(actual,
+                                    Arrays.copyOfRange(expected, pos,
+                                                       pos + SEEK_LEN));
+            }
+        }
+    }
+
+    @Test
+    public static void initPositionTest()
+        throws InvalidKeyException, InvalidAlgorithmParameterException {
+        final HC256CipherSpi ref = new HC256CipherSpi();
+        final byte[] expected = new byte[STREAM_LEN];
+
+        ref.engineInit(0, KEY, new IvParameterSpec(IV), null);
+        KeystreamCipherTestUtils.engineUpdate(ref, expected, 0, STREAM_LEN,
+                                              expected, 0);
+
+        for(final int interval : CHECKPOINT_INTERVALS) {
+            final HC256CipherSpi spi = new HC256CipherSpi(interval);
+
+            for(final int pos : SEEKS) {
+                final byte[] actual = new byte[SEEK_LEN];
+
+                spi.engineInit(0, KEY, new HCFamilyParameterSpec(IV, pos),
+                               null);
+                KeystreamCipherTestUtils.engineUpdate(spi, actual, 0,
+                                                      SEEK_LEN, actual, 0);
+
+                Assert.assertEquals(actual,
+                                    Arrays.copyOfRange(expected, pos,
+                                                       pos + SEEK_LEN));
+            }
+        }
+    }
+
+    @Test
+    public static void getParametersPositionTest()
+        throws InvalidKeyException, InvalidAlgorithmParameterException,
+               InvalidParameterSpecException {
+        final HC256CipherSpi spi = new HC256CipherSpi();
+        final byte[] expected = new byte[STREAM_LEN];
+
+        spi.engineInit(0, KEY, new IvParameterSpec(IV), null);
+        KeystreamCipherTestUtils.engineUpdate(spi, expected, 0, 1234,
+                                              expected, 0);
+
+        final AlgorithmParameters params = spi.engineGetParameters();
+        final HCFamilyParameterSpec spec =
+            params.getParameterSpec(HCFamilyParameterSpec.class);
+        final HC256CipherSpi newspi = new HC256CipherSpi(1024);
+        final byte[] actual = new byte[STREAM_LEN];
+
+        Assert.assertEquals(spec.getPosition(), 1234);
+        KeystreamCipherTestUtils.engineInit(newspi, 0, KEY, params, null);
+        KeystreamCipherTestUtils.engineUpdate(spi, expected, 1234,
+                                              STREAM_LEN - 1234,
+                                              expected, 1234);
+        KeystreamCipherTestUtils.engineUpdate(newspi, actual, 1234,
+                                              STREAM_LEN - 1234,
+                                              actual, 1234);
+
+        Assert.assertEquals(Arrays.copyOfRange(actual, 1234, STREAM_LEN),
+                            Arrays.copyOfRange(expected, 1234, STREAM_LEN));
+    }
+
+    @Test(expectedExceptions = IllegalArgumentException.class)
+    public static void negativeIntervalTest() {
+        new HC256CipherSpi(-1);
+    }
 }
@@ -31,6 +31,7 @@
  */
 package net.metricspace.crypto.ciphers.stream.hc;
 
+import java.io.IOException;
 import java.security.spec.InvalidParameterSpecException;
 
 import javax.crypto.spec.IvParameterSpec;
@@ -68,7 +69,7 @@ public class HC256ParametersSpiTest {
 
     @Test
     public void engineGetEncodedTest()
-        throws InvalidParameterSpecException {
+        throws InvalidParameterSpecException, IOException {
         final HC256ParametersSpi spi = new HC256ParametersSpi();
 
         spi.engineInit(SPEC);
@@ -79,4 +80,34 @@ public class HC256ParametersSpiTest {
 
         Assert.assertEquals(specout.getIV(), SPEC.getIV());
     }
+
+    @Test
+    public void positionTest()
+        throws InvalidParameterSpecException, IOException {
+        final HC256ParametersSpi spi = new HC256ParametersSpi();
+
+        spi.engineInit(new HCFamilyParameterSpec(IV, 0x123456789aL));
+        spi.engineInit(spi.engineGetEncoded());
+
+        final HCFamilyParameterSpec specout =
+            spi.engineGetParameterSpec(HCFamilyParameterSpec.class);
+
+        Assert.assertEquals(specout.getIV(), IV);
+        Assert.assertEquals(specout.getPosition(), 0x123456789aL);
+    }
+
+    @Test
+    public void ivOnlyEncodingTest()
+        throws InvalidParameterSpecException, IOException {
+        final HC256ParametersSpi spi = new HC256ParametersSpi();
+
+        spi.engineInit(new HCFamilyParameterSpec(IV, 100));
+        spi.engineInit(IV);
+
+        final HCFamilyParameterSpec specout =
+            spi.engineGetParameterSpec(HCFamilyParameterSpec.class);
+
+        Assert.assertEquals(specout.getIV(), IV);
+        Assert.assertEquals(specout.getPosition(), 0);
+    }
 }
@@ -31,12 +31,16 @@
  */
 package net.metricspace.crypto.ciphers.stream.salsa;
 
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+
 import java.security.AlgorithmParameters;
 import java.security.InvalidKeyException;
 import java.security.InvalidAlgorithmParameterException;
 import java.security.spec.InvalidParameterSpecException;
 import java.util.Arrays;
 
+import javax.crypto.ShortBufferException;
 import javax.crypto.spec.IvParameterSpec;
 
 import org.testng.Assert;
@@ -315,4 +319,377 @@ public class ChaCha20CipherSpiTest {
         Assert.assertEquals(actual, EXPECTED_IETF_KEY0_IVHI);
 
     }
+
+    /**
+     * Key from RFC 8439 appendix A.2, test vector 3.  Most of its
+     * bytes have the high bit set, which exercises the byte-to-word
+     * decoding in {@link
+     * net.metricspace.crypto.common.Common256BitKey}.
+     */
+    private static final byte[] RFC_HIGH_KEY_BYTES = new byte[] {
+        (byte)0x1c, (byte)0x92, (byte)0x40, (byte)0xa5,
+        (byte)0xeb, (byte)0x55, (byte)0xd3, (byte)0x8a,
+        (byte)0xf3, (byte)0x33, (byte)0x88, (byte)0x86,
+        (byte)0x04, (byte)0xf6, (byte)0xb5, (byte)0xf0,
+        (byte)0x47, (byte)0x39, (byte)0x17, (byte)0xc1,
+        (byte)0x40, (byte)0x2b, (byte)0x80, (byte)0x09,
+        (byte)0x9d, (byte)0xca, (byte)0x5c, (byte)0xbc,
+        (byte)0x20, (byte)0x70, (byte)0x75, (byte)0xc0
+    };
+
+    private static final ChaCha20CipherSpi.ChaCha20Key RFC_HIGH_KEY_WORDS =
+        new ChaCha20CipherSpi.ChaCha20Key(new int[] {
+                0xa540921c, 0x8ad355eb, 0x868833f3, 0xf0b5f604,
+                0xc1173947, 0x09802b40, 0xbc5cca9d, 0xc0757020
+            });
+
+    /**
+     * The IV for the same test vector.  Its 12-byte nonce is 11 zero
+     * bytes followed by 2; the first 4 bytes are the upper half of
+     * the block index, which is zero here.
+     */
+    private static final byte[] RFC_HIGH_KEY_IV = new byte[] {
+        (byte)0, (byte)0, (byte)0, (byte)0,
+        (byte)0, (byte)0, (byte)0, (byte)2
+    };
+
+    /**
+     * Block index (the RFC 8439 counter) for the same test vector.
+     */
+    private static final int RFC_HIGH_KEY_BLOCK = 42;
+
+    private static final byte[] RFC_HIGH_KEY_PLAINTEXT = new byte[] {
+        (byte)0x27, (byte)0x54, (byte)0x77, (byte)0x61,
+        (byte)0x73, (byte)0x20, (byte)0x62, (byte)0x72,
+        (byte)0x69, (byte)0x6c, (byte)0x6c, (byte)0x69,
+        (byte)0x67, (byte)0x2c, (byte)0x20, (byte)0x61,
+        (byte)0x6e, (byte)0x64, (byte)0x20, (byte)0x74,
+        (byte)0x68, (byte)0x65, (byte)0x20, (byte)0x73,
+        (byte)0x6c, (byte)0x69, (byte)0x74, (byte)0x68,
+        (byte)0x79, (byte)0x20, (byte)0x74, (byte)0x6f,
+        (byte)0x76, (byte)0x65, (byte)0x73, (byte)0x0a,
+        (byte)0x44, (byte)0x69, (byte)0x64, (byte)0x20,
+        (byte)0x67, (byte)0x79, (byte)0x72, (byte)0x65,
+        (byte)0x20, (byte)0x61, (byte)0x6e, (byte)0x64,
+        (byte)0x20, (byte)0x67, (byte)0x69, (byte)0x6d,
+        (byte)0x62, (byte)0x6c, (byte)0x65, (byte)0x20,
+        (byte)0x69, (byte)0x6e, (byte)0x20, (byte)0x74,
+        (byte)0x68, (byte)0x65, (byte)0x20, (byte)0x77,
+        (byte)0x61, (byte)0x62, (byte)0x65, (byte)0x3a,
+        (byte)0x0a, (byte)0x41, (byte)0x6c, (byte)0x6c,
+        (byte)0x20, (byte)0x6d, (byte)0x69, (byte)0x6d,
+        (byte)0x73, (byte)0x79, (byte)0x20, (byte)0x77,
+        (byte)0x65, (byte)0x72, (byte)0x65, (byte)0x20,
+        (byte)0x74, (byte)0x68, (byte)0x65, (byte)0x20,
+        (byte)0x62, (byte)0x6f, (byte)0x72, (byte)0x6f,
+        (byte)0x67, (byte)0x6f, (byte)0x76, (byte)0x65,
+        (byte)0x73, (byte)0x2c, (byte)0x0a, (byte)0x41,
+        (byte)0x6e, (byte)0x64, (byte)0x20, (byte)0x74,
+        (byte)0x68, (byte)0x65, (byte)0x20, (byte)0x6d,
+        (byte)0x6f, (byte)0x6d, (byte)0x65, (byte)0x20,
+        (byte)0x72, (byte)0x61, (byte)0x74, (byte)0x68,
+        (byte)0x73, (byte)0x20, (byte)0x6f, (byte)0x75,
+        (byte)0x74, (byte)0x67, (byte)0x72, (byte)0x61,
+        (byte)0x62, (byte)0x65, (byte)0x2e
+    };
+
+    private static final byte[] EXPECTED_RFC_HIGH_KEY = new byte[] {
+        (byte)0x62, (byte)0xe6, (byte)0x34, (byte)0x7f,
+        (byte)0x95, (byte)0xed, (byte)0x87, (byte)0xa4,
+        (byte)0x5f, (byte)0xfa, (byte)0xe7, (byte)0x42,
+        (byte)0x6f, (byte)0x27, (byte)0xa1, (byte)0xdf,
+        (byte)0x5f, (byte)0xb6, (byte)0x91, (byte)0x10,
+        (byte)0x04, (byte)0x4c, (byte)0x0d, (byte)0x73,
+        (byte)0x11, (byte)0x8e, (byte)0xff, (byte)0xa9,
+        (byte)0x5b, (byte)0x01, (byte)0xe5, (byte)0xcf,
+        (byte)0x16, (byte)0x6d, (byte)0x3d, (byte)0xf2,
+        (byte)0xd7, (byte)0x21, (byte)0xca, (byte)0xf9,
+        (byte)0xb2, (byte)0x1e, (byte)0x5f, (byte)0xb1,
+        (byte)0x4c, (byte)0x61, (byte)0x68, (byte)0x71,
+        (byte)0xfd, (byte)0x84, (byte)0xc5, (byte)0x4f,
+        (byte)0x9d, (byte)0x65, (byte)0xb2, (byte)0x83,
+        (byte)0x19, (byte)0x6c, (byte)0x7f, (byte)0xe4,
+        (byte)0xf6, (byte)0x05, (byte)0x53, (byte)0xeb,
+        (byte)0xf3, (byte)0x9c, (byte)0x64, (byte)0x02,
+        (byte)0xc4, (byte)0x22, (byte)0x34, (byte)0xe3,
+        (byte)0x2a, (byte)0x35, (byte)0x6b, (byte)0x3e,
+        (byte)0x76, (byte)0x43, (byte)0x12, (byte)0xa6,
+        (byte)0x1a, (byte)0x55, (byte)0x32, (byte)0x05,
+        (byte)0x57, (byte)0x16, (byte)0xea, (byte)0xd6,
+        (byte)0x96, (byte)0x25, (byte)0x68, (byte)0xf8,
+        (byte)0x7d, (byte)0x3f, (byte)0x3f, (byte)0x77,
+        (byte)0x04, (byte)0xc6, (byte)0xa8, (byte)0xd1,
+        (byte)0xbc, (byte)0xd1, (byte)0xbf, (byte)0x4d,
+        (byte)0x50, (byte)0xd6, (byte)0x15, (byte)0x4b,
+        (byte)0x6d, (byte)0xa7, (byte)0x31, (byte)0xb1,
+        (byte)0x87, (byte)0xb5, (byte)0x8d, (byte)0xfd,
+        (byte)0x72, (byte)0x8a, (byte)0xfa, (byte)0x36,
+        (byte)0x75, (byte)0x7a, (byte)0x79, (byte)0x7a,
+        (byte)0xc1, (byte)0x88, (byte)0xd1
+    };
+
+    @Test
+    public static void highKeyEncodingTest() {
+        final ChaCha20CipherSpi.ChaCha20Key fromBytes =
+            new ChaCha20CipherSpi.ChaCha20Key(RFC_HIGH_KEY_BYTES);
+
+        Assert.assertEquals(fromBytes.getData(),
+                            RFC_HIGH_KEY_WORDS.getData());
+        Assert.assertEquals(fromBytes.getEncoded(), RFC_HIGH_KEY_BYTES);
+        Assert.assertEquals(RFC_HIGH_KEY_WORDS.getEncoded(),
+                            RFC_HIGH_KEY_BYTES);
+    }
+
+    @Test
+    public static void highKeyTestVector()
+        throws InvalidKeyException, InvalidAlgorithmParameterException {
+        final int len = EXPECTED_RFC_HIGH_KEY.length;
+        final ChaCha20CipherSpi spi = new ChaCha20CipherSpi();
+        final ChaCha20CipherSpi.ChaCha20Key key =
+            new ChaCha20CipherSpi.ChaCha20Key(RFC_HIGH_KEY_BYTES);
+        final SalsaFamilyParameterSpec spec =
+            new SalsaFamilyParameterSpec(RFC_HIGH_KEY_IV,
+                                         RFC_HIGH_KEY_BLOCK *
+                                         SalsaFamilyCipherSpi.STATE_BYTES);
+        final byte[] actual = new byte[len];
+
+        spi.engineInit(0, key, spec, null);
+        KeystreamCipherTestUtils.engineUpdate(spi, RFC_HIGH_KEY_PLAINTEXT, 0,
+                                              len, actual, 0);
+
+        Assert.assertEquals(actual, EXPECTED_RFC_HIGH_KEY);
+    }
+
+    private static final int STREAM_LEN = 10000;
+
+    private static final int[] SPLITS = new int[] {
+        1, 3, 60, 64, 65, 127, 1000, 2048, 4096
+    };
+
+    private static byte[] expectedStream()
+        throws InvalidKeyException, InvalidAlgorithmParameterException {
+        final ChaCha20CipherSpi spi = new ChaCha20CipherSpi();
+        final byte[] out = new byte[STREAM_LEN];
+
+        spi.engineInit(0, KEY, new IvParameterSpec(IV), null);
+        KeystreamCipherTestUtils.engineUpdate(spi, out, 0, STREAM_LEN,
+                                              out, 0);
+
+        return out;
+    }
+
+    @Test
+    public static void splitUpdateTest()
+        throws InvalidKeyException, InvalidAlgorithmParameterException,
+               InvalidParameterSpecException {
+        final byte[] expected = expectedStream();
+
+        for(final int split : SPLITS) {
+            final ChaCha20CipherSpi spi = new ChaCha20CipherSpi();
+            final byte[] actual = new byte[STREAM_LEN];
+
+            spi.engineInit(0, KEY, new IvParameterSpec(IV), null);
+
+            for(int i = 0; i < STREAM_LEN; i += split) {
+                final int len = Math.min(split, STREAM_LEN - i);
+
+                KeystreamCipherTestUtils.engineUpdate(spi, actual, i, len,
+                                                      actual, i);
+
+                final SalsaFamilyParameterSpec spec =
+                    spi.engineGetParameters()
+                    .getParameterSpec(SalsaFamilyParameterSpec.class);
+
+                Assert.assertEquals(spec.getPosition(), i + len);
+            }
+
+            Assert.assertEquals(actual, expected);
+        }
+    }
+
+    @Test
+    public static void positionTest()
+        throws InvalidKeyException, InvalidAlgorithmParameterException {
+        final byte[] expected = expectedStream();
+
+        for(final int pos : SPLITS) {
+            final ChaCha20CipherSpi spi = new ChaCha20CipherSpi();
+            final int len = STREAM_LEN - pos;
+            final byte[] actual = new byte[len];
+
+            spi.engineInit(0, KEY, new SalsaFamilyParameterSpec(IV, pos),
+                           null);
+            KeystreamCipherTestUtils.engineUpdate(spi, actual, 0, len,
+                                                  actual, 0);
+            Assert.assertEquals(actual,
+                                Arrays.copyOfRange(expected, pos,
+                                                   STREAM_LEN));
+        }
+    }
+
+    private static void byteBufferTest(final ByteBuffer input,
+                                       final ByteBuffer output)
+        throws InvalidKeyException, InvalidAlgorithmParameterException,
+               ShortBufferException {
+        final byte[] expected = expectedStream();
+        final ChaCha20CipherSpi spi = new ChaCha20CipherSpi();
+        final byte[] actual = new byte[STREAM_LEN];
+
+        spi.engineInit(0, KEY, new IvParameterSpec(IV), null);
+
+        for(final int split : SPLITS) {
+            final int len = Math.min(split, input.capacity() -
+                                            input.position());
+
+            input.limit(input.position() + len);
+            KeystreamCipherTestUtils.engineUpdate(spi, input, output);
+            Assert.assertEquals(input.position(), input.limit());
+        }
+
+        input.limit(input.capacity());
+        KeystreamCipherTestUtils.engineUpdate(spi, input, output);
+
+        Assert.assertEquals(output.position(), STREAM_LEN);
+        output.flip();
+        output.get(actual);
+        Assert.assertEquals(actual, expected);
+    }
+
+    @Test
+    public static void directByteBufferTest()
+        throws InvalidKeyException, InvalidAlgorithmParameterException,
+               ShortBufferException {
+        byteBufferTest(ByteBuffer.allocateDirect(STREAM_LEN),
+                       ByteBuffer.allocateDirect(STREAM_LEN));
+    }
+
+    @Test
+    public static void heapByteBufferTest()
+        throws InvalidKeyException, InvalidAlgorithmParameterException,
+               ShortBufferException {
+        byteBufferTest(ByteBuffer.allocate(STREAM_LEN),
+                       ByteBuffer.allocate(STREAM_LEN));
+    }
+
+    @Test
+    public static void mixedByteBufferTest()
+        throws InvalidKeyException, InvalidAlgorithmParameterException,
+               ShortBufferException {
+        byteBufferTest(ByteBuffer.allocate(STREAM_LEN),
+                       ByteBuffer.allocateDirect(STREAM_LEN));
+        byteBufferTest(ByteBuffer.allocateDirect(STREAM_LEN)
+                       .order(ByteOrder.LITTLE_ENDIAN),
+                       ByteBuffer.allocateDirect(STREAM_LEN));
+    }
+
+    @Test
+    public static void inPlaceByteBufferTest()
+        throws InvalidKeyException, InvalidAlgorithmParameterException,
+               ShortBufferException {
+        final ByteBuffer direct = ByteBuffer.allocateDirect(STREAM_LEN);
+        final ByteBuffer heap = ByteBuffer.allocate(STREAM_LEN);
+
+        byteBufferTest(direct, direct.duplicate());
+        byteBufferTest(heap, heap.duplicate());
+    }
+
+    private static void overlapByteBufferTest(final ByteBuffer buf)
+        throws InvalidKeyException, InvalidAlgorithmParameterException,
+               ShortBufferException {
+        final byte[] expected = expectedStream();
+        final ChaCha20CipherSpi spi = new ChaCha20CipherSpi();
+        final byte[] actual = new byte[STREAM_LEN];
+        final ByteBuffer input = buf.duplicate();
+        final ByteBuffer output = buf.duplicate();
+
+        // The output starts part way into the input.
+        input.limit(STREAM_LEN);
+        output.position(13);
+        spi.engineInit(0, KEY, new IvParameterSpec(IV), null);
+        KeystreamCipherTestUtils.engineUpdate(spi, input, output);
+
+        Assert.assertEquals(input.position(), STREAM_LEN);
+        Assert.assertEquals(output.position(), STREAM_LEN + 13);
+        output.position(13);
+        output.get(actual);
+        Assert.assertEquals(actual, expected);
+    }
+
+    @Test
+    public static void overlapByteBufferTest()
+        throws InvalidKeyException, InvalidAlgorithmParameterException,
+               ShortBufferException {
+        overlapByteBufferTest(ByteBuffer.allocateDirect(STREAM_LEN + 13));
+        overlapByteBufferTest(ByteBuffer.allocate(STREAM_LEN + 13));
+    }
+
+    @Test(expectedExceptions = ShortBufferException.class)
+    public static void shortByteBufferTest()
+        throws InvalidKeyException, InvalidAlgorithmParameterException,
+               ShortBufferException {
+        final ChaCha20CipherSpi spi = new ChaCha20CipherSpi();
+
+        spi.engineInit(0, KEY, new IvParameterSpec(IV), null);
+        KeystreamCipherTestUtils.engineUpdate(spi,
+                                              ByteBuffer.allocateDirect(65),
+                                              ByteBuffer.allocateDirect(64));
+    }
+
+    @Test
+    public static void templateTest()
+        throws InvalidKeyException, InvalidAlgorithmParameterException {
+        final ChaCha20CipherSpi spi = new ChaCha20CipherSpi();
+        final int[] init = new int[SalsaFamilyCipherSpi.STATE_WORDS];
+        final int[] expected = new int[SalsaFamilyCipherSpi.STATE_WORDS];
+
+        // The block index has bits set in both counter words.
+        spi.engineInit(0, KEY, new IvParameterSpec(IV), null);
+        KeystreamCipherTestUtils.setBlockIdx(spi, 0x123456789L);
+        spi.initBlock();
+
+        final int[] block = KeystreamCipherTestUtils.getBlock(spi);
+
+        System.arraycopy(block, 0, init, 0, init.length);
+        spi.rounds();
+
+        for(int i = 0; i < expected.length; i++) {
+            expected[i] = block[i] + init[i];
+        }
+
+        spi.streamBlock();
+        Assert.assertEquals(KeystreamCipherTestUtils.getBlock(spi), expected);
+    }
+
+    @Test
+    public static void wideKernelTest()
+        throws InvalidKeyException, InvalidAlgorithmParameterException {
+        final int nblocks = (SalsaFamilyCipherSpi.LANES * 2) + 3;
+        final int len = nblocks * SalsaFamilyCipherSpi.STATE_BYTES;
+        final ChaCha20CipherSpi spi = new ChaCha20CipherSpi();
+        final byte[] actual = new byte[len];
+        final byte[] expected = new byte[len];
+
+        spi.engineInit(0, KEY, new IvParameterSpec(IV), null);
+        spi.streamBlocks(actual, 0, nblocks);
+        Assert.assertEquals(KeystreamCipherTestUtils.getBlockIdx(spi), 0);
+
+        for(int i = 0; i < nblocks; i++) {
+            KeystreamCipherTestUtils.setBlockIdx(spi, i);
+            spi.streamBlock();
+
+            final int[] block = KeystreamCipherTestUtils.getBlock(spi);
+
+            for(int j = 0; j < block.length; j++) {
+                final int pos =
+                    (i * SalsaFamilyCipherSpi.STATE_BYTES) + (j * 4);
+
+                expected[pos] = (byte)block[j];
+                expected[pos + 1] = (byte)(block[j] >>> 8);
+                expected[pos + 2] = (byte)(block[j] >>> 16);
+                expected[pos + 3] = (byte)(block[j] >>> 24);
+            }
+        }
+
+        Assert.assertEquals(actual, expected);
+    }
 }
@@ -0,0 +1,473 @@
+/* Copyright (c) 2018, Eric McCorkle.  All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions
+ * are met:
+ *
+ * * Redistributions of source code must retain the above copyright
+ *   notice, this list of conditions and the following disclaimer.
+ *
+ * * Redistributions in binary form must reproduce the above copyright
+ *   notice, this list of conditions and the following disclaimer in
+ *   the documentation and/or other materials provided with the
+ *   distribution.
+ *
+ * * Neither the name of the copyright holder nor the names of its
+ *   contributors may be used to endorse or promote products derived
+ *   from this software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS
+ * "AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT
+ * LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS
+ * FOR A PARTICULAR PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE
+ * COPYRIGHT HOLDER OR CONTRIBUTORS BE LIABLE FOR ANY DIRECT,
+ * INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES
+ * (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR
+ * SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION)
+ * HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT,
+ * STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED
+ * OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+package net.metricspace.crypto.ciphers.stream.salsa;
+
+import java.nio.ByteBuffer;
+import java.security.GeneralSecurityException;
+import java.security.InvalidKeyException;
+import java.util.Arrays;
+
+import javax.crypto.AEADBadTagException;
+import javax.crypto.Cipher;
+import javax.crypto.spec.IvParameterSpec;
+
+import org.testng.Assert;
+import org.testng.annotations.AfterClass;
+import org.testng.annotations.BeforeClass;
+import org.testng.annotations.Test;
+
+import net.metricspace.crypto.providers.KryptonProvider;
+
+public class ChaCha20Poly1305CipherSpiTest {
+    // Test vector from RFC 8439, section 2.8.2.
+    private static final byte[] KEY_BYTES = new byte[] {
+        (byte)0x80, (byte)0x81, (byte)0x82, (byte)0x83,
+        (byte)0x84, (byte)0x85, (byte)0x86, (byte)0x87,
+        (byte)0x88, (byte)0x89, (byte)0x8a, (byte)0x8b,
+        (byte)0x8c, (byte)0x8d, (byte)0x8e, (byte)0x8f,
+        (byte)0x90, (byte)0x91, (byte)0x92, (byte)0x93,
+        (byte)0x94, (byte)0x95, (byte)0x96, (byte)0x97,
+        (byte)0x98, (byte)0x99, (byte)0x9a, (byte)0x9b,
+        (byte)0x9c, (byte)0x9d, (byte)0x9e, (byte)0x9f
+    };
+
+    private static final byte[] NONCE = new byte[] {
+        (byte)0x07, (byte)0x00, (byte)0x00, (byte)0x00,
+        (byte)0x40, (byte)0x41, (byte)0x42, (byte)0x43,
+        (byte)0x44, (byte)0x45, (byte)0x46, (byte)0x47
+    };
+
+    private static final byte[] AAD = new byte[] {
+        (byte)0x50, (byte)0x51, (byte)0x52, (byte)0x53,
+        (byte)0xc0, (byte)0xc1, (byte)0xc2, (byte)0xc3,
+        (byte)0xc4, (byte)0xc5, (byte)0xc6, (byte)0xc7
+    };
+
+    private static final byte[] PLAINTEXT = new byte[] {
+        (byte)0x4c, (byte)0x61, (byte)0x64, (byte)0x69,
+        (byte)0x65, (byte)0x73, (byte)0x20, (byte)0x61,
+        (byte)0x6e, (byte)0x64, (byte)0x20, (byte)0x47,
+        (byte)0x65, (byte)0x6e, (byte)0x74, (byte)0x6c,
+        (byte)0x65, (byte)0x6d, (byte)0x65, (byte)0x6e,
+        (byte)0x20, (byte)0x6f, (byte)0x66, (byte)0x20,
+        (byte)0x74, (byte)0x68, (byte)0x65, (byte)0x20,
+        (byte)0x63, (byte)0x6c, (byte)0x61, (byte)0x73,
+        (byte)0x73, (byte)0x20, (byte)0x6f, (byte)0x66,
+        (byte)0x20, (byte)0x27, (byte)0x39, (byte)0x39,
+        (byte)0x3a, (byte)0x20, (byte)0x49, (byte)0x66,
+        (byte)0x20, (byte)0x49, (byte)0x20, (byte)0x63,
+        (byte)0x6f, (byte)0x75, (byte)0x6c, (byte)0x64,
+        (byte)0x20, (byte)0x6f, (byte)0x66, (byte)0x66,
+        (byte)0x65, (byte)0x72, (byte)0x20, (byte)0x79,
+        (byte)0x6f, (byte)0x75, (byte)0x20, (byte)0x6f,
+        (byte)0x6e, (byte)0x6c, (byte)0x79, (byte)0x20,
+        (byte)0x6f, (byte)0x6e, (byte)0x65, (byte)0x20,
+        (byte)0x74, (byte)0x69, (byte)0x70, (byte)0x20,
+        (byte)0x66, (byte)0x6f, (byte)0x72, (byte)0x20,
+        (byte)0x74, (byte)0x68, (byte)0x65, (byte)0x20,
+        (byte)0x66, (byte)0x75, (byte)0x74, (byte)0x75,
+        (byte)0x72, (byte)0x65, (byte)0x2c, (byte)0x20,
+        (byte)0x73, (byte)0x75, (byte)0x6e, (byte)0x73,
+        (byte)0x63, (byte)0x72, (byte)0x65, (byte)0x65,
+        (byte)0x6e, (byte)0x20, (byte)0x77, (byte)0x6f,
+        (byte)0x75, (byte)0x6c, (byte)0x64, (byte)0x20,
+        (byte)0x62, (byte)0x65, (byte)0x20, (byte)0x69,
+        (byte)0x74, (byte)0x2e
+    };
+
+    private static final byte[] EXPECTED = new byte[] {
+        (byte)0xd3, (byte)0x1a, (byte)0x8d, (byte)0x34,
+        (byte)0x64, (byte)0x8e, (byte)0x60, (byte)0xdb,
+        (byte)0x7b, (byte)0x86, (byte)0xaf, (byte)0xbc,
+        (byte)0x53, (byte)0xef, (byte)0x7e, (byte)0xc2,
+        (byte)0xa4, (byte)0xad, (byte)0xed, (byte)0x51,
+        (byte)0x29, (byte)0x6e, (byte)0x08, (byte)0xfe,
+        (byte)0xa9, (byte)0xe2, (byte)0xb5, (byte)0xa7,
+        (byte)0x36, (byte)0xee, (byte)0x62, (byte)0xd6,
+        (byte)0x3d, (byte)0xbe, (byte)0xa4, (byte)0x5e,
+        (byte)0x8c, (byte)0xa9, (byte)0x67, (byte)0x12,
+        (byte)0x82, (byte)0xfa, (byte)0xfb, (byte)0x69,
+        (byte)0xda, (byte)0x92, (byte)0x72, (byte)0x8b,
+        (byte)0x1a, (byte)0x71, (byte)0xde, (byte)0x0a,
+        (byte)0x9e, (byte)0x06, (byte)0x0b, (byte)0x29,
+        (byte)0x05, (byte)0xd6, (byte)0xa5, (byte)0xb6,
+        (byte)0x7e, (byte)0xcd, (byte)0x3b, (byte)0x36,
+        (byte)0x92, (byte)0xdd, (byte)0xbd, (byte)0x7f,
+        (byte)0x2d, (byte)0x77, (byte)0x8b, (byte)0x8c,
+        (byte)0x98, (byte)0x03, (byte)0xae, (byte)0xe3,
+        (byte)0x28, (byte)0x09, (byte)0x1b, (byte)0x58,
+        (byte)0xfa, (byte)0xb3, (byte)0x24, (byte)0xe4,
+        (byte)0xfa, (byte)0xd6, (byte)0x75, (byte)0x94,
+        (byte)0x55, (byte)0x85, (byte)0x80, (byte)0x8b,
+        (byte)0x48, (byte)0x31, (byte)0xd7, (byte)0xbc,
+        (byte)0x3f, (byte)0xf4, (byte)0xde, (byte)0xf0,
+        (byte)0x8e, (byte)0x4b, (byte)0x7a, (byte)0x9d,
+        (byte)0xe5, (byte)0x76, (byte)0xd2, (byte)0x65,
+        (byte)0x86, (byte)0xce, (byte)0xc6, (byte)0x4b,
+        (byte)0x61, (byte)0x16, (byte)0x1a, (byte)0xe1,
+        (byte)0x0b, (byte)0x59, (byte)0x4f, (byte)0x09,
+        (byte)0xe2, (byte)0x6a, (byte)0x7e, (byte)0x90,
+        (byte)0x2e, (byte)0xcb, (byte)0xd0, (byte)0x60,
+        (byte)0x06, (byte)0x91
+    };
+
+    // Tag for pattern(10000) with AAD pattern(37), under KEY and NONCE.
+    private static final byte[] LONG_TAG = new byte[] {
+        (byte)0xa2, (byte)0x69, (byte)0xd9, (byte)0x9e,
+        (byte)0xd1, (byte)0x5c, (byte)0xde, (byte)0x3e,
+        (byte)0xa1, (byte)0x9a, (byte)0xa2, (byte)0x65,
+        (byte)0xba, (byte)0x49, (byte)0xe9, (byte)0x03
+    };
+
+    // A nonce whose first word is all ones, which lands in the upper
+    // half of the ChaCha20 block index.
+    private static final byte[] HIGH_NONCE = new byte[] {
+        (byte)0xff, (byte)0xff, (byte)0xff, (byte)0xff,
+        (byte)0x00, (byte)0x01, (byte)0x02, (byte)0x03,
+        (byte)0x04, (byte)0x05, (byte)0x06, (byte)0x07
+    };
+
+    // Tag for pattern(1000) with no AAD, under KEY and HIGH_NONCE.
+    private static final byte[] HIGH_TAG = new byte[] {
+        (byte)0x26, (byte)0xa9, (byte)0xd8, (byte)0xed,
+        (byte)0xf6, (byte)0x40, (byte)0xae, (byte)0xf6,
+        (byte)0xaa, (byte)0x6f, (byte)0xe1, (byte)0x16,
+        (byte)0x5b, (byte)0x0a, (byte)0xb5, (byte)0xa5
+    };
+
+    private static final ChaCha20CipherSpi.ChaCha20Key KEY =
+        new ChaCha20CipherSpi.ChaCha20Key(KEY_BYTES);
+
+    @BeforeClass
+    public static void init() {
+        KryptonProvider.register();
+    }
+
+    @AfterClass
+    public static void fini() {
+        KryptonProvider.unregister();
+    }
+
+    private static byte[] pattern(final int len,
+                                  final int mul,
+                                  final int add) {
+        final byte[] out = new byte[len];
+
+        for(int i = 0; i < len; i++) {
+            out[i] = (byte)((i * mul) + add);
+        }
+
+        return out;
+    }
+
+    private static Cipher cipher(final int mode,
+                                 final byte[] nonce)
+        throws GeneralSecurityException {
+        final Cipher c = Cipher.getInstance(ChaCha20Poly1305CipherSpi.NAME,
+                                            KryptonProvider.NAME);
+
+        c.init(mode, KEY, new IvParameterSpec(nonce));
+
+        return c;
+    }
+
+    private static byte[] tagOf(final byte[] ciphertext) {
+        return Arrays.copyOfRange(ciphertext, ciphertext.length - 16,
+                                  ciphertext.length);
+    }
+
+    @Test
+    public static void encryptTest() throws GeneralSecurityException {
+        final Cipher c = cipher(Cipher.ENCRYPT_MODE, NONCE);
+
+        c.updateAAD(AAD);
+
+        Assert.assertEquals(c.doFinal(PLAINTEXT), EXPECTED);
+    }
+
+    @Test
+    public static void decryptTest() throws GeneralSecurityException {
+        final Cipher c = cipher(Cipher.DECRYPT_MODE, NONCE);
+
+        c.updateAAD(AAD);
+
+        Assert.assertEquals(c.doFinal(EXPECTED), PLAINTEXT);
+
+        // Decryption may be repeated with the same nonce.
+        c.updateAAD(AAD);
+
+        Assert.assertEquals(c.doFinal(EXPECTED), PLAINTEXT);
+    }
+
+    @Test
+    public static void highNonceTest() throws GeneralSecurityException {
+        final Cipher c = cipher(Cipher.ENCRYPT_MODE, HIGH_NONCE);
+        final byte[] plaintext = pattern(1000, 7, 3);
+
+        Assert.assertEquals(tagOf(c.doFinal(plaintext)), HIGH_TAG);
+    }
+
+    @Test
+    public static void splitTest() throws GeneralSecurityException {
+        final byte[] plaintext = pattern(10000, 7, 3);
+        final byte[] aad = pattern(37, 5, 1);
+        final Cipher oneShot = cipher(Cipher.ENCRYPT_MODE, NONCE);
+
+        oneShot.updateAAD(aad);
+
+        final byte[] expected = oneShot.doFinal(plaintext);
+
+        Assert.assertEquals(tagOf(expected), LONG_TAG);
+
+        for(final int split : new int[] { 1, 15, 16, 17, 1000, 4096, 5000 }) {
+            final Cipher enc = cipher(Cipher.ENCRYPT_MODE, NONCE);
+            final Cipher dec = cipher(Cipher.DECRYPT_MODE, NONCE);
+            final byte[] ciphertext = new byte[expected.length];
+            final byte[] decrypted = new byte[plaintext.length];
+            int outLen = 0;
+
+            enc.updateAAD(aad, 0, 20);
+            enc.updateAAD(aad, 20, aad.length - 20);
+
+            for(int i = 0; i < plaintext.length; i += split) {
+                outLen += enc.update(plaintext, i,
+                                     Math.min(split, plaintext.length - i),
+                                     ciphertext, outLen);
+            }
+
+            outLen += enc.doFinal(ciphertext, outLen);
+
+            Assert.assertEquals(outLen, expected.length);
+            Assert.assertEquals(ciphertext, expected);
+
+            outLen = 0;
+            dec.updateAAD(aad);
+
+            for(int i = 0; i < ciphertext.length; i += split) {
+                outLen += dec.update(ciphertext, i,
+                                     Math.min(split, ciphertext.length - i),
+                                     decrypted, outLen);
+            }
+
+            outLen += dec.doFinal(decrypted, outLen);
+
+            Assert.assertEquals(outLen, plaintext.length);
+            Assert.assertEquals(decrypted, plaintext);
+        }
+    }
+
+    @Test
+    public static void inPlaceTest() throws GeneralSecurityException {
+        final byte[] buf = Arrays.copyOf(PLAINTEXT, EXPECTED.length);
+        final Cipher enc = cipher(Cipher.ENCRYPT_MODE, NONCE);
+        final Cipher dec = cipher(Cipher.DECRYPT_MODE, NONCE);
+
+        enc.updateAAD(AAD);
+        enc.doFinal(buf, 0, PLAINTEXT.length, buf, 0);
+
+        Assert.assertEquals(buf, EXPECTED);
+
+        dec.updateAAD(AAD);
+
+        int len = dec.update(buf, 0, 50, buf, 0);
+
+        len += dec.doFinal(buf, 50, buf.length - 50, buf, len);
+
+        Assert.assertEquals(len, PLAINTEXT.length);
+        Assert.assertEquals(Arrays.copyOf(buf, len), PLAINTEXT);
+    }
+
+    @Test
+    public static void directBufferTest() throws GeneralSecurityException {
+        final Cipher enc = cipher(Cipher.ENCRYPT_MODE, NONCE);
+        final Cipher dec = cipher(Cipher.DECRYPT_MODE, NONCE);
+        final ByteBuffer aad = ByteBuffer.allocateDirect(AAD.length);
+        final ByteBuffer plaintext =
+            ByteBuffer.allocateDirect(PLAINTEXT.length);
+        final ByteBuffer ciphertext =
+            ByteBuffer.allocateDirect(EXPECTED.length);
+        final ByteBuffer decrypted =
+            ByteBuffer.allocateDirect(PLAINTEXT.length);
+        final byte[] actual = new byte[EXPECTED.length];
+
+        aad.put(AAD).flip();
+        plaintext.put(PLAINTEXT).flip();
+        enc.updateAAD(aad);
+        enc.doFinal(plaintext, ciphertext);
+        ciphertext.flip();
+        ciphertext.get(actual).flip();
+
+        Assert.assertEquals(actual, EXPECTED);
+
+        aad.flip();
+        dec.updateAAD(aad);
+        dec.doFinal(ciphertext, decrypted);
+        decrypted.flip();
+
+        final byte[] actualPlaintext = new byte[PLAINTEXT.length];
+
+        decrypted.get(actualPlaintext);
+
+        Assert.assertEquals(actualPlaintext, PLAINTEXT);
+    }
+
+    @Test
+    public static void overlapBufferTest() throws GeneralSecurityException {
+        final byte[] plaintext = pattern(10000, 7, 3);
+        final Cipher oneShot = cipher(Cipher.ENCRYPT_MODE, NONCE);
+        final byte[] expected = oneShot.doFinal(plaintext);
+        final Cipher enc = cipher(Cipher.ENCRYPT_MODE, NONCE);
+        final Cipher dec = cipher(Cipher.DECRYPT_MODE, NONCE);
+        final ByteBuffer buf =
+            ByteBuffer.allocateDirect(expected.length + 26);
+        final ByteBuffer input = buf.duplicate();
+        final ByteBuffer output = buf.duplicate();
+        final byte[] actual = new byte[expected.length];
+        final byte[] actualPlaintext = new byte[plaintext.length];
+
+        // Each output starts part way into its input.
+        input.put(plaintext).flip();
+        output.position(13);
+        enc.doFinal(input, output);
+        output.position(13);
+        output.get(actual);
+
+        Assert.assertEquals(actual, expected);
+
+        input.limit(13 + expected.length).position(13);
+        output.position(26);
+        dec.doFinal(input, output);
+        output.position(26);
+        output.get(actualPlaintext);
+
+        Assert.assertEquals(actualPlaintext, plaintext);
+    }
+
+    @Test
+    public static void badTagTest() throws GeneralSecurityException {
+        final Cipher c = cipher(Cipher.DECRYPT_MODE, NONCE);
+        final byte[] tampered = EXPECTED.clone();
+        final byte[] out = new byte[PLAINTEXT.length];
+
+        tampered[tampered.length - 1] ^= 1;
+        c.updateAAD(AAD);
+
+        try {
+            c.doFinal(tampered, 0, tampered.length, out, 0);
+            Assert.fail("Expected AEADBadTagException");
+        } catch(final AEADBadTagException e) {
+            Assert.assertEquals(out, new byte[PLAINTEXT.length]);
+        }
+
+        // The cipher is reset after a failure.
+        c.updateAAD(AAD);
+
+        Assert.assertEquals(c.doFinal(EXPECTED), PLAINTEXT);
+    }
+
+    @Test
+    public static void badAADTest() throws GeneralSecurityException {
+        final Cipher c = cipher(Cipher.DECRYPT_MODE, NONCE);
+
+        try {
+            c.doFinal(EXPECTED);
+            Assert.fail("Expected AEADBadTagException");
+        } catch(final AEADBadTagException e) {
+            // Expected
+        }
+    }
+
+    @Test(expectedExceptions = IllegalStateException.class)
+    public static void encryptReuseTest() throws GeneralSecurityException {
+        final Cipher c = cipher(Cipher.ENCRYPT_MODE, NONCE);
+
+        c.doFinal(PLAINTEXT);
+        c.doFinal(PLAINTEXT);
+    }
+
+    @Test(expectedExceptions = InvalidKeyException.class)
+    public static void encryptReinitTest() throws GeneralSecurityException {
+        final Cipher c = cipher(Cipher.ENCRYPT_MODE, NONCE);
+
+        c.updateAAD(AAD);
+
+        Assert.assertEquals(c.doFinal(PLAINTEXT), EXPECTED);
+
+        c.init(Cipher.ENCRYPT_MODE, KEY, new IvParameterSpec(NONCE));
+    }
+
+    @Test
+    public static void reinitTest() throws GeneralSecurityException {
+        final Cipher c = cipher(Cipher.ENCRYPT_MODE, NONCE);
+
+        c.updateAAD(AAD);
+
+        Assert.assertEquals(c.doFinal(PLAINTEXT), EXPECTED);
+
+        // A new nonce may be used with the same key.
+        c.init(Cipher.ENCRYPT_MODE, KEY, new IvParameterSpec(HIGH_NONCE));
+
+        Assert.assertEquals(tagOf(c.doFinal(pattern(1000, 7, 3))), HIGH_TAG);
+
+        // Decryption may reuse the last key and nonce.
+        c.init(Cipher.DECRYPT_MODE, KEY, new IvParameterSpec(HIGH_NONCE));
+        c.init(Cipher.DECRYPT_MODE, KEY, new IvParameterSpec(NONCE));
+        c.updateAAD(AAD);
+
+        Assert.assertEquals(c.doFinal(EXPECTED), PLAINTEXT);
+
+        // The first nonce is no longer the last one used to encrypt.
+        c.init(Cipher.ENCRYPT_MODE, KEY, new IvParameterSpec(NONCE));
+        c.updateAAD(AAD);
+
+        Assert.assertEquals(c.doFinal(PLAINTEXT), EXPECTED);
+    }
+
+    @Test
+    public static void parametersTest() throws GeneralSecurityException {
+        final Cipher enc = Cipher.getInstance(ChaCha20Poly1305CipherSpi.NAME,
+                                              KryptonProvider.NAME);
+
+        enc.init(Cipher.ENCRYPT_MODE, KEY);
+
+        final byte[] ciphertext = enc.doFinal(PLAINTEXT);
+        final Cipher dec = Cipher.getInstance(ChaCha20Poly1305CipherSpi.NAME,
+                                              KryptonProvider.NAME);
+
+        Assert.assertEquals(enc.getIV().length,
+                            ChaCha20Poly1305CipherSpi.NONCE_LEN);
+
+        dec.init(Cipher.DECRYPT_MODE, KEY, enc.getParameters());
+
+        Assert.assertEquals(dec.doFinal(ciphertext), PLAINTEXT);
+    }
+}
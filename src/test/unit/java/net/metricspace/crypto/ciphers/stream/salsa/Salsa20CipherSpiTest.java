@@ -37,6 +37,8 @@ import java.security.InvalidAlgorithmParameterException;
 import java.security.spec.InvalidParameterSpecException;
 import java.util.Arrays;
 
+import javax.crypto.spec.IvParameterSpec;
+
 import org.testng.Assert;
 import org.testng.annotations.AfterClass;
 import org.testng.annotations.BeforeClass;
@@ -254,4 +256,62 @@ public class Salsa20CipherSpiTest {
             }
         }
     }
+
+    @Test
+    public static void templateTest()
+        throws InvalidKeyException, InvalidAlgorithmParameterException {
+        final Salsa20CipherSpi spi = new Salsa20CipherSpi();
+        final int[] init = new int[SalsaFamilyCipherSpi.STATE_WORDS];
+        final int[] expected = new int[SalsaFamilyCipherSpi.STATE_WORDS];
+
+        // The block index has bits set in both counter words.
+        spi.engineInit(0, KEY, new IvParameterSpec(IV), null);
+        KeystreamCipherTestUtils.setBlockIdx(spi, 0x123456789L);
+        spi.initBlock();
+
+        final int[] block = KeystreamCipherTestUtils.getBlock(spi);
+
+        System.arraycopy(block, 0, init, 0, init.length);
+        spi.rounds();
+
+        for(int i = 0; i < expected.length; i++) {
+            expected[i] = block[i] + init[i];
+        }
+
+        spi.streamBlock();
+        Assert.assertEquals(KeystreamCipherTestUtils.getBlock(spi), expected);
+    }
+
+    @Test
+    public static void wideKernelTest()
+        throws InvalidKeyException, InvalidAlgorithmParameterException {
+        final int nblocks = (SalsaFamilyCipherSpi.LANES * 2) + 3;
+        final int len = nblocks * SalsaFamilyCipherSpi.STATE_BYTES;
+        final Salsa20CipherSpi spi = new Salsa20CipherSpi();
+        final byte[] actual = new byte[len];
+        final byte[] expected = new byte[len];
+
+        spi.engineInit(0, KEY, new IvParameterSpec(IV), null);
+        spi.streamBlocks(actual, 0, nblocks);
+        Assert.assertEquals(KeystreamCipherTestUtils.getBlockIdx(spi), 0);
+
+        for(int i = 0; i < nblocks; i++) {
+            KeystreamCipherTestUtils.setBlockIdx(spi, i);
+            spi.streamBlock();
+
+            final int[] block = KeystreamCipherTestUtils.getBlock(spi);
+
+            for(int j = 0; j < block.length; j++) {
+                final int pos =
+                    (i * SalsaFamilyCipherSpi.STATE_BYTES) + (j * 4);
+
+                expected[pos] = (byte)block[j];
+                expected[pos + 1] = (byte)(block[j] >>> 8);
+                expected[pos + 2] = (byte)(block[j] >>> 16);
+                expected[pos + 3] = (byte)(block[j] >>> 24);
+            }
+        }
+
+        Assert.assertEquals(actual, expected);
+    }
 }
@@ -0,0 +1,283 @@
+/* Copyright (c) 2018, Eric McCorkle.  All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions
+ * are met:
+ *
+ * * Redistributions of source code must retain the above copyright
+ *   notice, this list of conditions and the following disclaimer.
+ *
+ * * Redistributions in binary form must reproduce the above copyright
+ *   notice, this list of conditions and the following disclaimer in
+ *   the documentation and/or other materials provided with the
+ *   distribution.
+ *
+ * * Neither the name of the copyright holder nor the names of its
+ *   contributors may be used to endorse or promote products derived
+ *   from this software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS
+ * "AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT
+ * LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS
+ * FOR A PARTICULAR PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE
+ * COPYRIGHT HOLDER OR CONTRIBUTORS BE LIABLE FOR ANY DIRECT,
+ * INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES
+ * (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR
+ * SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION)
+ * HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT,
+ * STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED
+ * OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+package net.metricspace.crypto.ciphers.stream.salsa;
+
+import java.security.AlgorithmParameters;
+import java.security.InvalidKeyException;
+import java.security.InvalidAlgorithmParameterException;
+import java.security.spec.InvalidParameterSpecException;
+
+import javax.crypto.spec.IvParameterSpec;
+
+import org.testng.Assert;
+import org.testng.annotations.AfterClass;
+import org.testng.annotations.BeforeClass;
+import org.testng.annotations.DataProvider;
+import org.testng.annotations.Test;
+
+import net.metricspace.crypto.ciphers.stream.KeystreamCipherTestUtils;
+import net.metricspace.crypto.providers.KryptonProviderExperimental;
+
+public class Salsa8CipherSpiTest {
+    private static final Salsa8CipherSpi.Salsa8Key KEY =
+        new Salsa8CipherSpi.Salsa8Key(new int[] {
+                0x04030201, 0x08070605, 0x0c0b0a09, 0x100f0e0d,
+                0x14131211, 0x18171615, 0x1c1b1a19, 0x201f1e1d,
+            });
+
+    private static final byte[] KEY_EXPECTED = new byte[] {
+        (byte)1, (byte)2, (byte)3, (byte)4,
+        (byte)5, (byte)6, (byte)7, (byte)8,
+        (byte)9, (byte)10, (byte)11, (byte)12,
+        (byte)13, (byte)14, (byte)15, (byte)16,
+        (byte)17, (byte)18, (byte)19, (byte)20,
+        (byte)21, (byte)22, (byte)23, (byte)24,
+        (byte)25, (byte)26, (byte)27, (byte)28,
+        (byte)29, (byte)30, (byte)31, (byte)32
+    };
+
+    private static final Salsa8CipherSpi.Salsa8Key FROM_BYTES =
+        new Salsa8CipherSpi.Salsa8Key(KEY_EXPECTED);
+
+    private static final byte[] IV = new byte[] {
+        (byte)3, (byte)1, (byte)4, (byte)1,
+        (byte)5, (byte)9, (byte)2, (byte)6
+    };
+
+    private static final Salsa8CipherSpi.Salsa8Key KEY0 =
+        new Salsa8CipherSpi.Salsa8Key(new int[] {
+                0x00000000, 0x00000000, 0x00000000, 0x00000000,
+                0x00000000, 0x00000000, 0x00000000, 0x00000000,
+            });
+
+    private static final Salsa8CipherSpi.Salsa8Key KEY1 =
+        new Salsa8CipherSpi.Salsa8Key(new int[] {
+                0x00000000, 0x00000000, 0x00000000, 0x00000000,
+                0x00000000, 0x00000000, 0x00000000, 0x01000000,
+            });
+
+    private static final byte[] IV0 = new byte[] {
+        (byte)0, (byte)0, (byte)0, (byte)0,
+        (byte)0, (byte)0, (byte)0, (byte)0
+    };
+
+    private static final byte[] IV1 = new byte[] {
+        (byte)1, (byte)0, (byte)0, (byte)0,
+        (byte)0, (byte)0, (byte)0, (byte)0
+    };
+
+    private static final byte[] IVHI = new byte[] {
+        (byte)0, (byte)0, (byte)0, (byte)0,
+        (byte)0, (byte)0, (byte)0, (byte)1
+    };
+
+    private static final byte[] EXPECTED_KEY0_IV0 = new byte[] {
+        (byte)0x9f, (byte)0x59, (byte)0x1d, (byte)0xa5,
+        (byte)0xf9, (byte)0x9c, (byte)0x23, (byte)0x54,
+        (byte)0x45, (byte)0xea, (byte)0x91, (byte)0x86,
+        (byte)0x6e, (byte)0xad, (byte)0x68, (byte)0x1b,
+        (byte)0x97, (byte)0x7c, (byte)0x4f, (byte)0xfa,
+        (byte)0x03, (byte)0x6d, (byte)0x77, (byte)0x0f,
+        (byte)0xbc, (byte)0xa7, (byte)0x9d, (byte)0x41,
+        (byte)0xfb, (byte)0x01, (byte)0x41, (byte)0x78,
+        (byte)0xcf, (byte)0x8e, (byte)0xcf, (byte)0x31,
+        (byte)0x64, (byte)0xe5, (byte)0xe7, (byte)0x7d,
+        (byte)0x74, (byte)0x95, (byte)0xdc, (byte)0x01,
+        (byte)0x95, (byte)0x08, (byte)0x1e, (byte)0xdb,
+        (byte)0x2f, (byte)0x45, (byte)0xc8, (byte)0xa1,
+        (byte)0xb1, (byte)0x7d, (byte)0x2b, (byte)0xec,
+        (byte)0x8d, (byte)0xf3, (byte)0xef, (byte)0x9f,
+        (byte)0xb7, (byte)0x61, (byte)0x80, (byte)0x75
+    };
+
+    private static final byte[] EXPECTED_KEY1_IV0 = new byte[] {
+        (byte)0x1a, (byte)0xce, (byte)0x47, (byte)0xad,
+        (byte)0xb3, (byte)0xf2, (byte)0xe7, (byte)0x11,
+        (byte)0xa1, (byte)0x96, (byte)0x61, (byte)0xc6,
+        (byte)0x45, (byte)0x74, (byte)0xb9, (byte)0x92,
+        (byte)0x67, (byte)0xc0, (byte)0x92, (byte)0xf4,
+        (byte)0x09, (byte)0x65, (byte)0x8e, (byte)0x75,
+        (byte)0x59, (byte)0xa5, (byte)0xc0, (byte)0x76,
+        (byte)0xe1, (byte)0x2d, (byte)0x41, (byte)0xe8,
+        (byte)0x5e, (byte)0xaf, (byte)0x08, (byte)0x75,
+        (byte)0x95, (byte)0xbe, (byte)0x20, (byte)0x7e,
+        (byte)0x98, (byte)0xf3, (byte)0x9f, (byte)0x44,
+        (byte)0x73, (byte)0x30, (byte)0xf1, (byte)0x57,
+        (byte)0x39, (byte)0xd4, (byte)0x2e, (byte)0x28,
+        (byte)0x93, (byte)0x30, (byte)0x8d, (byte)0x90,
+        (byte)0xe4, (byte)0xec, (byte)0xb7, (byte)0x00,
+        (byte)0xf9, (byte)0xcc, (byte)0x1f, (byte)0x6d
+    };
+
+    private static final byte[] EXPECTED_KEY0_IV1 = new byte[] {
+        (byte)0xf3, (byte)0xf1, (byte)0xd5, (byte)0xf1,
+        (byte)0xe9, (byte)0xa6, (byte)0xd5, (byte)0x24,
+        (byte)0x40, (byte)0x8d, (byte)0xce, (byte)0xb1,
+        (byte)0x50, (byte)0x13, (byte)0xc8, (byte)0x80,
+        (byte)0x6f, (byte)0xf6, (byte)0x38, (byte)0x51,
+        (byte)0x6c, (byte)0x24, (byte)0xe7, (byte)0xdb,
+        (byte)0x34, (byte)0x2a, (byte)0xac, (byte)0x74,
+        (byte)0x90, (byte)0x6c, (byte)0x16, (byte)0x1c,
+        (byte)0xb8, (byte)0xc1, (byte)0xc4, (byte)0x22,
+        (byte)0xaa, (byte)0xfe, (byte)0x45, (byte)0x9e,
+        (byte)0x3d, (byte)0x71, (byte)0x16, (byte)0xee,
+        (byte)0x89, (byte)0xec, (byte)0xc4, (byte)0x8c,
+        (byte)0x28, (byte)0xc3, (byte)0x28, (byte)0x74,
+        (byte)0x08, (byte)0xeb, (byte)0x4d, (byte)0xf0,
+        (byte)0x96, (byte)0xb9, (byte)0xc7, (byte)0xc8,
+        (byte)0x25, (byte)0x00, (byte)0x1a, (byte)0xf3
+    };
+
+    private static final byte[] EXPECTED_KEY0_IVHI = new byte[] {
+        (byte)0xa2, (byte)0xd2, (byte)0x86, (byte)0xf3,
+        (byte)0x45, (byte)0x5c, (byte)0x44, (byte)0xd4,
+        (byte)0xf1, (byte)0xb2, (byte)0xff, (byte)0x76,
+        (byte)0x93, (byte)0x07, (byte)0x6c, (byte)0xd7,
+        (byte)0xba, (byte)0xc0, (byte)0x89, (byte)0xd1,
+        (byte)0x95, (byte)0x7b, (byte)0x51, (byte)0x5b,
+        (byte)0xf2, (byte)0x55, (byte)0xe6, (byte)0x9d,
+        (byte)0x1d, (byte)0x84, (byte)0xf8, (byte)0x36,
+        (byte)0x2c, (byte)0x06, (byte)0xfb, (byte)0xa6,
+        (byte)0xd0, (byte)0x5f, (byte)0x59, (byte)0x42,
+        (byte)0x25, (byte)0x78, (byte)0xa0, (byte)0x34,
+        (byte)0x5c, (byte)0xfe, (byte)0x42, (byte)0xfc,
+        (byte)0x96, (byte)0x45, (byte)0xe3, (byte)0xbb,
+        (byte)0x30, (byte)0x0e, (byte)0xeb, (byte)0x81,
+        (byte)0x02, (byte)0x5a, (byte)0x1c, (byte)0x60,
+        (byte)0xb4, (byte)0xff, (byte)0x8d, (byte)0xd9
+    };
+
+    private static final byte[] EXPECTED_KEY_IV_WIDE = new byte[] {
+        (byte)0x83, (byte)0xfa, (byte)0x1e, (byte)0x37,
+        (byte)0x06, (byte)0x8d, (byte)0xd4, (byte)0xdf,
+        (byte)0xe4, (byte)0x67, (byte)0xa5, (byte)0xf8,
+        (byte)0xbb, (byte)0xa2, (byte)0x55, (byte)0xfa,
+        (byte)0xa7, (byte)0x58, (byte)0x74, (byte)0xd6,
+        (byte)0xfa, (byte)0x20, (byte)0x56, (byte)0x96,
+        (byte)0xd9, (byte)0x04, (byte)0xc3, (byte)0xa8,
+        (byte)0x98, (byte)0xa4, (byte)0xc2, (byte)0x62,
+        (byte)0xbb, (byte)0x68, (byte)0x01, (byte)0x95,
+        (byte)0x0e, (byte)0x2e, (byte)0x5a, (byte)0x7d,
+        (byte)0xd8, (byte)0x2e, (byte)0x6b, (byte)0x10,
+        (byte)0x59, (byte)0x21, (byte)0xa6, (byte)0x43,
+        (byte)0xee, (byte)0xe0, (byte)0xa6, (byte)0xaf,
+        (byte)0xc3, (byte)0x26, (byte)0x68, (byte)0x04,
+        (byte)0x3b, (byte)0xcb, (byte)0x3a, (byte)0x8d,
+        (byte)0x4b, (byte)0xfe, (byte)0x8d, (byte)0x70
+    };
+
+    /**
+     * Offset of {@link #EXPECTED_KEY_IV_WIDE} in the stream, which
+     * falls in a batch computed by the wide kernel.
+     */
+    private static final int WIDE_OFFSET = 1984;
+
+    @BeforeClass
+    public static void init() {
+        KryptonProviderExperimental.register();
+    }
+
+    @AfterClass
+    public static void fini() {
+        KryptonProviderExperimental.unregister();
+    }
+
+    @Test
+    public static void keyTest() {
+        Assert.assertEquals(KEY.getEncoded(), KEY_EXPECTED);
+        Assert.assertEquals(FROM_BYTES.getEncoded(), KEY_EXPECTED);
+    }
+
+    @Test
+    public static void getParametersTest()
+        throws InvalidKeyException, InvalidAlgorithmParameterException,
+               InvalidParameterSpecException {
+        final Salsa8CipherSpi spi = new Salsa8CipherSpi();
+
+        spi.engineInit(0, KEY, new SalsaFamilyParameterSpec(IV, 1000), null);
+
+        final AlgorithmParameters params = spi.engineGetParameters();
+        final SalsaFamilyParameterSpec spec =
+            params.getParameterSpec(SalsaFamilyParameterSpec.class);
+
+        Assert.assertEquals(params.getProvider().getName(),
+                            KryptonProviderExperimental.NAME);
+        Assert.assertEquals(spec.getIV(), IV);
+        Assert.assertEquals(spec.getPosition(), 1000);
+    }
+
+    @DataProvider(name = "vectors")
+    public static Object[][] vectors() {
+        return new Object[][] {
+            new Object[] { KEY0, IV0, 0, EXPECTED_KEY0_IV0 },
+            new Object[] { KEY1, IV0, 0, EXPECTED_KEY1_IV0 },
+            new Object[] { KEY0, IV1, 0, EXPECTED_KEY0_IV1 },
+            new Object[] { KEY0, IVHI, 0, EXPECTED_KEY0_IVHI },
+            new Object[] { KEY, IV, WIDE_OFFSET, EXPECTED_KEY_IV_WIDE }
+        };
+    }
+
+    @Test(dataProvider = "vectors")
+    public static void testVector(final Salsa8CipherSpi.Salsa8Key key,
+                                  final byte[] iv,
+                                  final int offset,
+                                  final byte[] expected)
+        throws InvalidKeyException, InvalidAlgorithmParameterException {
+        final int len = offset + expected.length;
+        final Salsa8CipherSpi spi = new Salsa8CipherSpi();
+        final byte[] actual = new byte[len];
+
+        spi.engineInit(0, key, new IvParameterSpec(iv), null);
+        KeystreamCipherTestUtils.engineUpdate(spi, actual, 0, len, actual, 0);
+
+        for(int i = 0; i < expected.length; i++) {
+            Assert.assertEquals(actual[offset + i], expected[i]);
+        }
+    }
+
+    @Test(dataProvider = "vectors")
+    public static void positionTest(final Salsa8CipherSpi.Salsa8Key key,
+                                    final byte[] iv,
+                                    final int offset,
+                                    final byte[] expected)
+        throws InvalidKeyException, InvalidAlgorithmParameterException {
+        final int len = expected.length;
+        final Salsa8CipherSpi spi = new Salsa8CipherSpi();
+        final byte[] actual = new byte[len];
+
+        spi.engineInit(0, key, new SalsaFamilyParameterSpec(iv, offset),
+                       null);
+        KeystreamCipherTestUtils.engineUpdate(spi, actual, 0, len, actual, 0);
+
+        Assert.assertEquals(actual, expected);
+    }
+}
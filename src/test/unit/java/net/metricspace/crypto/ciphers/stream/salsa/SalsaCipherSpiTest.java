@@ -91,6 +91,9 @@ public class SalsaCipherSpiTest {
             @Override
             protected void rounds() {}
 
+            @Override
+            protected void wideRounds() {}
+
             @Override
             protected AlgorithmParameters engineGetParameters() {
                 return null;
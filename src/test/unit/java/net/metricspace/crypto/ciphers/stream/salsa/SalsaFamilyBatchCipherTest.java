@@ -0,0 +1,253 @@
+/* Copyright (c) 2018, Eric McCorkle.  All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions
+ * are met:
+ *
+ * * Redistributions of source code must retain the above copyright
+ *   notice, this list of conditions and the following disclaimer.
+ *
+ * * Redistributions in binary form must reproduce the above copyright
+ *   notice, this list of conditions and the following disclaimer in
+ *   the documentation and/or other materials provided with the
+ *   distribution.
+ *
+ * * Neither the name of the copyright holder nor the names of its
+ *   contributors may be used to endorse or promote products derived
+ *   from this software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS
+ * "AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT
+ * LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS
+ * FOR A PARTICULAR PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE
+ * COPYRIGHT HOLDER OR CONTRIBUTORS BE LIABLE FOR ANY DIRECT,
+ * INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES
+ * (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR
+ * SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION)
+ * HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT,
+ * STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED
+ * OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+package net.metricspace.crypto.ciphers.stream.salsa;
+
+import java.security.GeneralSecurityException;
+import java.security.InvalidAlgorithmParameterException;
+import java.security.InvalidKeyException;
+import java.util.Random;
+
+import javax.crypto.Cipher;
+import javax.crypto.ShortBufferException;
+import javax.crypto.spec.IvParameterSpec;
+
+import org.testng.Assert;
+import org.testng.annotations.AfterClass;
+import org.testng.annotations.BeforeClass;
+import org.testng.annotations.DataProvider;
+import org.testng.annotations.Test;
+
+import net.metricspace.crypto.ciphers.stream.KeystreamCipherTestUtils;
+import net.metricspace.crypto.ciphers.stream.SeekableKeystreamCipherSpi;
+import net.metricspace.crypto.ciphers.stream.hc.HC256CipherSpi;
+import net.metricspace.crypto.providers.KryptonProvider;
+
+public class SalsaFamilyBatchCipherTest {
+    private static final byte[] KEY_DATA = new byte[] {
+        (byte)1, (byte)2, (byte)3, (byte)4,
+        (byte)5, (byte)6, (byte)7, (byte)8,
+        (byte)9, (byte)10, (byte)11, (byte)12,
+        (byte)13, (byte)14, (byte)15, (byte)16,
+        (byte)17, (byte)18, (byte)19, (byte)20,
+        (byte)21, (byte)22, (byte)23, (byte)24,
+        (byte)25, (byte)26, (byte)27, (byte)28,
+        (byte)29, (byte)30, (byte)31, (byte)32
+    };
+
+    private static final ChaCha20CipherSpi.ChaCha20Key CHACHA_KEY =
+        new ChaCha20CipherSpi.ChaCha20Key(KEY_DATA);
+
+    private static final Salsa20CipherSpi.Salsa20Key SALSA_KEY =
+        new Salsa20CipherSpi.Salsa20Key(KEY_DATA);
+
+    @BeforeClass
+    public static void init() {
+        KryptonProvider.register();
+    }
+
+    @AfterClass
+    public static void fini() {
+        KryptonProvider.unregister();
+    }
+
+    /**
+     * Message lengths, chosen so that some groups are computed by the
+     * wide kernel and some a block at a time, and so that messages
+     * span groups.
+     */
+    @DataProvider(name = "lengths")
+    public static Object[][] lengths() {
+        return new Object[][] {
+            new Object[] { new int[] { 64 } },
+            new Object[] { new int[] { 0, 1, 63, 65, 200 } },
+            new Object[] { new int[] { 512, 512, 512, 3, 64, 128, 511 } },
+            new Object[] { randomLengths(100) }
+        };
+    }
+
+    private static int[] randomLengths(final int count) {
+        final Random random = new Random(count);
+        final int[] out = new int[count];
+
+        for(int i = 0; i < count; i++) {
+            out[i] = random.nextInt(600);
+        }
+
+        return out;
+    }
+
+    private static byte[][] messages(final int[] lengths,
+                                     final int seed) {
+        final Random random = new Random(seed);
+        final byte[][] out = new byte[lengths.length][];
+
+        for(int i = 0; i < lengths.length; i++) {
+            out[i] = new byte[lengths[i]];
+            random.nextBytes(out[i]);
+        }
+
+        return out;
+    }
+
+    private static void check(final String name,
+                              final SalsaFamilyCipherSpi<?> engine,
+                              final SalsaFamilyCipherSpi.SalsaFamilyKey key,
+                              final int[] lengths)
+        throws GeneralSecurityException {
+        final Cipher reference =
+            Cipher.getInstance(name, KryptonProvider.NAME);
+        final byte[][] nonces = new byte[lengths.length][];
+        final byte[][] inputs = messages(lengths, 1);
+        final byte[][] outputs = new byte[lengths.length][];
+        final SalsaFamilyBatchCipher batch =
+            new SalsaFamilyBatchCipher(engine, key);
+
+        for(int i = 0; i < lengths.length; i++) {
+            nonces[i] = new byte[SalsaFamilyCipherSpi.IV_LEN];
+            nonces[i][0] = (byte)i;
+            nonces[i][7] = (byte)(i * 31);
+            outputs[i] = new byte[lengths[i]];
+        }
+
+        batch.crypt(nonces, inputs, outputs);
+
+        // The wide kernel's working state must not outlive the batch.
+        Assert.assertEquals(engine.wide, new int[engine.wide.length]);
+
+        for(int i = 0; i < lengths.length; i++) {
+            reference.init(Cipher.ENCRYPT_MODE, key,
+                           new IvParameterSpec(nonces[i]));
+
+            final byte[] expected = reference.update(inputs[i]);
+
+            // Cipher.update returns null for empty input.
+            Assert.assertEquals(outputs[i],
+                                expected == null ? new byte[0] : expected,
+                                "message " + i);
+        }
+    }
+
+    @Test(dataProvider = "lengths")
+    public static void chachaBatchTest(final int[] lengths)
+        throws GeneralSecurityException {
+        check(ChaCha20CipherSpi.NAME, new ChaCha20CipherSpi(), CHACHA_KEY,
+              lengths);
+    }
+
+    @Test(dataProvider = "lengths")
+    public static void salsaBatchTest(final int[] lengths)
+        throws GeneralSecurityException {
+        check(Salsa20CipherSpi.NAME, new Salsa20CipherSpi(), SALSA_KEY,
+              lengths);
+    }
+
+    @Test
+    public static void inPlaceTest()
+        throws InvalidKeyException, InvalidAlgorithmParameterException,
+               ShortBufferException {
+        final byte[][] nonces = messages(new int[] { 8, 8, 8 }, 2);
+        final byte[][] data = messages(new int[] { 100, 300, 7 }, 3);
+        final byte[][] copy = messages(new int[] { 100, 300, 7 }, 3);
+        final SalsaFamilyBatchCipher batch =
+            new SalsaFamilyBatchCipher(new ChaCha20CipherSpi(), CHACHA_KEY);
+
+        batch.crypt(nonces, data, data);
+        batch.crypt(nonces, data, data);
+
+        for(int i = 0; i < data.length; i++) {
+            Assert.assertEquals(data[i], copy[i]);
+        }
+    }
+
+    @Test(expectedExceptions = IllegalStateException.class)
+    public static void closeTest()
+        throws InvalidKeyException, InvalidAlgorithmParameterException,
+               ShortBufferException {
+        final byte[][] nonces = messages(new int[] { 8 }, 2);
+        final byte[][] data = messages(new int[] { 100 }, 3);
+        final ChaCha20CipherSpi engine = new ChaCha20CipherSpi();
+        final SalsaFamilyBatchCipher batch =
+            new SalsaFamilyBatchCipher(engine, CHACHA_KEY);
+
+        batch.crypt(nonces, data, data);
+        batch.close();
+
+        Assert.assertEquals(KeystreamCipherTestUtils.getBlock(engine),
+                            new int[SalsaFamilyCipherSpi.STATE_WORDS]);
+        Assert.assertEquals(engine.wide, new int[engine.wide.length]);
+
+        batch.crypt(nonces, data, data);
+    }
+
+    @Test(expectedExceptions = InvalidAlgorithmParameterException.class)
+    public static void badNonceTest()
+        throws InvalidKeyException, InvalidAlgorithmParameterException,
+               ShortBufferException {
+        final SalsaFamilyBatchCipher batch =
+            new SalsaFamilyBatchCipher(new ChaCha20CipherSpi(), CHACHA_KEY);
+
+        batch.crypt(new byte[][] { new byte[12] },
+                    new byte[][] { new byte[16] },
+                    new byte[][] { new byte[16] });
+    }
+
+    @Test(expectedExceptions = ShortBufferException.class)
+    public static void shortOutputTest()
+        throws InvalidKeyException, InvalidAlgorithmParameterException,
+               ShortBufferException {
+        final SalsaFamilyBatchCipher batch =
+            new SalsaFamilyBatchCipher(new ChaCha20CipherSpi(), CHACHA_KEY);
+
+        batch.crypt(new byte[][] { new byte[8] },
+                    new byte[][] { new byte[16] },
+                    new byte[][] { new byte[15] });
+    }
+
+    @Test(expectedExceptions = InvalidKeyException.class)
+    public static void wrongKeyTest() throws InvalidKeyException {
+        new SalsaFamilyBatchCipher(new ChaCha20CipherSpi(), SALSA_KEY);
+    }
+
+    @Test(expectedExceptions = IllegalArgumentException.class)
+    @SuppressWarnings("unchecked")
+    public static void otherEngineTest() throws InvalidKeyException {
+        new SalsaFamilyBatchCipher((SeekableKeystreamCipherSpi)
+                                   new HC256CipherSpi(), CHACHA_KEY);
+    }
+
+    @Test(expectedExceptions = IllegalArgumentException.class)
+    public static void extendedTest() throws InvalidKeyException {
+        new SalsaFamilyBatchCipher(new XChaCha20CipherSpi(),
+                                   new XChaCha20CipherSpi.XChaCha20Key(
+                                       KEY_DATA));
+    }
+}
@@ -31,6 +31,7 @@
  */
 package net.metricspace.crypto.ciphers.stream.salsa;
 
+import java.io.IOException;
 import java.security.spec.InvalidParameterSpecException;
 
 import org.testng.Assert;
@@ -63,7 +64,7 @@ public class SalsaFamilyParametersSpiTest {
 
     @Test
     public void engineGetEncodedTest()
-        throws InvalidParameterSpecException {
+        throws InvalidParameterSpecException, IOException {
         final SalsaFamilyParametersSpi spi = new SalsaFamilyParametersSpi();
 
         spi.engineInit(SPEC);
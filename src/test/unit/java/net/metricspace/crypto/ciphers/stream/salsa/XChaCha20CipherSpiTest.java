@@ -0,0 +1,340 @@
+/* Copyright (c) 2018, Eric McCorkle.  All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions
+ * are met:
+ *
+ * * Redistributions of source code must retain the above copyright
+ *   notice, this list of conditions and the following disclaimer.
+ *
+ * * Redistributions in binary form must reproduce the above copyright
+ *   notice, this list of conditions and the following disclaimer in
+ *   the documentation and/or other materials provided with the
+ *   distribution.
+ *
+ * * Neither the name of the copyright holder nor the names of its
+ *   contributors may be used to endorse or promote products derived
+ *   from this software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS
+ * "AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT
+ * LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS
+ * FOR A PARTICULAR PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE
+ * COPYRIGHT HOLDER OR CONTRIBUTORS BE LIABLE FOR ANY DIRECT,
+ * INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES
+ * (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR
+ * SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION)
+ * HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT,
+ * STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED
+ * OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+package net.metricspace.crypto.ciphers.stream.salsa;
+
+import java.security.InvalidAlgorithmParameterException;
+import java.security.InvalidKeyException;
+
+import javax.crypto.spec.IvParameterSpec;
+
+import org.testng.Assert;
+import org.testng.annotations.AfterClass;
+import org.testng.annotations.BeforeClass;
+import org.testng.annotations.Test;
+
+import net.metricspace.crypto.ciphers.stream.KeystreamCipherTestUtils;
+import net.metricspace.crypto.providers.KryptonProvider;
+
+public class XChaCha20CipherSpiTest {
+    // HChaCha20 test vector from draft-irtf-cfrg-xchacha.
+    private static final XChaCha20CipherSpi.XChaCha20Key HCHACHA_KEY =
+        new XChaCha20CipherSpi.XChaCha20Key(new int[] {
+                0x03020100, 0x07060504, 0x0b0a0908, 0x0f0e0d0c,
+                0x13121110, 0x17161514, 0x1b1a1918, 0x1f1e1d1c,
+            });
+
+    private static final byte[] HCHACHA_NONCE = new byte[] {
+        (byte)0x00, (byte)0x00, (byte)0x00, (byte)0x09,
+        (byte)0x00, (byte)0x00, (byte)0x00, (byte)0x4a,
+        (byte)0x00, (byte)0x00, (byte)0x00, (byte)0x00,
+        (byte)0x31, (byte)0x41, (byte)0x59, (byte)0x27
+    };
+
+    private static final int[] HCHACHA_EXPECTED = new int[] {
+        0x423b4182, 0xfe7bb227, 0x50420ed3, 0x737d878a,
+        0xd5e4f9a0, 0x53a8748a, 0x13c42ec1, 0xdcecd326
+    };
+
+    private static final XChaCha20CipherSpi.XChaCha20Key KEY =
+        new XChaCha20CipherSpi.XChaCha20Key(new int[] {
+                0x83828180, 0x87868584, 0x8b8a8988, 0x8f8e8d8c,
+                0x93929190, 0x97969594, 0x9b9a9998, 0x9f9e9d9c,
+            });
+
+    private static final XChaCha20CipherSpi.XChaCha20Key KEY2 =
+        new XChaCha20CipherSpi.XChaCha20Key(new int[] {
+                0xa3a2a1a0, 0xa7a6a5a4, 0xabaaa9a8, 0xafaeadac,
+                0xb3b2b1b0, 0xb7b6b5b4, 0xbbbab9b8, 0xbfbebdbc,
+            });
+
+    private static final byte[] IV = new byte[] {
+        (byte)0x40, (byte)0x41, (byte)0x42, (byte)0x43,
+        (byte)0x44, (byte)0x45, (byte)0x46, (byte)0x47,
+        (byte)0x48, (byte)0x49, (byte)0x4a, (byte)0x4b,
+        (byte)0x4c, (byte)0x4d, (byte)0x4e, (byte)0x4f,
+        (byte)0x50, (byte)0x51, (byte)0x52, (byte)0x53,
+        (byte)0x54, (byte)0x55, (byte)0x56, (byte)0x57
+    };
+
+    private static final byte[] IV2 = new byte[] {
+        (byte)0xe0, (byte)0xe1, (byte)0xe2, (byte)0xe3,
+        (byte)0xe4, (byte)0xe5, (byte)0xe6, (byte)0xe7,
+        (byte)0xe8, (byte)0xe9, (byte)0xea, (byte)0xeb,
+        (byte)0xec, (byte)0xed, (byte)0xee, (byte)0xef,
+        (byte)0xf0, (byte)0xf1, (byte)0xf2, (byte)0xf3,
+        (byte)0xf4, (byte)0xf5, (byte)0xf6, (byte)0xf7
+    };
+
+    // Same subkey nonce as IV2, different stream nonce.
+    private static final byte[] IV3 = new byte[] {
+        (byte)0xe0, (byte)0xe1, (byte)0xe2, (byte)0xe3,
+        (byte)0xe4, (byte)0xe5, (byte)0xe6, (byte)0xe7,
+        (byte)0xe8, (byte)0xe9, (byte)0xea, (byte)0xeb,
+        (byte)0xec, (byte)0xed, (byte)0xee, (byte)0xef,
+        (byte)0x10, (byte)0x11, (byte)0x12, (byte)0x13,
+        (byte)0x14, (byte)0x15, (byte)0x16, (byte)0x17
+    };
+
+    private static final byte[] EXPECTED = new byte[] {
+        (byte)0x7b, (byte)0x19, (byte)0x1f, (byte)0x80,
+        (byte)0xf3, (byte)0x61, (byte)0xf0, (byte)0x99,
+        (byte)0x09, (byte)0x4f, (byte)0x6f, (byte)0x4b,
+        (byte)0x8f, (byte)0xb9, (byte)0x7d, (byte)0xf8,
+        (byte)0x47, (byte)0xcc, (byte)0x68, (byte)0x73,
+        (byte)0xa8, (byte)0xf2, (byte)0xb1, (byte)0x90,
+        (byte)0xdd, (byte)0x73, (byte)0x80, (byte)0x71,
+        (byte)0x83, (byte)0xf9, (byte)0x07, (byte)0xd5,
+        (byte)0xa1, (byte)0xcb, (byte)0x27, (byte)0x38,
+        (byte)0x5b, (byte)0x00, (byte)0x32, (byte)0x9f,
+        (byte)0x7d, (byte)0xdc, (byte)0x12, (byte)0x70,
+        (byte)0x59, (byte)0xd6, (byte)0x88, (byte)0x25,
+        (byte)0x51, (byte)0xa1, (byte)0x20, (byte)0xe7,
+        (byte)0x63, (byte)0x13, (byte)0x52, (byte)0xe9,
+        (byte)0xb0, (byte)0x38, (byte)0x15, (byte)0x72,
+        (byte)0xe9, (byte)0x50, (byte)0x15, (byte)0x5a,
+        (byte)0xf1, (byte)0x0c, (byte)0x73, (byte)0xf4,
+        (byte)0x5b, (byte)0xf0, (byte)0xf4, (byte)0x5a,
+        (byte)0xfb, (byte)0x12, (byte)0x77, (byte)0xd3,
+        (byte)0xf6, (byte)0xae, (byte)0x9d, (byte)0x55,
+        (byte)0x32, (byte)0x47, (byte)0x72, (byte)0x6e,
+        (byte)0x05, (byte)0x44, (byte)0x9c, (byte)0xec,
+        (byte)0xca, (byte)0xba, (byte)0xf5, (byte)0x0c,
+        (byte)0x42, (byte)0x55, (byte)0x0d, (byte)0xc8,
+        (byte)0x00, (byte)0x3c, (byte)0x10, (byte)0x7d,
+        (byte)0x2b, (byte)0x6d, (byte)0x9f, (byte)0x7d,
+        (byte)0x31, (byte)0xd3, (byte)0xe1, (byte)0x49,
+        (byte)0x6e, (byte)0x93, (byte)0x5e, (byte)0x5a,
+        (byte)0xc1, (byte)0x11, (byte)0xaa, (byte)0x14,
+        (byte)0xac, (byte)0x3b, (byte)0xa4, (byte)0x70,
+        (byte)0xae, (byte)0xe4, (byte)0x97, (byte)0x57,
+        (byte)0x7d, (byte)0x66, (byte)0x94, (byte)0x3d,
+        (byte)0x41, (byte)0xe0, (byte)0xe2, (byte)0x84,
+        (byte)0x62, (byte)0xdb, (byte)0xbc, (byte)0x65,
+        (byte)0xc5, (byte)0x72, (byte)0x19, (byte)0x99,
+        (byte)0xe4, (byte)0xae, (byte)0xc9, (byte)0xbe,
+        (byte)0x4b, (byte)0x57, (byte)0xc9, (byte)0x0b,
+        (byte)0xa5, (byte)0x1c, (byte)0x3c, (byte)0xfa,
+        (byte)0x04, (byte)0xd7, (byte)0x14, (byte)0x15,
+        (byte)0x16, (byte)0xa6, (byte)0x91, (byte)0x8a,
+        (byte)0x42, (byte)0x8b, (byte)0x03, (byte)0x29,
+        (byte)0xf9, (byte)0x43, (byte)0x0a, (byte)0xc6,
+        (byte)0x03, (byte)0xe4, (byte)0x76, (byte)0xd6,
+        (byte)0x77, (byte)0xa3, (byte)0xab, (byte)0x7a,
+        (byte)0xc1, (byte)0x00, (byte)0xca, (byte)0x33,
+        (byte)0xb6, (byte)0x0f, (byte)0x72, (byte)0x46,
+        (byte)0x9a, (byte)0x9b, (byte)0xbf, (byte)0xb3,
+        (byte)0x2b, (byte)0x59, (byte)0x35, (byte)0x97,
+        (byte)0x46, (byte)0x4a, (byte)0x28, (byte)0x2d,
+        (byte)0x75, (byte)0x7f, (byte)0xd1, (byte)0xd3,
+        (byte)0x9b, (byte)0x39, (byte)0xd0, (byte)0x02,
+        (byte)0x55, (byte)0x4f, (byte)0x82, (byte)0xae,
+        (byte)0x5d, (byte)0x9a, (byte)0xc9, (byte)0xe7,
+        (byte)0x55, (byte)0x28, (byte)0xc2, (byte)0x1d,
+        (byte)0xf8, (byte)0xdc, (byte)0xaf, (byte)0xc6,
+        (byte)0x77, (byte)0xd6, (byte)0xd1, (byte)0xd9,
+        (byte)0xe5, (byte)0x65, (byte)0xc9, (byte)0x6b,
+        (byte)0x47, (byte)0x71, (byte)0xf5, (byte)0xee,
+        (byte)0x48, (byte)0xac, (byte)0x7a, (byte)0xec,
+        (byte)0x28, (byte)0xbe, (byte)0x9b, (byte)0x38,
+        (byte)0x4e, (byte)0x39, (byte)0x2a, (byte)0x3b,
+        (byte)0x1c, (byte)0xf2, (byte)0xc4, (byte)0x41,
+        (byte)0xde, (byte)0x6b, (byte)0xd7, (byte)0x9b,
+        (byte)0x9e, (byte)0xbb, (byte)0x75, (byte)0xaa
+    };
+
+    private static final byte[] EXPECTED_IV2 = new byte[] {
+        (byte)0x74, (byte)0xa3, (byte)0x84, (byte)0x35,
+        (byte)0xbc, (byte)0xa2, (byte)0x91, (byte)0xcc,
+        (byte)0x05, (byte)0xc6, (byte)0x85, (byte)0xb2,
+        (byte)0x72, (byte)0x89, (byte)0xb2, (byte)0x63,
+        (byte)0xd0, (byte)0x83, (byte)0x02, (byte)0x5d,
+        (byte)0xee, (byte)0xee, (byte)0x26, (byte)0xec,
+        (byte)0x95, (byte)0x9a, (byte)0x77, (byte)0x89,
+        (byte)0x73, (byte)0x3f, (byte)0x5f, (byte)0xe7,
+        (byte)0xe3, (byte)0x24, (byte)0xc1, (byte)0x30,
+        (byte)0x97, (byte)0x4e, (byte)0x1d, (byte)0x88,
+        (byte)0x18, (byte)0x4c, (byte)0xf1, (byte)0xbd,
+        (byte)0x0b, (byte)0xa5, (byte)0x3c, (byte)0xf1,
+        (byte)0x49, (byte)0x18, (byte)0xd7, (byte)0xe6,
+        (byte)0xa3, (byte)0xfc, (byte)0x5d, (byte)0xea,
+        (byte)0x6d, (byte)0xd8, (byte)0xa5, (byte)0x56,
+        (byte)0x10, (byte)0x49, (byte)0x38, (byte)0x48
+    };
+
+    private static final byte[] EXPECTED_IV3 = new byte[] {
+        (byte)0xc2, (byte)0xc3, (byte)0xba, (byte)0xb1,
+        (byte)0xed, (byte)0x07, (byte)0x99, (byte)0x20,
+        (byte)0xc3, (byte)0xa8, (byte)0x73, (byte)0x08,
+        (byte)0x3b, (byte)0xaa, (byte)0x07, (byte)0x74,
+        (byte)0x88, (byte)0xaf, (byte)0xf1, (byte)0xe4,
+        (byte)0xf3, (byte)0xd3, (byte)0x03, (byte)0xf3,
+        (byte)0x99, (byte)0xd2, (byte)0x11, (byte)0x54,
+        (byte)0x30, (byte)0xab, (byte)0x87, (byte)0xc2,
+        (byte)0x75, (byte)0x89, (byte)0xb7, (byte)0xed,
+        (byte)0x64, (byte)0xe6, (byte)0xd3, (byte)0x43,
+        (byte)0x19, (byte)0x25, (byte)0x5a, (byte)0x0b,
+        (byte)0xb5, (byte)0x25, (byte)0x04, (byte)0xfe,
+        (byte)0x13, (byte)0xd8, (byte)0xfd, (byte)0x15,
+        (byte)0x9a, (byte)0x27, (byte)0xfc, (byte)0xdb,
+        (byte)0x7d, (byte)0xff, (byte)0xda, (byte)0x32,
+        (byte)0x5e, (byte)0x2c, (byte)0xd0, (byte)0x52
+    };
+
+    private static final byte[] EXPECTED_KEY2_IV3 = new byte[] {
+        (byte)0x2c, (byte)0x23, (byte)0xa2, (byte)0x91,
+        (byte)0x82, (byte)0x44, (byte)0x03, (byte)0xf1,
+        (byte)0x9d, (byte)0xb7, (byte)0x6e, (byte)0xb1,
+        (byte)0xdd, (byte)0xef, (byte)0xe2, (byte)0x64,
+        (byte)0xd6, (byte)0xf9, (byte)0x86, (byte)0x19,
+        (byte)0xf0, (byte)0x77, (byte)0x97, (byte)0xaa,
+        (byte)0xdc, (byte)0xa0, (byte)0x14, (byte)0x77,
+        (byte)0x84, (byte)0xad, (byte)0xc8, (byte)0x02,
+        (byte)0x89, (byte)0xbf, (byte)0xcb, (byte)0x2a,
+        (byte)0x44, (byte)0xfd, (byte)0xcf, (byte)0xef,
+        (byte)0x0f, (byte)0x8e, (byte)0xe3, (byte)0xd4,
+        (byte)0xa8, (byte)0xb9, (byte)0xdc, (byte)0xfb,
+        (byte)0xad, (byte)0x8f, (byte)0x9c, (byte)0x9d,
+        (byte)0x13, (byte)0x74, (byte)0x28, (byte)0x9c,
+        (byte)0xc9, (byte)0x49, (byte)0x2b, (byte)0xbd,
+        (byte)0xff, (byte)0x6a, (byte)0xf0, (byte)0x5d
+    };
+
+    @BeforeClass
+    public static void init() {
+        KryptonProvider.register();
+    }
+
+    @AfterClass
+    public static void fini() {
+        KryptonProvider.unregister();
+    }
+
+    private static byte[] stream(final XChaCha20CipherSpi.XChaCha20Key key,
+                                 final byte[] iv,
+                                 final int len)
+        throws InvalidKeyException, InvalidAlgorithmParameterException {
+        final XChaCha20CipherSpi spi = new XChaCha20CipherSpi();
+        final byte[] out = new byte[len];
+
+        spi.engineInit(0, key, new IvParameterSpec(iv), null);
+        KeystreamCipherTestUtils.engineUpdate(spi, out, 0, len, out, 0);
+
+        return out;
+    }
+
+    @Test
+    public static void hchachaTest() {
+        final XChaCha20CipherSpi spi = new XChaCha20CipherSpi();
+        final int[] actual = new int[8];
+
+        KeystreamCipherTestUtils.setKey(spi, HCHACHA_KEY);
+        System.arraycopy(HCHACHA_NONCE, 0,
+                         KeystreamCipherTestUtils.getIV(spi), 0,
+                         HCHACHA_NONCE.length);
+        spi.deriveSubkey(actual);
+
+        Assert.assertEquals(actual, HCHACHA_EXPECTED);
+    }
+
+    @Test
+    public static void testVector()
+        throws InvalidKeyException, InvalidAlgorithmParameterException {
+        Assert.assertEquals(stream(KEY, IV, EXPECTED.length), EXPECTED);
+    }
+
+    @Test
+    public static void reinitTest()
+        throws InvalidKeyException, InvalidAlgorithmParameterException {
+        final XChaCha20CipherSpi spi = new XChaCha20CipherSpi();
+        final byte[] scratch = new byte[64];
+        final byte[] actual = new byte[EXPECTED.length];
+
+        // Each init must derive the subkey from the current key and
+        // nonce, even though it may be reused between them.
+        spi.engineInit(0, KEY, new IvParameterSpec(IV), null);
+        KeystreamCipherTestUtils.engineUpdate(spi, scratch, 0, 64,
+                                              scratch, 0);
+        spi.engineInit(0, KEY, new IvParameterSpec(IV2), null);
+        KeystreamCipherTestUtils.engineUpdate(spi, scratch, 0, 64,
+                                              scratch, 0);
+        spi.engineInit(0, KEY, new IvParameterSpec(IV), null);
+        KeystreamCipherTestUtils.engineUpdate(spi, actual, 0, actual.length,
+                                              actual, 0);
+        Assert.assertEquals(actual, EXPECTED);
+
+        final byte[] actual2 = new byte[EXPECTED_IV2.length];
+
+        spi.engineInit(0, KEY, new IvParameterSpec(IV2), null);
+        KeystreamCipherTestUtils.engineUpdate(spi, actual2, 0, actual2.length,
+                                              actual2, 0);
+        Assert.assertEquals(actual2, EXPECTED_IV2);
+
+        final byte[] actual3 = new byte[EXPECTED_IV3.length];
+
+        spi.engineInit(0, KEY, new IvParameterSpec(IV3), null);
+        KeystreamCipherTestUtils.engineUpdate(spi, actual3, 0, actual3.length,
+                                              actual3, 0);
+        Assert.assertEquals(actual3, EXPECTED_IV3);
+
+        final byte[] actual4 = new byte[EXPECTED_KEY2_IV3.length];
+
+        spi.engineInit(0, KEY2, new IvParameterSpec(IV3), null);
+        KeystreamCipherTestUtils.engineUpdate(spi, actual4, 0, actual4.length,
+                                              actual4, 0);
+        Assert.assertEquals(actual4, EXPECTED_KEY2_IV3);
+    }
+
+    @Test
+    public static void discardSubkeyTest()
+        throws InvalidKeyException, InvalidAlgorithmParameterException {
+        final XChaCha20CipherSpi spi = new XChaCha20CipherSpi();
+        final byte[] actual = new byte[EXPECTED.length];
+
+        spi.engineInit(0, KEY, new IvParameterSpec(IV), null);
+        spi.discardTemplate();
+        Assert.assertEquals(spi.keyWords(), new int[8]);
+
+        // The same key and nonce must derive the subkey again.
+        spi.engineInit(0, KEY, new IvParameterSpec(IV), null);
+        KeystreamCipherTestUtils.engineUpdate(spi, actual, 0, actual.length,
+                                              actual, 0);
+        Assert.assertEquals(actual, EXPECTED);
+    }
+
+    @Test(expectedExceptions = InvalidAlgorithmParameterException.class)
+    public static void shortIVTest()
+        throws InvalidKeyException, InvalidAlgorithmParameterException {
+        final XChaCha20CipherSpi spi = new XChaCha20CipherSpi();
+
+        spi.engineInit(0, KEY, new IvParameterSpec(new byte[8]), null);
+    }
+}
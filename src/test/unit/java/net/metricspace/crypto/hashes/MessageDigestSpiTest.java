@@ -31,6 +31,7 @@
  */
 package net.metricspace.crypto.hashes;
 
+import java.nio.ByteBuffer;
 import java.util.Arrays;
 
 import java.security.DigestException;
@@ -83,4 +84,91 @@ public abstract class MessageDigestSpiTest {
         spi.engineDigest(actual, 0, hashBytes);
         Assert.assertEquals(actual, expected);
     }
+
+    @Test(dataProvider = "hash",
+          description = "Test hash with input split into pieces")
+    public void splitHashTest(final byte[] input,
+                              final byte[] expected)
+        throws DigestException {
+        for(int i = 1; i <= input.length; i++) {
+            final BlockMessageDigestSpi spi = getMessageDigest();
+            final byte[] actual = new byte[hashBytes];
+
+            for(int j = 0; j < input.length; j += i) {
+                spi.engineUpdate(input, j, Math.min(i, input.length - j));
+            }
+
+            spi.engineDigest(actual, 0, hashBytes);
+            Assert.assertEquals(actual, expected);
+        }
+    }
+
+    @Test(dataProvider = "hash",
+          description = "Test hash with heap and direct buffers")
+    public void bufferHashTest(final byte[] input,
+                               final byte[] expected)
+        throws DigestException {
+        final ByteBuffer[] bufs = new ByteBuffer[] {
+            ByteBuffer.allocate(input.length + 3),
+            ByteBuffer.allocateDirect(input.length + 3)
+        };
+
+        for(final ByteBuffer buf : bufs) {
+            final BlockMessageDigestSpi spi = getMessageDigest();
+            final byte[] actual = new byte[hashBytes];
+
+            buf.position(3);
+            buf.put(input);
+            buf.position(3);
+            spi.engineUpdate(buf.slice());
+            spi.engineDigest(actual, 0, hashBytes);
+            Assert.assertEquals(actual, expected);
+        }
+    }
+
+    @Test(description = "Test that a long message hashes the same " +
+                        "however it is fed in")
+    public void longHashTest()
+        throws DigestException {
+        final byte[] input = new byte[4099];
+
+        for(int i = 0; i < input.length; i++) {
+            input[i] = (byte)(i * 31 + (i >>> 8));
+        }
+
+        final BlockMessageDigestSpi bytewise = getMessageDigest();
+        final byte[] expected = new byte[hashBytes];
+
+        for(int i = 0; i < input.length; i++) {
+            bytewise.engineUpdate(input[i]);
+        }
+
+        bytewise.engineDigest(expected, 0, hashBytes);
+
+        final int[] splits = new int[] { 1, 7, 64, 65, 127, 128, 129,
+                                         136, 1000, 4099 };
+
+        for(final int split : splits) {
+            final BlockMessageDigestSpi spi = getMessageDigest();
+            final BlockMessageDigestSpi direct = getMessageDigest();
+            final ByteBuffer buf = ByteBuffer.allocateDirect(input.length);
+            final byte[] actual = new byte[hashBytes];
+
+            buf.put(input);
+            buf.flip();
+
+            for(int i = 0; i < input.length; i += split) {
+                final int len = Math.min(split, input.length - i);
+
+                spi.engineUpdate(input, i, len);
+                buf.limit(i + len);
+                direct.engineUpdate(buf);
+            }
+
+            spi.engineDigest(actual, 0, hashBytes);
+            Assert.assertEquals(actual, expected);
+            direct.engineDigest(actual, 0, hashBytes);
+            Assert.assertEquals(actual, expected);
+        }
+    }
 }
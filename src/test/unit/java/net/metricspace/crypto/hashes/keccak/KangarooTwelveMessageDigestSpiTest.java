@@ -0,0 +1,352 @@
+/* Copyright (c) 2018, Eric McCorkle.  All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions
+ * are met:
+ *
+ * * Redistributions of source code must retain the above copyright
+ *   notice, this list of conditions and the following disclaimer.
+ *
+ * * Redistributions in binary form must reproduce the above copyright
+ *   notice, this list of conditions and the following disclaimer in
+ *   the documentation and/or other materials provided with the
+ *   distribution.
+ *
+ * * Neither the name of the copyright holder nor the names of its
+ *   contributors may be used to endorse or promote products derived
+ *   from this software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS
+ * "AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT
+ * LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS
+ * FOR A PARTICULAR PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE
+ * COPYRIGHT HOLDER OR CONTRIBUTORS BE LIABLE FOR ANY DIRECT,
+ * INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES
+ * (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR
+ * SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION)
+ * HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT,
+ * STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED
+ * OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+package net.metricspace.crypto.hashes.keccak;
+
+import java.nio.ByteBuffer;
+
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.security.NoSuchProviderException;
+import java.util.concurrent.ForkJoinPool;
+
+import org.testng.Assert;
+import org.testng.annotations.AfterClass;
+import org.testng.annotations.BeforeClass;
+import org.testng.annotations.DataProvider;
+import org.testng.annotations.Test;
+
+import net.metricspace.crypto.hashes.MessageDigestSpiTest;
+import net.metricspace.crypto.providers.KryptonProvider;
+
+public class KangarooTwelveMessageDigestSpiTest extends MessageDigestSpiTest {
+    private static final byte[] EXPECTED_EMPTY_HASH = new byte[] {
+        (byte)0x1a, (byte)0xc2, (byte)0xd4, (byte)0x50,
+        (byte)0xfc, (byte)0x3b, (byte)0x42, (byte)0x05,
+        (byte)0xd1, (byte)0x9d, (byte)0xa7, (byte)0xbf,
+        (byte)0xca, (byte)0x1b, (byte)0x37, (byte)0x51,
+        (byte)0x3c, (byte)0x08, (byte)0x03, (byte)0x57,
+        (byte)0x7a, (byte)0xc7, (byte)0x16, (byte)0x7f,
+        (byte)0x06, (byte)0xfe, (byte)0x2c, (byte)0xe1,
+        (byte)0xf0, (byte)0xef, (byte)0x39, (byte)0xe5
+    };
+
+    private static final Object[][] HASH_CASES = new Object[][] {
+        new Object[] {
+            pattern(1),
+            new byte[] {
+                (byte)0x2b, (byte)0xda, (byte)0x92, (byte)0x45,
+                (byte)0x0e, (byte)0x8b, (byte)0x14, (byte)0x7f,
+                (byte)0x8a, (byte)0x7c, (byte)0xb6, (byte)0x29,
+                (byte)0xe7, (byte)0x84, (byte)0xa0, (byte)0x58,
+                (byte)0xef, (byte)0xca, (byte)0x7c, (byte)0xf7,
+                (byte)0xd8, (byte)0x21, (byte)0x8e, (byte)0x02,
+                (byte)0xd3, (byte)0x45, (byte)0xdf, (byte)0xaa,
+                (byte)0x65, (byte)0x24, (byte)0x4a, (byte)0x1f
+            }
+        },
+        new Object[] {
+            pattern(17),
+            new byte[] {
+                (byte)0x6b, (byte)0xf7, (byte)0x5f, (byte)0xa2,
+                (byte)0x23, (byte)0x91, (byte)0x98, (byte)0xdb,
+                (byte)0x47, (byte)0x72, (byte)0xe3, (byte)0x64,
+                (byte)0x78, (byte)0xf8, (byte)0xe1, (byte)0x9b,
+                (byte)0x0f, (byte)0x37, (byte)0x12, (byte)0x05,
+                (byte)0xf6, (byte)0xa9, (byte)0xa9, (byte)0x3a,
+                (byte)0x27, (byte)0x3f, (byte)0x51, (byte)0xdf,
+                (byte)0x37, (byte)0x12, (byte)0x28, (byte)0x88
+            }
+        },
+        new Object[] {
+            pattern(289),
+            new byte[] {
+                (byte)0x0c, (byte)0x31, (byte)0x5e, (byte)0xbc,
+                (byte)0xde, (byte)0xdb, (byte)0xf6, (byte)0x14,
+                (byte)0x26, (byte)0xde, (byte)0x7d, (byte)0xcf,
+                (byte)0x8f, (byte)0xb7, (byte)0x25, (byte)0xd1,
+                (byte)0xe7, (byte)0x46, (byte)0x75, (byte)0xd7,
+                (byte)0xf5, (byte)0x32, (byte)0x7a, (byte)0x50,
+                (byte)0x67, (byte)0xf3, (byte)0x67, (byte)0xb1,
+                (byte)0x08, (byte)0xec, (byte)0xb6, (byte)0x7c
+            }
+        },
+        new Object[] {
+            pattern(4913),
+            new byte[] {
+                (byte)0xcb, (byte)0x55, (byte)0x2e, (byte)0x2e,
+                (byte)0xc7, (byte)0x7d, (byte)0x99, (byte)0x10,
+                (byte)0x70, (byte)0x1d, (byte)0x57, (byte)0x8b,
+                (byte)0x45, (byte)0x7d, (byte)0xdf, (byte)0x77,
+                (byte)0x2c, (byte)0x12, (byte)0xe3, (byte)0x22,
+                (byte)0xe4, (byte)0xee, (byte)0x7f, (byte)0xe4,
+                (byte)0x17, (byte)0xf9, (byte)0x2c, (byte)0x75,
+                (byte)0x8f, (byte)0x0d, (byte)0x59, (byte)0xd0
+            }
+        },
+        new Object[] {
+            pattern(8191),
+            new byte[] {
+                (byte)0x1b, (byte)0x57, (byte)0x76, (byte)0x36,
+                (byte)0xf7, (byte)0x23, (byte)0x64, (byte)0x3e,
+                (byte)0x99, (byte)0x0c, (byte)0xc7, (byte)0xd6,
+                (byte)0xa6, (byte)0x59, (byte)0x83, (byte)0x74,
+                (byte)0x36, (byte)0xfd, (byte)0x6a, (byte)0x10,
+                (byte)0x36, (byte)0x26, (byte)0x60, (byte)0x0e,
+                (byte)0xb8, (byte)0x30, (byte)0x1c, (byte)0xd1,
+                (byte)0xdb, (byte)0xe5, (byte)0x53, (byte)0xd6
+            }
+        },
+        new Object[] {
+            pattern(8192),
+            new byte[] {
+                (byte)0x48, (byte)0xf2, (byte)0x56, (byte)0xf6,
+                (byte)0x77, (byte)0x2f, (byte)0x9e, (byte)0xdf,
+                (byte)0xb6, (byte)0xa8, (byte)0xb6, (byte)0x61,
+                (byte)0xec, (byte)0x92, (byte)0xdc, (byte)0x93,
+                (byte)0xb9, (byte)0x5e, (byte)0xbd, (byte)0x05,
+                (byte)0xa0, (byte)0x8a, (byte)0x17, (byte)0xb3,
+                (byte)0x9a, (byte)0xe3, (byte)0x49, (byte)0x08,
+                (byte)0x70, (byte)0xc9, (byte)0x26, (byte)0xc3
+            }
+        }
+    };
+
+    /**
+     * Long messages, customization strings, and longer output, for
+     * the tree tests.
+     */
+    private static final Object[][] TREE_CASES = new Object[][] {
+        new Object[] {
+            pattern(0),
+            pattern(0),
+            new byte[] {
+                (byte)0x1a, (byte)0xc2, (byte)0xd4, (byte)0x50,
+                (byte)0xfc, (byte)0x3b, (byte)0x42, (byte)0x05,
+                (byte)0xd1, (byte)0x9d, (byte)0xa7, (byte)0xbf,
+                (byte)0xca, (byte)0x1b, (byte)0x37, (byte)0x51,
+                (byte)0x3c, (byte)0x08, (byte)0x03, (byte)0x57,
+                (byte)0x7a, (byte)0xc7, (byte)0x16, (byte)0x7f,
+                (byte)0x06, (byte)0xfe, (byte)0x2c, (byte)0xe1,
+                (byte)0xf0, (byte)0xef, (byte)0x39, (byte)0xe5,
+                (byte)0x42, (byte)0x69, (byte)0xc0, (byte)0x56,
+                (byte)0xb8, (byte)0xc8, (byte)0x2e, (byte)0x48,
+                (byte)0x27, (byte)0x60, (byte)0x38, (byte)0xb6,
+                (byte)0xd2, (byte)0x92, (byte)0x96, (byte)0x6c,
+                (byte)0xc0, (byte)0x7a, (byte)0x3d, (byte)0x46,
+                (byte)0x45, (byte)0x27, (byte)0x2e, (byte)0x31,
+                (byte)0xff, (byte)0x38, (byte)0x50, (byte)0x81,
+                (byte)0x39, (byte)0xeb, (byte)0x0a, (byte)0x71
+            }
+        },
+        new Object[] {
+            pattern(83521),
+            pattern(0),
+            new byte[] {
+                (byte)0x87, (byte)0x01, (byte)0x04, (byte)0x5e,
+                (byte)0x22, (byte)0x20, (byte)0x53, (byte)0x45,
+                (byte)0xff, (byte)0x4d, (byte)0xda, (byte)0x05,
+                (byte)0x55, (byte)0x5c, (byte)0xbb, (byte)0x5c,
+                (byte)0x3a, (byte)0xf1, (byte)0xa7, (byte)0x71,
+                (byte)0xc2, (byte)0xb8, (byte)0x9b, (byte)0xae,
+                (byte)0xf3, (byte)0x7d, (byte)0xb4, (byte)0x3d,
+                (byte)0x99, (byte)0x98, (byte)0xb9, (byte)0xfe
+            }
+        },
+        new Object[] {
+            pattern(1419857),
+            pattern(0),
+            new byte[] {
+                (byte)0x84, (byte)0x4d, (byte)0x61, (byte)0x09,
+                (byte)0x33, (byte)0xb1, (byte)0xb9, (byte)0x96,
+                (byte)0x3c, (byte)0xbd, (byte)0xeb, (byte)0x5a,
+                (byte)0xe3, (byte)0xb6, (byte)0xb0, (byte)0x5c,
+                (byte)0xc7, (byte)0xcb, (byte)0xd6, (byte)0x7c,
+                (byte)0xee, (byte)0xdf, (byte)0x88, (byte)0x3e,
+                (byte)0xb6, (byte)0x78, (byte)0xa0, (byte)0xa8,
+                (byte)0xe0, (byte)0x37, (byte)0x16, (byte)0x82
+            }
+        },
+        new Object[] {
+            pattern(24581),
+            pattern(41),
+            new byte[] {
+                (byte)0x01, (byte)0x45, (byte)0x90, (byte)0xb7,
+                (byte)0x9c, (byte)0xaa, (byte)0x30, (byte)0xff,
+                (byte)0x40, (byte)0x87, (byte)0x6b, (byte)0x9c,
+                (byte)0xc6, (byte)0xad, (byte)0x62, (byte)0x2f,
+                (byte)0xdb, (byte)0x69, (byte)0x22, (byte)0xe0,
+                (byte)0x96, (byte)0x8e, (byte)0xae, (byte)0xfc,
+                (byte)0x9f, (byte)0x22, (byte)0x6a, (byte)0x5f,
+                (byte)0x3f, (byte)0x23, (byte)0xc2, (byte)0xeb
+            }
+        },
+        new Object[] {
+            pattern(8190),
+            pattern(1),
+            new byte[] {
+                (byte)0x17, (byte)0xc7, (byte)0xac, (byte)0xac,
+                (byte)0x24, (byte)0xd4, (byte)0x65, (byte)0x33,
+                (byte)0xc5, (byte)0xaa, (byte)0xcc, (byte)0x95,
+                (byte)0xfb, (byte)0x3c, (byte)0xe1, (byte)0x57,
+                (byte)0x55, (byte)0xba, (byte)0xdc, (byte)0x60,
+                (byte)0xf0, (byte)0x96, (byte)0xb1, (byte)0x06,
+                (byte)0x16, (byte)0xe8, (byte)0x3e, (byte)0xfc,
+                (byte)0x41, (byte)0x47, (byte)0x4a, (byte)0x84
+            }
+        }
+    };
+
+    /**
+     * Update sizes for the tree tests.  Besides the whole message at
+     * once, these include sizes that are not a whole number of
+     * chunks, and one that gives runs too short to run in parallel.
+     */
+    private static final int[] TREE_SPLITS = { 1000, 8192, 16385,
+                                               8192 * 9 + 3, 100000 };
+
+    private final ForkJoinPool pool = new ForkJoinPool(4);
+
+    private final ForkJoinPool serial = new ForkJoinPool(1);
+
+    public KangarooTwelveMessageDigestSpiTest() {
+        super(32, EXPECTED_EMPTY_HASH);
+    }
+
+    /**
+     * The test pattern from RFC 9861: the bytes 0 to 250, repeated.
+     */
+    private static byte[] pattern(final int len) {
+        final byte[] out = new byte[len];
+
+        for(int i = 0; i < len; i++) {
+            out[i] = (byte)(i % 251);
+        }
+
+        return out;
+    }
+
+    @BeforeClass
+    public static void init() {
+        KryptonProvider.register();
+    }
+
+    @AfterClass
+    public static void fini() {
+        KryptonProvider.unregister();
+    }
+
+    @AfterClass
+    public void shutdownPools() {
+        pool.shutdown();
+        serial.shutdown();
+    }
+
+    @Override
+    protected KangarooTwelveMessageDigestSpi getMessageDigest() {
+        return new KangarooTwelveMessageDigestSpi();
+    }
+
+    @DataProvider(name = "hash")
+    @Override
+    protected Object[][] hashProvider() {
+        return HASH_CASES;
+    }
+
+    @DataProvider(name = "tree")
+    protected Object[][] treeProvider() {
+        return TREE_CASES;
+    }
+
+    @Test(dataProvider = "tree",
+          description = "Test tree hashing, serially and in parallel")
+    public void treeHashTest(final byte[] input,
+                             final byte[] customization,
+                             final byte[] expected) {
+        for(final ForkJoinPool p : new ForkJoinPool[] { serial, pool }) {
+            final KangarooTwelveMessageDigestSpi whole =
+                new KangarooTwelveMessageDigestSpi(expected.length,
+                                                   customization, p);
+
+            whole.update(input);
+            Assert.assertEquals(whole.digest(), expected);
+
+            for(final int split : TREE_SPLITS) {
+                final KangarooTwelveMessageDigestSpi spi =
+                    new KangarooTwelveMessageDigestSpi(expected.length,
+                                                       customization, p);
+                final KangarooTwelveMessageDigestSpi direct =
+                    new KangarooTwelveMessageDigestSpi(expected.length,
+                                                       customization, p);
+                final ByteBuffer buf =
+                    ByteBuffer.allocateDirect(Math.max(input.length, 1));
+
+                buf.put(input);
+                buf.flip();
+
+                for(int i = 0; i < input.length; i += split) {
+                    final int len = Math.min(split, input.length - i);
+
+                    spi.update(input, i, len);
+                    buf.limit(i + len);
+                    direct.update(buf);
+                }
+
+                Assert.assertEquals(spi.digest(), expected);
+                Assert.assertEquals(direct.digest(), expected);
+            }
+        }
+    }
+
+    @Test(description = "Test reusing a digest after a tree hash")
+    public void reuseTest() {
+        final KangarooTwelveMessageDigestSpi spi =
+            new KangarooTwelveMessageDigestSpi(32, new byte[0], pool);
+        final byte[] input = (byte[])TREE_CASES[1][0];
+
+        spi.update(input);
+        Assert.assertEquals(spi.digest(), TREE_CASES[1][2]);
+        Assert.assertEquals(spi.digest(), EXPECTED_EMPTY_HASH);
+        spi.update(input);
+        Assert.assertEquals(spi.digest(), TREE_CASES[1][2]);
+    }
+
+    @Test(description = "Test getting the digest through the JCA")
+    public void jcaTest()
+        throws NoSuchAlgorithmException, NoSuchProviderException {
+        final MessageDigest md =
+            MessageDigest.getInstance(KangarooTwelveMessageDigestSpi.NAME,
+                                      KryptonProvider.NAME);
+        final byte[] input = (byte[])TREE_CASES[1][0];
+
+        Assert.assertEquals(md.digest(input), TREE_CASES[1][2]);
+    }
+}
@@ -0,0 +1,139 @@
+/* Copyright (c) 2018, Eric McCorkle.  All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions
+ * are met:
+ *
+ * * Redistributions of source code must retain the above copyright
+ *   notice, this list of conditions and the following disclaimer.
+ *
+ * * Redistributions in binary form must reproduce the above copyright
+ *   notice, this list of conditions and the following disclaimer in
+ *   the documentation and/or other materials provided with the
+ *   distribution.
+ *
+ * * Neither the name of the copyright holder nor the names of its
+ *   contributors may be used to endorse or promote products derived
+ *   from this software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS
+ * "AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT
+ * LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS
+ * FOR A PARTICULAR PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE
+ * COPYRIGHT HOLDER OR CONTRIBUTORS BE LIABLE FOR ANY DIRECT,
+ * INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES
+ * (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR
+ * SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION)
+ * HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT,
+ * STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED
+ * OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+package net.metricspace.crypto.hashes.keccak;
+
+import java.nio.ByteBuffer;
+
+import org.testng.Assert;
+import org.testng.annotations.Test;
+
+import net.metricspace.crypto.hashes.MessageDigestSpiTest;
+
+public abstract class ShakeMessageDigestSpiTest extends MessageDigestSpiTest {
+    /**
+     * Input for the streaming tests: the bytes 0 to 199.
+     */
+    protected static final byte[] STREAM_INPUT = new byte[200];
+
+    static {
+        for(int i = 0; i < STREAM_INPUT.length; i++) {
+            STREAM_INPUT[i] = (byte)i;
+        }
+    }
+
+    private final byte[] expectedStream;
+
+    protected ShakeMessageDigestSpiTest(final int hashBytes,
+                                        final byte[] expectedEmptyHash,
+                                        final byte[] expectedStream) {
+        super(hashBytes, expectedEmptyHash);
+        this.expectedStream = expectedStream;
+    }
+
+    @Override
+    protected abstract ShakeMessageDigestSpi getMessageDigest();
+
+    @Test(description = "Test squeezing the whole output at once")
+    public void squeezeTest() {
+        final ShakeMessageDigestSpi xof = getMessageDigest();
+        final byte[] actual = new byte[expectedStream.length];
+
+        xof.absorb(STREAM_INPUT);
+        xof.squeeze(actual);
+        Assert.assertEquals(actual, expectedStream);
+    }
+
+    @Test(description = "Test squeezing output in pieces")
+    public void splitSqueezeTest() {
+        for(int i = 1; i <= 200; i++) {
+            final ShakeMessageDigestSpi xof = getMessageDigest();
+            final byte[] actual = new byte[expectedStream.length];
+
+            xof.absorb(STREAM_INPUT, 0, 77);
+            xof.absorb(STREAM_INPUT, 77, STREAM_INPUT.length - 77);
+
+            for(int j = 0; j < actual.length; j += i) {
+                xof.squeeze(actual, j, Math.min(i, actual.length - j));
+            }
+
+            Assert.assertEquals(actual, expectedStream);
+        }
+    }
+
+    @Test(description = "Test squeezing output into heap and direct " +
+                        "buffers")
+    public void bufferSqueezeTest() {
+        final ByteBuffer[] bufs = new ByteBuffer[] {
+            ByteBuffer.allocate(expectedStream.length),
+            ByteBuffer.allocateDirect(expectedStream.length)
+        };
+
+        for(final ByteBuffer buf : bufs) {
+            final ShakeMessageDigestSpi xof = getMessageDigest();
+            final byte[] actual = new byte[expectedStream.length];
+
+            xof.absorb(ByteBuffer.wrap(STREAM_INPUT));
+
+            for(int i = 0; i < actual.length; i += 13) {
+                buf.limit(Math.min(i + 13, actual.length));
+                xof.squeeze(buf);
+            }
+
+            buf.flip();
+            buf.get(actual);
+            Assert.assertEquals(actual, expectedStream);
+        }
+    }
+
+    @Test(description = "Test that absorbing after squeezing fails",
+          expectedExceptions = IllegalStateException.class)
+    public void absorbAfterSqueezeTest() {
+        final ShakeMessageDigestSpi xof = getMessageDigest();
+
+        xof.absorb(STREAM_INPUT);
+        xof.squeeze(new byte[1]);
+        xof.absorb(STREAM_INPUT);
+    }
+
+    @Test(description = "Test that reset allows reuse")
+    public void resetTest() {
+        final ShakeMessageDigestSpi xof = getMessageDigest();
+        final byte[] actual = new byte[expectedStream.length];
+
+        xof.absorb(new byte[] { 1, 2, 3 });
+        xof.squeeze(new byte[100]);
+        xof.reset();
+        xof.absorb(STREAM_INPUT);
+        xof.squeeze(actual);
+        Assert.assertEquals(actual, expectedStream);
+    }
+}
@@ -0,0 +1,138 @@
+/* Copyright (c) 2018, Eric McCorkle.  All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions
+ * are met:
+ *
+ * * Redistributions of source code must retain the above copyright
+ *   notice, this list of conditions and the following disclaimer.
+ *
+ * * Redistributions in binary form must reproduce the above copyright
+ *   notice, this list of conditions and the following disclaimer in
+ *   the documentation and/or other materials provided with the
+ *   distribution.
+ *
+ * * Neither the name of the copyright holder nor the names of its
+ *   contributors may be used to endorse or promote products derived
+ *   from this software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS
+ * "AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT
+ * LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS
+ * FOR A PARTICULAR PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE
+ * COPYRIGHT HOLDER OR CONTRIBUTORS BE LIABLE FOR ANY DIRECT,
+ * INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES
+ * (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR
+ * SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION)
+ * HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT,
+ * STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED
+ * OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+package net.metricspace.crypto.macs.poly1305;
+
+import java.nio.ByteBuffer;
+import java.security.InvalidKeyException;
+import java.security.NoSuchAlgorithmException;
+import java.security.NoSuchProviderException;
+
+import javax.crypto.Mac;
+import javax.crypto.spec.SecretKeySpec;
+
+import net.metricspace.crypto.providers.KryptonProvider;
+
+import org.testng.Assert;
+import org.testng.annotations.AfterClass;
+import org.testng.annotations.BeforeClass;
+import org.testng.annotations.Test;
+
+public class Poly1305MacSpiTest {
+    @BeforeClass
+    public static void init() {
+        KryptonProvider.register();
+    }
+
+    @AfterClass
+    public static void fini() {
+        KryptonProvider.unregister();
+    }
+
+    private static Mac mac(final byte[] key)
+        throws NoSuchAlgorithmException, NoSuchProviderException,
+               InvalidKeyException {
+        final Mac mac = Mac.getInstance(Poly1305MacSpi.NAME,
+                                        KryptonProvider.NAME);
+
+        mac.init(new SecretKeySpec(key, Poly1305MacSpi.NAME));
+
+        return mac;
+    }
+
+    @Test(dataProvider = "vectors", dataProviderClass = Poly1305Test.class)
+    public static void oneShotTest(final byte[] key,
+                                   final byte[] message,
+                                   final byte[] expected)
+        throws NoSuchAlgorithmException, NoSuchProviderException,
+               InvalidKeyException {
+        final Mac mac = mac(key);
+
+        Assert.assertEquals(mac.getMacLength(), Poly1305.TAG_BYTES);
+        Assert.assertEquals(mac.doFinal(message), expected);
+    }
+
+    @Test(dataProvider = "vectors", dataProviderClass = Poly1305Test.class)
+    public static void byteTest(final byte[] key,
+                                final byte[] message,
+                                final byte[] expected)
+        throws NoSuchAlgorithmException, NoSuchProviderException,
+               InvalidKeyException {
+        final Mac mac = mac(key);
+
+        for(int i = 0; i < message.length; i++) {
+            mac.update(message[i]);
+        }
+
+        Assert.assertEquals(mac.doFinal(), expected);
+    }
+
+    @Test(dataProvider = "vectors", dataProviderClass = Poly1305Test.class)
+    public static void directBufferTest(final byte[] key,
+                                        final byte[] message,
+                                        final byte[] expected)
+        throws NoSuchAlgorithmException, NoSuchProviderException,
+               InvalidKeyException {
+        final Mac mac = mac(key);
+        final ByteBuffer buf = ByteBuffer.allocateDirect(message.length);
+
+        buf.put(message);
+        buf.flip();
+        mac.update(buf);
+
+        Assert.assertEquals(mac.doFinal(), expected);
+        Assert.assertFalse(buf.hasRemaining());
+    }
+
+    @Test(dataProvider = "vectors", dataProviderClass = Poly1305Test.class)
+    public static void resetTest(final byte[] key,
+                                 final byte[] message,
+                                 final byte[] expected)
+        throws NoSuchAlgorithmException, NoSuchProviderException,
+               InvalidKeyException {
+        final Mac mac = mac(key);
+
+        mac.update(message);
+        mac.update(message);
+        mac.reset();
+        mac.update(message);
+
+        Assert.assertEquals(mac.doFinal(), expected);
+        Assert.assertEquals(mac.doFinal(message), expected);
+    }
+
+    @Test(expectedExceptions = InvalidKeyException.class)
+    public static void shortKeyTest()
+        throws NoSuchAlgorithmException, NoSuchProviderException,
+               InvalidKeyException {
+        mac(new byte[Poly1305.KEY_BYTES - 1]);
+    }
+}
@@ -0,0 +1,181 @@
+/* Copyright (c) 2018, Eric McCorkle.  All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions
+ * are met:
+ *
+ * * Redistributions of source code must retain the above copyright
+ *   notice, this list of conditions and the following disclaimer.
+ *
+ * * Redistributions in binary form must reproduce the above copyright
+ *   notice, this list of conditions and the following disclaimer in
+ *   the documentation and/or other materials provided with the
+ *   distribution.
+ *
+ * * Neither the name of the copyright holder nor the names of its
+ *   contributors may be used to endorse or promote products derived
+ *   from this software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS
+ * "AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT
+ * LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS
+ * FOR A PARTICULAR PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE
+ * COPYRIGHT HOLDER OR CONTRIBUTORS BE LIABLE FOR ANY DIRECT,
+ * INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES
+ * (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR
+ * SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION)
+ * HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT,
+ * STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED
+ * OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+package net.metricspace.crypto.macs.poly1305;
+
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+
+import org.testng.Assert;
+import org.testng.annotations.DataProvider;
+import org.testng.annotations.Test;
+
+public class Poly1305Test {
+    // Test vector from RFC 8439, section 2.5.2.
+    private static final byte[] RFC_KEY = new byte[] {
+        (byte)0x85, (byte)0xd6, (byte)0xbe, (byte)0x78,
+        (byte)0x57, (byte)0x55, (byte)0x6d, (byte)0x33,
+        (byte)0x7f, (byte)0x44, (byte)0x52, (byte)0xfe,
+        (byte)0x42, (byte)0xd5, (byte)0x06, (byte)0xa8,
+        (byte)0x01, (byte)0x03, (byte)0x80, (byte)0x8a,
+        (byte)0xfb, (byte)0x0d, (byte)0xb2, (byte)0xfd,
+        (byte)0x4a, (byte)0xbf, (byte)0xf6, (byte)0xaf,
+        (byte)0x41, (byte)0x49, (byte)0xf5, (byte)0x1b
+    };
+
+    private static final byte[] RFC_MESSAGE = new byte[] {
+        (byte)0x43, (byte)0x72, (byte)0x79, (byte)0x70,
+        (byte)0x74, (byte)0x6f, (byte)0x67, (byte)0x72,
+        (byte)0x61, (byte)0x70, (byte)0x68, (byte)0x69,
+        (byte)0x63, (byte)0x20, (byte)0x46, (byte)0x6f,
+        (byte)0x72, (byte)0x75, (byte)0x6d, (byte)0x20,
+        (byte)0x52, (byte)0x65, (byte)0x73, (byte)0x65,
+        (byte)0x61, (byte)0x72, (byte)0x63, (byte)0x68,
+        (byte)0x20, (byte)0x47, (byte)0x72, (byte)0x6f,
+        (byte)0x75, (byte)0x70
+    };
+
+    private static final byte[] RFC_TAG = new byte[] {
+        (byte)0xa8, (byte)0x06, (byte)0x1d, (byte)0xc1,
+        (byte)0x30, (byte)0x51, (byte)0x36, (byte)0xc6,
+        (byte)0xc2, (byte)0x2b, (byte)0x8b, (byte)0xaf,
+        (byte)0x0c, (byte)0x01, (byte)0x27, (byte)0xa9
+    };
+
+    // All-ones key, which maximizes r and makes s wrap.
+    private static final byte[] ONES_KEY = ones(Poly1305.KEY_BYTES);
+
+    private static byte[] ones(final int len) {
+        final byte[] out = new byte[len];
+
+        Arrays.fill(out, (byte)0xff);
+
+        return out;
+    }
+
+    private static byte[] pattern(final int len) {
+        final byte[] out = new byte[len];
+
+        for(int i = 0; i < len; i++) {
+            out[i] = (byte)((i * 7) + 3);
+        }
+
+        return out;
+    }
+
+    private static byte[] tag(final String hex) {
+        final byte[] out = new byte[hex.length() / 2];
+
+        for(int i = 0; i < out.length; i++) {
+            out[i] = (byte)Integer.parseInt(hex.substring(i * 2,
+                                                          (i * 2) + 2), 16);
+        }
+
+        return out;
+    }
+
+    @DataProvider(name = "vectors")
+    public static Object[][] vectors() {
+        return new Object[][] {
+            { RFC_KEY, RFC_MESSAGE, RFC_TAG },
+            { ONES_KEY, ones(0), tag("ffffffffffffffffffffffffffffffff") },
+            { ONES_KEY, ones(1), tag("23feffef23f8ffef23f8ffef23f8ffef") },
+            { ONES_KEY, ones(15), tag("fbff27e6030028e6030028e6030028ee") },
+            { ONES_KEY, ones(16), tag("fbffff17faffff17faffff17faffff17") },
+            { ONES_KEY, ones(17), tag("7cfe7ff768f81f2763f8bf565df85f86") },
+            { ONES_KEY, ones(63), tag("900f0bfaca5fd0a5c6a817b3d1e3a687") },
+            { ONES_KEY, ones(64), tag("900fe32bc15fa8d7bca8efe4c7e37eb1") },
+            { ONES_KEY, ones(65), tag("e4d8b131f296fa0723796121694ffa18") },
+            { ONES_KEY, ones(1000), tag("de9406b10e7023bcd692ff687f4cbc7f") },
+            { RFC_KEY, pattern(0), tag("0103808afb0db2fd4abff6af4149f51b") },
+            { RFC_KEY, pattern(1), tag("9a0b936300624f75c208322d1009df3a") },
+            { RFC_KEY, pattern(15), tag("96d35c0a53d682bc2834aab169aba194") },
+            { RFC_KEY, pattern(16), tag("4d14ddbc50e0958b0b850cfbe3c7db39") },
+            { RFC_KEY, pattern(17), tag("80c0ba08f77840ba12375897b104b289") },
+            { RFC_KEY, pattern(63), tag("750dcfa50dc9c91fa1bbb94eb3f08b46") },
+            { RFC_KEY, pattern(64), tag("fbd9b92b60883360442fb49d7ab8e87e") },
+            { RFC_KEY, pattern(65), tag("b3273c470b6e8040861904e579192419") },
+            { RFC_KEY, pattern(1000), tag("1a0426ce6ec6e1323ffcca66044d6815") }
+        };
+    }
+
+    @Test(dataProvider = "vectors")
+    public static void oneShotTest(final byte[] key,
+                                   final byte[] message,
+                                   final byte[] expected) {
+        final Poly1305 poly = new Poly1305();
+        final byte[] actual = new byte[Poly1305.TAG_BYTES];
+
+        poly.init(key, 0);
+        poly.update(message, 0, message.length);
+        poly.finish(actual, 0);
+
+        Assert.assertEquals(actual, expected);
+    }
+
+    @Test(dataProvider = "vectors")
+    public static void splitTest(final byte[] key,
+                                 final byte[] message,
+                                 final byte[] expected) {
+        final Poly1305 poly = new Poly1305();
+        final byte[] actual = new byte[Poly1305.TAG_BYTES];
+
+        for(int split = 1; split < 40; split += 3) {
+            poly.init(key, 0);
+
+            for(int i = 0; i < message.length; i += split) {
+                poly.update(message, i, Math.min(split, message.length - i));
+            }
+
+            poly.finish(actual, 0);
+
+            Assert.assertEquals(actual, expected);
+        }
+    }
+
+    @Test(dataProvider = "vectors")
+    public static void directBufferTest(final byte[] key,
+                                        final byte[] message,
+                                        final byte[] expected) {
+        final Poly1305 poly = new Poly1305();
+        final byte[] actual = new byte[Poly1305.TAG_BYTES];
+        final ByteBuffer buf = ByteBuffer.allocateDirect(message.length);
+
+        buf.put(message);
+        buf.flip();
+        poly.init(key, 0);
+        poly.update(buf);
+        poly.finish(actual, 0);
+
+        Assert.assertEquals(actual, expected);
+        Assert.assertFalse(buf.hasRemaining());
+    }
+}
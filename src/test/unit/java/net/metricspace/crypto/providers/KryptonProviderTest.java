@@ -38,6 +38,7 @@ import java.security.NoSuchProviderException;
 
 import javax.crypto.Cipher;
 import javax.crypto.KeyGenerator;
+import javax.crypto.Mac;
 import javax.crypto.NoSuchPaddingException;
 
 import org.testng.Assert;
@@ -78,6 +79,51 @@ public class KryptonProviderTest {
         Assert.assertEquals(g.getAlgorithm(), "Salsa20");
     }
 
+    @Test
+    public static void testXChaCha20KeyGenerator()
+        throws NoSuchAlgorithmException, NoSuchProviderException,
+               NoSuchPaddingException {
+        final KeyGenerator g = KeyGenerator.getInstance("XChaCha20", "Krypton");
+
+        Assert.assertNotEquals(g, null);
+        Assert.assertEquals(g.getProvider().getName(), "Krypton");
+        Assert.assertEquals(g.getAlgorithm(), "XChaCha20");
+    }
+
+    @Test
+    public static void testXSalsa20KeyGenerator()
+        throws NoSuchAlgorithmException, NoSuchProviderException,
+               NoSuchPaddingException {
+        final KeyGenerator g = KeyGenerator.getInstance("XSalsa20", "Krypton");
+
+        Assert.assertNotEquals(g, null);
+        Assert.assertEquals(g.getProvider().getName(), "Krypton");
+        Assert.assertEquals(g.getAlgorithm(), "XSalsa20");
+    }
+
+    @Test
+    public static void testChaCha20Poly1305KeyGenerator()
+        throws NoSuchAlgorithmException, NoSuchProviderException,
+               NoSuchPaddingException {
+        final KeyGenerator g =
+            KeyGenerator.getInstance("ChaCha20-Poly1305", "Krypton");
+
+        Assert.assertNotEquals(g, null);
+        Assert.assertEquals(g.getProvider().getName(), "Krypton");
+        Assert.assertEquals(g.getAlgorithm(), "ChaCha20-Poly1305");
+    }
+
+    @Test
+    public static void testHC128KeyGenerator()
+        throws NoSuchAlgorithmException, NoSuchProviderException,
+               NoSuchPaddingException {
+        final KeyGenerator g = KeyGenerator.getInstance("HC-128", "Krypton");
+
+        Assert.assertNotEquals(g, null);
+        Assert.assertEquals(g.getProvider().getName(), "Krypton");
+        Assert.assertEquals(g.getAlgorithm(), "HC-128");
+    }
+
     @Test
     public static void testHC256KeyGenerator()
         throws NoSuchAlgorithmException, NoSuchProviderException,
@@ -113,6 +159,54 @@ public class KryptonProviderTest {
         Assert.assertEquals(g.getAlgorithm(), "Salsa20");
     }
 
+    @Test
+    public static void testXChaCha20Parameters()
+        throws NoSuchAlgorithmException, NoSuchProviderException,
+               NoSuchPaddingException {
+        final AlgorithmParameters g =
+            AlgorithmParameters.getInstance("XChaCha20", "Krypton");
+
+        Assert.assertNotEquals(g, null);
+        Assert.assertEquals(g.getProvider().getName(), "Krypton");
+        Assert.assertEquals(g.getAlgorithm(), "XChaCha20");
+    }
+
+    @Test
+    public static void testXSalsa20Parameters()
+        throws NoSuchAlgorithmException, NoSuchProviderException,
+               NoSuchPaddingException {
+        final AlgorithmParameters g =
+            AlgorithmParameters.getInstance("XSalsa20", "Krypton");
+
+        Assert.assertNotEquals(g, null);
+        Assert.assertEquals(g.getProvider().getName(), "Krypton");
+        Assert.assertEquals(g.getAlgorithm(), "XSalsa20");
+    }
+
+    @Test
+    public static void testChaCha20Poly1305Parameters()
+        throws NoSuchAlgorithmException, NoSuchProviderException,
+               NoSuchPaddingException {
+        final AlgorithmParameters g =
+            AlgorithmParameters.getInstance("ChaCha20-Poly1305", "Krypton");
+
+        Assert.assertNotEquals(g, null);
+        Assert.assertEquals(g.getProvider().getName(), "Krypton");
+        Assert.assertEquals(g.getAlgorithm(), "ChaCha20-Poly1305");
+    }
+
+    @Test
+    public static void testHC128Parameters()
+        throws NoSuchAlgorithmException, NoSuchProviderException,
+               NoSuchPaddingException {
+        final AlgorithmParameters g =
+            AlgorithmParameters.getInstance("HC-128", "Krypton");
+
+        Assert.assertNotEquals(g, null);
+        Assert.assertEquals(g.getProvider().getName(), "Krypton");
+        Assert.assertEquals(g.getAlgorithm(), "HC-128");
+    }
+
     @Test
     public static void testHC256Parameters()
         throws NoSuchAlgorithmException, NoSuchProviderException,
@@ -149,6 +243,42 @@ public class KryptonProviderTest {
         Assert.assertEquals(g.getAlgorithm(), "Salsa20");
     }
 
+    @Test
+    public static void testXChaCha20ParameterGenerator()
+        throws NoSuchAlgorithmException, NoSuchProviderException,
+               NoSuchPaddingException {
+        final AlgorithmParameterGenerator g =
+            AlgorithmParameterGenerator.getInstance("XChaCha20", "Krypton");
+
+        Assert.assertNotEquals(g, null);
+        Assert.assertEquals(g.getProvider().getName(), "Krypton");
+        Assert.assertEquals(g.getAlgorithm(), "XChaCha20");
+    }
+
+    @Test
+    public static void testXSalsa20ParameterGenerator()
+        throws NoSuchAlgorithmException, NoSuchProviderException,
+               NoSuchPaddingException {
+        final AlgorithmParameterGenerator g =
+            AlgorithmParameterGenerator.getInstance("XSalsa20", "Krypton");
+
+        Assert.assertNotEquals(g, null);
+        Assert.assertEquals(g.getProvider().getName(), "Krypton");
+        Assert.assertEquals(g.getAlgorithm(), "XSalsa20");
+    }
+
+    @Test
+    public static void testHC128ParameterGenerator()
+        throws NoSuchAlgorithmException, NoSuchProviderException,
+               NoSuchPaddingException {
+        final AlgorithmParameterGenerator g =
+            AlgorithmParameterGenerator.getInstance("HC-128", "Krypton");
+
+        Assert.assertNotEquals(g, null);
+        Assert.assertEquals(g.getProvider().getName(), "Krypton");
+        Assert.assertEquals(g.getAlgorithm(), "HC-128");
+    }
+
     @Test
     public static void testHC256ParameterGenerator()
         throws NoSuchAlgorithmException, NoSuchProviderException,
@@ -183,6 +313,50 @@ public class KryptonProviderTest {
         Assert.assertEquals(c.getAlgorithm(), "Salsa20");
     }
 
+    @Test
+    public static void testXChaCha20Cipher()
+        throws NoSuchAlgorithmException, NoSuchProviderException,
+               NoSuchPaddingException {
+        final Cipher c = Cipher.getInstance("XChaCha20", "Krypton");
+
+        Assert.assertNotEquals(c, null);
+        Assert.assertEquals(c.getProvider().getName(), "Krypton");
+        Assert.assertEquals(c.getAlgorithm(), "XChaCha20");
+    }
+
+    @Test
+    public static void testXSalsa20Cipher()
+        throws NoSuchAlgorithmException, NoSuchProviderException,
+               NoSuchPaddingException {
+        final Cipher c = Cipher.getInstance("XSalsa20", "Krypton");
+
+        Assert.assertNotEquals(c, null);
+        Assert.assertEquals(c.getProvider().getName(), "Krypton");
+        Assert.assertEquals(c.getAlgorithm(), "XSalsa20");
+    }
+
+    @Test
+    public static void testChaCha20Poly1305Cipher()
+        throws NoSuchAlgorithmException, NoSuchProviderException,
+               NoSuchPaddingException {
+        final Cipher c = Cipher.getInstance("ChaCha20-Poly1305", "Krypton");
+
+        Assert.assertNotEquals(c, null);
+        Assert.assertEquals(c.getProvider().getName(), "Krypton");
+        Assert.assertEquals(c.getAlgorithm(), "ChaCha20-Poly1305");
+    }
+
+    @Test
+    public static void testHC128Cipher()
+        throws NoSuchAlgorithmException, NoSuchProviderException,
+               NoSuchPaddingException {
+        final Cipher c = Cipher.getInstance("HC-128", "Krypton");
+
+        Assert.assertNotEquals(c, null);
+        Assert.assertEquals(c.getProvider().getName(), "Krypton");
+        Assert.assertEquals(c.getAlgorithm(), "HC-128");
+    }
+
     @Test
     public static void testHC256Cipher()
         throws NoSuchAlgorithmException, NoSuchProviderException,
@@ -193,4 +367,14 @@ public class KryptonProviderTest {
         Assert.assertEquals(c.getProvider().getName(), "Krypton");
         Assert.assertEquals(c.getAlgorithm(), "HC-256");
     }
+
+    @Test
+    public static void testPoly1305Mac()
+        throws NoSuchAlgorithmException, NoSuchProviderException {
+        final Mac m = Mac.getInstance("Poly1305", "Krypton");
+
+        Assert.assertNotEquals(m, null);
+        Assert.assertEquals(m.getProvider().getName(), "Krypton");
+        Assert.assertEquals(m.getAlgorithm(), "Poly1305");
+    }
 }